@@ -131,9 +131,14 @@ public class PlainAccessResource implements AccessResource {
                     accessResource.addResourceAndPerm(getRetryTopic(request.getExtFields().get("group")), Permission.SUB);
                     break;
                 case RequestCode.PULL_MESSAGE:
+                case RequestCode.OPEN_PULL_STREAM:
                     accessResource.addResourceAndPerm(request.getExtFields().get("topic"), Permission.SUB);
                     accessResource.addResourceAndPerm(getRetryTopic(request.getExtFields().get("consumerGroup")), Permission.SUB);
                     break;
+                case RequestCode.ADD_PULL_STREAM_CREDIT:
+                case RequestCode.CLOSE_PULL_STREAM:
+                    accessResource.addResourceAndPerm(getRetryTopic(request.getExtFields().get("consumerGroup")), Permission.SUB);
+                    break;
                 case RequestCode.QUERY_MESSAGE:
                     accessResource.addResourceAndPerm(request.getExtFields().get("topic"), Permission.SUB);
                     break;
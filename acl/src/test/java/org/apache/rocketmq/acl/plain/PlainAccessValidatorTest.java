@@ -33,6 +33,7 @@ import org.apache.rocketmq.acl.common.AclClientRPCHook;
 import org.apache.rocketmq.acl.common.AclConstants;
 import org.apache.rocketmq.acl.common.AclException;
 import org.apache.rocketmq.acl.common.AclUtils;
+import org.apache.rocketmq.acl.common.Permission;
 import org.apache.rocketmq.acl.common.SessionCredentials;
 import org.apache.rocketmq.common.AclConfig;
 import org.apache.rocketmq.common.MixAll;
@@ -41,8 +42,10 @@ import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 import org.apache.rocketmq.remoting.protocol.DataVersion;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 import org.apache.rocketmq.remoting.protocol.RequestCode;
+import org.apache.rocketmq.remoting.protocol.header.AddPullStreamCreditRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.ConsumerSendMsgBackRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.GetConsumerListByGroupRequestHeader;
+import org.apache.rocketmq.remoting.protocol.header.OpenPullStreamRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.PullMessageRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.QueryMessageRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.SendMessageRequestHeader;
@@ -251,6 +254,55 @@ public class PlainAccessValidatorTest {
         }
     }
 
+    @Test
+    public void validatePullStreamTest() {
+        OpenPullStreamRequestHeader openPullStreamRequestHeader = new OpenPullStreamRequestHeader();
+        openPullStreamRequestHeader.setTopic("topicC");
+        openPullStreamRequestHeader.setConsumerGroup("groupC");
+        openPullStreamRequestHeader.setQueueId(0);
+        openPullStreamRequestHeader.setQueueOffset(0L);
+        openPullStreamRequestHeader.setStreamId(1L);
+        openPullStreamRequestHeader.setCredit(32);
+        openPullStreamRequestHeader.setSubscription("*");
+        openPullStreamRequestHeader.setSubVersion(0L);
+        RemotingCommand remotingCommand = RemotingCommand.createRequestCommand(RequestCode.OPEN_PULL_STREAM, openPullStreamRequestHeader);
+        aclClient.doBeforeRequest("", remotingCommand);
+        ByteBuffer buf = remotingCommand.encodeHeader();
+        buf.getInt();
+        buf = ByteBuffer.allocate(buf.limit() - buf.position()).put(buf);
+        buf.position(0);
+        try {
+            PlainAccessResource accessResource = (PlainAccessResource) plainAccessValidator.parse(RemotingCommand.decode(buf), "123.4.5.6");
+            Assert.assertEquals(Permission.SUB, accessResource.getResourcePermMap().get("topicC").byteValue());
+            Assert.assertEquals(Permission.SUB, accessResource.getResourcePermMap().get(MixAll.getRetryTopic("groupC")).byteValue());
+            plainAccessValidator.validate(accessResource);
+        } catch (RemotingCommandException e) {
+            e.printStackTrace();
+
+            Assert.fail("Should not throw IOException");
+        }
+
+        AddPullStreamCreditRequestHeader addPullStreamCreditRequestHeader = new AddPullStreamCreditRequestHeader();
+        addPullStreamCreditRequestHeader.setConsumerGroup("groupC");
+        addPullStreamCreditRequestHeader.setStreamId(1L);
+        addPullStreamCreditRequestHeader.setCredit(32);
+        remotingCommand = RemotingCommand.createRequestCommand(RequestCode.ADD_PULL_STREAM_CREDIT, addPullStreamCreditRequestHeader);
+        aclClient.doBeforeRequest("", remotingCommand);
+        buf = remotingCommand.encodeHeader();
+        buf.getInt();
+        buf = ByteBuffer.allocate(buf.limit() - buf.position()).put(buf);
+        buf.position(0);
+        try {
+            PlainAccessResource accessResource = (PlainAccessResource) plainAccessValidator.parse(RemotingCommand.decode(buf), "123.4.5.6");
+            Assert.assertEquals(Permission.SUB, accessResource.getResourcePermMap().get(MixAll.getRetryTopic("groupC")).byteValue());
+            plainAccessValidator.validate(accessResource);
+        } catch (RemotingCommandException e) {
+            e.printStackTrace();
+
+            Assert.fail("Should not throw IOException");
+        }
+    }
+
     @Test
     public void validateConsumeMessageBackTest() {
         ConsumerSendMsgBackRequestHeader consumerSendMsgBackRequestHeader = new ConsumerSendMsgBackRequestHeader();
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageExtBrokerInner;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the CPU cost of {@link MessageExtEncoder} and {@link CommitLog.DefaultAppendMessageCallback} without any
+ * locking or file IO, by appending into a direct buffer of the same size as a commit log file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class AppendMessageCallbackBenchmark {
+
+    private static final int BUFFER_SIZE = 64 * 1024 * 1024;
+
+    @Param({"128", "1024", "16384"})
+    private int bodySize;
+
+    private MessageStoreConfig messageStoreConfig;
+    private AppendMessageCallback callback;
+    private MessageExtEncoder encoder;
+    private PutMessageContext putMessageContext;
+    private ByteBuffer fileBuffer;
+    private byte[] body;
+    private long fileFromOffset;
+    private long queueOffset;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        messageStoreConfig = StoreBenchmarkUtil.buildStoreConfig(FlushDiskType.ASYNC_FLUSH);
+        DefaultMessageStore messageStore = new DefaultMessageStore(messageStoreConfig, null, null, new BrokerConfig(), new ConcurrentHashMap<>());
+        CommitLog commitLog = new CommitLog(messageStore);
+        callback = commitLog.new DefaultAppendMessageCallback(messageStoreConfig);
+        encoder = new MessageExtEncoder(messageStoreConfig);
+        putMessageContext = new PutMessageContext(StoreBenchmarkUtil.TOPIC + "-0");
+        fileBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        body = StoreBenchmarkUtil.randomBody(bodySize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        UtilAll.deleteFile(new File(messageStoreConfig.getStorePathRootDir()));
+    }
+
+    @Benchmark
+    public AppendMessageResult encodeAndAppend() {
+        MessageExtBrokerInner msg = StoreBenchmarkUtil.buildMessage(body, 0);
+        msg.setQueueOffset(queueOffset++);
+        msg.setStoreTimestamp(System.currentTimeMillis());
+        encoder.encode(msg);
+        msg.setEncodedBuff(encoder.getEncoderBuffer());
+
+        AppendMessageResult result = callback.doAppend(fileFromOffset, fileBuffer, fileBuffer.remaining(), msg, putMessageContext);
+        if (result.getStatus() == AppendMessageStatus.END_OF_FILE) {
+            // Roll over to a new "file" the same way CommitLog does, then write the message again
+            fileFromOffset += BUFFER_SIZE;
+            fileBuffer.clear();
+            result = callback.doAppend(fileFromOffset, fileBuffer, fileBuffer.remaining(), msg, putMessageContext);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+            .include(AppendMessageCallbackBenchmark.class.getSimpleName())
+            .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.common.message.MessageExtBatch;
+import org.apache.rocketmq.common.message.MessageExtBrokerInner;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@link CommitLog#asyncPutMessage} and {@link CommitLog#asyncPutMessages} end to end, including
+ * the topic queue lock, the put message lock, encoding and the flush strategy of the store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g", "-XX:MaxDirectMemorySize=4g"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+public class CommitLogPutBenchmark {
+
+    @Param({"128", "1024", "16384"})
+    private int bodySize;
+
+    @Param({"1", "64"})
+    private int queueCount;
+
+    @Param({"ASYNC_FLUSH", "SYNC_FLUSH"})
+    private FlushDiskType flushDiskType;
+
+    @Param({"32"})
+    private int batchSize;
+
+    @Param({"false", "true"})
+    private boolean copyOutsideLock;
+
+    private final AtomicInteger queueIndex = new AtomicInteger(0);
+    private DefaultMessageStore messageStore;
+    private CommitLog commitLog;
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        MessageStoreConfig messageStoreConfig = StoreBenchmarkUtil.buildStoreConfig(flushDiskType);
+        messageStoreConfig.setEnableCopyOutsidePutMessageLock(copyOutsideLock);
+        messageStore = StoreBenchmarkUtil.createStore(messageStoreConfig);
+        commitLog = messageStore.getCommitLog();
+        body = StoreBenchmarkUtil.randomBody(bodySize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        StoreBenchmarkUtil.destroy(messageStore);
+    }
+
+    @Benchmark
+    public PutMessageResult putMessage() {
+        MessageExtBrokerInner msg = StoreBenchmarkUtil.buildMessage(body, nextQueueId());
+        return commitLog.asyncPutMessage(msg).join();
+    }
+
+    @Benchmark
+    public PutMessageResult putMessages() {
+        MessageExtBatch messageExtBatch = StoreBenchmarkUtil.buildMessageBatch(body, nextQueueId(), batchSize);
+        return commitLog.asyncPutMessages(messageExtBatch).join();
+    }
+
+    private int nextQueueId() {
+        return Math.abs(queueIndex.getAndIncrement() % queueCount);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+            .include(CommitLogPutBenchmark.class.getSimpleName())
+            .build();
+        new Runner(opt).run();
+    }
+}
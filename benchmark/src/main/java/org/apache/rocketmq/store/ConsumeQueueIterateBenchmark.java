@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.apache.rocketmq.store.queue.ConsumeQueueInterface;
+import org.apache.rocketmq.store.queue.CqUnit;
+import org.apache.rocketmq.store.queue.CqUnitCursor;
+import org.apache.rocketmq.store.queue.ReferredIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares walking a consume queue through {@link ReferredIterator} of {@link CqUnit} with {@link CqUnitCursor}.
+ * Run with {@code -prof gc} to compare the allocation rate of the paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ConsumeQueueIterateBenchmark {
+
+    @Param({"32"})
+    private int unitCount;
+
+    @Param({"100000"})
+    private int messageCount;
+
+    private DefaultMessageStore messageStore;
+    private ConsumeQueueInterface consumeQueue;
+    private long maxOffset;
+    private CqUnitCursor reusedCursor;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        messageStore = StoreBenchmarkUtil.createStore(StoreBenchmarkUtil.buildStoreConfig(FlushDiskType.ASYNC_FLUSH));
+        byte[] body = StoreBenchmarkUtil.randomBody(16);
+        for (int i = 0; i < messageCount; i++) {
+            messageStore.getCommitLog().asyncPutMessage(StoreBenchmarkUtil.buildMessage(body, 0)).join();
+        }
+        StoreBenchmarkUtil.waitDispatch(messageStore);
+        consumeQueue = messageStore.getConsumeQueue(StoreBenchmarkUtil.TOPIC, 0);
+        maxOffset = consumeQueue.getMaxOffsetInQueue();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        StoreBenchmarkUtil.destroy(messageStore);
+    }
+
+    @Benchmark
+    public void iterator(Blackhole blackhole) throws Exception {
+        ReferredIterator<CqUnit> iterator = consumeQueue.iterateFrom(randomStartOffset(), unitCount);
+        try {
+            for (int i = 0; i < unitCount && iterator.hasNext(); i++) {
+                CqUnit cqUnit = iterator.next();
+                blackhole.consume(cqUnit.getPos());
+                blackhole.consume(cqUnit.getSize());
+                blackhole.consume(cqUnit.getTagsCode());
+            }
+        } finally {
+            iterator.release();
+        }
+    }
+
+    @Benchmark
+    public void cursor(Blackhole blackhole) throws Exception {
+        CqUnitCursor cursor = consumeQueue.cursorFrom(randomStartOffset(), unitCount);
+        try {
+            for (int i = 0; i < unitCount && cursor.next(); i++) {
+                blackhole.consume(cursor.getPos());
+                blackhole.consume(cursor.getSize());
+                blackhole.consume(cursor.getTagsCode());
+            }
+        } finally {
+            cursor.release();
+        }
+    }
+
+    @Benchmark
+    public void reusedCursor(Blackhole blackhole) throws Exception {
+        CqUnitCursor cursor = consumeQueue.cursorFrom(randomStartOffset(), unitCount, reusedCursor);
+        reusedCursor = cursor;
+        try {
+            for (int i = 0; i < unitCount && cursor.next(); i++) {
+                blackhole.consume(cursor.getPos());
+                blackhole.consume(cursor.getSize());
+                blackhole.consume(cursor.getTagsCode());
+            }
+        } finally {
+            cursor.release();
+        }
+    }
+
+    private long randomStartOffset() {
+        return ThreadLocalRandom.current().nextLong(Math.max(1, maxOffset - unitCount));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+            .include(ConsumeQueueIterateBenchmark.class.getSimpleName())
+            .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@link DefaultMessageStore#getMessage} for tail readers and for readers spread over the whole history.
+ * <p>
+ * The {@code TAIL} mode only reads the newest messages of each queue. The {@code RANDOM} mode reads random
+ * positions across all the data written during setup. Both usually hit the page cache, so {@code RANDOM} measures
+ * the index lookup and mapping cost of scattered reads, not disk reads; raise {@code messageCount} above the page
+ * cache size to include disk reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(4)
+public class GetMessageBenchmark {
+
+    private static final int TAIL_WINDOW = 1024;
+
+    @Param({"128", "1024"})
+    private int bodySize;
+
+    @Param({"1", "16"})
+    private int queueCount;
+
+    @Param({"TAIL", "RANDOM"})
+    private String readMode;
+
+    @Param({"32"})
+    private int maxMsgNums;
+
+    @Param({"200000"})
+    private int messageCount;
+
+    private DefaultMessageStore messageStore;
+    private long messagesPerQueue;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        messageStore = StoreBenchmarkUtil.createStore(StoreBenchmarkUtil.buildStoreConfig(FlushDiskType.ASYNC_FLUSH));
+        byte[] body = StoreBenchmarkUtil.randomBody(bodySize);
+        for (int i = 0; i < messageCount; i++) {
+            messageStore.getCommitLog().asyncPutMessage(StoreBenchmarkUtil.buildMessage(body, i % queueCount)).join();
+        }
+        StoreBenchmarkUtil.waitDispatch(messageStore);
+        messagesPerQueue = messageStore.getMaxOffsetInQueue(StoreBenchmarkUtil.TOPIC, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        StoreBenchmarkUtil.destroy(messageStore);
+    }
+
+    @Benchmark
+    public void getMessage(Blackhole blackhole) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int queueId = random.nextInt(queueCount);
+        long offset;
+        if ("TAIL".equals(readMode)) {
+            long window = Math.min(TAIL_WINDOW, messagesPerQueue);
+            offset = messagesPerQueue - 1 - random.nextLong(window);
+        } else {
+            offset = random.nextLong(messagesPerQueue);
+        }
+        GetMessageResult result = messageStore.getMessage(StoreBenchmarkUtil.GROUP, StoreBenchmarkUtil.TOPIC,
+            queueId, offset, maxMsgNums, null);
+        blackhole.consume(result.getBufferTotalSize());
+        result.release();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+            .include(GetMessageBenchmark.class.getSimpleName())
+            .build();
+        new Runner(opt).run();
+    }
+}
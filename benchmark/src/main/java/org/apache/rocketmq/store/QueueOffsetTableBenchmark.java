@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.utils.ConcurrentHashMapUtils;
+import org.apache.rocketmq.store.queue.QueueOffsetOperator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares assigning and increasing queue offsets through a String-keyed {@link ConcurrentHashMap}, as the
+ * put path used to do, with the (topic, queueId) methods of {@link QueueOffsetOperator}.
+ * Run with {@code -prof gc} to compare the allocation rate of both paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class QueueOffsetTableBenchmark {
+
+    @Param({"100"})
+    private int topicCount;
+
+    @Param({"16"})
+    private int queueCount;
+
+    private String[] topics;
+    private ConcurrentMap<String, Long> stringKeyTable;
+    private QueueOffsetOperator queueOffsetOperator;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        topics = new String[topicCount];
+        for (int i = 0; i < topicCount; i++) {
+            topics[i] = "BenchmarkTopic_" + i;
+        }
+        stringKeyTable = new ConcurrentHashMap<>(1024);
+        queueOffsetOperator = new QueueOffsetOperator();
+    }
+
+    @Benchmark
+    public long stringKey() {
+        int next = cursor++ & Integer.MAX_VALUE;
+        String topicQueueKey = topics[next % topicCount] + "-" + (next / topicCount) % queueCount;
+        Long queueOffset = ConcurrentHashMapUtils.computeIfAbsent(stringKeyTable, topicQueueKey, k -> 0L);
+        stringKeyTable.put(topicQueueKey, queueOffset + 1);
+        return queueOffset;
+    }
+
+    @Benchmark
+    public long primitiveKey() {
+        int next = cursor++ & Integer.MAX_VALUE;
+        String topic = topics[next % topicCount];
+        int queueId = (next / topicCount) % queueCount;
+        long queueOffset = queueOffsetOperator.getQueueOffset(topic, queueId);
+        queueOffsetOperator.increaseQueueOffset(topic, queueId, (short) 1);
+        return queueOffset;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+            .include(QueueOffsetTableBenchmark.class.getSimpleName())
+            .build();
+        new Runner(opt).run();
+    }
+}
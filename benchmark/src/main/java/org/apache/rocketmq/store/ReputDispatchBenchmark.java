@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.rocksdb.RocksDBException;
+
+/**
+ * Measures the work done by ReputMessageService: decoding a single commit log record into a
+ * {@link DispatchRequest}, and replaying the whole commit log through the reput service, sequential or parallel,
+ * which decodes every message and writes the ConsumeQueue and IndexService entries.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ReputDispatchBenchmark {
+
+    private static final int COMMIT_LOG_DATA_SIZE = 64 * 1024 * 1024;
+
+    private static final int REPUT_BODY_SIZE = 1024;
+
+    @State(Scope.Thread)
+    public static class DecodeState {
+
+        @Param({"128", "1024", "4096"})
+        private int bodySize;
+
+        private DefaultMessageStore messageStore;
+        private SelectMappedBufferResult commitLogData;
+        private ByteBuffer byteBuffer;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            messageStore = StoreBenchmarkUtil.createStore(StoreBenchmarkUtil.buildStoreConfig(FlushDiskType.ASYNC_FLUSH));
+            byte[] body = StoreBenchmarkUtil.randomBody(bodySize);
+            int messageCount = COMMIT_LOG_DATA_SIZE / (bodySize + 256);
+            for (int i = 0; i < messageCount; i++) {
+                messageStore.getCommitLog().asyncPutMessage(StoreBenchmarkUtil.buildMessage(body, 0)).join();
+            }
+            StoreBenchmarkUtil.waitDispatch(messageStore);
+            commitLogData = messageStore.getCommitLog().getData(0);
+            byteBuffer = commitLogData.getByteBuffer();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            if (commitLogData != null) {
+                commitLogData.release();
+            }
+            StoreBenchmarkUtil.destroy(messageStore);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ReputState {
+
+        @Param({"1", "64"})
+        private int queueCount;
+
+        @Param({"false", "true"})
+        private boolean parallelReput;
+
+        private DefaultMessageStore messageStore;
+        private DefaultMessageStore.ReputMessageService reputMessageService;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            MessageStoreConfig messageStoreConfig = StoreBenchmarkUtil.buildStoreConfig(FlushDiskType.ASYNC_FLUSH);
+            messageStoreConfig.setEnableParallelReput(parallelReput);
+            messageStore = StoreBenchmarkUtil.createStore(messageStoreConfig);
+            byte[] body = StoreBenchmarkUtil.randomBody(REPUT_BODY_SIZE);
+            int messageCount = COMMIT_LOG_DATA_SIZE / (REPUT_BODY_SIZE + 256);
+            for (int i = 0; i < messageCount; i++) {
+                messageStore.getCommitLog().asyncPutMessage(StoreBenchmarkUtil.buildMessage(body, i % queueCount)).join();
+            }
+            StoreBenchmarkUtil.waitDispatch(messageStore);
+        }
+
+        /**
+         * Drops the consume queues and starts a detached reput service from the head of the commit log, the store's
+         * own reput service stays idle as it is already at the end of the commit log
+         */
+        @Setup(Level.Iteration)
+        public void resetReput() throws RocksDBException {
+            messageStore.truncateDirtyLogicFiles(messageStore.getCommitLog().getMinOffset());
+            reputMessageService = parallelReput
+                ? messageStore.new ParallelReputMessageService() : messageStore.new ReputMessageService();
+            reputMessageService.setReputFromOffset(messageStore.getCommitLog().getMinOffset());
+        }
+
+        @TearDown(Level.Iteration)
+        public void shutdownReput() {
+            reputMessageService.shutdown();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            StoreBenchmarkUtil.destroy(messageStore);
+        }
+    }
+
+    @Benchmark
+    public DispatchRequest decode(DecodeState state) {
+        DispatchRequest request = state.messageStore.getCommitLog()
+            .checkMessageAndReturnSize(state.byteBuffer, false, false, false);
+        if (request.getMsgSize() <= 0 || !state.byteBuffer.hasRemaining()) {
+            state.byteBuffer.position(0);
+        }
+        return request;
+    }
+
+    /**
+     * Replays the whole commit log through {@link DefaultMessageStore.ReputMessageService#doReput()}, which decodes
+     * every message and runs the dispatcher chain, the score is the time of one full replay
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long reput(ReputState state) {
+        DefaultMessageStore.ReputMessageService reputMessageService = state.reputMessageService;
+        while (reputMessageService.isCommitLogAvailable()) {
+            reputMessageService.doReput();
+        }
+        return reputMessageService.getReputFromOffset();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+            .include(ReputDispatchBenchmark.class.getSimpleName())
+            .build();
+        new Runner(opt).run();
+    }
+}
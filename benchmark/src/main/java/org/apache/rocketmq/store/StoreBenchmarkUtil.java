@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExtBatch;
+import org.apache.rocketmq.common.message.MessageExtBrokerInner;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+
+/**
+ * Helpers shared by the store benchmarks. Every store is created under a fresh directory in
+ * {@code java.io.tmpdir} and removed by {@link #destroy(DefaultMessageStore)}.
+ */
+public final class StoreBenchmarkUtil {
+
+    public static final String TOPIC = "BenchmarkTopic";
+    public static final String GROUP = "BenchmarkGroup";
+
+    private static final SocketAddress BORN_HOST = new InetSocketAddress("127.0.0.1", 0);
+    private static final SocketAddress STORE_HOST = new InetSocketAddress("127.0.0.1", 10911);
+
+    private StoreBenchmarkUtil() {
+    }
+
+    public static MessageStoreConfig buildStoreConfig(FlushDiskType flushDiskType) {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        String storePathRootDir = System.getProperty("java.io.tmpdir") + File.separator
+            + "store-benchmark-" + UUID.randomUUID();
+        messageStoreConfig.setStorePathRootDir(storePathRootDir);
+        messageStoreConfig.setStorePathCommitLog(storePathRootDir + File.separator + "commitlog");
+        messageStoreConfig.setMappedFileSizeCommitLog(256 * 1024 * 1024);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(300000 * 20);
+        messageStoreConfig.setMaxHashSlotNum(500 * 1000);
+        messageStoreConfig.setMaxIndexNum(2000 * 1000);
+        messageStoreConfig.setFlushDiskType(flushDiskType);
+        messageStoreConfig.setHaListenPort(0);
+        return messageStoreConfig;
+    }
+
+    public static DefaultMessageStore createStore(MessageStoreConfig messageStoreConfig) throws Exception {
+        DefaultMessageStore messageStore = new DefaultMessageStore(messageStoreConfig,
+            new BrokerStatsManager("benchmark", true), null, new BrokerConfig(), new ConcurrentHashMap<>());
+        if (!messageStore.load()) {
+            throw new IllegalStateException("Failed to load message store at " + messageStoreConfig.getStorePathRootDir());
+        }
+        messageStore.start();
+        return messageStore;
+    }
+
+    public static void destroy(DefaultMessageStore messageStore) {
+        if (messageStore == null) {
+            return;
+        }
+        messageStore.shutdown();
+        messageStore.destroy();
+        UtilAll.deleteFile(new File(messageStore.getMessageStoreConfig().getStorePathRootDir()));
+    }
+
+    public static void waitDispatch(DefaultMessageStore messageStore) throws InterruptedException {
+        while (messageStore.dispatchBehindBytes() > 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    public static byte[] randomBody(int bodySize) {
+        byte[] body = new byte[bodySize];
+        ThreadLocalRandom.current().nextBytes(body);
+        return body;
+    }
+
+    public static MessageExtBrokerInner buildMessage(byte[] body, int queueId) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(TOPIC);
+        msg.setTags("TagA");
+        msg.setKeys(String.valueOf(ThreadLocalRandom.current().nextLong()));
+        msg.setBody(body);
+        msg.setQueueId(queueId);
+        msg.setSysFlag(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setBornHost(BORN_HOST);
+        msg.setStoreHost(STORE_HOST);
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+        return msg;
+    }
+
+    public static MessageExtBatch buildMessageBatch(byte[] body, int queueId, int batchSize) {
+        List<Message> messages = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            Message msg = new Message(TOPIC, "TagA", String.valueOf(i), body);
+            messages.add(msg);
+        }
+        MessageExtBatch messageExtBatch = new MessageExtBatch();
+        messageExtBatch.setTopic(TOPIC);
+        messageExtBatch.setQueueId(queueId);
+        messageExtBatch.setSysFlag(0);
+        messageExtBatch.setBornTimestamp(System.currentTimeMillis());
+        messageExtBatch.setBornHost(BORN_HOST);
+        messageExtBatch.setStoreHost(STORE_HOST);
+        messageExtBatch.setBody(MessageDecoder.encodeMessages(messages));
+        return messageExtBatch;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.tieredstore;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.tieredstore.common.FileSegmentType;
+import org.apache.rocketmq.tieredstore.metadata.DefaultMetadataStore;
+import org.apache.rocketmq.tieredstore.provider.CompressedFileSegment;
+import org.apache.rocketmq.tieredstore.provider.FileSegment;
+import org.apache.rocketmq.tieredstore.provider.FileSegmentFactory;
+import org.apache.rocketmq.tieredstore.provider.PosixFileSegment;
+import org.apache.rocketmq.tieredstore.util.MessageStoreUtil;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures random message reads from a tiered commitLog file segment, stored as is or block-compressed by
+ * {@link CompressedFileSegment}, on top of {@link PosixFileSegment}.
+ * <p>
+ * The {@code backendBytes} counter reports the bytes fetched from the backend file and {@code messageBytes} the
+ * bytes returned to the reader. Reads go through the page cache; to measure true cold reads, write more data than
+ * the page cache can hold or drop the page cache after the setup phase.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class TieredCommitLogReadBenchmark {
+
+    @Param({"NONE", "LZ4", "ZSTD"})
+    private String compressionType;
+
+    @Param({"65536"})
+    private int blockSize;
+
+    @Param({"1024"})
+    private int bodySize;
+
+    @Param({"32"})
+    private int batchSize;
+
+    @Param({"100000"})
+    private int messageCount;
+
+    private String storePath;
+    private FileSegment fileSegment;
+    private long[] positions;
+    private int[] sizes;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        storePath = System.getProperty("java.io.tmpdir") + File.separator + "tiered-benchmark-" + UUID.randomUUID();
+        MessageStoreConfig storeConfig = new MessageStoreConfig();
+        storeConfig.setStorePathRootDir(storePath);
+        storeConfig.setTieredStoreFilePath(storePath);
+        storeConfig.setTieredBackendServiceProvider(CountingFileSegment.class.getName());
+        storeConfig.setTieredStoreCommitLogMaxSize(Long.MAX_VALUE);
+        storeConfig.setTieredStoreCommitLogCompressionType(compressionType);
+        storeConfig.setTieredStoreCommitLogCompressionBlockSize(blockSize);
+
+        FileSegmentFactory factory = new FileSegmentFactory(new DefaultMetadataStore(storeConfig), storeConfig);
+        fileSegment = factory.createCommitLogFileSegment(
+            MessageStoreUtil.toFilePath(new MessageQueue("BenchmarkTopic", "BenchmarkBroker", 0)), 0L);
+        fileSegment.initPosition(fileSegment.getSize());
+
+        positions = new long[messageCount];
+        sizes = new int[messageCount];
+        for (int i = 0; i < messageCount; i++) {
+            ByteBuffer buffer = ByteBuffer.wrap(MessageDecoder.encode(buildMessage(i), false));
+            positions[i] = fileSegment.getAppendPosition();
+            sizes[i] = buffer.remaining();
+            fileSegment.append(buffer, System.currentTimeMillis());
+            if (i % 1000 == 999) {
+                fileSegment.commitAsync().join();
+            }
+        }
+        fileSegment.commitAsync().join();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fileSegment.destroyFile();
+        UtilAll.deleteFile(new File(storePath));
+    }
+
+    @Benchmark
+    public void readMessages(ReadCounters counters, Blackhole blackhole) {
+        int index = ThreadLocalRandom.current().nextInt(messageCount - batchSize);
+        long position = positions[index];
+        int length = (int) (positions[index + batchSize - 1] + sizes[index + batchSize - 1] - position);
+
+        long before = CountingFileSegment.READ_BYTES.get();
+        ByteBuffer buffer = fileSegment.read(position, length);
+        counters.backendBytes += CountingFileSegment.READ_BYTES.get() - before;
+        counters.messageBytes += buffer.remaining();
+        blackhole.consume(buffer);
+    }
+
+    private MessageExt buildMessage(int index) {
+        // a json like body, compressible as most business payloads are
+        StringBuilder body = new StringBuilder(bodySize);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (body.length() < bodySize) {
+            body.append("{\"orderId\":").append(random.nextInt(1000000))
+                .append(",\"status\":\"CREATED\",\"amount\":").append(random.nextInt(10000)).append('}');
+        }
+        MessageExt message = new MessageExt();
+        message.setTopic("BenchmarkTopic");
+        message.setBody(body.substring(0, bodySize).getBytes(StandardCharsets.UTF_8));
+        message.setKeys("key-" + index);
+        message.setQueueOffset(index);
+        message.setBornTimestamp(System.currentTimeMillis());
+        message.setStoreTimestamp(System.currentTimeMillis());
+        message.setBornHost(new InetSocketAddress("127.0.0.1", 10911));
+        message.setStoreHost(new InetSocketAddress("127.0.0.1", 10911));
+        return message;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ReadCounters {
+        public long backendBytes;
+        public long messageBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            backendBytes = 0;
+            messageBytes = 0;
+        }
+    }
+
+    /**
+     * A posix file segment counting the bytes read from the file.
+     */
+    public static class CountingFileSegment extends PosixFileSegment {
+        private static final AtomicLong READ_BYTES = new AtomicLong();
+
+        public CountingFileSegment(MessageStoreConfig storeConfig,
+            FileSegmentType fileType, String filePath, long baseOffset) {
+            super(storeConfig, fileType, filePath, baseOffset);
+        }
+
+        @Override
+        public CompletableFuture<ByteBuffer> read0(long position, int length) {
+            READ_BYTES.addAndGet(length);
+            return super.read0(position, length);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+            .include(TieredCommitLogReadBenchmark.class.getSimpleName())
+            .build();
+        new Runner(opt).run();
+    }
+}
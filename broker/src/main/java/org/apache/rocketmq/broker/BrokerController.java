@@ -93,6 +93,7 @@ import org.apache.rocketmq.broker.processor.PollingInfoProcessor;
 import org.apache.rocketmq.broker.processor.PopInflightMessageCounter;
 import org.apache.rocketmq.broker.processor.PopMessageProcessor;
 import org.apache.rocketmq.broker.processor.PullMessageProcessor;
+import org.apache.rocketmq.broker.processor.PullStreamProcessor;
 import org.apache.rocketmq.broker.processor.QueryAssignmentProcessor;
 import org.apache.rocketmq.broker.processor.QueryMessageProcessor;
 import org.apache.rocketmq.broker.processor.ReplyMessageProcessor;
@@ -170,6 +171,7 @@ import org.apache.rocketmq.store.hook.PutMessageHook;
 import org.apache.rocketmq.store.hook.SendMessageBackHook;
 import org.apache.rocketmq.store.plugin.MessageStoreFactory;
 import org.apache.rocketmq.store.plugin.MessageStorePluginContext;
+import org.apache.rocketmq.store.pop.PopStateStore;
 import org.apache.rocketmq.store.stats.BrokerStats;
 import org.apache.rocketmq.store.stats.BrokerStatsManager;
 import org.apache.rocketmq.store.stats.LmqBrokerStatsManager;
@@ -203,6 +205,7 @@ public class BrokerController {
     protected final AckMessageProcessor ackMessageProcessor;
     protected final ChangeInvisibleTimeProcessor changeInvisibleTimeProcessor;
     protected final NotificationProcessor notificationProcessor;
+    protected final PullStreamProcessor pullStreamProcessor;
     protected final PollingInfoProcessor pollingInfoProcessor;
     protected final QueryAssignmentProcessor queryAssignmentProcessor;
     protected final ClientManageProcessor clientManageProcessor;
@@ -261,6 +264,7 @@ public class BrokerController {
     private InetSocketAddress storeHost;
     private TimerMessageStore timerMessageStore;
     private TimerCheckpoint timerCheckpoint;
+    private PopStateStore popStateStore;
     protected BrokerFastFailure brokerFastFailure;
     private Configuration configuration;
     protected TopicQueueMappingCleanService topicQueueMappingCleanService;
@@ -352,12 +356,13 @@ public class BrokerController {
         this.pullRequestHoldService = messageStoreConfig.isEnableLmq() ? new LmqPullRequestHoldService(this) : new PullRequestHoldService(this);
         this.popMessageProcessor = new PopMessageProcessor(this);
         this.notificationProcessor = new NotificationProcessor(this);
+        this.pullStreamProcessor = new PullStreamProcessor(this);
         this.pollingInfoProcessor = new PollingInfoProcessor(this);
         this.ackMessageProcessor = new AckMessageProcessor(this);
         this.changeInvisibleTimeProcessor = new ChangeInvisibleTimeProcessor(this);
         this.sendMessageProcessor = new SendMessageProcessor(this);
         this.replyMessageProcessor = new ReplyMessageProcessor(this);
-        this.messageArrivingListener = new NotifyMessageArrivingListener(this.pullRequestHoldService, this.popMessageProcessor, this.notificationProcessor);
+        this.messageArrivingListener = new NotifyMessageArrivingListener(this.pullRequestHoldService, this.popMessageProcessor, this.notificationProcessor, this.pullStreamProcessor);
         this.consumerIdsChangeListener = new DefaultConsumerIdsChangeListener(this);
         this.consumerManager = new ConsumerManager(this.consumerIdsChangeListener, this.brokerStatsManager, this.brokerConfig);
         this.producerManager = new ProducerManager(this.brokerStatsManager);
@@ -632,6 +637,15 @@ public class BrokerController {
             }
         }, 1000 * 10, this.brokerConfig.getFlushConsumerOffsetInterval(), TimeUnit.MILLISECONDS);
 
+        if (this.popStateStore != null) {
+            this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    BrokerController.this.popStateStore.flushWAL();
+                }
+            }, 1000, 1000, TimeUnit.MILLISECONDS);
+        }
+
         this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
@@ -812,6 +826,9 @@ public class BrokerController {
                 this.timerMessageStore.registerEscapeBridgeHook(msg -> escapeBridge.putMessage(msg));
                 this.messageStore.setTimerMessageStore(this.timerMessageStore);
             }
+            if (brokerConfig.isEnablePopStateStore()) {
+                this.popStateStore = new PopStateStore(BrokerPathConfigHelper.getPopStatePath(messageStoreConfig.getStorePathRootDir()));
+            }
         } catch (IOException e) {
             result = false;
             LOG.error("BrokerController#initialize: unexpected error occurs", e);
@@ -852,6 +869,10 @@ public class BrokerController {
             result = result && this.timerMessageStore.load();
         }
 
+        if (this.popStateStore != null) {
+            result = result && this.popStateStore.start();
+        }
+
         //scheduleMessageService load after messageStore load success
         result = result && this.scheduleMessageService.load();
 
@@ -1086,6 +1107,12 @@ public class BrokerController {
         this.remotingServer.registerProcessor(RequestCode.PULL_MESSAGE, this.pullMessageProcessor, this.pullMessageExecutor);
         this.remotingServer.registerProcessor(RequestCode.LITE_PULL_MESSAGE, this.pullMessageProcessor, this.litePullMessageExecutor);
         this.pullMessageProcessor.registerConsumeMessageHook(consumeMessageHookList);
+        /**
+         * PullStreamProcessor
+         */
+        this.remotingServer.registerProcessor(RequestCode.OPEN_PULL_STREAM, this.pullStreamProcessor, this.pullMessageExecutor);
+        this.remotingServer.registerProcessor(RequestCode.ADD_PULL_STREAM_CREDIT, this.pullStreamProcessor, this.pullMessageExecutor);
+        this.remotingServer.registerProcessor(RequestCode.CLOSE_PULL_STREAM, this.pullStreamProcessor, this.pullMessageExecutor);
         /**
          * PeekMessageProcessor
          */
@@ -1317,6 +1344,10 @@ public class BrokerController {
         return pullMessageProcessor;
     }
 
+    public PullStreamProcessor getPullStreamProcessor() {
+        return pullStreamProcessor;
+    }
+
     public PullRequestHoldService getPullRequestHoldService() {
         return pullRequestHoldService;
     }
@@ -1337,6 +1368,10 @@ public class BrokerController {
         return notificationProcessor;
     }
 
+    public PopStateStore getPopStateStore() {
+        return popStateStore;
+    }
+
     public TimerMessageStore getTimerMessageStore() {
         return timerMessageStore;
     }
@@ -1387,6 +1422,10 @@ public class BrokerController {
             this.pullRequestHoldService.shutdown();
         }
 
+        if (this.pullStreamProcessor != null) {
+            this.pullStreamProcessor.getPullStreamService().shutdown();
+        }
+
         {
             this.popMessageProcessor.getPopLongPollingService().shutdown();
             this.popMessageProcessor.getQueueLockManager().shutdown();
@@ -1397,6 +1436,10 @@ public class BrokerController {
             this.ackMessageProcessor.shutdownPopReviveService();
         }
 
+        if (this.popStateStore != null) {
+            this.popStateStore.shutdown();
+        }
+
         if (this.transactionalMessageService != null) {
             this.transactionalMessageService.close();
         }
@@ -1663,6 +1706,10 @@ public class BrokerController {
             this.pullRequestHoldService.start();
         }
 
+        if (this.pullStreamProcessor != null) {
+            this.pullStreamProcessor.getPullStreamService().start();
+        }
+
         if (this.clientHousekeepingService != null) {
             this.clientHousekeepingService.start();
         }
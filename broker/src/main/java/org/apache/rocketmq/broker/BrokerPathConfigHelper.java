@@ -60,6 +60,9 @@ public class BrokerPathConfigHelper {
     public static String getTimerMetricsPath(final String rootDir) {
         return rootDir + File.separator + "config" + File.separator + "timermetrics";
     }
+    public static String getPopStatePath(final String rootDir) {
+        return rootDir + File.separator + "config" + File.separator + "popState";
+    }
     public static String getTransactionMetricsPath(final String rootDir) {
         return rootDir + File.separator + "config" + File.separator + "transactionMetrics";
     }
@@ -41,24 +41,34 @@ public class LmqPullRequestHoldService extends PullRequestHoldService {
     @Override
     public void checkHoldRequest() {
         for (String key : pullRequestTable.keySet()) {
-            int idx = key.lastIndexOf(TOPIC_QUEUEID_SEPARATOR);
-            if (idx <= 0 || idx >= key.length() - 1) {
+            checkHoldRequest(key);
+        }
+    }
+
+    @Override
+    protected void checkHoldRequest(final String key) {
+        int idx = key.lastIndexOf(TOPIC_QUEUEID_SEPARATOR);
+        if (idx <= 0 || idx >= key.length() - 1) {
+            pullRequestTable.remove(key);
+            return;
+        }
+        String topic = key.substring(0, idx);
+        int queueId = Integer.parseInt(key.substring(idx + 1));
+        final long offset = brokerController.getMessageStore().getMaxOffsetInQueue(topic, queueId);
+        try {
+            this.notifyMessageArriving(topic, queueId, offset);
+        } catch (Throwable e) {
+            LOGGER.error("check hold request failed. topic={}, queueId={}", topic, queueId, e);
+        }
+        releaseIdleQueue(key, topic);
+    }
+
+    @Override
+    protected void releaseIdleQueue(final String key, final String topic) {
+        if (MixAll.isLmq(topic)) {
+            ManyPullRequest mpr = pullRequestTable.get(key);
+            if (mpr == null || mpr.getPullRequestList() == null || mpr.getPullRequestList().isEmpty()) {
                 pullRequestTable.remove(key);
-                continue;
-            }
-            String topic = key.substring(0, idx);
-            int queueId = Integer.parseInt(key.substring(idx + 1));
-            final long offset = brokerController.getMessageStore().getMaxOffsetInQueue(topic, queueId);
-            try {
-                this.notifyMessageArriving(topic, queueId, offset);
-            } catch (Throwable e) {
-                LOGGER.error("check hold request failed. topic={}, queueId={}", topic, queueId, e);
-            }
-            if (MixAll.isLmq(topic)) {
-                ManyPullRequest mpr = pullRequestTable.get(key);
-                if (mpr == null || mpr.getPullRequestList() == null || mpr.getPullRequestList().isEmpty()) {
-                    pullRequestTable.remove(key);
-                }
             }
         }
     }
@@ -21,6 +21,10 @@ import java.util.List;
 
 public class ManyPullRequest {
     private final ArrayList<PullRequest> pullRequestList = new ArrayList<>();
+    /**
+     * Max offset of the latest message arriving notified on the queue, -1 if none
+     */
+    private volatile long arrivingOffset = -1L;
 
     public synchronized void addPullRequest(final PullRequest pullRequest) {
         this.pullRequestList.add(pullRequest);
@@ -44,6 +48,14 @@ public class ManyPullRequest {
         return pullRequestList;
     }
 
+    public long getArrivingOffset() {
+        return arrivingOffset;
+    }
+
+    public void setArrivingOffset(long arrivingOffset) {
+        this.arrivingOffset = arrivingOffset;
+    }
+
     public synchronized boolean isEmpty() {
         return this.pullRequestList.isEmpty();
     }
@@ -20,17 +20,25 @@ package org.apache.rocketmq.broker.longpolling;
 import java.util.Map;
 import org.apache.rocketmq.broker.processor.NotificationProcessor;
 import org.apache.rocketmq.broker.processor.PopMessageProcessor;
+import org.apache.rocketmq.broker.processor.PullStreamProcessor;
 import org.apache.rocketmq.store.MessageArrivingListener;
 
 public class NotifyMessageArrivingListener implements MessageArrivingListener {
     private final PullRequestHoldService pullRequestHoldService;
     private final PopMessageProcessor popMessageProcessor;
     private final NotificationProcessor notificationProcessor;
+    private final PullStreamProcessor pullStreamProcessor;
 
     public NotifyMessageArrivingListener(final PullRequestHoldService pullRequestHoldService, final PopMessageProcessor popMessageProcessor, final NotificationProcessor notificationProcessor) {
+        this(pullRequestHoldService, popMessageProcessor, notificationProcessor, null);
+    }
+
+    public NotifyMessageArrivingListener(final PullRequestHoldService pullRequestHoldService, final PopMessageProcessor popMessageProcessor,
+        final NotificationProcessor notificationProcessor, final PullStreamProcessor pullStreamProcessor) {
         this.pullRequestHoldService = pullRequestHoldService;
         this.popMessageProcessor = popMessageProcessor;
         this.notificationProcessor = notificationProcessor;
+        this.pullStreamProcessor = pullStreamProcessor;
     }
 
     @Override
@@ -40,5 +48,8 @@ public class NotifyMessageArrivingListener implements MessageArrivingListener {
             msgStoreTime, filterBitMap, properties);
         this.popMessageProcessor.notifyMessageArriving(topic, queueId);
         this.notificationProcessor.notifyMessageArriving(topic, queueId);
+        if (this.pullStreamProcessor != null) {
+            this.pullStreamProcessor.notifyMessageArriving(topic, queueId);
+        }
     }
 }
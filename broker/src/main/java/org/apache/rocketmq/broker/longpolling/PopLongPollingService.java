@@ -25,6 +25,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.broker.metrics.PopMetricsManager;
 import org.apache.rocketmq.common.KeyBuilder;
 import org.apache.rocketmq.common.PopAckConstants;
 import org.apache.rocketmq.common.ServiceThread;
@@ -41,16 +42,22 @@ import static org.apache.rocketmq.broker.longpolling.PollingResult.POLLING_FULL;
 import static org.apache.rocketmq.broker.longpolling.PollingResult.POLLING_SUC;
 import static org.apache.rocketmq.broker.longpolling.PollingResult.POLLING_TIMEOUT;
 
+/**
+ * Holds pop and notification requests until messages arrive or they time out.
+ *
+ * <p>Requests are split into {@link PollingShard}s by topic and consumer group, so that a shard is all a
+ * notification or a polling request touches. With more than one shard, each shard checks its timeouts on its own
+ * thread; with a single shard the service thread does it.
+ */
 public class PopLongPollingService extends ServiceThread {
     private static final Logger POP_LOGGER =
         LoggerFactory.getLogger(LoggerName.ROCKETMQ_POP_LOGGER_NAME);
     private final BrokerController brokerController;
     private final NettyRequestProcessor processor;
     private final ConcurrentHashMap<String, ConcurrentHashMap<String, Byte>> topicCidMap;
-    private final ConcurrentLinkedHashMap<String, ConcurrentSkipListSet<PopRequest>> pollingMap;
+    private final PollingShard[] shards;
     private long lastCleanTime = 0;
 
-    private final AtomicLong totalPollingNum = new AtomicLong(0);
     private final boolean notifyLast;
 
     public PopLongPollingService(BrokerController brokerController, NettyRequestProcessor processor, boolean notifyLast) {
@@ -58,8 +65,12 @@ public class PopLongPollingService extends ServiceThread {
         this.processor = processor;
         // 100000 topic default,  100000 lru topic + cid + qid
         this.topicCidMap = new ConcurrentHashMap<>(brokerController.getBrokerConfig().getPopPollingMapSize());
-        this.pollingMap = new ConcurrentLinkedHashMap.Builder<String, ConcurrentSkipListSet<PopRequest>>()
-            .maximumWeightedCapacity(this.brokerController.getBrokerConfig().getPopPollingMapSize()).build();
+        int shardNum = Math.max(1, brokerController.getBrokerConfig().getPopPollingShardNum());
+        this.shards = new PollingShard[shardNum];
+        for (int i = 0; i < shardNum; i++) {
+            this.shards[i] = new PollingShard(i,
+                Math.max(1, this.brokerController.getBrokerConfig().getPopPollingMapSize() / shardNum));
+        }
         this.notifyLast = notifyLast;
     }
 
@@ -71,6 +82,27 @@ public class PopLongPollingService extends ServiceThread {
         return PopLongPollingService.class.getSimpleName();
     }
 
+    @Override
+    public void start() {
+        super.start();
+        if (this.shards.length > 1) {
+            for (PollingShard shard : this.shards) {
+                shard.start();
+            }
+        }
+    }
+
+    @Override
+    public void shutdown(final boolean interrupt) {
+        // the service thread wakes up every held request on its way out
+        super.shutdown(interrupt);
+        if (this.shards.length > 1) {
+            for (PollingShard shard : this.shards) {
+                shard.shutdown(interrupt);
+            }
+        }
+    }
+
     @Override
     public void run() {
         int i = 0;
@@ -78,50 +110,12 @@ public class PopLongPollingService extends ServiceThread {
             try {
                 this.waitForRunning(20);
                 i++;
-                if (pollingMap.isEmpty()) {
-                    continue;
-                }
-                long tmpTotalPollingNum = 0;
-                for (Map.Entry<String, ConcurrentSkipListSet<PopRequest>> entry : pollingMap.entrySet()) {
-                    String key = entry.getKey();
-                    ConcurrentSkipListSet<PopRequest> popQ = entry.getValue();
-                    if (popQ == null) {
-                        continue;
-                    }
-                    PopRequest first;
-                    do {
-                        first = popQ.pollFirst();
-                        if (first == null) {
-                            break;
-                        }
-                        if (!first.isTimeout()) {
-                            if (popQ.add(first)) {
-                                break;
-                            } else {
-                                POP_LOGGER.info("polling, add fail again: {}", first);
-                            }
-                        }
-                        if (brokerController.getBrokerConfig().isEnablePopLog()) {
-                            POP_LOGGER.info("timeout , wakeUp polling : {}", first);
-                        }
-                        totalPollingNum.decrementAndGet();
-                        wakeUp(first);
-                    }
-                    while (true);
-                    if (i >= 100) {
-                        long tmpPollingNum = popQ.size();
-                        tmpTotalPollingNum = tmpTotalPollingNum + tmpPollingNum;
-                        if (tmpPollingNum > 100) {
-                            POP_LOGGER.info("polling queue {} , size={} ", key, tmpPollingNum);
-                        }
-                    }
+                if (this.shards.length == 1) {
+                    this.shards[0].checkTimeout();
                 }
 
                 if (i >= 100) {
-                    POP_LOGGER.info("pollingMapSize={},tmpTotalSize={},atomicTotalSize={},diffSize={}",
-                        pollingMap.size(), tmpTotalPollingNum, totalPollingNum.get(),
-                        Math.abs(totalPollingNum.get() - tmpTotalPollingNum));
-                    totalPollingNum.set(tmpTotalPollingNum);
+                    this.logPollingStats();
                     i = 0;
                 }
 
@@ -135,17 +129,43 @@ public class PopLongPollingService extends ServiceThread {
         }
         // clean all;
         try {
-            for (Map.Entry<String, ConcurrentSkipListSet<PopRequest>> entry : pollingMap.entrySet()) {
-                ConcurrentSkipListSet<PopRequest> popQ = entry.getValue();
-                PopRequest first;
-                while ((first = popQ.pollFirst()) != null) {
-                    wakeUp(first);
+            for (PollingShard shard : this.shards) {
+                for (Map.Entry<String, ConcurrentSkipListSet<PopRequest>> entry : shard.pollingMap.entrySet()) {
+                    ConcurrentSkipListSet<PopRequest> popQ = entry.getValue();
+                    PopRequest first;
+                    while ((first = popQ.pollFirst()) != null) {
+                        wakeUp(first, false);
+                    }
                 }
             }
         } catch (Throwable e) {
         }
     }
 
+    private void logPollingStats() {
+        long tmpTotalPollingNum = 0;
+        int pollingMapSize = 0;
+        long atomicTotalSize = 0;
+        for (PollingShard shard : this.shards) {
+            long shardPollingNum = 0;
+            for (Map.Entry<String, ConcurrentSkipListSet<PopRequest>> entry : shard.pollingMap.entrySet()) {
+                long tmpPollingNum = entry.getValue().size();
+                shardPollingNum = shardPollingNum + tmpPollingNum;
+                if (tmpPollingNum > 100) {
+                    POP_LOGGER.info("polling queue {} , size={} ", entry.getKey(), tmpPollingNum);
+                }
+            }
+            pollingMapSize += shard.pollingMap.size();
+            atomicTotalSize += shard.pollingNum.get();
+            shard.pollingNum.set(shardPollingNum);
+            tmpTotalPollingNum += shardPollingNum;
+        }
+        if (pollingMapSize > 0) {
+            POP_LOGGER.info("pollingMapSize={},tmpTotalSize={},atomicTotalSize={},diffSize={}",
+                pollingMapSize, tmpTotalPollingNum, atomicTotalSize, Math.abs(atomicTotalSize - tmpTotalPollingNum));
+        }
+    }
+
     public void notifyMessageArrivingWithRetryTopic(final String topic, final int queueId) {
         String notifyTopic;
         if (KeyBuilder.isPopRetryTopicV2(topic)) {
@@ -170,21 +190,26 @@ public class PopLongPollingService extends ServiceThread {
     }
 
     public boolean notifyMessageArriving(final String topic, final String cid, final int queueId) {
-        ConcurrentSkipListSet<PopRequest> remotingCommands = pollingMap.get(KeyBuilder.buildPollingKey(topic, cid, queueId));
+        PollingShard shard = shardOf(topic, cid);
+        ConcurrentSkipListSet<PopRequest> remotingCommands = shard.pollingMap.get(KeyBuilder.buildPollingKey(topic, cid, queueId));
         if (remotingCommands == null || remotingCommands.isEmpty()) {
             return false;
         }
-        PopRequest popRequest = pollRemotingCommands(remotingCommands);
+        PopRequest popRequest = pollRemotingCommands(shard, remotingCommands);
         if (popRequest == null) {
             return false;
         }
         if (brokerController.getBrokerConfig().isEnablePopLog()) {
             POP_LOGGER.info("lock release , new msg arrive , wakeUp : {}", popRequest);
         }
-        return wakeUp(popRequest);
+        return wakeUp(popRequest, true);
     }
 
     public boolean wakeUp(final PopRequest request) {
+        return wakeUp(request, false);
+    }
+
+    private boolean wakeUp(final PopRequest request, final boolean messageArrived) {
         if (request == null || !request.complete()) {
             return false;
         }
@@ -193,6 +218,9 @@ public class PopLongPollingService extends ServiceThread {
         }
         Runnable run = () -> {
             try {
+                if (messageArrived) {
+                    PopMetricsManager.recordPopPollingWakeUpLatency(System.currentTimeMillis() - request.getSuspendTimestamp());
+                }
                 final RemotingCommand response = processor.processRequest(request.getCtx(), request.getRemotingCommand());
                 if (response != null) {
                     response.setOpaque(request.getRemotingCommand().getOpaque());
@@ -204,6 +232,9 @@ public class PopLongPollingService extends ServiceThread {
                             POP_LOGGER.error(response.toString());
                         }
                     });
+                } else if (messageArrived) {
+                    // woken up for a message but found nothing to return, so the request is held again
+                    PopMetricsManager.incPopPollingSpuriousWakeUpCount();
                 }
             } catch (Exception e1) {
                 POP_LOGGER.error("ExecuteRequestWhenWakeup run", e1);
@@ -235,9 +266,10 @@ public class PopLongPollingService extends ServiceThread {
         cids.putIfAbsent(requestHeader.getConsumerGroup(), Byte.MIN_VALUE);
         long expired = requestHeader.getBornTime() + requestHeader.getPollTime();
         final PopRequest request = new PopRequest(remotingCommand, ctx, expired);
-        boolean isFull = totalPollingNum.get() >= this.brokerController.getBrokerConfig().getMaxPopPollingSize();
+        long totalPollingNum = getPollingNum();
+        boolean isFull = totalPollingNum >= this.brokerController.getBrokerConfig().getMaxPopPollingSize();
         if (isFull) {
-            POP_LOGGER.info("polling {}, result POLLING_FULL, total:{}", remotingCommand, totalPollingNum.get());
+            POP_LOGGER.info("polling {}, result POLLING_FULL, total:{}", remotingCommand, totalPollingNum);
             return POLLING_FULL;
         }
         boolean isTimeout = request.isTimeout();
@@ -247,12 +279,13 @@ public class PopLongPollingService extends ServiceThread {
             }
             return POLLING_TIMEOUT;
         }
+        PollingShard shard = shardOf(requestHeader.getTopic(), requestHeader.getConsumerGroup());
         String key = KeyBuilder.buildPollingKey(requestHeader.getTopic(), requestHeader.getConsumerGroup(),
             requestHeader.getQueueId());
-        ConcurrentSkipListSet<PopRequest> queue = pollingMap.get(key);
+        ConcurrentSkipListSet<PopRequest> queue = shard.pollingMap.get(key);
         if (queue == null) {
             queue = new ConcurrentSkipListSet<>(PopRequest.COMPARATOR);
-            ConcurrentSkipListSet<PopRequest> old = pollingMap.putIfAbsent(key, queue);
+            ConcurrentSkipListSet<PopRequest> old = shard.pollingMap.putIfAbsent(key, queue);
             if (old != null) {
                 queue = old;
             }
@@ -266,7 +299,7 @@ public class PopLongPollingService extends ServiceThread {
         }
         if (queue.add(request)) {
             remotingCommand.setSuspended(true);
-            totalPollingNum.incrementAndGet();
+            shard.pollingNum.incrementAndGet();
             if (brokerController.getBrokerConfig().isEnablePopLog()) {
                 POP_LOGGER.info("polling {}, result POLLING_SUC", remotingCommand);
             }
@@ -277,8 +310,29 @@ public class PopLongPollingService extends ServiceThread {
         }
     }
 
-    public ConcurrentLinkedHashMap<String, ConcurrentSkipListSet<PopRequest>> getPollingMap() {
-        return pollingMap;
+    /**
+     * @return the number of requests held by all shards
+     */
+    public long getPollingNum() {
+        long pollingNum = 0;
+        for (PollingShard shard : this.shards) {
+            pollingNum += shard.pollingNum.get();
+        }
+        return pollingNum;
+    }
+
+    public int getPollingNum(final String topic, final String cid, final int queueId) {
+        ConcurrentSkipListSet<PopRequest> queue =
+            shardOf(topic, cid).pollingMap.get(KeyBuilder.buildPollingKey(topic, cid, queueId));
+        return queue == null ? 0 : queue.size();
+    }
+
+    private PollingShard shardOf(final String topic, final String cid) {
+        if (this.shards.length == 1) {
+            return this.shards[0];
+        }
+        int hash = topic.hashCode() * 31 + cid.hashCode();
+        return this.shards[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % this.shards.length];
     }
 
     private void cleanUnusedResource() {
@@ -305,8 +359,8 @@ public class PopLongPollingService extends ServiceThread {
                 }
             }
 
-            {
-                Iterator<Map.Entry<String, ConcurrentSkipListSet<PopRequest>>> pollingMapIter = pollingMap.entrySet().iterator();
+            for (PollingShard shard : this.shards) {
+                Iterator<Map.Entry<String, ConcurrentSkipListSet<PopRequest>>> pollingMapIter = shard.pollingMap.entrySet().iterator();
                 while (pollingMapIter.hasNext()) {
                     Map.Entry<String, ConcurrentSkipListSet<PopRequest>> entry = pollingMapIter.next();
                     if (entry.getKey() == null) {
@@ -336,7 +390,7 @@ public class PopLongPollingService extends ServiceThread {
         lastCleanTime = System.currentTimeMillis();
     }
 
-    private PopRequest pollRemotingCommands(ConcurrentSkipListSet<PopRequest> remotingCommands) {
+    private PopRequest pollRemotingCommands(PollingShard shard, ConcurrentSkipListSet<PopRequest> remotingCommands) {
         if (remotingCommands == null || remotingCommands.isEmpty()) {
             return null;
         }
@@ -348,9 +402,70 @@ public class PopLongPollingService extends ServiceThread {
             } else {
                 popRequest = remotingCommands.pollFirst();
             }
-            totalPollingNum.decrementAndGet();
+            shard.pollingNum.decrementAndGet();
         } while (popRequest != null && !popRequest.getChannel().isActive());
 
         return popRequest;
     }
+
+    private class PollingShard extends ServiceThread {
+        private final int index;
+        private final ConcurrentLinkedHashMap<String, ConcurrentSkipListSet<PopRequest>> pollingMap;
+        private final AtomicLong pollingNum = new AtomicLong(0);
+
+        private PollingShard(int index, int pollingMapSize) {
+            this.index = index;
+            this.pollingMap = new ConcurrentLinkedHashMap.Builder<String, ConcurrentSkipListSet<PopRequest>>()
+                .maximumWeightedCapacity(pollingMapSize).build();
+        }
+
+        @Override
+        public String getServiceName() {
+            return PopLongPollingService.this.getServiceName() + "Shard" + index;
+        }
+
+        @Override
+        public void run() {
+            while (!this.isStopped()) {
+                try {
+                    this.waitForRunning(20);
+                    this.checkTimeout();
+                } catch (Throwable e) {
+                    POP_LOGGER.error("checkPolling error, shard={}", index, e);
+                }
+            }
+        }
+
+        private void checkTimeout() {
+            if (pollingMap.isEmpty()) {
+                return;
+            }
+            for (Map.Entry<String, ConcurrentSkipListSet<PopRequest>> entry : pollingMap.entrySet()) {
+                ConcurrentSkipListSet<PopRequest> popQ = entry.getValue();
+                if (popQ == null) {
+                    continue;
+                }
+                PopRequest first;
+                do {
+                    first = popQ.pollFirst();
+                    if (first == null) {
+                        break;
+                    }
+                    if (!first.isTimeout()) {
+                        if (popQ.add(first)) {
+                            break;
+                        } else {
+                            POP_LOGGER.info("polling, add fail again: {}", first);
+                        }
+                    }
+                    if (brokerController.getBrokerConfig().isEnablePopLog()) {
+                        POP_LOGGER.info("timeout , wakeUp polling : {}", first);
+                    }
+                    pollingNum.decrementAndGet();
+                    wakeUp(first, false);
+                }
+                while (true);
+            }
+        }
+    }
 }
@@ -31,6 +31,7 @@ public class PopRequest {
     private final RemotingCommand remotingCommand;
     private final ChannelHandlerContext ctx;
     private final long expired;
+    private final long suspendTimestamp;
     private final AtomicBoolean complete = new AtomicBoolean(false);
     private final long op = COUNTER.getAndIncrement();
 
@@ -38,6 +39,7 @@ public class PopRequest {
         this.ctx = ctx;
         this.remotingCommand = remotingCommand;
         this.expired = expired;
+        this.suspendTimestamp = System.currentTimeMillis();
     }
 
     public Channel getChannel() {
@@ -64,6 +66,10 @@ public class PopRequest {
         return expired;
     }
 
+    public long getSuspendTimestamp() {
+        return suspendTimestamp;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("PopRequest{");
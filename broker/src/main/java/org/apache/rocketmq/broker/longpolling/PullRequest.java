@@ -17,6 +17,7 @@
 package org.apache.rocketmq.broker.longpolling;
 
 import io.netty.channel.Channel;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 import org.apache.rocketmq.remoting.protocol.heartbeat.SubscriptionData;
 import org.apache.rocketmq.store.MessageFilter;
@@ -27,17 +28,30 @@ public class PullRequest {
     private final long timeoutMillis;
     private final long suspendTimestamp;
     private final long pullFromThisOffset;
+    private final long maxOffset;
     private final SubscriptionData subscriptionData;
     private final MessageFilter messageFilter;
+    private final AtomicBoolean complete = new AtomicBoolean(false);
 
     public PullRequest(RemotingCommand requestCommand, Channel clientChannel, long timeoutMillis, long suspendTimestamp,
         long pullFromThisOffset, SubscriptionData subscriptionData,
         MessageFilter messageFilter) {
+        this(requestCommand, clientChannel, timeoutMillis, suspendTimestamp, pullFromThisOffset, -1L,
+            subscriptionData, messageFilter);
+    }
+
+    /**
+     * @param maxOffset max offset of the queue seen by the pull that found nothing, -1 if unknown
+     */
+    public PullRequest(RemotingCommand requestCommand, Channel clientChannel, long timeoutMillis, long suspendTimestamp,
+        long pullFromThisOffset, long maxOffset, SubscriptionData subscriptionData,
+        MessageFilter messageFilter) {
         this.requestCommand = requestCommand;
         this.clientChannel = clientChannel;
         this.timeoutMillis = timeoutMillis;
         this.suspendTimestamp = suspendTimestamp;
         this.pullFromThisOffset = pullFromThisOffset;
+        this.maxOffset = maxOffset;
         this.subscriptionData = subscriptionData;
         this.messageFilter = messageFilter;
     }
@@ -62,6 +76,10 @@ public class PullRequest {
         return pullFromThisOffset;
     }
 
+    public long getMaxOffset() {
+        return maxOffset;
+    }
+
     public SubscriptionData getSubscriptionData() {
         return subscriptionData;
     }
@@ -69,4 +87,12 @@ public class PullRequest {
     public MessageFilter getMessageFilter() {
         return messageFilter;
     }
+
+    public boolean complete() {
+        return complete.compareAndSet(false, true);
+    }
+
+    public boolean isComplete() {
+        return complete.get();
+    }
 }
@@ -17,9 +17,12 @@
 package org.apache.rocketmq.broker.longpolling;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.common.ServiceThread;
@@ -32,10 +35,17 @@ import org.apache.rocketmq.store.ConsumeQueueExt;
 public class PullRequestHoldService extends ServiceThread {
     private static final Logger log = LoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
     protected static final String TOPIC_QUEUEID_SEPARATOR = "@";
+    private static final int TIMING_WHEEL_SIZE = 512;
+    private static final long MAX_EXPIRE_RETRY_MILLIS = 60 * 1000;
     protected final BrokerController brokerController;
     private final SystemClock systemClock = new SystemClock();
     protected ConcurrentMap<String/* topic@queueId */, ManyPullRequest> pullRequestTable =
         new ConcurrentHashMap<>(1024);
+    /**
+     * Requests suspended since the last tick, moved into the timing wheel by the service thread.
+     */
+    private final ConcurrentLinkedQueue<HeldRequest> suspendedRequests = new ConcurrentLinkedQueue<>();
+    private TimingWheel<HeldRequest> timingWheel;
 
     public PullRequestHoldService(final BrokerController brokerController) {
         this.brokerController = brokerController;
@@ -44,16 +54,39 @@ public class PullRequestHoldService extends ServiceThread {
     public void suspendPullRequest(final String topic, final int queueId, final PullRequest pullRequest) {
         String key = this.buildKey(topic, queueId);
         ManyPullRequest mpr = this.pullRequestTable.get(key);
+        boolean created = false;
         if (null == mpr) {
             mpr = new ManyPullRequest();
             ManyPullRequest prev = this.pullRequestTable.putIfAbsent(key, mpr);
             if (prev != null) {
                 mpr = prev;
+            } else {
+                created = true;
             }
         }
 
         pullRequest.getRequestCommand().setSuspended(true);
         mpr.addPullRequest(pullRequest);
+
+        if (this.isTimingWheelEnable()) {
+            this.suspendedRequests.offer(new HeldRequest(key, topic, queueId, pullRequest));
+            // a message may have arrived after the pull found nothing but before the request was held, arrivals are
+            // recorded on the queue, so the store is only asked when the queue was not held on before
+            final long offset = created || pullRequest.getMaxOffset() < 0
+                ? this.brokerController.getMessageStore().getMaxOffsetInQueue(topic, queueId) : mpr.getArrivingOffset();
+            if (offset > Math.max(pullRequest.getPullFromThisOffset(), pullRequest.getMaxOffset())) {
+                this.notifyMessageArriving(topic, queueId, offset);
+            }
+        }
+    }
+
+    /**
+     * Expire held requests with a timing wheel and leave arrivals to the message arriving listener, instead of
+     * checking every held queue on each tick. Only used with long polling, as the listener is only called then.
+     */
+    private boolean isTimingWheelEnable() {
+        return this.brokerController.getBrokerConfig().isLongPollingEnable()
+            && this.brokerController.getBrokerConfig().isEnablePullHoldTimingWheel();
     }
 
     private String buildKey(final String topic, final int queueId) {
@@ -69,6 +102,17 @@ public class PullRequestHoldService extends ServiceThread {
         log.info("{} service started", this.getServiceName());
         while (!this.isStopped()) {
             try {
+                if (this.isTimingWheelEnable()) {
+                    this.waitForRunning(this.brokerController.getBrokerConfig().getPullHoldTimingWheelTickMillis());
+                    this.expireHoldRequest();
+                    continue;
+                }
+                if (this.timingWheel != null) {
+                    // back to scanning, which covers every held request
+                    this.timingWheel = null;
+                    this.suspendedRequests.clear();
+                }
+
                 if (this.brokerController.getBrokerConfig().isLongPollingEnable()) {
                     this.waitForRunning(5 * 1000);
                 } else {
@@ -99,19 +143,87 @@ public class PullRequestHoldService extends ServiceThread {
 
     protected void checkHoldRequest() {
         for (String key : this.pullRequestTable.keySet()) {
-            String[] kArray = key.split(TOPIC_QUEUEID_SEPARATOR);
-            if (2 == kArray.length) {
-                String topic = kArray[0];
-                int queueId = Integer.parseInt(kArray[1]);
-                final long offset = this.brokerController.getMessageStore().getMaxOffsetInQueue(topic, queueId);
+            this.checkHoldRequest(key);
+        }
+    }
+
+    protected void checkHoldRequest(final String key) {
+        String[] kArray = key.split(TOPIC_QUEUEID_SEPARATOR);
+        if (2 == kArray.length) {
+            String topic = kArray[0];
+            int queueId = Integer.parseInt(kArray[1]);
+            final long offset = this.brokerController.getMessageStore().getMaxOffsetInQueue(topic, queueId);
+            try {
+                this.notifyMessageArriving(topic, queueId, offset);
+            } catch (Throwable e) {
+                log.error(
+                    "PullRequestHoldService: failed to check hold request failed, topic={}, queueId={}", topic,
+                    queueId, e);
+            }
+        }
+    }
+
+    /**
+     * Called for a queue whose held request has been completed, to release the queue if nothing is held on it.
+     */
+    protected void releaseIdleQueue(final String key, final String topic) {
+    }
+
+    private void expireHoldRequest() {
+        long now = System.currentTimeMillis();
+        if (this.timingWheel == null) {
+            this.timingWheel = new TimingWheel<>(this.brokerController.getBrokerConfig().getPullHoldTimingWheelTickMillis(),
+                TIMING_WHEEL_SIZE, now);
+            // requests held while scanning are not in the wheel yet
+            for (Map.Entry<String, ManyPullRequest> entry : this.pullRequestTable.entrySet()) {
+                String key = entry.getKey();
+                int idx = key.lastIndexOf(TOPIC_QUEUEID_SEPARATOR);
+                if (idx <= 0 || idx >= key.length() - 1) {
+                    continue;
+                }
+                List<PullRequest> requestList;
+                synchronized (entry.getValue()) {
+                    requestList = new ArrayList<>(entry.getValue().getPullRequestList());
+                }
+                for (PullRequest request : requestList) {
+                    this.suspendedRequests.offer(new HeldRequest(key, key.substring(0, idx),
+                        Integer.parseInt(key.substring(idx + 1)), request));
+                }
+            }
+        }
+
+        List<HeldRequest> expired = new ArrayList<>();
+        for (HeldRequest held; (held = this.suspendedRequests.poll()) != null; ) {
+            if (!this.timingWheel.add(held, held.deadline())) {
+                expired.add(held);
+            }
+        }
+        this.timingWheel.advance(now, expired::add);
+
+        Set<String> checkedKeys = new HashSet<>();
+        for (HeldRequest held : expired) {
+            if (held.request.isComplete()) {
+                this.releaseIdleQueue(held.key, held.topic);
+                continue;
+            }
+            if (checkedKeys.add(held.key)) {
                 try {
-                    this.notifyMessageArriving(topic, queueId, offset);
+                    final long offset = this.brokerController.getMessageStore().getMaxOffsetInQueue(held.topic, held.queueId);
+                    this.notifyMessageArriving(held.topic, held.queueId, offset);
                 } catch (Throwable e) {
-                    log.error(
-                        "PullRequestHoldService: failed to check hold request failed, topic={}, queueId={}", topic,
-                        queueId, e);
+                    log.error("PullRequestHoldService: failed to expire hold request, topic={}, queueId={}",
+                        held.topic, held.queueId, e);
                 }
             }
+            if (held.request.isComplete()) {
+                this.releaseIdleQueue(held.key, held.topic);
+            } else if (now - held.deadline() < MAX_EXPIRE_RETRY_MILLIS) {
+                // being handled by a concurrent arrival, look again on the next tick
+                this.timingWheel.add(held, now + 1);
+            } else {
+                log.warn("PullRequestHoldService: held request not found after expired, topic={}, queueId={}",
+                    held.topic, held.queueId);
+            }
         }
     }
 
@@ -124,6 +236,7 @@ public class PullRequestHoldService extends ServiceThread {
         String key = this.buildKey(topic, queueId);
         ManyPullRequest mpr = this.pullRequestTable.get(key);
         if (mpr != null) {
+            mpr.setArrivingOffset(maxOffset);
             List<PullRequest> requestList = mpr.cloneListAndClear();
             if (requestList != null) {
                 List<PullRequest> replayList = new ArrayList<>();
@@ -143,6 +256,7 @@ public class PullRequestHoldService extends ServiceThread {
                         }
 
                         if (match) {
+                            request.complete();
                             try {
                                 this.brokerController.getPullMessageProcessor().executeRequestWhenWakeup(request.getClientChannel(),
                                     request.getRequestCommand());
@@ -156,6 +270,7 @@ public class PullRequestHoldService extends ServiceThread {
                     }
 
                     if (System.currentTimeMillis() >= (request.getSuspendTimestamp() + request.getTimeoutMillis())) {
+                        request.complete();
                         try {
                             this.brokerController.getPullMessageProcessor().executeRequestWhenWakeup(request.getClientChannel(),
                                 request.getRequestCommand());
@@ -183,6 +298,7 @@ public class PullRequestHoldService extends ServiceThread {
                 continue;
             }
             for (PullRequest request : mpr.cloneListAndClear()) {
+                request.complete();
                 try {
                     log.info("notify master online, wakeup {} {}", request.getClientChannel(), request.getRequestCommand());
                     this.brokerController.getPullMessageProcessor().executeRequestWhenWakeup(request.getClientChannel(),
@@ -194,4 +310,22 @@ public class PullRequestHoldService extends ServiceThread {
         }
 
     }
+
+    private static final class HeldRequest {
+        private final String key;
+        private final String topic;
+        private final int queueId;
+        private final PullRequest request;
+
+        private HeldRequest(final String key, final String topic, final int queueId, final PullRequest request) {
+            this.key = key;
+            this.topic = topic;
+            this.queueId = queueId;
+            this.request = request;
+        }
+
+        private long deadline() {
+            return request.getSuspendTimestamp() + request.getTimeoutMillis();
+        }
+    }
 }
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.longpolling;
+
+import io.netty.channel.Channel;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.store.MessageFilter;
+
+/**
+ * A queue subscription opened by a client, messages are pushed to it as long as it has credit left.
+ *
+ * <p>Only one thread drains a stream at a time, see {@link #signal()}, so the next offset is only read and written
+ * by the draining thread.
+ */
+public class PullStream {
+    private final Channel channel;
+    private final long streamId;
+    private final String consumerGroup;
+    private final String topic;
+    private final int queueId;
+    private final MessageFilter messageFilter;
+    private final Map<String, String> extFields;
+    private final AtomicInteger credit;
+    private final AtomicInteger signalCount = new AtomicInteger(0);
+    private long nextOffset;
+    private volatile long lastPushTimestamp;
+    private volatile boolean heartbeatDue = false;
+    private volatile boolean closed = false;
+
+    public PullStream(Channel channel, long streamId, String consumerGroup, String topic, int queueId,
+        long nextOffset, int credit, MessageFilter messageFilter, Map<String, String> extFields) {
+        this.channel = channel;
+        this.streamId = streamId;
+        this.consumerGroup = consumerGroup;
+        this.topic = topic;
+        this.queueId = queueId;
+        this.nextOffset = nextOffset;
+        this.credit = new AtomicInteger(credit);
+        this.messageFilter = messageFilter;
+        this.extFields = extFields;
+        this.lastPushTimestamp = System.currentTimeMillis();
+    }
+
+    public static String buildKey(Channel channel, long streamId) {
+        return channel.id().asLongText() + "@" + streamId;
+    }
+
+    public String getKey() {
+        return buildKey(this.channel, this.streamId);
+    }
+
+    /**
+     * @return true if the caller has to drain the stream, false if a draining thread will observe the signal
+     */
+    public boolean signal() {
+        return this.signalCount.getAndIncrement() == 0;
+    }
+
+    public int getSignalCount() {
+        return this.signalCount.get();
+    }
+
+    /**
+     * @return false if the stream was signaled again since {@code observedSignalCount} was read
+     */
+    public boolean clearSignal(int observedSignalCount) {
+        return this.signalCount.compareAndSet(observedSignalCount, 0);
+    }
+
+    public void resetSignal() {
+        this.signalCount.set(0);
+    }
+
+    public void addCredit(int delta) {
+        this.credit.addAndGet(delta);
+    }
+
+    public int getCredit() {
+        return this.credit.get();
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    public String getConsumerGroup() {
+        return consumerGroup;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public int getQueueId() {
+        return queueId;
+    }
+
+    public MessageFilter getMessageFilter() {
+        return messageFilter;
+    }
+
+    /**
+     * @return ext fields of the request opening the stream, passed to the consume message hooks
+     */
+    public Map<String, String> getExtFields() {
+        return extFields;
+    }
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    public void setNextOffset(long nextOffset) {
+        this.nextOffset = nextOffset;
+    }
+
+    public long getLastPushTimestamp() {
+        return lastPushTimestamp;
+    }
+
+    public void setLastPushTimestamp(long lastPushTimestamp) {
+        this.lastPushTimestamp = lastPushTimestamp;
+    }
+
+    public boolean isHeartbeatDue() {
+        return heartbeatDue;
+    }
+
+    public void setHeartbeatDue(boolean heartbeatDue) {
+        this.heartbeatDue = heartbeatDue;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void setClosed(boolean closed) {
+        this.closed = closed;
+    }
+
+    @Override
+    public String toString() {
+        return "PullStream{" +
+            "channel=" + channel +
+            ", streamId=" + streamId +
+            ", consumerGroup='" + consumerGroup + '\'' +
+            ", topic='" + topic + '\'' +
+            ", queueId=" + queueId +
+            ", nextOffset=" + nextOffset +
+            ", credit=" + credit +
+            '}';
+    }
+}
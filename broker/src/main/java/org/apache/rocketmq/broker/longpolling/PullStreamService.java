@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.longpolling;
+
+import io.opentelemetry.api.common.Attributes;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.broker.metrics.BrokerMetricsManager;
+import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.topic.TopicValidator;
+import org.apache.rocketmq.logging.org.slf4j.Logger;
+import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RequestCode;
+import org.apache.rocketmq.remoting.protocol.ResponseCode;
+import org.apache.rocketmq.remoting.protocol.header.PushPullStreamMessageRequestHeader;
+import org.apache.rocketmq.store.GetMessageResult;
+import org.apache.rocketmq.store.MessageStore;
+import org.apache.rocketmq.store.config.BrokerRole;
+
+import static org.apache.rocketmq.broker.metrics.BrokerMetricsConstant.LABEL_CONSUMER_GROUP;
+import static org.apache.rocketmq.broker.metrics.BrokerMetricsConstant.LABEL_IS_SYSTEM;
+import static org.apache.rocketmq.broker.metrics.BrokerMetricsConstant.LABEL_TOPIC;
+
+/**
+ * Pushes messages to open pull streams.
+ *
+ * <p>A stream is drained on the pull message executor whenever it may have something to push: when it is opened,
+ * granted credit, or a message arrives on its queue. Each push takes at most the remaining credit, so the client
+ * bounds how far the broker runs ahead of it. This thread drops streams of closed channels, re-drives streams whose
+ * arrival notification was missed, and has idle streams send an empty batch every
+ * {@link org.apache.rocketmq.common.BrokerConfig#getPullStreamHeartbeatIntervalMillis()}.
+ */
+public class PullStreamService extends ServiceThread {
+    private static final Logger log = LoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
+    private static final String TOPIC_QUEUEID_SEPARATOR = "@";
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+    /**
+     * get message calls of one drain, so that a fast stream does not hold an executor thread forever
+     */
+    private static final int MAX_DRAIN_ROUNDS = 16;
+
+    private final BrokerController brokerController;
+    private final ConcurrentMap<String/* channelId@streamId */, PullStream> streamTable = new ConcurrentHashMap<>(1024);
+    private final ConcurrentMap<String/* topic@queueId */, Set<PullStream>> queueStreamTable = new ConcurrentHashMap<>(1024);
+
+    public PullStreamService(final BrokerController brokerController) {
+        this.brokerController = brokerController;
+    }
+
+    public void openStream(final PullStream stream) {
+        PullStream prev = this.streamTable.put(stream.getKey(), stream);
+        if (prev != null) {
+            this.removeStream(prev);
+        }
+        this.queueStreamTable.compute(buildKey(stream.getTopic(), stream.getQueueId()), (key, streams) -> {
+            if (streams == null) {
+                streams = ConcurrentHashMap.newKeySet();
+            }
+            streams.add(stream);
+            return streams;
+        });
+        this.wakeup(stream);
+    }
+
+    public boolean addCredit(final String streamKey, final int credit) {
+        PullStream stream = this.streamTable.get(streamKey);
+        if (stream == null) {
+            return false;
+        }
+        stream.addCredit(credit);
+        this.wakeup(stream);
+        return true;
+    }
+
+    public boolean closeStream(final String streamKey) {
+        PullStream stream = this.streamTable.get(streamKey);
+        if (stream == null) {
+            return false;
+        }
+        this.removeStream(stream);
+        return true;
+    }
+
+    public void notifyMessageArriving(final String topic, final int queueId) {
+        Set<PullStream> streams = this.queueStreamTable.get(buildKey(topic, queueId));
+        if (streams == null) {
+            return;
+        }
+        for (PullStream stream : streams) {
+            if (stream.getCredit() > 0) {
+                this.wakeup(stream);
+            }
+        }
+    }
+
+    public int getStreamNum() {
+        return this.streamTable.size();
+    }
+
+    @Override
+    public void run() {
+        log.info("{} service started", this.getServiceName());
+        while (!this.isStopped()) {
+            try {
+                this.waitForRunning(CHECK_INTERVAL_MILLIS);
+                this.checkStreams();
+            } catch (Throwable e) {
+                log.warn(this.getServiceName() + " service has exception. ", e);
+            }
+        }
+        log.info("{} service end", this.getServiceName());
+    }
+
+    @Override
+    public String getServiceName() {
+        if (brokerController != null && brokerController.getBrokerConfig().isInBrokerContainer()) {
+            return this.brokerController.getBrokerIdentity().getIdentifier() + PullStreamService.class.getSimpleName();
+        }
+        return PullStreamService.class.getSimpleName();
+    }
+
+    protected void checkStreams() {
+        final long now = System.currentTimeMillis();
+        final long heartbeatInterval = this.brokerController.getBrokerConfig().getPullStreamHeartbeatIntervalMillis();
+        final MessageStore messageStore = this.brokerController.getMessageStore();
+        // streams opened before the broker became a slave are dropped, the clients reopen them elsewhere or pull
+        final boolean slave = this.brokerController.getMessageStoreConfig().getBrokerRole() == BrokerRole.SLAVE;
+        for (PullStream stream : this.streamTable.values()) {
+            if (slave || !stream.getChannel().isActive()) {
+                this.removeStream(stream);
+                continue;
+            }
+            if (now - stream.getLastPushTimestamp() >= heartbeatInterval) {
+                stream.setHeartbeatDue(true);
+                this.wakeup(stream);
+            } else if (stream.getCredit() > 0
+                && messageStore.getMaxOffsetInQueue(stream.getTopic(), stream.getQueueId()) > stream.getNextOffset()) {
+                this.wakeup(stream);
+            }
+        }
+    }
+
+    private void wakeup(final PullStream stream) {
+        if (!stream.signal()) {
+            return;
+        }
+        try {
+            this.brokerController.getPullMessageExecutor().execute(() -> this.drain(stream));
+        } catch (RejectedExecutionException e) {
+            // picked up again by the next check
+            stream.resetSignal();
+        }
+    }
+
+    private void drain(final PullStream stream) {
+        int signalCount;
+        do {
+            signalCount = stream.getSignalCount();
+            try {
+                this.pushMessages(stream);
+            } catch (Throwable e) {
+                log.warn("push messages to pull stream failed, {}", stream, e);
+            }
+        }
+        while (!stream.clearSignal(signalCount));
+    }
+
+    private void pushMessages(final PullStream stream) {
+        boolean pushed = false;
+        for (int round = 0; round < MAX_DRAIN_ROUNDS && !stream.isClosed() && stream.getCredit() > 0; round++) {
+            if (this.brokerController.getBrokerConfig().isEnableNetWorkFlowControl() && !stream.getChannel().isWritable()) {
+                break;
+            }
+            int maxMsgNums = Math.min(stream.getCredit(), this.brokerController.getBrokerConfig().getPullStreamMaxBatchNum());
+            GetMessageResult result = this.brokerController.getMessageStore().getMessage(stream.getConsumerGroup(),
+                stream.getTopic(), stream.getQueueId(), stream.getNextOffset(), maxMsgNums, stream.getMessageFilter());
+            if (result == null) {
+                break;
+            }
+            boolean hasMore = false;
+            switch (result.getStatus()) {
+                case FOUND:
+                    stream.addCredit(-result.getMessageCount());
+                    this.executeConsumeMessageHook(stream, result, ResponseCode.SUCCESS);
+                    this.push(stream, ResponseCode.SUCCESS, result, result.getMessageCount(), this.readMessages(stream, result));
+                    stream.setNextOffset(result.getNextBeginOffset());
+                    pushed = true;
+                    hasMore = true;
+                    break;
+                case NO_MATCHED_MESSAGE:
+                case MESSAGE_WAS_REMOVING:
+                    // the client learns the new offset from the next batch or heartbeat
+                    hasMore = result.getNextBeginOffset() > stream.getNextOffset();
+                    stream.setNextOffset(Math.max(stream.getNextOffset(), result.getNextBeginOffset()));
+                    break;
+                case OFFSET_FOUND_NULL:
+                case OFFSET_OVERFLOW_ONE:
+                    break;
+                case NO_MESSAGE_IN_QUEUE:
+                    if (stream.getNextOffset() == 0) {
+                        break;
+                    }
+                    // fall through
+                default:
+                    log.info("pull stream offset moved, status: {}, nextBeginOffset: {}, {}",
+                        result.getStatus(), result.getNextBeginOffset(), stream);
+                    this.executeConsumeMessageHook(stream, result, ResponseCode.PULL_OFFSET_MOVED);
+                    this.push(stream, ResponseCode.PULL_OFFSET_MOVED, result, 0, null);
+                    this.removeStream(stream);
+                    return;
+            }
+            if (!hasMore) {
+                break;
+            }
+        }
+
+        if (!pushed && stream.isHeartbeatDue() && !stream.isClosed()) {
+            MessageStore messageStore = this.brokerController.getMessageStore();
+            GetMessageResult heartbeat = new GetMessageResult();
+            heartbeat.setNextBeginOffset(stream.getNextOffset());
+            heartbeat.setMinOffset(messageStore.getMinOffsetInQueue(stream.getTopic(), stream.getQueueId()));
+            heartbeat.setMaxOffset(messageStore.getMaxOffsetInQueue(stream.getTopic(), stream.getQueueId()));
+            this.executeConsumeMessageHook(stream, heartbeat, ResponseCode.PULL_NOT_FOUND);
+            this.push(stream, ResponseCode.PULL_NOT_FOUND, heartbeat, 0, null);
+        }
+    }
+
+    private void executeConsumeMessageHook(final PullStream stream, final GetMessageResult result, final int pullCode) {
+        // an open stream is held like a suspended pull request, so its heartbeats are not counted as empty polls
+        this.brokerController.getPullMessageProcessor().executeConsumeMessageHookBefore(stream.getExtFields(),
+            stream.getConsumerGroup(), stream.getTopic(), stream.getQueueId(), result, true, pullCode);
+    }
+
+    private void push(final PullStream stream, final int pullCode, final GetMessageResult result, final int messageCount,
+        final byte[] body) {
+        PushPullStreamMessageRequestHeader requestHeader = new PushPullStreamMessageRequestHeader();
+        requestHeader.setConsumerGroup(stream.getConsumerGroup());
+        requestHeader.setStreamId(stream.getStreamId());
+        requestHeader.setPullCode(pullCode);
+        requestHeader.setMessageCount(messageCount);
+        requestHeader.setNextBeginOffset(result.getNextBeginOffset());
+        requestHeader.setMinOffset(result.getMinOffset());
+        requestHeader.setMaxOffset(result.getMaxOffset());
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.PUSH_PULL_STREAM_MESSAGE, requestHeader);
+        request.markOnewayRPC();
+        request.setBody(body);
+
+        stream.setHeartbeatDue(false);
+        stream.setLastPushTimestamp(System.currentTimeMillis());
+        stream.getChannel().writeAndFlush(request).addListener(future -> {
+            if (!future.isSuccess()) {
+                log.warn("push to pull stream failed, {}", stream, future.cause());
+                this.removeStream(stream);
+            }
+        });
+    }
+
+    private byte[] readMessages(final PullStream stream, final GetMessageResult result) {
+        final ByteBuffer byteBuffer = ByteBuffer.allocate(result.getBufferTotalSize());
+        try {
+            for (ByteBuffer bb : result.getMessageBufferList()) {
+                byteBuffer.put(bb);
+            }
+        } finally {
+            result.release();
+        }
+        this.brokerController.getBrokerStatsManager().incGroupGetNums(stream.getConsumerGroup(), stream.getTopic(),
+            result.getMessageCount());
+        this.brokerController.getBrokerStatsManager().incGroupGetSize(stream.getConsumerGroup(), stream.getTopic(),
+            result.getBufferTotalSize());
+        this.brokerController.getBrokerStatsManager().incBrokerGetNums(stream.getTopic(), result.getMessageCount());
+        if (!BrokerMetricsManager.isRetryOrDlqTopic(stream.getTopic())) {
+            Attributes attributes = BrokerMetricsManager.newAttributesBuilder()
+                .put(LABEL_TOPIC, stream.getTopic())
+                .put(LABEL_CONSUMER_GROUP, stream.getConsumerGroup())
+                .put(LABEL_IS_SYSTEM, TopicValidator.isSystemTopic(stream.getTopic()) || MixAll.isSysConsumerGroup(stream.getConsumerGroup()))
+                .build();
+            BrokerMetricsManager.messagesOutTotal.add(result.getMessageCount(), attributes);
+            BrokerMetricsManager.throughputOutTotal.add(result.getBufferTotalSize(), attributes);
+        }
+        return byteBuffer.array();
+    }
+
+    private void removeStream(final PullStream stream) {
+        stream.setClosed(true);
+        this.streamTable.remove(stream.getKey(), stream);
+        this.queueStreamTable.computeIfPresent(buildKey(stream.getTopic(), stream.getQueueId()), (key, streams) -> {
+            streams.remove(stream);
+            return streams.isEmpty() ? null : streams;
+        });
+    }
+
+    private String buildKey(final String topic, final int queueId) {
+        return topic + TOPIC_QUEUEID_SEPARATOR + queueId;
+    }
+}
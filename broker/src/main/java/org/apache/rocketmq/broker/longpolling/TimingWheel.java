@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.longpolling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel. Each level has {@code wheelSize} buckets, and a bucket of one level spans a whole
+ * turn of the level below it. Timers beyond the root level are cascaded down as their bucket comes due, so adding
+ * and expiring a timer is O(1) however many timers are pending, and a tick costs nothing for empty buckets.
+ *
+ * <p>Not thread safe, it is meant to be owned and driven by a single service thread. A timer never expires before
+ * its deadline and expires at most one tick after it once {@link #advance(long, Consumer)} is called on time.
+ */
+public class TimingWheel<T> {
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<Level<T>> levels = new ArrayList<>();
+    private int size;
+
+    public TimingWheel(final long tickMillis, final int wheelSize, final long startMillis) {
+        if (tickMillis <= 0 || wheelSize <= 1) {
+            throw new IllegalArgumentException("tickMillis must be positive and wheelSize greater than 1");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.levels.add(new Level<>(tickMillis, wheelSize, startMillis));
+    }
+
+    /**
+     * @return false if the deadline has already passed, in which case the timer is not added
+     */
+    public boolean add(final T item, final long deadlineMillis) {
+        // round up to the next tick so that a timer never fires before its deadline
+        long expiration = deadlineMillis + tickMillis - 1;
+        if (expiration < deadlineMillis) {
+            expiration = Long.MAX_VALUE;
+        }
+        return add(new TimerEntry<>(item, expiration));
+    }
+
+    private boolean add(final TimerEntry<T> entry) {
+        for (int i = 0; ; i++) {
+            if (i == levels.size()) {
+                Level<T> lower = levels.get(i - 1);
+                levels.add(new Level<>(lower.interval, wheelSize, lower.currentTime));
+            }
+            Level<T> level = levels.get(i);
+            if (entry.expiration < level.currentTime + level.tickMillis) {
+                return false;
+            }
+            if (entry.expiration < level.currentTime + level.interval || level.interval <= 0) {
+                level.bucket(entry.expiration).add(entry);
+                size++;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Move the wheel to {@code nowMillis}, passing every timer that comes due to {@code expired}.
+     */
+    public void advance(final long nowMillis, final Consumer<T> expired) {
+        Level<T> root = levels.get(0);
+        List<TimerEntry<T>> due = new ArrayList<>();
+        while (root.currentTime + root.tickMillis <= nowMillis) {
+            long time = root.currentTime + root.tickMillis;
+            for (Level<T> level : levels) {
+                if (time < level.currentTime + level.tickMillis) {
+                    break;
+                }
+                level.currentTime = time - time % level.tickMillis;
+                level.drain(level.currentTime, due);
+            }
+            for (TimerEntry<T> entry : due) {
+                size--;
+                if (!add(entry)) {
+                    expired.accept(entry.item);
+                }
+            }
+            due.clear();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static final class TimerEntry<T> {
+        private final T item;
+        private final long expiration;
+
+        private TimerEntry(final T item, final long expiration) {
+            this.item = item;
+            this.expiration = expiration;
+        }
+    }
+
+    private static final class Level<T> {
+        private final long tickMillis;
+        private final long interval;
+        private final List<TimerEntry<T>>[] buckets;
+        private long currentTime;
+
+        @SuppressWarnings("unchecked")
+        private Level(final long tickMillis, final int wheelSize, final long startMillis) {
+            this.tickMillis = tickMillis;
+            // overflows to a negative value for a top level spanning more than Long.MAX_VALUE
+            this.interval = tickMillis * wheelSize;
+            this.buckets = new List[wheelSize];
+            this.currentTime = startMillis - startMillis % tickMillis;
+        }
+
+        private List<TimerEntry<T>> bucket(final long expiration) {
+            int index = (int) ((expiration / tickMillis) % buckets.length);
+            List<TimerEntry<T>> bucket = buckets[index];
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                buckets[index] = bucket;
+            }
+            return bucket;
+        }
+
+        private void drain(final long time, final List<TimerEntry<T>> due) {
+            int index = (int) ((time / tickMillis) % buckets.length);
+            List<TimerEntry<T>> bucket = buckets[index];
+            if (bucket != null) {
+                due.addAll(bucket);
+                buckets[index] = null;
+            }
+        }
+    }
+}
@@ -44,14 +44,18 @@ import org.apache.rocketmq.store.pop.PopCheckPoint;
 
 import static org.apache.rocketmq.broker.metrics.BrokerMetricsConstant.LABEL_CONSUMER_GROUP;
 import static org.apache.rocketmq.broker.metrics.BrokerMetricsConstant.LABEL_TOPIC;
+import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.COUNTER_POP_POLLING_SPURIOUS_WAKEUP_TOTAL;
 import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.COUNTER_POP_REVIVE_IN_MESSAGE_TOTAL;
 import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.COUNTER_POP_REVIVE_OUT_MESSAGE_TOTAL;
 import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.COUNTER_POP_REVIVE_RETRY_MESSAGES_TOTAL;
 import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.GAUGE_POP_CHECKPOINT_BUFFER_SIZE;
 import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.GAUGE_POP_OFFSET_BUFFER_SIZE;
+import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.GAUGE_POP_POLLING_REQUESTS;
 import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.GAUGE_POP_REVIVE_LAG;
 import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.GAUGE_POP_REVIVE_LATENCY;
 import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.HISTOGRAM_POP_BUFFER_SCAN_TIME_CONSUME;
+import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.HISTOGRAM_POP_POLLING_WAKEUP_LATENCY;
+import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.LABEL_POLLING_TYPE;
 import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.LABEL_PUT_STATUS;
 import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.LABEL_QUEUE_ID;
 import static org.apache.rocketmq.broker.metrics.PopMetricsConstant.LABEL_REVIVE_MESSAGE_TYPE;
@@ -63,6 +67,8 @@ public class PopMetricsManager {
     private static LongCounter popRevivePutTotal = new NopLongCounter();
     private static LongCounter popReviveGetTotal = new NopLongCounter();
     private static LongCounter popReviveRetryMessageTotal = new NopLongCounter();
+    private static LongHistogram popPollingWakeUpLatency = new NopLongHistogram();
+    private static LongCounter popPollingSpuriousWakeUpTotal = new NopLongCounter();
 
     public static List<Pair<InstrumentSelector, ViewBuilder>> getMetricsView() {
         List<Double> rpcCostTimeBuckets = Arrays.asList(
@@ -80,7 +86,15 @@ public class PopMetricsManager {
         ViewBuilder popBufferScanTimeConsumeViewBuilder = View.builder()
             .setAggregation(Aggregation.explicitBucketHistogram(rpcCostTimeBuckets));
 
-        return Lists.newArrayList(new Pair<>(popBufferScanTimeConsumeSelector, popBufferScanTimeConsumeViewBuilder));
+        InstrumentSelector popPollingWakeUpLatencySelector = InstrumentSelector.builder()
+            .setType(InstrumentType.HISTOGRAM)
+            .setName(HISTOGRAM_POP_POLLING_WAKEUP_LATENCY)
+            .build();
+        ViewBuilder popPollingWakeUpLatencyViewBuilder = View.builder()
+            .setAggregation(Aggregation.explicitBucketHistogram(rpcCostTimeBuckets));
+
+        return Lists.newArrayList(new Pair<>(popBufferScanTimeConsumeSelector, popBufferScanTimeConsumeViewBuilder),
+            new Pair<>(popPollingWakeUpLatencySelector, popPollingWakeUpLatencyViewBuilder));
     }
 
     public static void initMetrics(Meter meter, BrokerController brokerController,
@@ -102,6 +116,19 @@ public class PopMetricsManager {
             .setDescription("Total number of put message to pop retry topic")
             .build();
 
+        popPollingWakeUpLatency = meter.histogramBuilder(HISTOGRAM_POP_POLLING_WAKEUP_LATENCY)
+            .setDescription("Time from suspending a pop request to processing it after a new message woke it up")
+            .setUnit("milliseconds")
+            .ofLongs()
+            .build();
+        popPollingSpuriousWakeUpTotal = meter.counterBuilder(COUNTER_POP_POLLING_SPURIOUS_WAKEUP_TOTAL)
+            .setDescription("Total number of held pop requests woken up for a message that found none")
+            .build();
+
+        meter.gaugeBuilder(GAUGE_POP_POLLING_REQUESTS)
+            .setDescription("The number of held pop requests")
+            .ofLongs()
+            .buildWithCallback(measurement -> calculatePopPollingRequests(brokerController, measurement));
         meter.gaugeBuilder(GAUGE_POP_OFFSET_BUFFER_SIZE)
             .setDescription("Time number of buffered offset")
             .ofLongs()
@@ -134,6 +161,14 @@ public class PopMetricsManager {
         measurement.record(popBufferMergeService.getBufferedCKSize(), newAttributesBuilder().build());
     }
 
+    private static void calculatePopPollingRequests(BrokerController brokerController,
+        ObservableLongMeasurement measurement) {
+        measurement.record(brokerController.getPopMessageProcessor().getPopLongPollingService().getPollingNum(),
+            newAttributesBuilder().put(LABEL_POLLING_TYPE, "pop").build());
+        measurement.record(brokerController.getNotificationProcessor().getPopLongPollingService().getPollingNum(),
+            newAttributesBuilder().put(LABEL_POLLING_TYPE, "notification").build());
+    }
+
     private static void calculatePopReviveLatency(BrokerController brokerController,
         ObservableLongMeasurement measurement) {
         PopReviveService[] popReviveServices = brokerController.getAckMessageProcessor().getPopReviveServices();
@@ -203,6 +238,14 @@ public class PopMetricsManager {
         popReviveRetryMessageTotal.add(1, attributes);
     }
 
+    public static void recordPopPollingWakeUpLatency(long time) {
+        popPollingWakeUpLatency.record(time, newAttributesBuilder().build());
+    }
+
+    public static void incPopPollingSpuriousWakeUpCount() {
+        popPollingSpuriousWakeUpTotal.add(1, newAttributesBuilder().build());
+    }
+
     public static void recordPopBufferScanTimeConsume(long time) {
         popBufferScanTimeConsume.record(time, newAttributesBuilder().build());
     }
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.pagecache;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.apache.rocketmq.store.GetMessageResult;
+
+/**
+ * A composite buffer over the response header and the mapped message buffers of a {@link GetMessageResult}.
+ *
+ * <p>Unlike {@link ManyMessageTransfer} it can be handled by a {@link io.netty.handler.ssl.SslHandler}, and unlike
+ * reading the result into a heap array it does not copy the messages. The mapped files stay referenced until the
+ * buffer is released, which happens once the handlers down the pipeline have consumed it.
+ */
+public class ManyMessageByteBuf extends CompositeByteBuf {
+    private final GetMessageResult getMessageResult;
+
+    public ManyMessageByteBuf(ByteBufAllocator alloc, ByteBuffer byteBufferHeader, GetMessageResult getMessageResult) {
+        super(alloc, true, getMessageResult.getMessageBufferList().size() + 1);
+        this.getMessageResult = getMessageResult;
+        addComponent(true, Unpooled.wrappedBuffer(byteBufferHeader));
+        List<ByteBuffer> messageBufferList = getMessageResult.getMessageBufferList();
+        for (ByteBuffer bb : messageBufferList) {
+            // Wrapped direct buffers are never freed by netty, the mapped memory is owned by the MappedFile
+            addComponent(true, Unpooled.wrappedBuffer(bb.slice()));
+        }
+    }
+
+    @Override
+    protected void deallocate() {
+        try {
+            super.deallocate();
+        } finally {
+            this.getMessageResult.release();
+        }
+    }
+}
@@ -20,10 +20,15 @@ import com.alibaba.fastjson.JSON;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.metrics.PopMetricsManager;
 import org.apache.rocketmq.common.KeyBuilder;
 import org.apache.rocketmq.common.PopAckConstants;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.TopicConfig;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.common.help.FAQUrl;
@@ -31,6 +36,7 @@ import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExtBrokerInner;
 import org.apache.rocketmq.common.utils.DataConverter;
+import org.apache.rocketmq.common.utils.ThreadUtils;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
 import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
 import org.apache.rocketmq.remoting.common.RemotingHelper;
@@ -53,14 +59,26 @@ public class AckMessageProcessor implements NettyRequestProcessor {
     private final BrokerController brokerController;
     private final String reviveTopic;
     private final PopReviveService[] popReviveServices;
+    private final ExecutorService reviveLookupExecutor;
 
     public AckMessageProcessor(final BrokerController brokerController) {
         this.brokerController = brokerController;
         this.reviveTopic = PopAckConstants.buildClusterReviveTopic(this.brokerController.getBrokerConfig().getBrokerClusterName());
+        int reviveLookupThreadNum = this.brokerController.getBrokerConfig().getReviveLookupThreadNum();
+        if (reviveLookupThreadNum > 0) {
+            this.reviveLookupExecutor = ThreadUtils.newThreadPoolExecutor(reviveLookupThreadNum, reviveLookupThreadNum,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(this.brokerController.getBrokerConfig().getReviveLookupThreadPoolQueueCapacity()),
+                new ThreadFactoryImpl("PopReviveLookupThread_", brokerController.getBrokerIdentity()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        } else {
+            this.reviveLookupExecutor = null;
+        }
         this.popReviveServices = new PopReviveService[this.brokerController.getBrokerConfig().getReviveQueueNum()];
         for (int i = 0; i < this.brokerController.getBrokerConfig().getReviveQueueNum(); i++) {
             this.popReviveServices[i] = new PopReviveService(brokerController, reviveTopic, i);
             this.popReviveServices[i].setShouldRunPopRevive(brokerController.getBrokerConfig().getBrokerId() == 0);
+            this.popReviveServices[i].setLookupExecutor(this.reviveLookupExecutor);
         }
     }
 
@@ -78,6 +96,9 @@ public class AckMessageProcessor implements NettyRequestProcessor {
         for (PopReviveService popReviveService : popReviveServices) {
             popReviveService.shutdown();
         }
+        if (this.reviveLookupExecutor != null) {
+            this.reviveLookupExecutor.shutdown();
+        }
     }
 
     public void setPopReviveServiceStatus(boolean shouldStart) {
@@ -246,11 +267,24 @@ public class AckMessageProcessor implements NettyRequestProcessor {
         ackMsg.setPopTime(popTime);
         ackMsg.setBrokerName(brokerName);
 
+        if (this.brokerController.getPopStateStore() != null) {
+            if (!this.brokerController.getPopStateStore().putAck(rqId, ackMsg, popTime + invisibleTime)) {
+                POP_LOGGER.error("put ack to pop state store error: {}", ackMsg);
+            }
+            brokerController.getPopInflightMessageCounter().decrementInFlightMessageNum(topic, consumeGroup, popTime, qId, ackCount);
+            return;
+        }
+
         if (this.brokerController.getPopMessageProcessor().getPopBufferMergeService().addAk(rqId, ackMsg)) {
             brokerController.getPopInflightMessageCounter().decrementInFlightMessageNum(topic, consumeGroup, popTime, qId, ackCount);
             return;
         }
 
+        if (this.brokerController.getPopMessageProcessor().getPopBufferMergeService().coalesceAck(rqId, ackMsg, invisibleTime)) {
+            brokerController.getPopInflightMessageCounter().decrementInFlightMessageNum(topic, consumeGroup, popTime, qId, ackCount);
+            return;
+        }
+
         MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
         msgInner.setTopic(reviveTopic);
         msgInner.setBody(JSON.toJSONString(ackMsg).getBytes(DataConverter.CHARSET_UTF8));
@@ -175,6 +175,13 @@ public class ChangeInvisibleTimeProcessor implements NettyRequestProcessor {
         this.brokerController.getBrokerStatsManager().incBrokerAckNums(1);
         this.brokerController.getBrokerStatsManager().incGroupAckNums(requestHeader.getConsumerGroup(), requestHeader.getTopic(), 1);
 
+        if (brokerController.getPopStateStore() != null) {
+            if (!brokerController.getPopStateStore().putAck(rqId, ackMsg, ExtraInfoUtil.getPopTime(extraInfo) + ExtraInfoUtil.getInvisibleTime(extraInfo))) {
+                POP_LOGGER.error("change Invisible, put ack to pop state store fail: {}", ackMsg);
+            }
+            return;
+        }
+
         if (brokerController.getPopMessageProcessor().getPopBufferMergeService().addAk(rqId, ackMsg)) {
             return;
         }
@@ -216,6 +223,15 @@ public class ChangeInvisibleTimeProcessor implements NettyRequestProcessor {
         ck.addDiff(0);
         ck.setBrokerName(brokerName);
 
+        if (brokerController.getPopStateStore() != null) {
+            boolean putOk = brokerController.getPopStateStore().putCheckPoint(reviveQid, ck);
+            if (putOk) {
+                this.brokerController.getBrokerStatsManager().incBrokerCkNums(1);
+                this.brokerController.getBrokerStatsManager().incGroupCkNums(requestHeader.getConsumerGroup(), requestHeader.getTopic(), 1);
+            }
+            return new PutMessageResult(putOk ? PutMessageStatus.PUT_OK : PutMessageStatus.UNKNOWN_ERROR, null);
+        }
+
         msgInner.setBody(JSON.toJSONString(ck).getBytes(DataConverter.CHARSET_UTF8));
         msgInner.setQueueId(reviveQid);
         msgInner.setTags(PopAckConstants.CK_TAG);
@@ -20,6 +20,7 @@ package org.apache.rocketmq.broker.processor;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.FileRegion;
+import io.netty.handler.ssl.SslHandler;
 import io.opentelemetry.api.common.Attributes;
 import java.nio.ByteBuffer;
 import java.util.List;
@@ -27,6 +28,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.longpolling.PullRequest;
 import org.apache.rocketmq.broker.metrics.BrokerMetricsManager;
+import org.apache.rocketmq.broker.pagecache.ManyMessageByteBuf;
 import org.apache.rocketmq.broker.pagecache.ManyMessageTransfer;
 import org.apache.rocketmq.broker.plugin.PullMessageResultHandler;
 import org.apache.rocketmq.common.AbortProcessException;
@@ -137,7 +139,18 @@ public class DefaultPullMessageResultHandler implements PullMessageResultHandler
                     return null;
                 }
 
-                if (this.brokerController.getBrokerConfig().isTransferMsgByHeap()) {
+                if (this.brokerController.getBrokerConfig().isTransferMsgByCompositeBuffer() && isTlsChannel(channel)) {
+                    try {
+                        ManyMessageByteBuf byteBuf = new ManyMessageByteBuf(channel.alloc(),
+                            response.encodeHeader(getMessageResult.getBufferTotalSize()), getMessageResult);
+                        channel.writeAndFlush(byteBuf)
+                            .addListener(transferCompleteListener(request, response, channel));
+                    } catch (Throwable e) {
+                        log.error("Error occurred when transferring messages from page cache", e);
+                        getMessageResult.release();
+                    }
+                    return null;
+                } else if (this.brokerController.getBrokerConfig().isTransferMsgByHeap()) {
                     final byte[] r = this.readGetMessageResult(getMessageResult, requestHeader.getConsumerGroup(), requestHeader.getTopic(), requestHeader.getQueueId());
                     this.brokerController.getBrokerStatsManager().incGroupGetLatency(requestHeader.getConsumerGroup(),
                         requestHeader.getTopic(), requestHeader.getQueueId(),
@@ -148,20 +161,8 @@ public class DefaultPullMessageResultHandler implements PullMessageResultHandler
                     try {
                         FileRegion fileRegion =
                             new ManyMessageTransfer(response.encodeHeader(getMessageResult.getBufferTotalSize()), getMessageResult);
-                        RemotingCommand finalResponse = response;
                         channel.writeAndFlush(fileRegion)
-                            .addListener((ChannelFutureListener) future -> {
-                                getMessageResult.release();
-                                Attributes attributes = RemotingMetricsManager.newAttributesBuilder()
-                                    .put(LABEL_REQUEST_CODE, RemotingHelper.getRequestCodeDesc(request.getCode()))
-                                    .put(LABEL_RESPONSE_CODE, RemotingHelper.getResponseCodeDesc(finalResponse.getCode()))
-                                    .put(LABEL_RESULT, RemotingMetricsManager.getWriteAndFlushResult(future))
-                                    .build();
-                                RemotingMetricsManager.rpcLatency.record(request.getProcessTimer().elapsed(TimeUnit.MILLISECONDS), attributes);
-                                if (!future.isSuccess()) {
-                                    log.error("Fail to transfer messages from page cache to {}", channel.remoteAddress(), future.cause());
-                                }
-                            });
+                            .addListener(transferCompleteListener(request, response, channel));
                     } catch (Throwable e) {
                         log.error("Error occurred when transferring messages from page cache", e);
                         getMessageResult.release();
@@ -182,7 +183,8 @@ public class DefaultPullMessageResultHandler implements PullMessageResultHandler
                     long offset = requestHeader.getQueueOffset();
                     int queueId = requestHeader.getQueueId();
                     PullRequest pullRequest = new PullRequest(request, channel, pollingTimeMills,
-                        this.brokerController.getMessageStore().now(), offset, subscriptionData, messageFilter);
+                        this.brokerController.getMessageStore().now(), offset, getMessageResult.getMaxOffset(),
+                        subscriptionData, messageFilter);
                     this.brokerController.getPullRequestHoldService().suspendPullRequest(topic, queueId, pullRequest);
                     return null;
                 }
@@ -222,6 +224,29 @@ public class DefaultPullMessageResultHandler implements PullMessageResultHandler
         return response;
     }
 
+    private boolean isTlsChannel(Channel channel) {
+        return channel.pipeline().get(SslHandler.class) != null;
+    }
+
+    /**
+     * The messages themselves are released along with the written {@link FileRegion} or {@link ManyMessageByteBuf},
+     * so this listener only records the rpc latency and logs failures.
+     */
+    private ChannelFutureListener transferCompleteListener(final RemotingCommand request,
+        final RemotingCommand response, final Channel channel) {
+        return future -> {
+            Attributes attributes = RemotingMetricsManager.newAttributesBuilder()
+                .put(LABEL_REQUEST_CODE, RemotingHelper.getRequestCodeDesc(request.getCode()))
+                .put(LABEL_RESPONSE_CODE, RemotingHelper.getResponseCodeDesc(response.getCode()))
+                .put(LABEL_RESULT, RemotingMetricsManager.getWriteAndFlushResult(future))
+                .build();
+            RemotingMetricsManager.rpcLatency.record(request.getProcessTimer().elapsed(TimeUnit.MILLISECONDS), attributes);
+            if (!future.isSuccess()) {
+                log.error("Fail to transfer messages from page cache to {}", channel.remoteAddress(), future.cause());
+            }
+        };
+    }
+
     private boolean channelIsWritable(Channel channel, PullMessageRequestHeader requestHeader) {
         if (this.brokerController.getBrokerConfig().isEnableNetWorkFlowControl()) {
             if (!channel.isWritable()) {
@@ -18,10 +18,7 @@ package org.apache.rocketmq.broker.processor;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
-import java.util.concurrent.ConcurrentSkipListSet;
 import org.apache.rocketmq.broker.BrokerController;
-import org.apache.rocketmq.broker.longpolling.PopRequest;
-import org.apache.rocketmq.common.KeyBuilder;
 import org.apache.rocketmq.common.TopicConfig;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.common.constant.PermName;
@@ -105,13 +102,8 @@ public class PollingInfoProcessor implements NettyRequestProcessor {
             response.setRemark("subscription group no permission, " + requestHeader.getConsumerGroup());
             return response;
         }
-        String key = KeyBuilder.buildPollingKey(requestHeader.getTopic(), requestHeader.getConsumerGroup(), requestHeader.getQueueId());
-        ConcurrentSkipListSet<PopRequest> queue = this.brokerController.getPopMessageProcessor().getPollingMap().get(key);
-        if (queue != null) {
-            responseHeader.setPollingNum(queue.size());
-        } else {
-            responseHeader.setPollingNum(0);
-        }
+        responseHeader.setPollingNum(this.brokerController.getPopMessageProcessor()
+            .getPollingNum(requestHeader.getTopic(), requestHeader.getConsumerGroup(), requestHeader.getQueueId()));
         response.setCode(ResponseCode.SUCCESS);
         return response;
     }
@@ -50,6 +50,11 @@ public class PopBufferMergeService extends ServiceThread {
         buffer = new ConcurrentHashMap<>(1024 * 16);
     ConcurrentHashMap<String/*topic@cid@queueId*/, QueueWithTime<PopCheckPointWrapper>> commitOffsets =
         new ConcurrentHashMap<>();
+    /**
+     * Acks whose checkpoint is not buffered, merged per checkpoint for popAckCoalesceWindowMillis so that they are
+     * written to the revive topic as one batch ack instead of one message per ack request.
+     */
+    ConcurrentHashMap<String/*mergeKey*/, CoalescedAck> coalescedAcks = new ConcurrentHashMap<>(1024);
     private volatile boolean serving = true;
     private AtomicInteger counter = new AtomicInteger(0);
     private int scanTimes = 0;
@@ -99,6 +104,7 @@ public class PopBufferMergeService extends ServiceThread {
                         brokerController.getMessageStoreConfig().getBrokerRole(), this.master);
                     this.buffer.clear();
                     this.commitOffsets.clear();
+                    this.coalescedAcks.clear();
                     continue;
                 }
 
@@ -126,7 +132,7 @@ public class PopBufferMergeService extends ServiceThread {
         if (!isShouldRunning()) {
             return;
         }
-        while (this.buffer.size() > 0 || getOffsetTotalSize() > 0) {
+        while (this.buffer.size() > 0 || getOffsetTotalSize() > 0 || !this.coalescedAcks.isEmpty()) {
             scan();
         }
     }
@@ -317,6 +323,7 @@ public class PopBufferMergeService extends ServiceThread {
             }
         }
 
+        int countCoalescedAck = scanCoalescedAck();
         int offsetBufferSize = scanCommitOffset();
 
         long eclipse = System.currentTimeMillis() - startTime;
@@ -328,8 +335,8 @@ public class PopBufferMergeService extends ServiceThread {
         } else {
             if (scanTimes % countOfSecond1 == 0) {
                 POP_LOGGER.info("[PopBuffer]scan, PopBufferEclipse={}, " +
-                        "PopBufferToStoreAck={}, PopBufferToStoreCk={}, PopBufferSize={}, PopBufferOffsetSize={}",
-                    eclipse, count, countCk, counter.get(), offsetBufferSize);
+                        "PopBufferToStoreAck={}, PopBufferToStoreCk={}, PopBufferToStoreCoalescedAck={}, PopBufferSize={}, PopBufferOffsetSize={}",
+                    eclipse, count, countCk, countCoalescedAck, counter.get(), offsetBufferSize);
             }
         }
         PopMetricsManager.recordPopBufferScanTimeConsume(eclipse);
@@ -341,6 +348,38 @@ public class PopBufferMergeService extends ServiceThread {
         }
     }
 
+    private int scanCoalescedAck() {
+        long now = System.currentTimeMillis();
+        long window = brokerController.getBrokerConfig().getPopAckCoalesceWindowMillis();
+        int count = 0;
+        Iterator<Map.Entry<String, CoalescedAck>> iterator = coalescedAcks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CoalescedAck> entry = iterator.next();
+            CoalescedAck coalescedAck = entry.getValue();
+            if (this.serving && now - coalescedAck.getFirstAckTime() < window) {
+                continue;
+            }
+            // acks are merged inside compute, so once removed the entry can no longer change
+            if (!coalescedAcks.remove(entry.getKey(), coalescedAck)) {
+                continue;
+            }
+            if (putCoalescedAckToStore(coalescedAck)) {
+                count++;
+            } else {
+                // put back to retry in the next scan, together with the acks merged meanwhile
+                coalescedAcks.merge(entry.getKey(), coalescedAck, (merged, failed) -> {
+                    failed.addAll(merged);
+                    return failed;
+                });
+            }
+        }
+        return count;
+    }
+
+    public int getCoalescedAckSize() {
+        return coalescedAcks.size();
+    }
+
     public int getOffsetTotalSize() {
         int count = 0;
         Iterator<Map.Entry<String, QueueWithTime<PopCheckPointWrapper>>> iterator = this.commitOffsets.entrySet().iterator();
@@ -589,6 +628,39 @@ public class PopBufferMergeService extends ServiceThread {
         return false;
     }
 
+    /**
+     * Merge an ack whose checkpoint is not in the buffer with the other acks of the same checkpoint, they are written
+     * as one batch ack once the coalescing window has passed.
+     *
+     * @return false if the ack should be written right away
+     */
+    public boolean coalesceAck(int reviveQid, AckMsg ackMsg, long invisibleTime) {
+        if (!brokerController.getBrokerConfig().isEnablePopAckCoalesce()) {
+            return false;
+        }
+        if (!serving) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        long reviveTime = ackMsg.getPopTime() + invisibleTime;
+        if (reviveTime - now < brokerController.getBrokerConfig().getPopAckCoalesceWindowMillis()
+            + brokerController.getBrokerConfig().getPopCkStayBufferTimeOut()) {
+            // the checkpoint may be revived before the coalesced ack is written
+            return false;
+        }
+        String mergeKey = ackMsg.getTopic() + PopAckConstants.SPLIT + ackMsg.getConsumerGroup() + PopAckConstants.SPLIT
+            + ackMsg.getQueueId() + PopAckConstants.SPLIT + ackMsg.getStartOffset() + PopAckConstants.SPLIT
+            + ackMsg.getPopTime() + PopAckConstants.SPLIT + ackMsg.getBrokerName();
+        coalescedAcks.compute(mergeKey, (key, coalescedAck) -> {
+            if (coalescedAck == null) {
+                coalescedAck = new CoalescedAck(reviveQid, ackMsg, reviveTime, now);
+            }
+            coalescedAck.add(ackMsg);
+            return coalescedAck;
+        });
+        return true;
+    }
+
     public void clearOffsetQueue(String lockKey) {
         this.commitOffsets.remove(lockKey);
     }
@@ -698,6 +770,35 @@ public class PopBufferMergeService extends ServiceThread {
         return true;
     }
 
+    private boolean putCoalescedAckToStore(final CoalescedAck coalescedAck) {
+        BatchAckMsg batchAckMsg = coalescedAck.getBatchAckMsg();
+        MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
+        msgInner.setTopic(popMessageProcessor.reviveTopic);
+        msgInner.setBody(JSON.toJSONString(batchAckMsg).getBytes(DataConverter.CHARSET_UTF8));
+        msgInner.setQueueId(coalescedAck.getReviveQueueId());
+        msgInner.setTags(PopAckConstants.BATCH_ACK_TAG);
+        msgInner.setBornTimestamp(System.currentTimeMillis());
+        msgInner.setBornHost(brokerController.getStoreHost());
+        msgInner.setStoreHost(brokerController.getStoreHost());
+        msgInner.setDeliverTimeMs(coalescedAck.getReviveTime());
+        msgInner.getProperties().put(MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX, PopMessageProcessor.genBatchAckUniqueId(batchAckMsg));
+
+        msgInner.setPropertiesString(MessageDecoder.messageProperties2String(msgInner.getProperties()));
+        PutMessageResult putMessageResult = brokerController.getEscapeBridge().putMessageToSpecificQueue(msgInner);
+        PopMetricsManager.incPopReviveAckPutCount(batchAckMsg, putMessageResult.getPutMessageStatus());
+        if (putMessageResult.getPutMessageStatus() != PutMessageStatus.PUT_OK
+            && putMessageResult.getPutMessageStatus() != PutMessageStatus.FLUSH_DISK_TIMEOUT
+            && putMessageResult.getPutMessageStatus() != PutMessageStatus.FLUSH_SLAVE_TIMEOUT
+            && putMessageResult.getPutMessageStatus() != PutMessageStatus.SLAVE_NOT_AVAILABLE) {
+            POP_LOGGER.error("[PopBuffer]put coalesced ack to store fail: {}, {}", coalescedAck, putMessageResult);
+            return false;
+        }
+        if (brokerController.getBrokerConfig().isEnablePopLog()) {
+            POP_LOGGER.info("[PopBuffer]put coalesced ack to store ok: {}, {}", coalescedAck, putMessageResult);
+        }
+        return true;
+    }
+
     private boolean cancelCkTimer(final PopCheckPointWrapper pointWrapper) {
         // not stored, no need cancel
         if (pointWrapper.getReviveQueueOffset() < 0) {
@@ -878,4 +979,73 @@ public class PopBufferMergeService extends ServiceThread {
         }
     }
 
+
+    public static class CoalescedAck {
+        private final int reviveQueueId;
+        private final BatchAckMsg batchAckMsg = new BatchAckMsg();
+        private final long reviveTime;
+        private final long firstAckTime;
+        private int ackRequestNum;
+
+        public CoalescedAck(int reviveQueueId, AckMsg ackMsg, long reviveTime, long firstAckTime) {
+            this.reviveQueueId = reviveQueueId;
+            this.reviveTime = reviveTime;
+            this.firstAckTime = firstAckTime;
+            batchAckMsg.setConsumerGroup(ackMsg.getConsumerGroup());
+            batchAckMsg.setTopic(ackMsg.getTopic());
+            batchAckMsg.setQueueId(ackMsg.getQueueId());
+            batchAckMsg.setStartOffset(ackMsg.getStartOffset());
+            batchAckMsg.setAckOffset(-1);
+            batchAckMsg.setPopTime(ackMsg.getPopTime());
+            batchAckMsg.setBrokerName(ackMsg.getBrokerName());
+        }
+
+        public void add(AckMsg ackMsg) {
+            if (ackMsg instanceof BatchAckMsg) {
+                batchAckMsg.getAckOffsetList().addAll(((BatchAckMsg) ackMsg).getAckOffsetList());
+            } else {
+                batchAckMsg.getAckOffsetList().add(ackMsg.getAckOffset());
+            }
+            ackRequestNum++;
+        }
+
+        /**
+         * Take over the acks of another coalesced ack of the same checkpoint.
+         */
+        public void addAll(CoalescedAck other) {
+            batchAckMsg.getAckOffsetList().addAll(other.getBatchAckMsg().getAckOffsetList());
+            ackRequestNum += other.getAckRequestNum();
+        }
+
+        public int getReviveQueueId() {
+            return reviveQueueId;
+        }
+
+        public BatchAckMsg getBatchAckMsg() {
+            return batchAckMsg;
+        }
+
+        public long getReviveTime() {
+            return reviveTime;
+        }
+
+        public long getFirstAckTime() {
+            return firstAckTime;
+        }
+
+        public int getAckRequestNum() {
+            return ackRequestNum;
+        }
+
+        @Override
+        public String toString() {
+            return "CoalescedAck{" +
+                "reviveQueueId=" + reviveQueueId +
+                ", batchAckMsg=" + batchAckMsg +
+                ", reviveTime=" + reviveTime +
+                ", firstAckTime=" + firstAckTime +
+                ", ackRequestNum=" + ackRequestNum +
+                '}';
+        }
+    }
 }
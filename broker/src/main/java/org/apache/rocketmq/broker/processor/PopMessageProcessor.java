@@ -17,7 +17,6 @@
 package org.apache.rocketmq.broker.processor;
 
 import com.alibaba.fastjson.JSON;
-import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
@@ -31,7 +30,6 @@ import java.util.Objects;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -42,7 +40,6 @@ import org.apache.rocketmq.broker.filter.ExpressionMessageFilter;
 import org.apache.rocketmq.broker.longpolling.PollingHeader;
 import org.apache.rocketmq.broker.longpolling.PollingResult;
 import org.apache.rocketmq.broker.longpolling.PopLongPollingService;
-import org.apache.rocketmq.broker.longpolling.PopRequest;
 import org.apache.rocketmq.broker.metrics.BrokerMetricsManager;
 import org.apache.rocketmq.broker.pagecache.ManyMessageTransfer;
 import org.apache.rocketmq.common.BrokerConfig;
@@ -162,8 +159,8 @@ public class PopMessageProcessor implements NettyRequestProcessor {
         return false;
     }
 
-    public ConcurrentLinkedHashMap<String, ConcurrentSkipListSet<PopRequest>> getPollingMap() {
-        return popLongPollingService.getPollingMap();
+    public int getPollingNum(String topic, String cid, int queueId) {
+        return popLongPollingService.getPollingNum(topic, cid, queueId);
     }
 
     public void notifyLongPollingRequestIfNeed(String topic, String group, int queueId) {
@@ -762,6 +759,18 @@ public class PopMessageProcessor implements NettyRequestProcessor {
             ck.addDiff((int) (msgQueueOffset - offset));
         }
 
+        if (this.brokerController.getPopStateStore() != null) {
+            if (!this.brokerController.getPopStateStore().putCheckPoint(reviveQid, ck)) {
+                return false;
+            }
+            this.brokerController.getBrokerStatsManager().incBrokerCkNums(1);
+            this.brokerController.getBrokerStatsManager().incGroupCkNums(requestHeader.getConsumerGroup(), topic, 1);
+            // the checkpoint is already durable, only let the buffer commit the consume offset in order
+            this.popBufferMergeService.addCkMock(requestHeader.getConsumerGroup(), topic, queueId, offset,
+                requestHeader.getInvisibleTime(), popTime, reviveQid, getMessageTmpResult.getNextBeginOffset(), brokerName);
+            return true;
+        }
+
         final boolean addBufferSuc = this.popBufferMergeService.addCk(
             ck, reviveQid, -1, getMessageTmpResult.getNextBeginOffset()
         );
@@ -22,11 +22,17 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.metrics.BrokerMetricsManager;
 import org.apache.rocketmq.broker.metrics.PopMetricsManager;
@@ -56,6 +62,7 @@ import org.apache.rocketmq.store.PutMessageResult;
 import org.apache.rocketmq.store.pop.AckMsg;
 import org.apache.rocketmq.store.pop.BatchAckMsg;
 import org.apache.rocketmq.store.pop.PopCheckPoint;
+import org.apache.rocketmq.store.pop.PopStateStore;
 
 import static org.apache.rocketmq.broker.metrics.BrokerMetricsConstant.LABEL_CONSUMER_GROUP;
 import static org.apache.rocketmq.broker.metrics.BrokerMetricsConstant.LABEL_IS_SYSTEM;
@@ -63,6 +70,7 @@ import static org.apache.rocketmq.broker.metrics.BrokerMetricsConstant.LABEL_TOP
 
 public class PopReviveService extends ServiceThread {
     private static final Logger POP_LOGGER = LoggerFactory.getLogger(LoggerName.ROCKETMQ_POP_LOGGER_NAME);
+    private static final int[] STATE_STORE_RETRY_INTERVALS_IN_SECONDS = new int[] {10, 20, 30, 60, 120, 300, 600, 1800, 3600};
 
     private int queueId;
     private BrokerController brokerController;
@@ -70,8 +78,14 @@ public class PopReviveService extends ServiceThread {
     private long currentReviveMessageTimestamp = -1;
     private volatile boolean shouldRunPopRevive = false;
 
+    private final Set<String> inflightStateStoreCkSet = ConcurrentHashMap.newKeySet();
     private final NavigableMap<PopCheckPoint/* oldCK */, Pair<Long/* timestamp */, Boolean/* result */>> inflightReviveRequestMap = Collections.synchronizedNavigableMap(new TreeMap<>());
     private long reviveOffset;
+    /**
+     * Looks up and retries the messages of checkpoints in parallel when set, the local store answers
+     * {@link org.apache.rocketmq.broker.failover.EscapeBridge#getMessageAsync} synchronously otherwise.
+     */
+    private ExecutorService lookupExecutor;
 
     public PopReviveService(BrokerController brokerController, String reviveTopic, int queueId) {
         this.queueId = queueId;
@@ -100,6 +114,10 @@ public class PopReviveService extends ServiceThread {
         return shouldRunPopRevive;
     }
 
+    public void setLookupExecutor(ExecutorService lookupExecutor) {
+        this.lookupExecutor = lookupExecutor;
+    }
+
     private boolean reviveRetry(PopCheckPoint popCheckPoint, MessageExt messageExt) {
         MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
         if (!popCheckPoint.getTopic().startsWith(MixAll.RETRY_GROUP_TOPIC_PREFIX)) {
@@ -198,6 +216,11 @@ public class PopReviveService extends ServiceThread {
 
     private CompletableFuture<Pair<GetMessageStatus, MessageExt>> getBizMessage(String topic, long offset, int queueId,
         String brokerName) {
+        if (lookupExecutor != null) {
+            return CompletableFuture.supplyAsync(() -> this.brokerController.getEscapeBridge()
+                .getMessageAsync(topic, offset, queueId, brokerName, false), lookupExecutor)
+                .thenCompose(future -> future);
+        }
         return this.brokerController.getEscapeBridge().getMessageAsync(topic, offset, queueId, brokerName, false);
     }
 
@@ -484,11 +507,15 @@ public class PopReviveService extends ServiceThread {
                 continue;
             }
 
-            while (inflightReviveRequestMap.size() > 3) {
+            while (inflightReviveRequestMap.size() >= Math.max(1, brokerController.getBrokerConfig().getReviveMaxInflightCheckpointNum())) {
                 waitForRunning(100);
-                Pair<Long, Boolean> pair = inflightReviveRequestMap.firstEntry().getValue();
+                Map.Entry<PopCheckPoint, Pair<Long, Boolean>> firstEntry = inflightReviveRequestMap.firstEntry();
+                if (firstEntry == null) {
+                    continue;
+                }
+                Pair<Long, Boolean> pair = firstEntry.getValue();
                 if (!pair.getObject2() && System.currentTimeMillis() - pair.getObject1() > 1000 * 30) {
-                    PopCheckPoint oldCK = inflightReviveRequestMap.firstKey();
+                    PopCheckPoint oldCK = firstEntry.getKey();
                     rePutCK(oldCK, pair);
                     inflightReviveRequestMap.remove(oldCK);
                 }
@@ -515,6 +542,40 @@ public class PopReviveService extends ServiceThread {
             return;
         }
         inflightReviveRequestMap.put(popCheckPoint, new Pair<>(System.currentTimeMillis(), false));
+        List<CompletableFuture<Pair<Long, Boolean>>> futureList = reviveUnackedMessages(popCheckPoint);
+        CompletableFuture.allOf(futureList.toArray(new CompletableFuture[0]))
+            .whenComplete((v, e) -> {
+                for (CompletableFuture<Pair<Long, Boolean>> future : futureList) {
+                    Pair<Long, Boolean> pair = future.getNow(new Pair<>(0L, false));
+                    if (!pair.getObject2()) {
+                        rePutCK(popCheckPoint, pair);
+                    }
+                }
+
+                // checkpoints may complete on several lookup threads at once
+                synchronized (inflightReviveRequestMap) {
+                    if (inflightReviveRequestMap.containsKey(popCheckPoint)) {
+                        inflightReviveRequestMap.get(popCheckPoint).setObject2(true);
+                    }
+                    Iterator<Map.Entry<PopCheckPoint, Pair<Long, Boolean>>> iterator = inflightReviveRequestMap.entrySet().iterator();
+                    while (iterator.hasNext()) {
+                        Map.Entry<PopCheckPoint, Pair<Long, Boolean>> entry = iterator.next();
+                        if (!entry.getValue().getObject2()) {
+                            break;
+                        }
+                        brokerController.getConsumerOffsetManager().commitOffset(PopAckConstants.LOCAL_HOST, PopAckConstants.REVIVE_GROUP, reviveTopic, queueId, entry.getKey().getReviveOffset());
+                        iterator.remove();
+                    }
+                }
+            });
+    }
+
+    /**
+     * Looks up every message of a checkpoint that is not acked yet and writes it to the retry topic.
+     *
+     * @return one future per message, holding its offset and whether it no longer needs a retry
+     */
+    private List<CompletableFuture<Pair<Long, Boolean>>> reviveUnackedMessages(PopCheckPoint popCheckPoint) {
         List<CompletableFuture<Pair<Long, Boolean>>> futureList = new ArrayList<>(popCheckPoint.getNum());
         for (int j = 0; j < popCheckPoint.getNum(); j++) {
             if (DataConverter.getBit(popCheckPoint.getBitMap(), j)) {
@@ -546,32 +607,95 @@ public class PopReviveService extends ServiceThread {
                 });
             futureList.add(future);
         }
-        CompletableFuture.allOf(futureList.toArray(new CompletableFuture[0]))
-            .whenComplete((v, e) -> {
-                for (CompletableFuture<Pair<Long, Boolean>> future : futureList) {
-                    Pair<Long, Boolean> pair = future.getNow(new Pair<>(0L, false));
-                    if (!pair.getObject2()) {
-                        rePutCK(popCheckPoint, pair);
-                    }
-                }
+        return futureList;
+    }
 
-                if (inflightReviveRequestMap.containsKey(popCheckPoint)) {
-                    inflightReviveRequestMap.get(popCheckPoint).setObject2(true);
+    /**
+     * Revives the checkpoints of this queue that are due in the pop state store. A checkpoint leaves the store
+     * only after all of its messages are acked or retried. The round waits for its retries for a bounded time,
+     * the checkpoints still in flight after that are skipped by the next scans until they are replaced.
+     */
+    protected void reviveFromStateStore() throws Exception {
+        PopStateStore popStateStore = brokerController.getPopStateStore();
+        long reviveTimeTo = System.currentTimeMillis() - PopAckConstants.ackTimeInterval - PopAckConstants.SECOND;
+        List<PopCheckPoint> ckList = popStateStore.scanExpiredCheckPoints(queueId, reviveTimeTo,
+            brokerController.getBrokerConfig().getPopStateScanMaxNum());
+        if (ckList.isEmpty()) {
+            return;
+        }
+        int inflightNum = 0;
+        List<CompletableFuture<Void>> reviveFutureList = new ArrayList<>(ckList.size());
+        for (PopCheckPoint popCheckPoint : ckList) {
+            String ckKey = buildStateStoreCkKey(popCheckPoint);
+            if (!inflightStateStoreCkSet.add(ckKey)) {
+                inflightNum++;
+                continue;
+            }
+            String normalTopic = KeyBuilder.parseNormalTopic(popCheckPoint.getTopic(), popCheckPoint.getCId());
+            if (brokerController.getTopicConfigManager().selectTopicConfig(normalTopic) == null
+                || brokerController.getSubscriptionGroupManager().findSubscriptionGroupConfig(popCheckPoint.getCId()) == null) {
+                POP_LOGGER.warn("reviveQueueId={}, can not get normal topic {} or cid {}, then continue", queueId, popCheckPoint.getTopic(), popCheckPoint.getCId());
+                try {
+                    popStateStore.replaceCheckPoint(queueId, popCheckPoint, Collections.emptyList());
+                } finally {
+                    inflightStateStoreCkSet.remove(ckKey);
                 }
-                for (Map.Entry<PopCheckPoint, Pair<Long, Boolean>> entry : inflightReviveRequestMap.entrySet()) {
-                    PopCheckPoint oldCK = entry.getKey();
-                    Pair<Long, Boolean> pair = entry.getValue();
-                    if (pair.getObject2()) {
-                        brokerController.getConsumerOffsetManager().commitOffset(PopAckConstants.LOCAL_HOST, PopAckConstants.REVIVE_GROUP, reviveTopic, queueId, oldCK.getReviveOffset());
-                        inflightReviveRequestMap.remove(oldCK);
-                    } else {
-                        break;
+                continue;
+            }
+            List<CompletableFuture<Pair<Long, Boolean>>> futureList = reviveUnackedMessages(popCheckPoint);
+            reviveFutureList.add(CompletableFuture.allOf(futureList.toArray(new CompletableFuture[0]))
+                .whenComplete((v, e) -> {
+                    try {
+                        List<PopCheckPoint> retryCkList = new ArrayList<>();
+                        for (CompletableFuture<Pair<Long, Boolean>> future : futureList) {
+                            Pair<Long, Boolean> pair = future.getNow(new Pair<>(0L, false));
+                            if (!pair.getObject2()) {
+                                retryCkList.add(buildStateStoreRetryCK(popCheckPoint, pair));
+                            }
+                        }
+                        popStateStore.replaceCheckPoint(queueId, popCheckPoint, retryCkList);
+                    } finally {
+                        inflightStateStoreCkSet.remove(ckKey);
                     }
-                }
-            });
+                }));
+        }
+        long waitMillis = brokerController.getBrokerConfig().getPopStateReviveWaitMillis();
+        try {
+            CompletableFuture.allOf(reviveFutureList.toArray(new CompletableFuture[0])).get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            POP_LOGGER.warn("reviveQueueId={}, revive from pop state store not finished in {}ms, ckNum={}", queueId, waitMillis, ckList.size());
+        }
+        currentReviveMessageTimestamp = ckList.get(0).getReviveTime();
+        POP_LOGGER.info("reviveQueueId={}, revive from pop state store finish, ckNum={}, inflightNum={}, ckDelay={}",
+            queueId, ckList.size(), inflightNum, (System.currentTimeMillis() - ckList.get(0).getReviveTime()) / 1000);
+    }
+
+    private static String buildStateStoreCkKey(PopCheckPoint ck) {
+        return ck.getTopic() + PopAckConstants.SPLIT + ck.getCId() + PopAckConstants.SPLIT + ck.getQueueId()
+            + PopAckConstants.SPLIT + ck.getStartOffset() + PopAckConstants.SPLIT + ck.getPopTime()
+            + PopAckConstants.SPLIT + ck.getReviveTime() + PopAckConstants.SPLIT + ck.getBrokerName();
+    }
+
+    /**
+     * Builds the checkpoint of a message failed to be retried, due again after a backoff growing with the times it
+     * has been put back, so that it is not revived again by the very next scan.
+     */
+    private PopCheckPoint buildStateStoreRetryCK(PopCheckPoint oldCK, Pair<Long, Boolean> pair) {
+        PopCheckPoint newCk = buildRetryCK(oldCK, pair);
+        int rePutTimes = oldCK.parseRePutTimes();
+        long backoffMillis = TimeUnit.SECONDS.toMillis(
+            STATE_STORE_RETRY_INTERVALS_IN_SECONDS[Math.min(rePutTimes, STATE_STORE_RETRY_INTERVALS_IN_SECONDS.length - 1)]);
+        newCk.setInvisibleTime(System.currentTimeMillis() + backoffMillis - newCk.getPopTime());
+        newCk.setRePutTimes(String.valueOf(rePutTimes + 1));
+        return newCk;
     }
 
     private void rePutCK(PopCheckPoint oldCK, Pair<Long, Boolean> pair) {
+        MessageExtBrokerInner ckMsg = brokerController.getPopMessageProcessor().buildCkMsg(buildRetryCK(oldCK, pair), queueId);
+        brokerController.getMessageStore().putMessage(ckMsg);
+    }
+
+    private PopCheckPoint buildRetryCK(PopCheckPoint oldCK, Pair<Long, Boolean> pair) {
         PopCheckPoint newCk = new PopCheckPoint();
         newCk.setBitMap(0);
         newCk.setNum((byte) 1);
@@ -583,8 +707,7 @@ public class PopReviveService extends ServiceThread {
         newCk.setQueueId(oldCK.getQueueId());
         newCk.setBrokerName(oldCK.getBrokerName());
         newCk.addDiff(0);
-        MessageExtBrokerInner ckMsg = brokerController.getPopMessageProcessor().buildCkMsg(newCk, queueId);
-        brokerController.getMessageStore().putMessage(ckMsg);
+        return newCk;
     }
 
     public long getReviveBehindMillis() {
@@ -622,6 +745,10 @@ public class PopReviveService extends ServiceThread {
                     continue;
                 }
 
+                if (brokerController.getPopStateStore() != null) {
+                    reviveFromStateStore();
+                }
+
                 if (!brokerController.getMessageStore().getMessageStoreConfig().isTimerWheelEnable()) {
                     POP_LOGGER.warn("skip revive topic because timerWheelEnable is false");
                     continue;
@@ -651,7 +778,7 @@ public class PopReviveService extends ServiceThread {
                 POP_LOGGER.info("reviveQueueId={}, revive finish,old offset is {}, new offset is {}, ckDelay={}  ",
                     queueId, consumeReviveObj.oldOffset, consumeReviveObj.newOffset, delay);
 
-                if (sortList == null || sortList.isEmpty()) {
+                if ((sortList == null || sortList.isEmpty()) && brokerController.getPopStateStore() == null) {
                     POP_LOGGER.info("reviveQueueId={}, has no new msg, take a rest {}", queueId, slow);
                     this.waitForRunning(slow * brokerController.getBrokerConfig().getReviveInterval());
                     if (slow < brokerController.getBrokerConfig().getReviveMaxSlow()) {
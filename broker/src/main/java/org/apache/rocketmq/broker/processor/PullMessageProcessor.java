@@ -19,6 +19,7 @@ package org.apache.rocketmq.broker.processor;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.client.ClientChannelInfo;
@@ -692,20 +693,29 @@ public class PullMessageProcessor implements NettyRequestProcessor {
 
     protected void executeConsumeMessageHookBefore(RemotingCommand request, PullMessageRequestHeader requestHeader,
         GetMessageResult getMessageResult, boolean brokerAllowSuspend, int responseCode) {
+        this.executeConsumeMessageHookBefore(request.getExtFields(), requestHeader.getConsumerGroup(),
+            requestHeader.getTopic(), requestHeader.getQueueId(), getMessageResult, brokerAllowSuspend, responseCode);
+    }
+
+    /**
+     * Also called for the batches pushed to pull streams, with the ext fields of the request opening the stream.
+     */
+    public void executeConsumeMessageHookBefore(Map<String, String> extFields, String consumerGroup, String topic,
+        int queueId, GetMessageResult getMessageResult, boolean brokerAllowSuspend, int responseCode) {
         if (this.hasConsumeMessageHook()) {
-            String owner = request.getExtFields().get(BrokerStatsManager.COMMERCIAL_OWNER);
-            String authType = request.getExtFields().get(BrokerStatsManager.ACCOUNT_AUTH_TYPE);
-            String ownerParent = request.getExtFields().get(BrokerStatsManager.ACCOUNT_OWNER_PARENT);
-            String ownerSelf = request.getExtFields().get(BrokerStatsManager.ACCOUNT_OWNER_SELF);
+            String owner = extFields.get(BrokerStatsManager.COMMERCIAL_OWNER);
+            String authType = extFields.get(BrokerStatsManager.ACCOUNT_AUTH_TYPE);
+            String ownerParent = extFields.get(BrokerStatsManager.ACCOUNT_OWNER_PARENT);
+            String ownerSelf = extFields.get(BrokerStatsManager.ACCOUNT_OWNER_SELF);
 
             ConsumeMessageContext context = new ConsumeMessageContext();
-            context.setConsumerGroup(requestHeader.getConsumerGroup());
-            context.setTopic(requestHeader.getTopic());
-            context.setQueueId(requestHeader.getQueueId());
+            context.setConsumerGroup(consumerGroup);
+            context.setTopic(topic);
+            context.setQueueId(queueId);
             context.setAccountAuthType(authType);
             context.setAccountOwnerParent(ownerParent);
             context.setAccountOwnerSelf(ownerSelf);
-            context.setNamespace(NamespaceUtil.getNamespaceFromResource(requestHeader.getTopic()));
+            context.setNamespace(NamespaceUtil.getNamespaceFromResource(topic));
 
             switch (responseCode) {
                 case ResponseCode.SUCCESS:
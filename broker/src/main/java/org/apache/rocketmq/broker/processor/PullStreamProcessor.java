@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.processor;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.broker.filter.ConsumerFilterData;
+import org.apache.rocketmq.broker.filter.ConsumerFilterManager;
+import org.apache.rocketmq.broker.filter.ExpressionForRetryMessageFilter;
+import org.apache.rocketmq.broker.filter.ExpressionMessageFilter;
+import org.apache.rocketmq.broker.longpolling.PullStream;
+import org.apache.rocketmq.broker.longpolling.PullStreamService;
+import org.apache.rocketmq.common.TopicConfig;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.constant.PermName;
+import org.apache.rocketmq.common.filter.ExpressionType;
+import org.apache.rocketmq.common.help.FAQUrl;
+import org.apache.rocketmq.logging.org.slf4j.Logger;
+import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
+import org.apache.rocketmq.remoting.common.RemotingHelper;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+import org.apache.rocketmq.remoting.netty.NettyRequestProcessor;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RequestCode;
+import org.apache.rocketmq.remoting.protocol.ResponseCode;
+import org.apache.rocketmq.remoting.protocol.filter.FilterAPI;
+import org.apache.rocketmq.remoting.protocol.header.AddPullStreamCreditRequestHeader;
+import org.apache.rocketmq.remoting.protocol.header.ClosePullStreamRequestHeader;
+import org.apache.rocketmq.remoting.protocol.header.OpenPullStreamRequestHeader;
+import org.apache.rocketmq.remoting.protocol.heartbeat.ConsumeType;
+import org.apache.rocketmq.remoting.protocol.heartbeat.MessageModel;
+import org.apache.rocketmq.remoting.protocol.heartbeat.SubscriptionData;
+import org.apache.rocketmq.remoting.protocol.subscription.SubscriptionGroupConfig;
+import org.apache.rocketmq.store.MessageFilter;
+import org.apache.rocketmq.store.config.BrokerRole;
+
+/**
+ * Opens, grants credit to and closes pull streams, the messages themselves are pushed by {@link PullStreamService}.
+ */
+public class PullStreamProcessor implements NettyRequestProcessor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
+    private final BrokerController brokerController;
+    private final PullStreamService pullStreamService;
+
+    public PullStreamProcessor(final BrokerController brokerController) {
+        this.brokerController = brokerController;
+        this.pullStreamService = new PullStreamService(brokerController);
+    }
+
+    @Override
+    public boolean rejectRequest() {
+        return false;
+    }
+
+    public void notifyMessageArriving(final String topic, final int queueId) {
+        this.pullStreamService.notifyMessageArriving(topic, queueId);
+    }
+
+    @Override
+    public RemotingCommand processRequest(final ChannelHandlerContext ctx,
+        RemotingCommand request) throws RemotingCommandException {
+        switch (request.getCode()) {
+            case RequestCode.OPEN_PULL_STREAM:
+                return this.openStream(ctx.channel(), request);
+            case RequestCode.ADD_PULL_STREAM_CREDIT:
+                return this.addCredit(ctx.channel(), request);
+            case RequestCode.CLOSE_PULL_STREAM:
+                return this.closeStream(ctx.channel(), request);
+            default:
+                break;
+        }
+        return null;
+    }
+
+    private RemotingCommand openStream(final Channel channel, RemotingCommand request) throws RemotingCommandException {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        final OpenPullStreamRequestHeader requestHeader =
+            (OpenPullStreamRequestHeader) request.decodeCommandCustomHeader(OpenPullStreamRequestHeader.class);
+        response.setOpaque(request.getOpaque());
+
+        // answered with REQUEST_CODE_NOT_SUPPORTED, the client falls back to pull requests for the queue
+        if (!this.brokerController.getBrokerConfig().isPullStreamEnable()) {
+            response.setCode(ResponseCode.REQUEST_CODE_NOT_SUPPORTED);
+            response.setRemark("the broker[" + this.brokerController.getBrokerConfig().getBrokerIP1() + "] does not accept pull streams");
+            return response;
+        }
+        if (this.brokerController.getMessageStoreConfig().getBrokerRole() == BrokerRole.SLAVE) {
+            response.setCode(ResponseCode.REQUEST_CODE_NOT_SUPPORTED);
+            response.setRemark("pull stream is only served by the master, the broker[" + this.brokerController.getBrokerConfig().getBrokerIP1() + "] is a slave");
+            return response;
+        }
+        if (this.brokerController.getTopicQueueMappingManager().getTopicQueueMapping(requestHeader.getTopic()) != null) {
+            response.setCode(ResponseCode.REQUEST_CODE_NOT_SUPPORTED);
+            response.setRemark("pull stream is not supported by static topic " + requestHeader.getTopic());
+            return response;
+        }
+
+        if (!PermName.isReadable(this.brokerController.getBrokerConfig().getBrokerPermission())) {
+            response.setCode(ResponseCode.NO_PERMISSION);
+            response.setRemark(String.format("the broker[%s] pulling message is forbidden",
+                this.brokerController.getBrokerConfig().getBrokerIP1()));
+            return response;
+        }
+
+        SubscriptionGroupConfig subscriptionGroupConfig =
+            this.brokerController.getSubscriptionGroupManager().findSubscriptionGroupConfig(requestHeader.getConsumerGroup());
+        if (null == subscriptionGroupConfig) {
+            response.setCode(ResponseCode.SUBSCRIPTION_GROUP_NOT_EXIST);
+            response.setRemark(String.format("subscription group [%s] does not exist, %s", requestHeader.getConsumerGroup(), FAQUrl.suggestTodo(FAQUrl.SUBSCRIPTION_GROUP_NOT_EXIST)));
+            return response;
+        }
+
+        if (!subscriptionGroupConfig.isConsumeEnable()) {
+            response.setCode(ResponseCode.NO_PERMISSION);
+            response.setRemark("subscription group no permission, " + requestHeader.getConsumerGroup());
+            return response;
+        }
+
+        TopicConfig topicConfig = this.brokerController.getTopicConfigManager().selectTopicConfig(requestHeader.getTopic());
+        if (null == topicConfig) {
+            LOGGER.error("the topic {} not exist, consumer: {}", requestHeader.getTopic(), RemotingHelper.parseChannelRemoteAddr(channel));
+            response.setCode(ResponseCode.TOPIC_NOT_EXIST);
+            response.setRemark(String.format("topic[%s] not exist, apply first please! %s", requestHeader.getTopic(), FAQUrl.suggestTodo(FAQUrl.APPLY_TOPIC_URL)));
+            return response;
+        }
+
+        if (!PermName.isReadable(topicConfig.getPerm())) {
+            response.setCode(ResponseCode.NO_PERMISSION);
+            response.setRemark("the topic[" + requestHeader.getTopic() + "] pulling message is forbidden");
+            return response;
+        }
+
+        if (requestHeader.getQueueId() < 0 || requestHeader.getQueueId() >= topicConfig.getReadQueueNums()) {
+            String errorInfo = String.format("queueId[%d] is illegal, topic:[%s] topicConfig.readQueueNums:[%d] consumer:[%s]",
+                requestHeader.getQueueId(), requestHeader.getTopic(), topicConfig.getReadQueueNums(), channel.remoteAddress());
+            LOGGER.warn(errorInfo);
+            response.setCode(ResponseCode.SYSTEM_ERROR);
+            response.setRemark(errorInfo);
+            return response;
+        }
+
+        if (requestHeader.getCredit() <= 0) {
+            response.setCode(ResponseCode.SYSTEM_ERROR);
+            response.setRemark("the credit of a pull stream must be positive");
+            return response;
+        }
+
+        this.brokerController.getConsumerManager().compensateBasicConsumerInfo(requestHeader.getConsumerGroup(),
+            ConsumeType.CONSUME_PASSIVELY, MessageModel.CLUSTERING);
+
+        SubscriptionData subscriptionData;
+        ConsumerFilterData consumerFilterData = null;
+        try {
+            subscriptionData = FilterAPI.build(
+                requestHeader.getTopic(), requestHeader.getSubscription(), requestHeader.getExpressionType()
+            );
+            this.brokerController.getConsumerManager().compensateSubscribeData(requestHeader.getConsumerGroup(),
+                requestHeader.getTopic(), subscriptionData);
+
+            if (!ExpressionType.isTagType(subscriptionData.getExpressionType())) {
+                consumerFilterData = ConsumerFilterManager.build(
+                    requestHeader.getTopic(), requestHeader.getConsumerGroup(), requestHeader.getSubscription(),
+                    requestHeader.getExpressionType(), requestHeader.getSubVersion()
+                );
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Parse the consumer's subscription[{}] failed, group: {}", requestHeader.getSubscription(),
+                requestHeader.getConsumerGroup());
+            response.setCode(ResponseCode.SUBSCRIPTION_PARSE_FAILED);
+            response.setRemark("parse the consumer's subscription failed");
+            return response;
+        }
+
+        if (!ExpressionType.isTagType(subscriptionData.getExpressionType())
+            && !this.brokerController.getBrokerConfig().isEnablePropertyFilter()) {
+            response.setCode(ResponseCode.SYSTEM_ERROR);
+            response.setRemark("The broker does not support consumer to filter message by " + subscriptionData.getExpressionType());
+            return response;
+        }
+
+        MessageFilter messageFilter;
+        if (this.brokerController.getBrokerConfig().isFilterSupportRetry()) {
+            messageFilter = new ExpressionForRetryMessageFilter(subscriptionData, consumerFilterData,
+                this.brokerController.getConsumerFilterManager());
+        } else {
+            messageFilter = new ExpressionMessageFilter(subscriptionData, consumerFilterData,
+                this.brokerController.getConsumerFilterManager());
+        }
+
+        this.pullStreamService.openStream(new PullStream(channel, requestHeader.getStreamId(),
+            requestHeader.getConsumerGroup(), requestHeader.getTopic(), requestHeader.getQueueId(),
+            requestHeader.getQueueOffset(), requestHeader.getCredit(), messageFilter, request.getExtFields()));
+
+        response.setCode(ResponseCode.SUCCESS);
+        return response;
+    }
+
+    private RemotingCommand addCredit(final Channel channel, RemotingCommand request) throws RemotingCommandException {
+        final AddPullStreamCreditRequestHeader requestHeader =
+            (AddPullStreamCreditRequestHeader) request.decodeCommandCustomHeader(AddPullStreamCreditRequestHeader.class);
+        if (requestHeader.getCredit() > 0
+            && !this.pullStreamService.addCredit(PullStream.buildKey(channel, requestHeader.getStreamId()), requestHeader.getCredit())) {
+            LOGGER.debug("add credit to unknown pull stream {}, consumer: {}", requestHeader.getStreamId(),
+                RemotingHelper.parseChannelRemoteAddr(channel));
+        }
+        return null;
+    }
+
+    private RemotingCommand closeStream(final Channel channel, RemotingCommand request) throws RemotingCommandException {
+        final ClosePullStreamRequestHeader requestHeader =
+            (ClosePullStreamRequestHeader) request.decodeCommandCustomHeader(ClosePullStreamRequestHeader.class);
+        this.pullStreamService.closeStream(PullStream.buildKey(channel, requestHeader.getStreamId()));
+        return null;
+    }
+
+    public PullStreamService getPullStreamService() {
+        return pullStreamService;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.longpolling;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.remoting.netty.NettyRequestProcessor;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.header.PopMessageRequestHeader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PopLongPollingServiceTest {
+    private static final String TOPIC = "PopPollingTopic";
+    private static final String GROUP = "PopPollingGroup";
+
+    @Mock
+    private BrokerController brokerController;
+    @Mock
+    private NettyRequestProcessor processor;
+    @Mock
+    private ChannelHandlerContext ctx;
+    @Mock
+    private Channel channel;
+
+    private final BrokerConfig brokerConfig = new BrokerConfig();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private PopLongPollingService popLongPollingService;
+
+    @Before
+    public void before() {
+        brokerConfig.setPopPollingShardNum(4);
+        when(brokerController.getBrokerConfig()).thenReturn(brokerConfig);
+        when(brokerController.getPullMessageExecutor()).thenReturn(executor);
+        when(ctx.channel()).thenReturn(channel);
+        when(channel.isActive()).thenReturn(true);
+        popLongPollingService = new PopLongPollingService(brokerController, processor, false);
+        popLongPollingService.start();
+    }
+
+    @After
+    public void after() {
+        popLongPollingService.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testNotifyAndTimeoutAcrossShards() throws Exception {
+        int topicNum = 8;
+        for (int i = 0; i < topicNum; i++) {
+            assertThat(popLongPollingService.polling(ctx, RemotingCommand.createRequestCommand(0, null),
+                buildHeader(TOPIC + i, 0, 60 * 1000))).isEqualTo(PollingResult.POLLING_SUC);
+        }
+        assertThat(popLongPollingService.getPollingNum()).isEqualTo(topicNum);
+        assertThat(popLongPollingService.getPollingNum(TOPIC + 3, GROUP, 0)).isEqualTo(1);
+
+        assertThat(popLongPollingService.notifyMessageArriving(TOPIC + 3, GROUP, 0)).isTrue();
+        assertThat(popLongPollingService.notifyMessageArriving(TOPIC + 3, GROUP, 0)).isFalse();
+        assertThat(popLongPollingService.getPollingNum(TOPIC + 3, GROUP, 0)).isEqualTo(0);
+        assertThat(popLongPollingService.getPollingNum()).isEqualTo(topicNum - 1);
+        verify(processor, timeout(3000)).processRequest(any(), any());
+
+        // woken up by the timeout thread of its shard
+        assertThat(popLongPollingService.polling(ctx, RemotingCommand.createRequestCommand(0, null),
+            buildHeader(TOPIC + 3, 0, 200))).isEqualTo(PollingResult.POLLING_SUC);
+        await().atMost(Duration.ofSeconds(3))
+            .until(() -> popLongPollingService.getPollingNum(TOPIC + 3, GROUP, 0) == 0);
+        verify(processor, atLeastOnce()).processRequest(any(), any());
+        assertThat(popLongPollingService.getPollingNum()).isEqualTo(topicNum - 1);
+    }
+
+    @Test
+    public void testNotPollingAfterShutdown() throws Exception {
+        assertThat(popLongPollingService.polling(ctx, RemotingCommand.createRequestCommand(0, null),
+            buildHeader(TOPIC, 0, 60 * 1000))).isEqualTo(PollingResult.POLLING_SUC);
+        popLongPollingService.shutdown();
+        assertThat(popLongPollingService.getPollingNum(TOPIC, GROUP, 0)).isEqualTo(0);
+        assertThat(popLongPollingService.polling(ctx, RemotingCommand.createRequestCommand(0, null),
+            buildHeader(TOPIC, 0, 60 * 1000))).isEqualTo(PollingResult.NOT_POLLING);
+        verify(processor, never()).rejectRequest();
+    }
+
+    private PollingHeader buildHeader(String topic, int queueId, long pollTime) {
+        PopMessageRequestHeader requestHeader = new PopMessageRequestHeader();
+        requestHeader.setTopic(topic);
+        requestHeader.setConsumerGroup(GROUP);
+        requestHeader.setQueueId(queueId);
+        requestHeader.setBornTime(System.currentTimeMillis());
+        requestHeader.setPollTime(pollTime);
+        return new PollingHeader(requestHeader);
+    }
+}
@@ -18,6 +18,7 @@
 package org.apache.rocketmq.broker.longpolling;
 
 import io.netty.channel.Channel;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.concurrent.Executors;
 import org.apache.commons.lang3.StringUtils;
@@ -36,6 +37,12 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -120,4 +127,55 @@ public class PullRequestHoldServiceTest {
         Assertions.assertThatCode(() -> pullRequestHoldService.notifyMasterOnline()).doesNotThrowAnyException();
     }
 
+    @Test
+    public void timingWheelExpireTest() {
+        brokerConfig.setEnablePullHoldTimingWheel(true);
+        brokerConfig.setPullHoldTimingWheelTickMillis(20);
+        when(brokerController.getMessageStore()).thenReturn(defaultMessageStore);
+        when(defaultMessageStore.getMaxOffsetInQueue(anyString(), anyInt())).thenReturn(0L);
+
+        PullRequest expiring = new PullRequest(remotingCommand, channel, 200, System.currentTimeMillis(), 0L,
+            subscriptionData, defaultMessageFilter);
+        PullRequest holding = new PullRequest(remotingCommand, channel, 60 * 1000, System.currentTimeMillis(), 0L,
+            subscriptionData, defaultMessageFilter);
+        pullRequestHoldService.suspendPullRequest(TEST_TOPIC, DEFAULT_QUEUE_ID, expiring);
+        pullRequestHoldService.suspendPullRequest(TEST_TOPIC, DEFAULT_QUEUE_ID, holding);
+
+        await().atMost(Duration.ofSeconds(3)).until(expiring::isComplete);
+        Assertions.assertThat(holding.isComplete()).isFalse();
+        Assertions.assertThat(pullRequestHoldService.pullRequestTable.get(TEST_TOPIC + "@" + DEFAULT_QUEUE_ID)
+            .getPullRequestList()).containsExactly(holding);
+
+        when(defaultMessageFilter.isMatchedByConsumeQueue(any(), any())).thenReturn(true);
+        pullRequestHoldService.notifyMessageArriving(TEST_TOPIC, DEFAULT_QUEUE_ID, MAX_OFFSET);
+        Assertions.assertThat(holding.isComplete()).isTrue();
+    }
+
+    @Test
+    public void suspendWithArrivalBeforeHoldTest() {
+        brokerConfig.setEnablePullHoldTimingWheel(true);
+        when(brokerController.getMessageStore()).thenReturn(defaultMessageStore);
+        when(defaultMessageStore.getMaxOffsetInQueue(anyString(), anyInt())).thenReturn(0L);
+        when(defaultMessageFilter.isMatchedByConsumeQueue(any(), any())).thenReturn(true);
+
+        // the first request held on the queue asks the store
+        PullRequest first = new PullRequest(remotingCommand, channel, 60 * 1000, System.currentTimeMillis(), 0L, 0L,
+            subscriptionData, defaultMessageFilter);
+        pullRequestHoldService.suspendPullRequest(TEST_TOPIC, DEFAULT_QUEUE_ID, first);
+        Assertions.assertThat(first.isComplete()).isFalse();
+        pullRequestHoldService.notifyMessageArriving(TEST_TOPIC, DEFAULT_QUEUE_ID, MAX_OFFSET);
+        Assertions.assertThat(first.isComplete()).isTrue();
+
+        // a message arrived after the pull saw the max offset, the request is woken up when held
+        PullRequest behind = new PullRequest(remotingCommand, channel, 60 * 1000, System.currentTimeMillis(),
+            MAX_OFFSET - 1, MAX_OFFSET - 1, subscriptionData, defaultMessageFilter);
+        pullRequestHoldService.suspendPullRequest(TEST_TOPIC, DEFAULT_QUEUE_ID, behind);
+        Assertions.assertThat(behind.isComplete()).isTrue();
+
+        PullRequest latest = new PullRequest(remotingCommand, channel, 60 * 1000, System.currentTimeMillis(),
+            MAX_OFFSET, MAX_OFFSET, subscriptionData, defaultMessageFilter);
+        pullRequestHoldService.suspendPullRequest(TEST_TOPIC, DEFAULT_QUEUE_ID, latest);
+        Assertions.assertThat(latest.isComplete()).isFalse();
+        verify(defaultMessageStore, times(1)).getMaxOffsetInQueue(TEST_TOPIC, DEFAULT_QUEUE_ID);
+    }
 }
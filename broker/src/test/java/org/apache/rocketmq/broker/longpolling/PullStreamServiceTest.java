@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.longpolling;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.broker.processor.PullMessageProcessor;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RequestCode;
+import org.apache.rocketmq.remoting.protocol.ResponseCode;
+import org.apache.rocketmq.remoting.protocol.header.PushPullStreamMessageRequestHeader;
+import org.apache.rocketmq.store.GetMessageResult;
+import org.apache.rocketmq.store.GetMessageStatus;
+import org.apache.rocketmq.store.MessageStore;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+import org.apache.rocketmq.store.config.BrokerRole;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class PullStreamServiceTest {
+    private static final String GROUP = "TEST_GROUP";
+    private static final String TOPIC = "TEST_TOPIC";
+    private static final int QUEUE_ID = 0;
+
+    @Mock
+    private BrokerController brokerController;
+    @Mock
+    private MessageStore messageStore;
+    @Mock
+    private BrokerStatsManager brokerStatsManager;
+    @Mock
+    private PullMessageProcessor pullMessageProcessor;
+
+    private final BrokerConfig brokerConfig = new BrokerConfig();
+    private final MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+    private final Map<String, String> extFields = new HashMap<>();
+    private final EmbeddedChannel channel = new EmbeddedChannel();
+    private PullStreamService pullStreamService;
+
+    @Before
+    public void before() {
+        when(brokerController.getBrokerConfig()).thenReturn(brokerConfig);
+        when(brokerController.getMessageStoreConfig()).thenReturn(messageStoreConfig);
+        when(brokerController.getPullMessageProcessor()).thenReturn(pullMessageProcessor);
+        when(brokerController.getMessageStore()).thenReturn(messageStore);
+        when(brokerController.getBrokerStatsManager()).thenReturn(brokerStatsManager);
+        when(brokerController.getPullMessageExecutor()).thenReturn(MoreExecutors.newDirectExecutorService());
+        pullStreamService = new PullStreamService(brokerController);
+    }
+
+    @Test
+    public void testPushConsumesCredit() {
+        when(messageStore.getMessage(eq(GROUP), eq(TOPIC), eq(QUEUE_ID), eq(0L), anyInt(), any()))
+            .thenReturn(foundResult(0, 3));
+        when(messageStore.getMessage(eq(GROUP), eq(TOPIC), eq(QUEUE_ID), eq(3L), anyInt(), any()))
+            .thenReturn(foundResult(3, 2));
+
+        PullStream stream = newStream(5);
+        pullStreamService.openStream(stream);
+
+        assertPushed(ResponseCode.SUCCESS, 3, 3L);
+        assertPushed(ResponseCode.SUCCESS, 2, 5L);
+        assertThat(stream.getCredit()).isZero();
+        assertThat(stream.getNextOffset()).isEqualTo(5L);
+        verify(messageStore, never()).getMessage(anyString(), anyString(), anyInt(), eq(5L), anyInt(), any());
+
+        // nothing is pushed until the client grants credit back
+        pullStreamService.notifyMessageArriving(TOPIC, QUEUE_ID);
+        assertThat((Object) channel.readOutbound()).isNull();
+
+        when(messageStore.getMessage(eq(GROUP), eq(TOPIC), eq(QUEUE_ID), eq(5L), eq(1), any()))
+            .thenReturn(foundResult(5, 1));
+        assertThat(pullStreamService.addCredit(stream.getKey(), 1)).isTrue();
+        assertPushed(ResponseCode.SUCCESS, 1, 6L);
+        assertThat(stream.getCredit()).isZero();
+
+        // every pushed batch goes through the consume message hooks as a pulled one does
+        verify(pullMessageProcessor).executeConsumeMessageHookBefore(eq(extFields), eq(GROUP), eq(TOPIC), eq(QUEUE_ID),
+            argThat(result -> result.getMessageCount() == 3), eq(true), eq(ResponseCode.SUCCESS));
+        verify(pullMessageProcessor).executeConsumeMessageHookBefore(eq(extFields), eq(GROUP), eq(TOPIC), eq(QUEUE_ID),
+            argThat(result -> result.getMessageCount() == 2), eq(true), eq(ResponseCode.SUCCESS));
+        verify(pullMessageProcessor).executeConsumeMessageHookBefore(eq(extFields), eq(GROUP), eq(TOPIC), eq(QUEUE_ID),
+            argThat(result -> result.getMessageCount() == 1), eq(true), eq(ResponseCode.SUCCESS));
+    }
+
+    @Test
+    public void testOffsetMovedClosesStream() {
+        GetMessageResult result = new GetMessageResult();
+        result.setStatus(GetMessageStatus.OFFSET_TOO_SMALL);
+        result.setNextBeginOffset(10L);
+        when(messageStore.getMessage(anyString(), anyString(), anyInt(), anyLong(), anyInt(), any())).thenReturn(result);
+
+        PullStream stream = newStream(32);
+        pullStreamService.openStream(stream);
+
+        assertPushed(ResponseCode.PULL_OFFSET_MOVED, 0, 10L);
+        assertThat(stream.isClosed()).isTrue();
+        assertThat(pullStreamService.getStreamNum()).isZero();
+        assertThat(pullStreamService.addCredit(stream.getKey(), 1)).isFalse();
+    }
+
+    @Test
+    public void testHeartbeatOnIdleStream() {
+        GetMessageResult result = new GetMessageResult();
+        result.setStatus(GetMessageStatus.OFFSET_OVERFLOW_ONE);
+        result.setNextBeginOffset(0L);
+        when(messageStore.getMessage(anyString(), anyString(), anyInt(), anyLong(), anyInt(), any())).thenReturn(result);
+        when(messageStore.getMaxOffsetInQueue(TOPIC, QUEUE_ID)).thenReturn(0L);
+        brokerConfig.setPullStreamHeartbeatIntervalMillis(0);
+
+        pullStreamService.openStream(newStream(32));
+        assertThat((Object) channel.readOutbound()).isNull();
+
+        pullStreamService.checkStreams();
+        assertPushed(ResponseCode.PULL_NOT_FOUND, 0, 0L);
+        assertThat(pullStreamService.getStreamNum()).isEqualTo(1);
+
+        channel.close();
+        pullStreamService.checkStreams();
+        assertThat(pullStreamService.getStreamNum()).isZero();
+    }
+
+    @Test
+    public void testSlaveDropsStreams() {
+        GetMessageResult result = new GetMessageResult();
+        result.setStatus(GetMessageStatus.OFFSET_OVERFLOW_ONE);
+        when(messageStore.getMessage(anyString(), anyString(), anyInt(), anyLong(), anyInt(), any())).thenReturn(result);
+
+        PullStream stream = newStream(32);
+        pullStreamService.openStream(stream);
+        assertThat(pullStreamService.getStreamNum()).isEqualTo(1);
+
+        messageStoreConfig.setBrokerRole(BrokerRole.SLAVE);
+        pullStreamService.checkStreams();
+        assertThat(stream.isClosed()).isTrue();
+        assertThat(pullStreamService.getStreamNum()).isZero();
+    }
+
+    private PullStream newStream(int credit) {
+        return new PullStream(channel, 1L, GROUP, TOPIC, QUEUE_ID, 0L, credit, null, extFields);
+    }
+
+    private void assertPushed(int pullCode, int messageCount, long nextBeginOffset) {
+        RemotingCommand request = channel.readOutbound();
+        assertThat(request).isNotNull();
+        assertThat(request.getCode()).isEqualTo(RequestCode.PUSH_PULL_STREAM_MESSAGE);
+        assertThat(request.isOnewayRPC()).isTrue();
+        PushPullStreamMessageRequestHeader header = (PushPullStreamMessageRequestHeader) request.readCustomHeader();
+        assertThat(header.getPullCode()).isEqualTo(pullCode);
+        assertThat(header.getMessageCount()).isEqualTo(messageCount);
+        assertThat(header.getNextBeginOffset()).isEqualTo(nextBeginOffset);
+        if (messageCount > 0) {
+            assertThat(request.getBody()).hasSize(messageCount * 8);
+        }
+    }
+
+    private static GetMessageResult foundResult(long offset, int count) {
+        GetMessageResult result = new GetMessageResult();
+        result.setStatus(GetMessageStatus.FOUND);
+        for (int i = 0; i < count; i++) {
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            buffer.putLong(0, offset + i);
+            result.addMessage(new SelectMappedBufferResult(0, buffer, 8, null), offset + i);
+        }
+        result.setNextBeginOffset(offset + count);
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.longpolling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimingWheelTest {
+
+    @Test
+    public void testExpireInOrder() {
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 4, 1000);
+        assertThat(wheel.add(1000L, 1000)).isFalse();
+        assertThat(wheel.add(1005L, 1005)).isTrue();
+        assertThat(wheel.add(1100L, 1100)).isTrue();
+
+        List<Long> expired = new ArrayList<>();
+        wheel.advance(1004, expired::add);
+        assertThat(expired).isEmpty();
+        wheel.advance(1010, expired::add);
+        assertThat(expired).containsExactly(1005L);
+        wheel.advance(1099, expired::add);
+        assertThat(expired).containsExactly(1005L);
+        wheel.advance(1100, expired::add);
+        assertThat(expired).containsExactly(1005L, 1100L);
+        assertThat(wheel.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testNeverEarlyAndAtMostOneTickLate() {
+        final long tick = 10;
+        final long start = 123456;
+        TimingWheel<Long> wheel = new TimingWheel<>(tick, 8, start);
+        Random random = new Random(11);
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            // spans several levels of the wheel
+            long deadline = start + 1 + random.nextInt(200000);
+            assertThat(wheel.add(deadline, deadline)).isTrue();
+        }
+        assertThat(wheel.size()).isEqualTo(count);
+
+        List<Long> expired = new ArrayList<>();
+        for (long now = start; now <= start + 200000 + tick; now += 1 + random.nextInt(7)) {
+            final long currentTime = now;
+            expired.clear();
+            wheel.advance(now, deadline -> {
+                assertThat(deadline).isLessThanOrEqualTo(currentTime);
+                assertThat(currentTime - deadline).isLessThan(2 * tick);
+                expired.add(deadline);
+            });
+            count -= expired.size();
+        }
+        assertThat(count).isEqualTo(0);
+        assertThat(wheel.size()).isEqualTo(0);
+    }
+}
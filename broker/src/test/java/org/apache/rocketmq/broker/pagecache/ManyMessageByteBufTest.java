@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.pagecache;
+
+import io.netty.buffer.ByteBufAllocator;
+import java.nio.ByteBuffer;
+import org.apache.rocketmq.store.GetMessageResult;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+import org.apache.rocketmq.store.logfile.MappedFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ManyMessageByteBufTest {
+
+    @Test
+    public void testContentAndRelease() {
+        MappedFile mappedFile = mock(MappedFile.class);
+        ByteBuffer mapped = ByteBuffer.allocateDirect(16);
+        for (int i = 0; i < 16; i++) {
+            mapped.put((byte) i);
+        }
+        GetMessageResult getMessageResult = new GetMessageResult();
+        for (int i = 0; i < 2; i++) {
+            ByteBuffer slice = mapped.duplicate();
+            slice.position(i * 8).limit(i * 8 + 8);
+            getMessageResult.addMessage(new SelectMappedBufferResult(i * 8, slice.slice(), 8, mappedFile));
+        }
+        ByteBuffer header = ByteBuffer.allocate(4);
+        header.putInt(20);
+        header.flip();
+
+        ManyMessageByteBuf byteBuf = new ManyMessageByteBuf(ByteBufAllocator.DEFAULT, header, getMessageResult);
+        Assert.assertEquals(20, byteBuf.readableBytes());
+        Assert.assertEquals(3, byteBuf.numComponents());
+        Assert.assertEquals(20, byteBuf.readInt());
+        for (int i = 0; i < 16; i++) {
+            Assert.assertEquals(i, byteBuf.readByte());
+        }
+
+        byteBuf.retain();
+        byteBuf.release();
+        verify(mappedFile, never()).release();
+        Assert.assertTrue(byteBuf.release());
+        verify(mappedFile, times(2)).release();
+    }
+}
@@ -16,33 +16,51 @@
  */
 package org.apache.rocketmq.broker.processor;
 
+import com.alibaba.fastjson.JSON;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import java.util.Arrays;
+import java.util.List;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.client.ClientChannelInfo;
+import org.apache.rocketmq.broker.failover.EscapeBridge;
 import org.apache.rocketmq.broker.schedule.ScheduleMessageService;
 import org.apache.rocketmq.common.BrokerConfig;
 import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.PopAckConstants;
 import org.apache.rocketmq.common.TopicConfig;
+import org.apache.rocketmq.common.message.MessageExtBrokerInner;
 import org.apache.rocketmq.remoting.netty.NettyClientConfig;
 import org.apache.rocketmq.remoting.netty.NettyServerConfig;
 import org.apache.rocketmq.remoting.protocol.heartbeat.ConsumerData;
+import org.apache.rocketmq.store.AppendMessageResult;
+import org.apache.rocketmq.store.AppendMessageStatus;
 import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.PutMessageStatus;
 import org.apache.rocketmq.store.config.MessageStoreConfig;
 import org.apache.rocketmq.store.pop.AckMsg;
+import org.apache.rocketmq.store.pop.BatchAckMsg;
 import org.apache.rocketmq.store.pop.PopCheckPoint;
 import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import static org.apache.rocketmq.broker.processor.PullMessageProcessorTest.createConsumerData;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.Silent.class)
 public class PopBufferMergeServiceTest {
@@ -122,4 +140,102 @@ public class PopBufferMergeServiceTest {
             popBufferMergeService.shutdown(true);
         }
     }
+
+    @Test(timeout = 10_000)
+    public void testCoalesceAck() throws Exception {
+        brokerController.getBrokerConfig().setEnablePopAckCoalesce(true);
+        EscapeBridge escapeBridge = mock(EscapeBridge.class);
+        doReturn(escapeBridge).when(brokerController).getEscapeBridge();
+        when(escapeBridge.putMessageToSpecificQueue(any())).thenReturn(
+            new PutMessageResult(PutMessageStatus.PUT_OK, new AppendMessageResult(AppendMessageStatus.PUT_OK)));
+        PopBufferMergeService popBufferMergeService = new PopBufferMergeService(brokerController, popMessageProcessor);
+
+        long popTime = System.currentTimeMillis();
+        int reviveQid = 1;
+        long invisibleTime = 30_000;
+        BatchAckMsg batchAckMsg = new BatchAckMsg();
+        batchAckMsg.getAckOffsetList().addAll(Arrays.asList(102L, 103L));
+        assertThat(popBufferMergeService.coalesceAck(reviveQid, buildAck(new AckMsg(), 100, 100, popTime), invisibleTime)).isTrue();
+        assertThat(popBufferMergeService.coalesceAck(reviveQid, buildAck(new AckMsg(), 100, 101, popTime), invisibleTime)).isTrue();
+        assertThat(popBufferMergeService.coalesceAck(reviveQid, buildAck(batchAckMsg, 100, -1, popTime), invisibleTime)).isTrue();
+        assertThat(popBufferMergeService.coalesceAck(reviveQid, buildAck(new AckMsg(), 200, 200, popTime), invisibleTime)).isTrue();
+        assertThat(popBufferMergeService.getCoalescedAckSize()).isEqualTo(2);
+        // too close to the revive time to be delayed
+        assertThat(popBufferMergeService.coalesceAck(reviveQid, buildAck(new AckMsg(), 300, 300, popTime), 1000)).isFalse();
+
+        popBufferMergeService.start();
+        try {
+            ArgumentCaptor<MessageExtBrokerInner> captor = ArgumentCaptor.forClass(MessageExtBrokerInner.class);
+            verify(escapeBridge, timeout(3000).times(2)).putMessageToSpecificQueue(captor.capture());
+            List<MessageExtBrokerInner> messages = captor.getAllValues();
+            for (MessageExtBrokerInner msg : messages) {
+                assertThat(msg.getTags()).isEqualTo(PopAckConstants.BATCH_ACK_TAG);
+                assertThat(msg.getQueueId()).isEqualTo(reviveQid);
+                assertThat(msg.getDeliverTimeMs()).isEqualTo(popTime + invisibleTime);
+                BatchAckMsg stored = JSON.parseObject(msg.getBody(), BatchAckMsg.class);
+                if (stored.getStartOffset() == 100) {
+                    assertThat(stored.getAckOffsetList()).containsExactly(100L, 101L, 102L, 103L);
+                } else {
+                    assertThat(stored.getAckOffsetList()).containsExactly(200L);
+                }
+            }
+            assertThat(popBufferMergeService.getCoalescedAckSize()).isEqualTo(0);
+        } finally {
+            popBufferMergeService.shutdown(true);
+        }
+        verify(escapeBridge, times(2)).putMessageToSpecificQueue(any());
+    }
+
+    @Test(timeout = 10_000)
+    public void testCoalescedAckRetriedAfterPutFailure() throws Exception {
+        brokerController.getBrokerConfig().setEnablePopAckCoalesce(true);
+        EscapeBridge escapeBridge = mock(EscapeBridge.class);
+        doReturn(escapeBridge).when(brokerController).getEscapeBridge();
+        when(escapeBridge.putMessageToSpecificQueue(any())).thenReturn(
+            new PutMessageResult(PutMessageStatus.CREATE_MAPPED_FILE_FAILED, null),
+            new PutMessageResult(PutMessageStatus.PUT_OK, new AppendMessageResult(AppendMessageStatus.PUT_OK)));
+        PopBufferMergeService popBufferMergeService = new PopBufferMergeService(brokerController, popMessageProcessor);
+
+        long popTime = System.currentTimeMillis();
+        assertThat(popBufferMergeService.coalesceAck(1, buildAck(new AckMsg(), 100, 100, popTime), 30_000)).isTrue();
+        assertThat(popBufferMergeService.coalesceAck(1, buildAck(new AckMsg(), 100, 101, popTime), 30_000)).isTrue();
+
+        popBufferMergeService.start();
+        try {
+            ArgumentCaptor<MessageExtBrokerInner> captor = ArgumentCaptor.forClass(MessageExtBrokerInner.class);
+            verify(escapeBridge, timeout(3000).times(2)).putMessageToSpecificQueue(captor.capture());
+            BatchAckMsg stored = JSON.parseObject(captor.getAllValues().get(1).getBody(), BatchAckMsg.class);
+            assertThat(stored.getAckOffsetList()).containsExactly(100L, 101L);
+            assertThat(popBufferMergeService.getCoalescedAckSize()).isEqualTo(0);
+        } finally {
+            popBufferMergeService.shutdown(true);
+        }
+    }
+
+    @Test
+    public void testCoalesceAckKeepsCheckpointsApart() {
+        brokerController.getBrokerConfig().setEnablePopAckCoalesce(true);
+        PopBufferMergeService popBufferMergeService = new PopBufferMergeService(brokerController, popMessageProcessor);
+
+        long popTime = System.currentTimeMillis();
+        // queue 1 from offset 23 and queue 12 from offset 3 are different checkpoints
+        AckMsg ackMsg = buildAck(new AckMsg(), 23, 23, popTime);
+        ackMsg.setQueueId(1);
+        assertThat(popBufferMergeService.coalesceAck(1, ackMsg, 30_000)).isTrue();
+        ackMsg = buildAck(new AckMsg(), 3, 3, popTime);
+        ackMsg.setQueueId(12);
+        assertThat(popBufferMergeService.coalesceAck(1, ackMsg, 30_000)).isTrue();
+        assertThat(popBufferMergeService.getCoalescedAckSize()).isEqualTo(2);
+    }
+
+    private AckMsg buildAck(AckMsg ackMsg, long startOffset, long ackOffset, long popTime) {
+        ackMsg.setStartOffset(startOffset);
+        ackMsg.setAckOffset(ackOffset);
+        ackMsg.setConsumerGroup(group);
+        ackMsg.setTopic(topic);
+        ackMsg.setQueueId(0);
+        ackMsg.setPopTime(popTime);
+        ackMsg.setBrokerName("broker-a");
+        return ackMsg;
+    }
 }
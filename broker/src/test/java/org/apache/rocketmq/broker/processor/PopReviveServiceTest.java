@@ -17,27 +17,40 @@
 package org.apache.rocketmq.broker.processor;
 
 import com.alibaba.fastjson.JSON;
+import java.io.File;
 import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.broker.failover.EscapeBridge;
 import org.apache.rocketmq.broker.offset.ConsumerOffsetManager;
 import org.apache.rocketmq.broker.subscription.SubscriptionGroupManager;
 import org.apache.rocketmq.broker.topic.TopicConfigManager;
 import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.Pair;
 import org.apache.rocketmq.common.PopAckConstants;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.TopicConfig;
+import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageExtBrokerInner;
 import org.apache.rocketmq.common.utils.DataConverter;
 import org.apache.rocketmq.common.utils.NetworkUtil;
+import org.apache.rocketmq.common.utils.ThreadUtils;
 import org.apache.rocketmq.remoting.protocol.subscription.SubscriptionGroupConfig;
+import org.apache.rocketmq.store.GetMessageStatus;
 import org.apache.rocketmq.store.MessageStore;
 import org.apache.rocketmq.store.pop.AckMsg;
 import org.apache.rocketmq.store.pop.PopCheckPoint;
+import org.apache.rocketmq.store.pop.PopStateStore;
 import org.apache.rocketmq.store.timer.TimerMessageStore;
 import org.junit.Before;
 import org.junit.Test;
@@ -46,13 +59,21 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.Silent.class)
@@ -76,6 +97,8 @@ public class PopReviveServiceTest {
     private SubscriptionGroupManager subscriptionGroupManager;
     @Mock
     private BrokerController brokerController;
+    @Mock
+    private EscapeBridge escapeBridge;
 
     private BrokerConfig brokerConfig;
     private PopReviveService popReviveService;
@@ -89,6 +112,7 @@ public class PopReviveServiceTest {
         when(brokerController.getMessageStore()).thenReturn(messageStore);
         when(brokerController.getTopicConfigManager()).thenReturn(topicConfigManager);
         when(brokerController.getSubscriptionGroupManager()).thenReturn(subscriptionGroupManager);
+        when(brokerController.getEscapeBridge()).thenReturn(escapeBridge);
         when(messageStore.getTimerMessageStore()).thenReturn(timerMessageStore);
         when(timerMessageStore.getDequeueBehind()).thenReturn(0L);
         when(timerMessageStore.getEnqueueBehind()).thenReturn(0L);
@@ -204,6 +228,105 @@ public class PopReviveServiceTest {
         assertEquals(maxReviveOffset, commitOffsetCaptor.getValue().longValue());
     }
 
+    @Test
+    public void testReviveLookupOnExecutor() throws Throwable {
+        ExecutorService lookupExecutor = ThreadUtils.newThreadPoolExecutor(2, new ThreadFactoryImpl("PopReviveLookupThread_"));
+        popReviveService.setLookupExecutor(lookupExecutor);
+        Set<String> lookupThreads = ConcurrentHashMap.newKeySet();
+        when(escapeBridge.getMessageAsync(anyString(), anyLong(), anyInt(), any(), anyBoolean())).thenAnswer(invocation -> {
+            lookupThreads.add(Thread.currentThread().getName());
+            return CompletableFuture.completedFuture(new Pair<>(GetMessageStatus.NO_MESSAGE_IN_QUEUE, null));
+        });
+
+        try {
+            long popTime = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1);
+            PopReviveService.ConsumeReviveObj consumeReviveObj = new PopReviveService.ConsumeReviveObj();
+            for (int i = 1; i <= 8; i++) {
+                PopCheckPoint ck = buildPopCheckPoint(i, popTime, i);
+                consumeReviveObj.map.put(String.valueOf(i), ck);
+            }
+            consumeReviveObj.endTime = System.currentTimeMillis();
+            popReviveService.mergeAndRevive(consumeReviveObj);
+
+            // committed once by the scan and once more when the last inflight checkpoint completes
+            await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> verify(consumerOffsetManager, times(2))
+                .commitOffset(PopAckConstants.LOCAL_HOST, PopAckConstants.REVIVE_GROUP, REVIVE_TOPIC, REVIVE_QUEUE_ID, 8L));
+            verify(escapeBridge, times(8)).getMessageAsync(anyString(), anyLong(), anyInt(), any(), anyBoolean());
+            assertFalse(lookupThreads.isEmpty());
+            assertTrue(lookupThreads.stream().allMatch(name -> name.startsWith("PopReviveLookupThread_")));
+        } finally {
+            lookupExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testReviveFromStateStore() throws Throwable {
+        String storePath = System.getProperty("java.io.tmpdir") + File.separator + "popState-" + UUID.randomUUID();
+        PopStateStore popStateStore = new PopStateStore(storePath);
+        assertTrue(popStateStore.start());
+        when(brokerController.getPopStateStore()).thenReturn(popStateStore);
+        when(escapeBridge.getMessageAsync(anyString(), eq(101L), anyInt(), any(), anyBoolean()))
+            .thenReturn(CompletableFuture.completedFuture(new Pair<>(GetMessageStatus.NO_MESSAGE_IN_QUEUE, null)));
+        when(escapeBridge.getMessageAsync(anyString(), eq(102L), anyInt(), any(), anyBoolean()))
+            .thenReturn(CompletableFuture.completedFuture(new Pair<>(GetMessageStatus.OFFSET_FOUND_NULL, null)));
+
+        try {
+            PopCheckPoint ck = buildPopCheckPoint(100, System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1), 0);
+            ck.setNum((byte) 3);
+            ck.addDiff(0);
+            ck.addDiff(1);
+            ck.addDiff(2);
+            assertTrue(popStateStore.putCheckPoint(REVIVE_QUEUE_ID, ck));
+            AckMsg ackMsg = buildAckMsg(100, ck.getPopTime());
+            ackMsg.setStartOffset(100);
+            assertTrue(popStateStore.putAck(REVIVE_QUEUE_ID, ackMsg, ck.getReviveTime()));
+
+            popReviveService.reviveFromStateStore();
+
+            // 100 is acked and 101 is gone, only 102 is left for the next round
+            List<PopCheckPoint> ckList = popStateStore.scanExpiredCheckPoints(REVIVE_QUEUE_ID, Long.MAX_VALUE, 16);
+            assertEquals(1, ckList.size());
+            assertEquals(102, ckList.get(0).getStartOffset());
+            assertEquals(1, ckList.get(0).getNum());
+            assertEquals(1, ckList.get(0).parseRePutTimes());
+            verify(escapeBridge, times(2)).getMessageAsync(anyString(), anyLong(), anyInt(), any(), anyBoolean());
+
+            // the retry checkpoint is due again only after a backoff
+            assertTrue(ckList.get(0).getReviveTime() > System.currentTimeMillis());
+            popReviveService.reviveFromStateStore();
+            verify(escapeBridge, times(2)).getMessageAsync(anyString(), anyLong(), anyInt(), any(), anyBoolean());
+        } finally {
+            popStateStore.shutdown();
+            UtilAll.deleteFile(new File(storePath));
+        }
+    }
+
+    @Test
+    public void testReviveFromStateStoreSkipInflight() throws Throwable {
+        String storePath = System.getProperty("java.io.tmpdir") + File.separator + "popState-" + UUID.randomUUID();
+        PopStateStore popStateStore = new PopStateStore(storePath);
+        assertTrue(popStateStore.start());
+        when(brokerController.getPopStateStore()).thenReturn(popStateStore);
+        brokerConfig.setPopStateReviveWaitMillis(100);
+        CompletableFuture<Pair<GetMessageStatus, MessageExt>> lookupFuture = new CompletableFuture<>();
+        when(escapeBridge.getMessageAsync(anyString(), eq(100L), anyInt(), any(), anyBoolean())).thenReturn(lookupFuture);
+
+        try {
+            PopCheckPoint ck = buildPopCheckPoint(100, System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1), 0);
+            assertTrue(popStateStore.putCheckPoint(REVIVE_QUEUE_ID, ck));
+
+            popReviveService.reviveFromStateStore();
+            popReviveService.reviveFromStateStore();
+            verify(escapeBridge, times(1)).getMessageAsync(anyString(), anyLong(), anyInt(), any(), anyBoolean());
+
+            lookupFuture.complete(new Pair<>(GetMessageStatus.NO_MESSAGE_IN_QUEUE, null));
+            assertTrue(popStateStore.scanExpiredCheckPoints(REVIVE_QUEUE_ID, Long.MAX_VALUE, 16).isEmpty());
+        } finally {
+            popStateStore.shutdown();
+            UtilAll.deleteFile(new File(storePath));
+        }
+    }
+
     public static PopCheckPoint buildPopCheckPoint(long startOffset, long popTime, long reviveOffset) {
         PopCheckPoint ck = new PopCheckPoint();
         ck.setStartOffset(startOffset);
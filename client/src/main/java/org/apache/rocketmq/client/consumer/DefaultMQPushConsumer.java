@@ -246,6 +246,13 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
      */
     private boolean postSubscriptionWhenPull = false;
 
+    /**
+     * Whether to receive messages over a pull stream per queue instead of a pull request per batch. The broker then
+     * pushes batches as messages arrive, up to twice {@link #pullBatchSize} ahead of the consumer, and flow control
+     * holds back credit instead of pull requests. Queues whose broker does not support it keep using pull requests.
+     */
+    private boolean pullStreamEnable = false;
+
     /**
      * Whether the unit of subscription group
      */
@@ -919,6 +926,14 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
         this.postSubscriptionWhenPull = postSubscriptionWhenPull;
     }
 
+    public boolean isPullStreamEnable() {
+        return pullStreamEnable;
+    }
+
+    public void setPullStreamEnable(boolean pullStreamEnable) {
+        this.pullStreamEnable = pullStreamEnable;
+    }
+
     @Override
     public boolean isUnitMode() {
         return unitMode;
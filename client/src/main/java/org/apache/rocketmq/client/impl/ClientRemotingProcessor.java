@@ -22,6 +22,8 @@ import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.rocketmq.client.impl.consumer.DefaultMQPushConsumerImpl;
+import org.apache.rocketmq.client.impl.consumer.MQConsumerInner;
 import org.apache.rocketmq.client.impl.factory.MQClientInstance;
 import org.apache.rocketmq.client.impl.producer.MQProducerInner;
 import org.apache.rocketmq.client.producer.RequestFutureHolder;
@@ -52,6 +54,7 @@ import org.apache.rocketmq.remoting.protocol.header.ConsumeMessageDirectlyResult
 import org.apache.rocketmq.remoting.protocol.header.GetConsumerRunningInfoRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.GetConsumerStatusRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.NotifyConsumerIdsChangedRequestHeader;
+import org.apache.rocketmq.remoting.protocol.header.PushPullStreamMessageRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.ReplyMessageRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.ResetOffsetRequestHeader;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
@@ -86,6 +89,8 @@ public class ClientRemotingProcessor implements NettyRequestProcessor {
 
             case RequestCode.PUSH_REPLY_MESSAGE_TO_CLIENT:
                 return this.receiveReplyMessage(ctx, request);
+            case RequestCode.PUSH_PULL_STREAM_MESSAGE:
+                return this.receivePullStreamMessage(ctx, request);
             default:
                 break;
         }
@@ -97,6 +102,20 @@ public class ClientRemotingProcessor implements NettyRequestProcessor {
         return false;
     }
 
+    private RemotingCommand receivePullStreamMessage(ChannelHandlerContext ctx,
+        RemotingCommand request) throws RemotingCommandException {
+        final PushPullStreamMessageRequestHeader requestHeader =
+            (PushPullStreamMessageRequestHeader) request.decodeCommandCustomHeader(PushPullStreamMessageRequestHeader.class);
+        MQConsumerInner consumer = this.mqClientFactory.selectConsumer(requestHeader.getConsumerGroup());
+        if (consumer instanceof DefaultMQPushConsumerImpl) {
+            ((DefaultMQPushConsumerImpl) consumer).receivePullStreamMessage(
+                RemotingHelper.parseChannelRemoteAddr(ctx.channel()), requestHeader, request.getBody());
+        } else {
+            logger.debug("receivePullStreamMessage, pick consumer by group[{}] failed", requestHeader.getConsumerGroup());
+        }
+        return null;
+    }
+
     public RemotingCommand checkTransactionState(ChannelHandlerContext ctx,
         RemotingCommand request) throws RemotingCommandException {
         final CheckTransactionStateRequestHeader requestHeader =
@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -60,6 +61,7 @@ import org.apache.rocketmq.common.MQVersion;
 import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.Pair;
 import org.apache.rocketmq.common.PlainAccessConfig;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.TopicConfig;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.attribute.AttributeParser;
@@ -78,6 +80,7 @@ import org.apache.rocketmq.common.namesrv.NameServerUpdateCallback;
 import org.apache.rocketmq.common.namesrv.TopAddressing;
 import org.apache.rocketmq.common.sysflag.PullSysFlag;
 import org.apache.rocketmq.common.topic.TopicValidator;
+import org.apache.rocketmq.common.utils.ThreadUtils;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
 import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
 import org.apache.rocketmq.remoting.ChannelEventListener;
@@ -143,9 +146,11 @@ import org.apache.rocketmq.remoting.protocol.body.UnlockBatchRequestBody;
 import org.apache.rocketmq.remoting.protocol.body.UserInfo;
 import org.apache.rocketmq.remoting.protocol.header.AckMessageRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.AddBrokerRequestHeader;
+import org.apache.rocketmq.remoting.protocol.header.AddPullStreamCreditRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.ChangeInvisibleTimeRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.ChangeInvisibleTimeResponseHeader;
 import org.apache.rocketmq.remoting.protocol.header.CloneGroupOffsetRequestHeader;
+import org.apache.rocketmq.remoting.protocol.header.ClosePullStreamRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.ConsumeMessageDirectlyResultRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.ConsumerSendMsgBackRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.CreateAccessConfigRequestHeader;
@@ -185,6 +190,7 @@ import org.apache.rocketmq.remoting.protocol.header.ListAclsRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.ListUsersRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.HeartbeatRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.LockBatchMqRequestHeader;
+import org.apache.rocketmq.remoting.protocol.header.OpenPullStreamRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.PopMessageRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.PopMessageResponseHeader;
 import org.apache.rocketmq.remoting.protocol.header.PullMessageRequestHeader;
@@ -256,6 +262,10 @@ public class MQClientAPIImpl implements NameServerUpdateCallback {
     private final RemotingClient remotingClient;
     private final TopAddressing topAddressing;
     private final ClientRemotingProcessor clientRemotingProcessor;
+    /**
+     * Batches of a pull stream have to be handled in the order they were pushed.
+     */
+    private final ExecutorService pullStreamExecutor;
     private String nameSrvAddr = null;
     private ClientConfig clientConfig;
 
@@ -294,6 +304,9 @@ public class MQClientAPIImpl implements NameServerUpdateCallback {
         this.remotingClient.registerProcessor(RequestCode.CONSUME_MESSAGE_DIRECTLY, this.clientRemotingProcessor, null);
 
         this.remotingClient.registerProcessor(RequestCode.PUSH_REPLY_MESSAGE_TO_CLIENT, this.clientRemotingProcessor, null);
+
+        this.pullStreamExecutor = ThreadUtils.newSingleThreadExecutor(new ThreadFactoryImpl("PullStreamThread_", true));
+        this.remotingClient.registerProcessor(RequestCode.PUSH_PULL_STREAM_MESSAGE, this.clientRemotingProcessor, this.pullStreamExecutor);
     }
 
     public List<String> getNameServerAddressList() {
@@ -346,6 +359,7 @@ public class MQClientAPIImpl implements NameServerUpdateCallback {
 
     public void shutdown() {
         this.remotingClient.shutdown();
+        this.pullStreamExecutor.shutdown();
     }
 
     public Set<MessageQueueAssignment> queryAssignment(final String addr, final String topic,
@@ -1061,6 +1075,34 @@ public class MQClientAPIImpl implements NameServerUpdateCallback {
         return this.processPullResponse(response, addr);
     }
 
+    public void openPullStreamAsync(
+        final String addr,
+        final OpenPullStreamRequestHeader requestHeader,
+        final long timeoutMillis,
+        final InvokeCallback invokeCallback
+    ) throws RemotingException, InterruptedException {
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.OPEN_PULL_STREAM, requestHeader);
+        this.remotingClient.invokeAsync(addr, request, timeoutMillis, invokeCallback);
+    }
+
+    public void addPullStreamCreditOneway(
+        final String addr,
+        final AddPullStreamCreditRequestHeader requestHeader,
+        final long timeoutMillis
+    ) throws RemotingException, InterruptedException {
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.ADD_PULL_STREAM_CREDIT, requestHeader);
+        this.remotingClient.invokeOneway(addr, request, timeoutMillis);
+    }
+
+    public void closePullStreamOneway(
+        final String addr,
+        final ClosePullStreamRequestHeader requestHeader,
+        final long timeoutMillis
+    ) throws RemotingException, InterruptedException {
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.CLOSE_PULL_STREAM, requestHeader);
+        this.remotingClient.invokeOneway(addr, request, timeoutMillis);
+    }
+
     private PullResult processPullResponse(
         final RemotingCommand response,
         final String addr) throws MQBrokerException, RemotingCommandException {
@@ -86,6 +86,7 @@ import org.apache.rocketmq.remoting.protocol.filter.FilterAPI;
 import org.apache.rocketmq.remoting.protocol.header.AckMessageRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.ChangeInvisibleTimeRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.ExtraInfoUtil;
+import org.apache.rocketmq.remoting.protocol.header.PushPullStreamMessageRequestHeader;
 import org.apache.rocketmq.remoting.protocol.heartbeat.ConsumeType;
 import org.apache.rocketmq.remoting.protocol.heartbeat.MessageModel;
 import org.apache.rocketmq.remoting.protocol.heartbeat.SubscriptionData;
@@ -113,6 +114,10 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
     private static final long PULL_TIME_DELAY_MILLS_WHEN_SUSPEND = 1000;
     private static final long BROKER_SUSPEND_MAX_TIME_MILLIS = 1000 * 15;
     private static final long CONSUMER_TIMEOUT_MILLIS_WHEN_SUSPEND = 1000 * 30;
+    /**
+     * A pull stream pushed nothing, not even an idle heartbeat, for this long is reopened
+     */
+    private static final long PULL_STREAM_TIMEOUT_MILLIS = 1000 * 45;
     private static final Logger log = LoggerFactory.getLogger(DefaultMQPushConsumerImpl.class);
     private final DefaultMQPushConsumer defaultMQPushConsumer;
     private final RebalanceImpl rebalanceImpl = new RebalancePushImpl(this);
@@ -247,6 +252,9 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
         final ProcessQueue processQueue = pullRequest.getProcessQueue();
         if (processQueue.isDropped()) {
             log.info("the pull request[{}] is dropped.", pullRequest.toString());
+            if (this.defaultMQPushConsumer.isPullStreamEnable()) {
+                this.pullAPIWrapper.closePullStream(pullRequest.getMessageQueue(), processQueue);
+            }
             return;
         }
 
@@ -477,6 +485,21 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
             classFilter // class filter
         );
         try {
+            if (this.defaultMQPushConsumer.isPullStreamEnable() && !classFilter
+                && this.pullAPIWrapper.isPullStreamSupported(pullRequest.getMessageQueue())) {
+                this.pullAPIWrapper.pullStreamKernelImpl(
+                    pullRequest.getMessageQueue(),
+                    processQueue,
+                    subscriptionData.getSubString(),
+                    subscriptionData.getExpressionType(),
+                    subscriptionData.getSubVersion(),
+                    pullRequest.getNextOffset(),
+                    this.defaultMQPushConsumer.getPullBatchSize() * 2,
+                    CONSUMER_TIMEOUT_MILLIS_WHEN_SUSPEND,
+                    pullCallback
+                );
+                return;
+            }
             this.pullAPIWrapper.pullKernelImpl(
                 pullRequest.getMessageQueue(),
                 subExpression,
@@ -889,12 +912,28 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
         shutdown(0);
     }
 
+    public void receivePullStreamMessage(final String addr, final PushPullStreamMessageRequestHeader requestHeader,
+        final byte[] body) {
+        if (this.pullAPIWrapper != null) {
+            this.pullAPIWrapper.processPullStreamMessage(addr, requestHeader, body);
+        }
+    }
+
+    public void scanExpiredPullStreams() {
+        if (this.pullAPIWrapper != null && this.defaultMQPushConsumer.isPullStreamEnable()) {
+            this.pullAPIWrapper.scanExpiredPullStreams(PULL_STREAM_TIMEOUT_MILLIS);
+        }
+    }
+
     public synchronized void shutdown(long awaitTerminateMillis) {
         switch (this.serviceState) {
             case CREATE_JUST:
                 break;
             case RUNNING:
                 this.consumeMessageService.shutdown(awaitTerminateMillis);
+                if (this.defaultMQPushConsumer.isPullStreamEnable()) {
+                    this.pullAPIWrapper.closeAllPullStreams();
+                }
                 this.persistConsumerOffset();
                 this.mQClientFactory.unregisterConsumer(this.defaultMQPushConsumer.getConsumerGroup());
                 this.mQClientFactory.shutdown();
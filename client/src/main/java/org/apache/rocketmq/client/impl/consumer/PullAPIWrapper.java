@@ -44,9 +44,17 @@ import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.apache.rocketmq.common.sysflag.PullSysFlag;
+import org.apache.rocketmq.remoting.InvokeCallback;
 import org.apache.rocketmq.remoting.exception.RemotingException;
+import org.apache.rocketmq.remoting.netty.ResponseFuture;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.ResponseCode;
+import org.apache.rocketmq.remoting.protocol.header.AddPullStreamCreditRequestHeader;
+import org.apache.rocketmq.remoting.protocol.header.ClosePullStreamRequestHeader;
+import org.apache.rocketmq.remoting.protocol.header.OpenPullStreamRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.PopMessageRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.PullMessageRequestHeader;
+import org.apache.rocketmq.remoting.protocol.header.PushPullStreamMessageRequestHeader;
 import org.apache.rocketmq.remoting.protocol.heartbeat.SubscriptionData;
 import org.apache.rocketmq.remoting.protocol.route.TopicRouteData;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
@@ -64,6 +72,17 @@ public class PullAPIWrapper {
     private Random random = new Random(System.nanoTime());
     private ArrayList<FilterMessageHook> filterMessageHookList = new ArrayList<>();
 
+    private static final AtomicLong PULL_STREAM_ID = new AtomicLong(0);
+    private static final long PULL_STREAM_ONEWAY_TIMEOUT_MILLIS = 3000;
+    private final ConcurrentMap<MessageQueue, PullStream> pullStreamTable = new ConcurrentHashMap<>(32);
+    private final ConcurrentMap<Long/* streamId */, PullStream> pullStreamIdTable = new ConcurrentHashMap<>(32);
+    /**
+     * How long a queue keeps pulling by requests after its broker rejected the pull stream, the broker may be
+     * upgraded or the queue served by another broker in the meantime
+     */
+    private static final long PULL_STREAM_UNSUPPORTED_EXPIRE_MILLIS = 5 * 60 * 1000;
+    private final ConcurrentMap<MessageQueue, Long/* expire timestamp */> pullStreamUnsupportedTable = new ConcurrentHashMap<>(32);
+
     public PullAPIWrapper(MQClientInstance mQClientFactory, String consumerGroup, boolean unitMode) {
         this.mQClientFactory = mQClientFactory;
         this.consumerGroup = consumerGroup;
@@ -393,4 +412,236 @@ public class PullAPIWrapper {
         throw new MQClientException("The broker[" + mq.getBrokerName() + "] not exist", null);
     }
 
+    public boolean isPullStreamSupported(final MessageQueue mq) {
+        Long expireTimestamp = this.pullStreamUnsupportedTable.get(mq);
+        if (expireTimestamp == null) {
+            return true;
+        }
+        if (expireTimestamp <= System.currentTimeMillis()) {
+            this.pullStreamUnsupportedTable.remove(mq, expireTimestamp);
+            return true;
+        }
+        return false;
+    }
+
+    private void markPullStreamUnsupported(final MessageQueue mq) {
+        long now = System.currentTimeMillis();
+        this.pullStreamUnsupportedTable.values().removeIf(expireTimestamp -> expireTimestamp <= now);
+        this.pullStreamUnsupportedTable.put(mq, now + PULL_STREAM_UNSUPPORTED_EXPIRE_MILLIS);
+    }
+
+    /**
+     * Continues the pull loop of a process queue on its pull stream: opens the stream if needed, gives back the
+     * credit of the batches delivered since the last call, then delivers the next buffered batch to
+     * {@code pullCallback}, or parks the loop until the broker pushes one.
+     */
+    public void pullStreamKernelImpl(
+        final MessageQueue mq,
+        final ProcessQueue processQueue,
+        final String subExpression,
+        final String expressionType,
+        final long subVersion,
+        final long offset,
+        final int credit,
+        final long timeoutMillis,
+        final PullCallback pullCallback
+    ) throws MQClientException, RemotingException, InterruptedException {
+        PullStream stream = this.pullStreamTable.get(mq);
+        if (stream != null && stream.getProcessQueue() != processQueue) {
+            this.closePullStream(stream);
+            stream = null;
+        }
+        if (stream != null) {
+            stream.setPullCallback(pullCallback);
+            if (stream.isOpened()) {
+                this.grantPullStreamCredit(stream);
+            }
+            PullResult pullResult = stream.pollOrPark();
+            if (pullResult != null) {
+                this.deliverPullStreamResult(stream, pullResult);
+            }
+            return;
+        }
+
+        FindBrokerResult findBrokerResult = this.mQClientFactory.findBrokerAddressInSubscribe(
+            this.mQClientFactory.getBrokerNameFromMessageQueue(mq), MixAll.MASTER_ID, true);
+        if (null == findBrokerResult) {
+            this.mQClientFactory.updateTopicRouteInfoFromNameServer(mq.getTopic());
+            findBrokerResult = this.mQClientFactory.findBrokerAddressInSubscribe(
+                this.mQClientFactory.getBrokerNameFromMessageQueue(mq), MixAll.MASTER_ID, true);
+        }
+        if (null == findBrokerResult) {
+            throw new MQClientException("The broker[" + mq.getBrokerName() + "] not exist", null);
+        }
+
+        final String brokerAddr = findBrokerResult.getBrokerAddr();
+        final PullStream newStream = new PullStream(PULL_STREAM_ID.incrementAndGet(), mq, processQueue, brokerAddr, pullCallback);
+        this.pullStreamTable.put(mq, newStream);
+        this.pullStreamIdTable.put(newStream.getStreamId(), newStream);
+        newStream.pollOrPark();
+
+        OpenPullStreamRequestHeader requestHeader = new OpenPullStreamRequestHeader();
+        requestHeader.setConsumerGroup(this.consumerGroup);
+        requestHeader.setTopic(mq.getTopic());
+        requestHeader.setQueueId(mq.getQueueId());
+        requestHeader.setQueueOffset(offset);
+        requestHeader.setStreamId(newStream.getStreamId());
+        requestHeader.setCredit(credit);
+        requestHeader.setSubscription(subExpression);
+        requestHeader.setExpressionType(expressionType);
+        requestHeader.setSubVersion(subVersion);
+        requestHeader.setBrokerName(mq.getBrokerName());
+        try {
+            this.mQClientFactory.getMQClientAPIImpl().openPullStreamAsync(brokerAddr, requestHeader, timeoutMillis, new InvokeCallback() {
+                @Override
+                public void operationComplete(ResponseFuture responseFuture) {
+
+                }
+
+                @Override
+                public void operationSucceed(RemotingCommand response) {
+                    if (response.getCode() == ResponseCode.SUCCESS) {
+                        newStream.setOpened(true);
+                        PullAPIWrapper.this.grantPullStreamCredit(newStream);
+                        return;
+                    }
+                    if (response.getCode() == ResponseCode.REQUEST_CODE_NOT_SUPPORTED) {
+                        log.info("pull stream is not supported by broker {}, pull {} by requests, {}", brokerAddr, mq, response.getRemark());
+                        PullAPIWrapper.this.markPullStreamUnsupported(mq);
+                    }
+                    PullAPIWrapper.this.failPullStream(newStream,
+                        new MQBrokerException(response.getCode(), response.getRemark(), brokerAddr));
+                }
+
+                @Override
+                public void operationFail(Throwable throwable) {
+                    PullAPIWrapper.this.failPullStream(newStream, throwable);
+                }
+            });
+        } catch (RemotingException | InterruptedException e) {
+            this.removePullStream(newStream);
+            throw e;
+        }
+    }
+
+    /**
+     * Handles a batch pushed on a pull stream, in the order the broker pushed them.
+     */
+    public void processPullStreamMessage(final String addr, final PushPullStreamMessageRequestHeader requestHeader,
+        final byte[] body) {
+        PullStream stream = this.pullStreamIdTable.get(requestHeader.getStreamId());
+        if (stream == null || stream.isClosed()) {
+            this.closePullStreamOneway(addr, requestHeader.getStreamId());
+            return;
+        }
+
+        PullStatus pullStatus;
+        switch (requestHeader.getPullCode()) {
+            case ResponseCode.SUCCESS:
+                pullStatus = PullStatus.FOUND;
+                break;
+            case ResponseCode.PULL_NOT_FOUND:
+                pullStatus = PullStatus.NO_NEW_MSG;
+                break;
+            case ResponseCode.PULL_RETRY_IMMEDIATELY:
+                pullStatus = PullStatus.NO_MATCHED_MSG;
+                break;
+            case ResponseCode.PULL_OFFSET_MOVED:
+                pullStatus = PullStatus.OFFSET_ILLEGAL;
+                break;
+            default:
+                log.warn("unexpected pull code {} pushed on pull stream of {}", requestHeader.getPullCode(), stream.getMessageQueue());
+                return;
+        }
+        PullResult pullResult = new PullResultExt(pullStatus, requestHeader.getNextBeginOffset(), requestHeader.getMinOffset(),
+            requestHeader.getMaxOffset(), null, MixAll.MASTER_ID, body);
+        if (stream.offer(pullResult, requestHeader.getMessageCount())) {
+            this.deliverPullStreamResult(stream, pullResult);
+        }
+    }
+
+    /**
+     * Fails the pull streams that have not been pushed anything, not even an idle heartbeat, for
+     * {@code timeoutMillis}, so that their pull loops reopen them.
+     */
+    public void scanExpiredPullStreams(final long timeoutMillis) {
+        final long now = System.currentTimeMillis();
+        for (PullStream stream : this.pullStreamTable.values()) {
+            if (now - stream.getLastActiveTimestamp() > timeoutMillis) {
+                this.closePullStreamOneway(stream.getBrokerAddr(), stream.getStreamId());
+                this.failPullStream(stream, new MQClientException("pull stream of " + stream.getMessageQueue()
+                    + " has been idle for " + (now - stream.getLastActiveTimestamp()) + "ms", null));
+            }
+        }
+    }
+
+    public void closePullStream(final MessageQueue mq, final ProcessQueue processQueue) {
+        PullStream stream = this.pullStreamTable.get(mq);
+        if (stream != null && stream.getProcessQueue() == processQueue) {
+            this.closePullStream(stream);
+        }
+    }
+
+    public void closeAllPullStreams() {
+        for (PullStream stream : this.pullStreamTable.values()) {
+            this.closePullStream(stream);
+        }
+    }
+
+    private void closePullStream(final PullStream stream) {
+        this.removePullStream(stream);
+        this.closePullStreamOneway(stream.getBrokerAddr(), stream.getStreamId());
+    }
+
+    private void deliverPullStreamResult(final PullStream stream, final PullResult pullResult) {
+        if (pullResult.getPullStatus() == PullStatus.OFFSET_ILLEGAL) {
+            // already dropped by the broker
+            this.removePullStream(stream);
+        }
+        stream.getPullCallback().onSuccess(pullResult);
+    }
+
+    private void failPullStream(final PullStream stream, final Throwable e) {
+        if (this.removePullStream(stream)) {
+            stream.getPullCallback().onException(e);
+        }
+    }
+
+    /**
+     * @return true if the pull loop was parked on the stream
+     */
+    private boolean removePullStream(final PullStream stream) {
+        this.pullStreamTable.remove(stream.getMessageQueue(), stream);
+        this.pullStreamIdTable.remove(stream.getStreamId(), stream);
+        return stream.close();
+    }
+
+    private void grantPullStreamCredit(final PullStream stream) {
+        int credit = stream.takeCreditToGrant();
+        if (credit <= 0) {
+            return;
+        }
+        AddPullStreamCreditRequestHeader requestHeader = new AddPullStreamCreditRequestHeader();
+        requestHeader.setConsumerGroup(this.consumerGroup);
+        requestHeader.setStreamId(stream.getStreamId());
+        requestHeader.setCredit(credit);
+        try {
+            this.mQClientFactory.getMQClientAPIImpl().addPullStreamCreditOneway(stream.getBrokerAddr(), requestHeader,
+                PULL_STREAM_ONEWAY_TIMEOUT_MILLIS);
+        } catch (Exception e) {
+            log.warn("add credit to pull stream of {} failed", stream.getMessageQueue(), e);
+            this.failPullStream(stream, e);
+        }
+    }
+
+    private void closePullStreamOneway(final String addr, final long streamId) {
+        ClosePullStreamRequestHeader requestHeader = new ClosePullStreamRequestHeader();
+        requestHeader.setConsumerGroup(this.consumerGroup);
+        requestHeader.setStreamId(streamId);
+        try {
+            this.mQClientFactory.getMQClientAPIImpl().closePullStreamOneway(addr, requestHeader, PULL_STREAM_ONEWAY_TIMEOUT_MILLIS);
+        } catch (Exception e) {
+            log.debug("close pull stream {} on {} failed", streamId, addr, e);
+        }
+    }
 }
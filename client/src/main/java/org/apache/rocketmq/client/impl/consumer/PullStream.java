@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.apache.rocketmq.client.consumer.PullCallback;
+import org.apache.rocketmq.client.consumer.PullResult;
+import org.apache.rocketmq.client.consumer.PullStatus;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+/**
+ * Client side of a pull stream opened for a process queue.
+ *
+ * <p>The pull request of the queue keeps looping through {@link DefaultMQPushConsumerImpl#pullMessage(PullRequest)}
+ * as with pull requests. A batch is handed to its callback right away when the loop is parked on the stream, and
+ * is buffered otherwise, for example while the loop waits out flow control, so the loop never forks and the next
+ * offset and the credit only move when a batch is delivered.
+ */
+public class PullStream {
+    private final long streamId;
+    private final MessageQueue messageQueue;
+    private final ProcessQueue processQueue;
+    private final String brokerAddr;
+    private final Deque<PendingResult> pendingResults = new ArrayDeque<>();
+    private volatile PullCallback pullCallback;
+    private volatile long lastActiveTimestamp = System.currentTimeMillis();
+    private volatile boolean opened = false;
+    private boolean parked = false;
+    private boolean closed = false;
+    private int creditToGrant = 0;
+
+    public PullStream(long streamId, MessageQueue messageQueue, ProcessQueue processQueue, String brokerAddr,
+        PullCallback pullCallback) {
+        this.streamId = streamId;
+        this.messageQueue = messageQueue;
+        this.processQueue = processQueue;
+        this.brokerAddr = brokerAddr;
+        this.pullCallback = pullCallback;
+    }
+
+    /**
+     * @param messageCount credit taken by the batch, given back once it is delivered
+     * @return true if the loop is parked and the caller has to deliver the batch, false if it has been buffered
+     */
+    public synchronized boolean offer(PullResult pullResult, int messageCount) {
+        this.lastActiveTimestamp = System.currentTimeMillis();
+        if (this.closed) {
+            return false;
+        }
+        if (this.parked && this.pendingResults.isEmpty()) {
+            this.parked = false;
+            this.creditToGrant += messageCount;
+            return true;
+        }
+        PendingResult last = this.pendingResults.peekLast();
+        if (last != null && last.pullResult.getPullStatus() == PullStatus.NO_NEW_MSG
+            && pullResult.getPullStatus() == PullStatus.NO_NEW_MSG) {
+            // an idle heartbeat only moves the offsets
+            this.pendingResults.pollLast();
+        }
+        this.pendingResults.offerLast(new PendingResult(pullResult, messageCount));
+        return false;
+    }
+
+    /**
+     * @return the next buffered batch, or null after parking the loop on the stream
+     */
+    public synchronized PullResult pollOrPark() {
+        PendingResult pendingResult = this.pendingResults.pollFirst();
+        if (pendingResult == null) {
+            this.parked = true;
+            return null;
+        }
+        this.parked = false;
+        this.creditToGrant += pendingResult.messageCount;
+        return pendingResult.pullResult;
+    }
+
+    /**
+     * @return true if the loop was parked on the stream, and thus has to be resumed by the caller
+     */
+    public synchronized boolean close() {
+        if (this.closed) {
+            return false;
+        }
+        this.closed = true;
+        this.pendingResults.clear();
+        boolean wasParked = this.parked;
+        this.parked = false;
+        return wasParked;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public synchronized int takeCreditToGrant() {
+        int credit = this.creditToGrant;
+        this.creditToGrant = 0;
+        return credit;
+    }
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    public MessageQueue getMessageQueue() {
+        return messageQueue;
+    }
+
+    public ProcessQueue getProcessQueue() {
+        return processQueue;
+    }
+
+    public String getBrokerAddr() {
+        return brokerAddr;
+    }
+
+    public PullCallback getPullCallback() {
+        return pullCallback;
+    }
+
+    public void setPullCallback(PullCallback pullCallback) {
+        this.pullCallback = pullCallback;
+    }
+
+    public long getLastActiveTimestamp() {
+        return lastActiveTimestamp;
+    }
+
+    public boolean isOpened() {
+        return opened;
+    }
+
+    public void setOpened(boolean opened) {
+        this.opened = opened;
+    }
+
+    private static class PendingResult {
+        private final PullResult pullResult;
+        private final int messageCount;
+
+        PendingResult(PullResult pullResult, int messageCount) {
+            this.pullResult = pullResult;
+            this.messageCount = messageCount;
+        }
+    }
+}
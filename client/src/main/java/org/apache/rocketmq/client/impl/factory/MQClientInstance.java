@@ -371,6 +371,14 @@ public class MQClientInstance {
                 log.error("ScheduledTask adjustThreadPool exception", t);
             }
         }, 1, 1, TimeUnit.MINUTES);
+
+        this.scheduledExecutorService.scheduleAtFixedRate(() -> {
+            try {
+                MQClientInstance.this.scanExpiredPullStreams();
+            } catch (Throwable t) {
+                log.error("ScheduledTask scanExpiredPullStreams exception", t);
+            }
+        }, 1000 * 5, 1000 * 5, TimeUnit.MILLISECONDS);
     }
 
     public String getClientId() {
@@ -554,6 +562,15 @@ public class MQClientInstance {
         }
     }
 
+    private void scanExpiredPullStreams() {
+        for (Entry<String, MQConsumerInner> entry : this.consumerTable.entrySet()) {
+            MQConsumerInner impl = entry.getValue();
+            if (impl instanceof DefaultMQPushConsumerImpl) {
+                ((DefaultMQPushConsumerImpl) impl).scanExpiredPullStreams();
+            }
+        }
+    }
+
     public void adjustThreadPool() {
         for (Entry<String, MQConsumerInner> entry : this.consumerTable.entrySet()) {
             MQConsumerInner impl = entry.getValue();
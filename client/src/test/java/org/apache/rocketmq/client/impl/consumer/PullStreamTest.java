@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.client.impl.consumer;
+
+import org.apache.rocketmq.client.consumer.PullResult;
+import org.apache.rocketmq.client.consumer.PullStatus;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PullStreamTest {
+    private final PullStream stream = new PullStream(1L, new MessageQueue("TEST_TOPIC", "BrokerA", 0),
+        new ProcessQueue(), "127.0.0.1:10911", null);
+
+    @Test
+    public void testDeliverToParkedLoop() {
+        assertThat(stream.pollOrPark()).isNull();
+
+        assertThat(stream.offer(result(PullStatus.FOUND, 10), 10)).isTrue();
+        assertThat(stream.takeCreditToGrant()).isEqualTo(10);
+        assertThat(stream.takeCreditToGrant()).isZero();
+
+        // the loop is busy with the batch, so the next one waits
+        assertThat(stream.offer(result(PullStatus.FOUND, 15), 5)).isFalse();
+        assertThat(stream.takeCreditToGrant()).isZero();
+        assertThat(stream.pollOrPark().getNextBeginOffset()).isEqualTo(15);
+        assertThat(stream.takeCreditToGrant()).isEqualTo(5);
+    }
+
+    @Test
+    public void testIdleHeartbeatsCollapse() {
+        assertThat(stream.offer(result(PullStatus.FOUND, 10), 10)).isFalse();
+        assertThat(stream.offer(result(PullStatus.NO_NEW_MSG, 10), 0)).isFalse();
+        assertThat(stream.offer(result(PullStatus.NO_NEW_MSG, 12), 0)).isFalse();
+
+        assertThat(stream.pollOrPark().getPullStatus()).isEqualTo(PullStatus.FOUND);
+        PullResult heartbeat = stream.pollOrPark();
+        assertThat(heartbeat.getPullStatus()).isEqualTo(PullStatus.NO_NEW_MSG);
+        assertThat(heartbeat.getNextBeginOffset()).isEqualTo(12);
+        assertThat(stream.pollOrPark()).isNull();
+        assertThat(stream.takeCreditToGrant()).isEqualTo(10);
+    }
+
+    @Test
+    public void testClose() {
+        assertThat(stream.pollOrPark()).isNull();
+        assertThat(stream.close()).isTrue();
+        assertThat(stream.close()).isFalse();
+        assertThat(stream.offer(result(PullStatus.FOUND, 10), 10)).isFalse();
+        assertThat(stream.isClosed()).isTrue();
+    }
+
+    private static PullResult result(PullStatus status, long nextBeginOffset) {
+        return new PullResult(status, nextBeginOffset, 0, nextBeginOffset, null);
+    }
+}
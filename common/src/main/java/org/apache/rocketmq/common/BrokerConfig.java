@@ -118,6 +118,14 @@ public class BrokerConfig extends BrokerIdentity {
 
     private long shortPollingTimeMills = 1000;
 
+    /**
+     * Expire held pull requests with a timing wheel and wake them only on message arrival, instead of checking every
+     * held queue periodically. Takes effect with long polling only.
+     */
+    private boolean enablePullHoldTimingWheel = false;
+
+    private long pullHoldTimingWheelTickMillis = 100;
+
     private boolean notifyConsumerIdsChangedEnable = true;
 
     private boolean highSpeedMode = false;
@@ -131,6 +139,12 @@ public class BrokerConfig extends BrokerIdentity {
 
     private boolean transferMsgByHeap = true;
 
+    /**
+     * Send pulled messages to TLS connections as a composite buffer over the mapped files instead of copying them
+     * into a heap array, takes precedence over transferMsgByHeap for such connections.
+     */
+    private boolean transferMsgByCompositeBuffer = false;
+
     private String regionId = MixAll.DEFAULT_TRACE_REGION_ID;
     private int registerBrokerTimeoutMills = 24000;
 
@@ -206,12 +220,24 @@ public class BrokerConfig extends BrokerIdentity {
 
     private int popPollingSize = 1024;
     private int popPollingMapSize = 100000;
+    /**
+     * Shards of the pop long polling service, each with its own polling map and timeout thread
+     */
+    private int popPollingShardNum = 1;
     // 20w cost 200M heap memory.
     private long maxPopPollingSize = 100000;
     private int reviveQueueNum = 8;
     private long reviveInterval = 1000;
     private long reviveMaxSlow = 3;
     private long reviveScanTime = 10000;
+    /**
+     * Threads shared by all revive queues to look up and retry the messages of expired checkpoints in parallel,
+     * 0 does it on the revive thread. At most reviveMaxInflightCheckpointNum checkpoints of a revive queue are in
+     * flight at a time. A revive thread looks up by itself when the queue of the pool is full.
+     */
+    private int reviveLookupThreadNum = 0;
+    private int reviveLookupThreadPoolQueueCapacity = 10000;
+    private int reviveMaxInflightCheckpointNum = 3;
     private boolean enableSkipLongAwaitingAck = false;
     private long reviveAckWaitMs = TimeUnit.MINUTES.toMillis(3);
     private boolean enablePopLog = false;
@@ -221,6 +247,19 @@ public class BrokerConfig extends BrokerIdentity {
     private int popCkMaxBufferSize = 200000;
     private int popCkOffsetMaxQueueSize = 20000;
     private boolean enablePopBatchAck = false;
+    /**
+     * Merge acks of the same checkpoint that miss the pop buffer across requests for popAckCoalesceWindowMillis,
+     * and write them to the revive topic as one batch ack.
+     */
+    private boolean enablePopAckCoalesce = false;
+    private long popAckCoalesceWindowMillis = 50;
+    /**
+     * Keep checkpoints and acks of non-orderly pop in a local RocksDB instead of the revive topic. The state is
+     * not replicated to slaves, and revive topic entries written before the switch are still revived.
+     */
+    private boolean enablePopStateStore = false;
+    private int popStateScanMaxNum = 1024;
+    private long popStateReviveWaitMillis = 30 * 1000;
     private boolean enableNotifyAfterPopOrderLockRelease = true;
     private boolean initPopOffsetByCheckMsgInMem = true;
     // read message from pop retry topic v1, for the compatibility, will be removed in the future version
@@ -231,6 +270,15 @@ public class BrokerConfig extends BrokerIdentity {
 
     private boolean litePullMessageEnable = true;
 
+    /**
+     * Accept pull streams, on which the broker pushes messages of a queue as they arrive, within the credit
+     * granted by the client. Idle streams get an empty batch every pullStreamHeartbeatIntervalMillis so the
+     * client can tell them from broken ones.
+     */
+    private boolean pullStreamEnable = true;
+    private int pullStreamMaxBatchNum = 32;
+    private long pullStreamHeartbeatIntervalMillis = 10000;
+
     // The period to sync broker member group from namesrv, default value is 1 second
     private int syncBrokerMemberGroupPeriod = 1000;
 
@@ -467,6 +515,14 @@ public class BrokerConfig extends BrokerIdentity {
         this.popCkStayBufferTimeOut = popCkStayBufferTimeOut;
     }
 
+    public int getPopPollingShardNum() {
+        return popPollingShardNum;
+    }
+
+    public void setPopPollingShardNum(int popPollingShardNum) {
+        this.popPollingShardNum = popPollingShardNum;
+    }
+
     public int getPopPollingMapSize() {
         return popPollingMapSize;
     }
@@ -483,6 +539,30 @@ public class BrokerConfig extends BrokerIdentity {
         this.reviveScanTime = reviveScanTime;
     }
 
+    public int getReviveLookupThreadNum() {
+        return reviveLookupThreadNum;
+    }
+
+    public void setReviveLookupThreadNum(int reviveLookupThreadNum) {
+        this.reviveLookupThreadNum = reviveLookupThreadNum;
+    }
+
+    public int getReviveLookupThreadPoolQueueCapacity() {
+        return reviveLookupThreadPoolQueueCapacity;
+    }
+
+    public void setReviveLookupThreadPoolQueueCapacity(int reviveLookupThreadPoolQueueCapacity) {
+        this.reviveLookupThreadPoolQueueCapacity = reviveLookupThreadPoolQueueCapacity;
+    }
+
+    public int getReviveMaxInflightCheckpointNum() {
+        return reviveMaxInflightCheckpointNum;
+    }
+
+    public void setReviveMaxInflightCheckpointNum(int reviveMaxInflightCheckpointNum) {
+        this.reviveMaxInflightCheckpointNum = reviveMaxInflightCheckpointNum;
+    }
+
     public long getReviveMaxSlow() {
         return reviveMaxSlow;
     }
@@ -523,6 +603,46 @@ public class BrokerConfig extends BrokerIdentity {
         this.popCkOffsetMaxQueueSize = popCkOffsetMaxQueueSize;
     }
 
+    public boolean isEnablePopAckCoalesce() {
+        return enablePopAckCoalesce;
+    }
+
+    public void setEnablePopAckCoalesce(boolean enablePopAckCoalesce) {
+        this.enablePopAckCoalesce = enablePopAckCoalesce;
+    }
+
+    public long getPopAckCoalesceWindowMillis() {
+        return popAckCoalesceWindowMillis;
+    }
+
+    public boolean isEnablePopStateStore() {
+        return enablePopStateStore;
+    }
+
+    public void setEnablePopStateStore(boolean enablePopStateStore) {
+        this.enablePopStateStore = enablePopStateStore;
+    }
+
+    public int getPopStateScanMaxNum() {
+        return popStateScanMaxNum;
+    }
+
+    public void setPopStateScanMaxNum(int popStateScanMaxNum) {
+        this.popStateScanMaxNum = popStateScanMaxNum;
+    }
+
+    public long getPopStateReviveWaitMillis() {
+        return popStateReviveWaitMillis;
+    }
+
+    public void setPopStateReviveWaitMillis(long popStateReviveWaitMillis) {
+        this.popStateReviveWaitMillis = popStateReviveWaitMillis;
+    }
+
+    public void setPopAckCoalesceWindowMillis(long popAckCoalesceWindowMillis) {
+        this.popAckCoalesceWindowMillis = popAckCoalesceWindowMillis;
+    }
+
     public boolean isEnablePopBatchAck() {
         return enablePopBatchAck;
     }
@@ -643,6 +763,14 @@ public class BrokerConfig extends BrokerIdentity {
         this.transferMsgByHeap = transferMsgByHeap;
     }
 
+    public boolean isTransferMsgByCompositeBuffer() {
+        return transferMsgByCompositeBuffer;
+    }
+
+    public void setTransferMsgByCompositeBuffer(boolean transferMsgByCompositeBuffer) {
+        this.transferMsgByCompositeBuffer = transferMsgByCompositeBuffer;
+    }
+
     public String getMessageStorePlugIn() {
         return messageStorePlugIn;
     }
@@ -867,6 +995,30 @@ public class BrokerConfig extends BrokerIdentity {
         this.waitTimeMillsInLitePullQueue = waitTimeMillsInLitePullQueue;
     }
 
+    public boolean isPullStreamEnable() {
+        return pullStreamEnable;
+    }
+
+    public void setPullStreamEnable(boolean pullStreamEnable) {
+        this.pullStreamEnable = pullStreamEnable;
+    }
+
+    public int getPullStreamMaxBatchNum() {
+        return pullStreamMaxBatchNum;
+    }
+
+    public void setPullStreamMaxBatchNum(int pullStreamMaxBatchNum) {
+        this.pullStreamMaxBatchNum = pullStreamMaxBatchNum;
+    }
+
+    public long getPullStreamHeartbeatIntervalMillis() {
+        return pullStreamHeartbeatIntervalMillis;
+    }
+
+    public void setPullStreamHeartbeatIntervalMillis(long pullStreamHeartbeatIntervalMillis) {
+        this.pullStreamHeartbeatIntervalMillis = pullStreamHeartbeatIntervalMillis;
+    }
+
     public boolean isLitePullMessageEnable() {
         return litePullMessageEnable;
     }
@@ -955,6 +1107,22 @@ public class BrokerConfig extends BrokerIdentity {
         this.brokerTopicEnable = brokerTopicEnable;
     }
 
+    public boolean isEnablePullHoldTimingWheel() {
+        return enablePullHoldTimingWheel;
+    }
+
+    public void setEnablePullHoldTimingWheel(boolean enablePullHoldTimingWheel) {
+        this.enablePullHoldTimingWheel = enablePullHoldTimingWheel;
+    }
+
+    public long getPullHoldTimingWheelTickMillis() {
+        return pullHoldTimingWheelTickMillis;
+    }
+
+    public void setPullHoldTimingWheelTickMillis(long pullHoldTimingWheelTickMillis) {
+        this.pullHoldTimingWheelTickMillis = pullHoldTimingWheelTickMillis;
+    }
+
     public boolean isLongPollingEnable() {
         return longPollingEnable;
     }
@@ -0,0 +1,426 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.rocketmq.common.BoundaryType;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.annotation.CFNotNull;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+
+/**
+ * Encoder and decoder of the fields of one {@link CommandCustomHeader} class, built once per class.
+ *
+ * <p>Field types, accessors, nullability and the UTF-8 bytes of the field names are resolved up front, so that
+ * encoding writes each field straight into the ROCKETMQ serialized ext fields of a command, and decoding reads
+ * them straight from the received bytes, without going through the ext fields map. The wire format is the one
+ * of {@link RocketMQSerializable#mapSerialize(HashMap)}.
+ */
+class CommandCustomHeaderCodec {
+    private static final ConcurrentMap<Class<? extends CommandCustomHeader>, CommandCustomHeaderCodec> CODEC_TABLE =
+        new ConcurrentHashMap<>(256);
+    /**
+     * fields seen while decoding are tracked in a long
+     */
+    private static final int MAX_FIELD_NUM = Long.SIZE;
+
+    private final FieldCodec[] fields;
+    private final Map<String, FieldCodec> fieldTable;
+
+    private CommandCustomHeaderCodec(final Class<? extends CommandCustomHeader> classHeader) {
+        List<FieldCodec> fieldList = new ArrayList<>();
+        Map<String, FieldCodec> table = new HashMap<>();
+        for (Class<?> clazz = classHeader; clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                // same fields as RemotingCommand#getClazzFields, a field hidden by a subclass is taken from the subclass
+                if (Modifier.isStatic(field.getModifiers()) || field.getName().startsWith("this")
+                    || table.containsKey(field.getName())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                FieldCodec fieldCodec = new FieldCodec(field);
+                fieldList.add(fieldCodec);
+                table.put(fieldCodec.name, fieldCodec);
+            }
+        }
+        this.fields = fieldList.toArray(new FieldCodec[0]);
+        this.fieldTable = table;
+    }
+
+    static CommandCustomHeaderCodec getCodec(final Class<? extends CommandCustomHeader> classHeader) {
+        CommandCustomHeaderCodec codec = CODEC_TABLE.get(classHeader);
+        if (codec == null) {
+            codec = CODEC_TABLE.computeIfAbsent(classHeader, CommandCustomHeaderCodec::new);
+        }
+        return codec;
+    }
+
+    /**
+     * Writes the non-null fields of the header as ext fields.
+     */
+    void encode(final CommandCustomHeader header, final ByteBuf out) {
+        for (FieldCodec field : this.fields) {
+            try {
+                field.encode(header, out);
+            } catch (IllegalAccessException e) {
+                RemotingCommand.log.error("Failed to access field [{}]", field.name, e);
+            }
+        }
+    }
+
+    /**
+     * Puts the non-null fields of the header into the ext fields map.
+     */
+    void encode(final CommandCustomHeader header, final Map<String, String> extFields) {
+        for (FieldCodec field : this.fields) {
+            try {
+                Object value = field.field.get(header);
+                if (value != null) {
+                    extFields.put(field.name, value.toString());
+                }
+            } catch (IllegalAccessException e) {
+                RemotingCommand.log.error("Failed to access field [{}]", field.name, e);
+            }
+        }
+    }
+
+    /**
+     * @return true if {@link #encode(CommandCustomHeader, ByteBuf)} writes the ext field of this key
+     */
+    boolean encodes(final CommandCustomHeader header, final String key) {
+        FieldCodec field = this.fieldTable.get(key);
+        if (field == null) {
+            return false;
+        }
+        try {
+            return field.field.getType().isPrimitive() || field.field.get(header) != null;
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+    }
+
+    boolean canDecodeBytes() {
+        return this.fields.length <= MAX_FIELD_NUM;
+    }
+
+    /**
+     * Decodes the header from ROCKETMQ serialized ext fields, checked by
+     * {@link RocketMQSerializable#checkExtFields(byte[])}. When a key repeats, the last value wins, as in the map.
+     */
+    void decode(final CommandCustomHeader header, final byte[] extFields) {
+        long seen = 0;
+        int next = 0;
+        int pos = 0;
+        while (pos < extFields.length) {
+            int keyLen = getShort(extFields, pos);
+            int keyPos = pos + 2;
+            int valueLen = getInt(extFields, keyPos + keyLen);
+            int valuePos = keyPos + keyLen + 4;
+            pos = valuePos + valueLen;
+
+            // fields are encoded in declaration order, so the next field is tried first
+            int index = this.indexOf(extFields, keyPos, keyLen, next);
+            if (index < 0) {
+                continue;
+            }
+            next = index + 1;
+            FieldCodec field = this.fields[index];
+            if (valueLen == 0) {
+                // an empty value is read as null
+                seen &= ~(1L << index);
+                continue;
+            }
+            try {
+                field.decode(header, extFields, valuePos, valueLen);
+                seen |= 1L << index;
+            } catch (Throwable e) {
+                seen |= 1L << index;
+                RemotingCommand.log.error("Failed field [{}] decoding", field.name, e);
+            }
+        }
+        for (int i = 0; i < this.fields.length; i++) {
+            if ((seen & 1L << i) == 0 && this.fields[i].notNull) {
+                this.logNullField(this.fields[i]);
+            }
+        }
+    }
+
+    /**
+     * Decodes the header from the ext fields map.
+     */
+    void decode(final CommandCustomHeader header, final Map<String, String> extFields) {
+        for (FieldCodec field : this.fields) {
+            String value = extFields.get(field.name);
+            if (value == null) {
+                if (field.notNull) {
+                    this.logNullField(field);
+                }
+                continue;
+            }
+            try {
+                field.decode(header, value);
+            } catch (Throwable e) {
+                RemotingCommand.log.error("Failed field [{}] decoding", field.name, e);
+            }
+        }
+    }
+
+    private void logNullField(final FieldCodec field) {
+        RemotingCommand.log.error("Failed field [{}] decoding", field.name,
+            new RemotingCommandException("the custom field <" + field.name + "> is null"));
+    }
+
+    private int indexOf(final byte[] buf, final int keyPos, final int keyLen, final int next) {
+        for (int i = next; i < this.fields.length; i++) {
+            if (this.fields[i].matches(buf, keyPos, keyLen)) {
+                return i;
+            }
+        }
+        for (int i = 0; i < next && i < this.fields.length; i++) {
+            if (this.fields[i].matches(buf, keyPos, keyLen)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int getShort(final byte[] buf, final int pos) {
+        return (short) ((buf[pos] & 0xff) << 8 | buf[pos + 1] & 0xff);
+    }
+
+    static int getInt(final byte[] buf, final int pos) {
+        return (buf[pos] & 0xff) << 24 | (buf[pos + 1] & 0xff) << 16 | (buf[pos + 2] & 0xff) << 8 | buf[pos + 3] & 0xff;
+    }
+
+    /**
+     * Writes the decimal string of the value with an int length prefix, as
+     * {@code RocketMQSerializable.writeStr(out, false, Long.toString(value))} does.
+     */
+    static void writeDecimal(final ByteBuf out, final long value) {
+        if (value == Long.MIN_VALUE) {
+            RocketMQSerializable.writeStr(out, false, Long.toString(value));
+            return;
+        }
+        long abs = Math.abs(value);
+        int len = value < 0 ? 2 : 1;
+        for (long rest = abs; rest >= 10; rest /= 10) {
+            len++;
+        }
+        out.writeInt(len);
+        out.ensureWritable(len);
+        int begin = out.writerIndex();
+        if (value < 0) {
+            out.setByte(begin, '-');
+        }
+        int i = begin + len;
+        do {
+            out.setByte(--i, (int) ('0' + abs % 10));
+            abs /= 10;
+        }
+        while (abs > 0);
+        out.writerIndex(begin + len);
+    }
+
+    /**
+     * Parses a decimal of at most 18 digits, as {@link Long#parseLong(String)} does.
+     */
+    static long parseDecimal(final byte[] buf, final int pos, final int len) {
+        int i = pos;
+        boolean negative = false;
+        if (len > 1 && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+        if (pos + len - i > 18) {
+            return Long.parseLong(new String(buf, pos, len, StandardCharsets.UTF_8));
+        }
+        long value = 0;
+        for (; i < pos + len; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                // let the JDK parse or reject it
+                return Long.parseLong(new String(buf, pos, len, StandardCharsets.UTF_8));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private enum FieldType {
+        STRING, INTEGER, LONG, BOOLEAN, DOUBLE, BOUNDARY_TYPE, UNSUPPORTED
+    }
+
+    private static final class FieldCodec {
+        private final Field field;
+        private final String name;
+        private final byte[] nameBytes;
+        private final FieldType type;
+        private final boolean primitive;
+        private final boolean notNull;
+
+        private FieldCodec(final Field field) {
+            this.field = field;
+            this.name = field.getName();
+            this.nameBytes = this.name.getBytes(StandardCharsets.UTF_8);
+            this.primitive = field.getType().isPrimitive();
+            this.notNull = field.getAnnotation(CFNotNull.class) != null;
+            Class<?> clazz = field.getType();
+            if (clazz == String.class) {
+                this.type = FieldType.STRING;
+            } else if (clazz == Integer.class || clazz == int.class) {
+                this.type = FieldType.INTEGER;
+            } else if (clazz == Long.class || clazz == long.class) {
+                this.type = FieldType.LONG;
+            } else if (clazz == Boolean.class || clazz == boolean.class) {
+                this.type = FieldType.BOOLEAN;
+            } else if (clazz == Double.class || clazz == double.class) {
+                this.type = FieldType.DOUBLE;
+            } else if (clazz == BoundaryType.class) {
+                this.type = FieldType.BOUNDARY_TYPE;
+            } else {
+                this.type = FieldType.UNSUPPORTED;
+            }
+        }
+
+        private boolean matches(final byte[] buf, final int pos, final int len) {
+            if (len != this.nameBytes.length) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (buf[pos + i] != this.nameBytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void encode(final CommandCustomHeader header, final ByteBuf out) throws IllegalAccessException {
+            if (this.primitive) {
+                this.writeName(out);
+                switch (this.type) {
+                    case INTEGER:
+                        writeDecimal(out, this.field.getInt(header));
+                        return;
+                    case LONG:
+                        writeDecimal(out, this.field.getLong(header));
+                        return;
+                    case BOOLEAN:
+                        RocketMQSerializable.writeStr(out, false, this.field.getBoolean(header) ? "true" : "false");
+                        return;
+                    default:
+                        RocketMQSerializable.writeStr(out, false, String.valueOf(this.field.get(header)));
+                        return;
+                }
+            }
+            Object value = this.field.get(header);
+            if (value == null) {
+                return;
+            }
+            this.writeName(out);
+            switch (this.type) {
+                case STRING:
+                    RocketMQSerializable.writeStr(out, false, (String) value);
+                    return;
+                case INTEGER:
+                case LONG:
+                    writeDecimal(out, ((Number) value).longValue());
+                    return;
+                default:
+                    RocketMQSerializable.writeStr(out, false, value.toString());
+            }
+        }
+
+        private void writeName(final ByteBuf out) {
+            out.writeShort(this.nameBytes.length);
+            out.writeBytes(this.nameBytes);
+        }
+
+        private void decode(final CommandCustomHeader header, final byte[] buf, final int pos, final int len)
+            throws IllegalAccessException, RemotingCommandException {
+            switch (this.type) {
+                case INTEGER:
+                    long value = parseDecimal(buf, pos, len);
+                    if (value != (int) value) {
+                        // let the JDK reject it
+                        value = Integer.parseInt(new String(buf, pos, len, StandardCharsets.UTF_8));
+                    }
+                    if (this.primitive) {
+                        this.field.setInt(header, (int) value);
+                    } else {
+                        this.field.set(header, (int) value);
+                    }
+                    return;
+                case LONG:
+                    if (this.primitive) {
+                        this.field.setLong(header, parseDecimal(buf, pos, len));
+                    } else {
+                        this.field.set(header, parseDecimal(buf, pos, len));
+                    }
+                    return;
+                case BOOLEAN:
+                    boolean bool = len == 4 && (buf[pos] | 0x20) == 't' && (buf[pos + 1] | 0x20) == 'r'
+                        && (buf[pos + 2] | 0x20) == 'u' && (buf[pos + 3] | 0x20) == 'e';
+                    if (this.primitive) {
+                        this.field.setBoolean(header, bool);
+                    } else {
+                        this.field.set(header, bool);
+                    }
+                    return;
+                default:
+                    this.decode(header, new String(buf, pos, len, StandardCharsets.UTF_8));
+            }
+        }
+
+        private void decode(final CommandCustomHeader header, final String value)
+            throws IllegalAccessException, RemotingCommandException {
+            Object valueParsed;
+            switch (this.type) {
+                case STRING:
+                    valueParsed = value;
+                    break;
+                case INTEGER:
+                    valueParsed = Integer.parseInt(value);
+                    break;
+                case LONG:
+                    valueParsed = Long.parseLong(value);
+                    break;
+                case BOOLEAN:
+                    valueParsed = Boolean.parseBoolean(value);
+                    break;
+                case DOUBLE:
+                    valueParsed = Double.parseDouble(value);
+                    break;
+                case BOUNDARY_TYPE:
+                    valueParsed = BoundaryType.getType(value);
+                    break;
+                default:
+                    throw new RemotingCommandException("the custom field <" + this.name + "> type is not supported");
+            }
+            this.field.set(header, valueParsed);
+        }
+    }
+}
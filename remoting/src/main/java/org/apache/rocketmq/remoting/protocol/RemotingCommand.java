@@ -88,6 +88,10 @@ public class RemotingCommand {
     private int flag = 0;
     private String remark;
     private HashMap<String, String> extFields;
+    /**
+     * ext fields received in ROCKETMQ serialize type, until they are deserialized into {@link #extFields}
+     */
+    private transient byte[] extFieldsBytes;
     private transient CommandCustomHeader customHeader;
     private transient CommandCustomHeader cachedHeader;
 
@@ -285,13 +289,25 @@ public class RemotingCommand {
             return null;
         }
 
-        if (this.extFields != null) {
+        if (this.extFields != null || this.extFieldsBytes != null) {
             if (objectHeader instanceof FastCodesHeader && useFastEncode) {
-                ((FastCodesHeader) objectHeader).decode(this.extFields);
+                ((FastCodesHeader) objectHeader).decode(this.getExtFields());
                 objectHeader.checkFields();
                 return objectHeader;
             }
 
+            if (useFastEncode) {
+                CommandCustomHeaderCodec codec = CommandCustomHeaderCodec.getCodec(classHeader);
+                if (this.extFieldsBytes != null && codec.canDecodeBytes()) {
+                    codec.decode(objectHeader, this.extFieldsBytes);
+                } else {
+                    codec.decode(objectHeader, this.getExtFields());
+                }
+                objectHeader.checkFields();
+                return objectHeader;
+            }
+
+            this.getExtFields();
             Field[] fields = getClazzFields(classHeader);
             for (Field field : fields) {
                 if (!Modifier.isStatic(field.getModifiers())) {
@@ -426,29 +442,10 @@ public class RemotingCommand {
 
     public void makeCustomHeaderToNet() {
         if (this.customHeader != null) {
-            Field[] fields = getClazzFields(customHeader.getClass());
-            if (null == this.extFields) {
+            if (null == this.getExtFields()) {
                 this.extFields = new HashMap<>();
             }
-
-            for (Field field : fields) {
-                if (!Modifier.isStatic(field.getModifiers())) {
-                    String name = field.getName();
-                    if (!name.startsWith("this")) {
-                        Object value = null;
-                        try {
-                            field.setAccessible(true);
-                            value = field.get(this.customHeader);
-                        } catch (Exception e) {
-                            log.error("Failed to access field [{}]", name, e);
-                        }
-
-                        if (value != null) {
-                            this.extFields.put(name, value.toString());
-                        }
-                    }
-                }
-            }
+            CommandCustomHeaderCodec.getCodec(this.customHeader.getClass()).encode(this.customHeader, this.extFields);
         }
     }
 
@@ -459,9 +456,7 @@ public class RemotingCommand {
         out.writeLong(0);
         int headerSize;
         if (SerializeType.ROCKETMQ == serializeTypeCurrentRPC) {
-            if (customHeader != null && !(customHeader instanceof FastCodesHeader)) {
-                this.makeCustomHeaderToNet();
-            }
+            // the custom header is written by RocketMQSerializable without going through ext fields
             headerSize = RocketMQSerializable.rocketMQProtocolEncode(this, out);
         } else {
             this.makeCustomHeaderToNet();
@@ -599,28 +594,42 @@ public class RemotingCommand {
     }
 
     public HashMap<String, String> getExtFields() {
+        if (extFieldsBytes != null) {
+            extFields = RocketMQSerializable.mapDeserialize(extFieldsBytes);
+            extFieldsBytes = null;
+        }
         return extFields;
     }
 
     public void setExtFields(HashMap<String, String> extFields) {
         this.extFields = extFields;
+        this.extFieldsBytes = null;
+    }
+
+    byte[] getExtFieldsBytes() {
+        return extFieldsBytes;
+    }
+
+    void setExtFieldsBytes(byte[] extFieldsBytes) {
+        this.extFieldsBytes = extFieldsBytes;
+        this.extFields = null;
     }
 
     public void addExtField(String key, String value) {
-        if (null == extFields) {
+        if (null == getExtFields()) {
             extFields = new HashMap<>(256);
         }
         extFields.put(key, value);
     }
 
     public void addExtFieldIfNotExist(String key, String value) {
-        extFields.putIfAbsent(key, value);
+        getExtFields().putIfAbsent(key, value);
     }
 
     @Override
     public String toString() {
         return "RemotingCommand [code=" + code + ", language=" + language + ", version=" + version + ", opaque=" + opaque + ", flag(B)="
-            + Integer.toBinaryString(flag) + ", remark=" + remark + ", extFields=" + extFields + ", serializeTypeCurrentRPC="
+            + Integer.toBinaryString(flag) + ", remark=" + remark + ", extFields=" + getExtFields() + ", serializeTypeCurrentRPC="
             + serializeTypeCurrentRPC + "]";
     }
 
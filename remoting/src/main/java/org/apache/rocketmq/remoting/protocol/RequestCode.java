@@ -217,6 +217,18 @@ public class RequestCode {
 
     public static final int LITE_PULL_MESSAGE = 361;
 
+    /**
+     * open a message stream on a queue, the broker then pushes batches with {@link #PUSH_PULL_STREAM_MESSAGE}
+     * as long as the client has granted credit
+     */
+    public static final int OPEN_PULL_STREAM = 362;
+
+    public static final int ADD_PULL_STREAM_CREDIT = 363;
+
+    public static final int CLOSE_PULL_STREAM = 364;
+
+    public static final int PUSH_PULL_STREAM_MESSAGE = 365;
+
     public static final int QUERY_ASSIGNMENT = 400;
     public static final int SET_MESSAGE_REQUEST_MODE = 401;
     public static final int GET_ALL_MESSAGE_REQUEST_MODE = 402;
@@ -22,6 +22,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 
 import io.netty.buffer.ByteBuf;
@@ -78,17 +79,31 @@ public class RocketMQSerializable {
 
         int mapLenIndex = out.writerIndex();
         out.writeInt(0);
-        if (cmd.readCustomHeader() instanceof FastCodesHeader) {
-            ((FastCodesHeader) cmd.readCustomHeader()).encode(out);
-        }
-        HashMap<String, String> map = cmd.getExtFields();
-        if (map != null && !map.isEmpty()) {
-            map.forEach((k, v) -> {
-                if (k != null && v != null) {
-                    writeStr(out, true, k);
-                    writeStr(out, false, v);
+        CommandCustomHeader header = cmd.readCustomHeader();
+        CommandCustomHeaderCodec codec = null;
+        if (header instanceof FastCodesHeader) {
+            ((FastCodesHeader) header).encode(out);
+        } else if (header != null) {
+            codec = CommandCustomHeaderCodec.getCodec(header.getClass());
+            codec.encode(header, out);
+        }
+        byte[] extFieldsBytes = cmd.getExtFieldsBytes();
+        if (extFieldsBytes != null && codec == null) {
+            // forwarded as received
+            out.writeBytes(extFieldsBytes);
+        } else {
+            HashMap<String, String> map = cmd.getExtFields();
+            if (map != null && !map.isEmpty()) {
+                for (Map.Entry<String, String> entry : map.entrySet()) {
+                    String k = entry.getKey();
+                    String v = entry.getValue();
+                    // fields of the header win over ext fields of the same name, as with makeCustomHeaderToNet
+                    if (k != null && v != null && (codec == null || !codec.encodes(header, k))) {
+                        writeStr(out, true, k);
+                        writeStr(out, false, v);
+                    }
                 }
-            });
+            }
         }
         out.setInt(mapLenIndex, out.writerIndex() - mapLenIndex - 4);
         return out.writerIndex() - beginIndex;
@@ -224,11 +239,59 @@ public class RocketMQSerializable {
             if (extFieldsLength > headerLen) {
                 throw new RemotingCommandException("RocketMQ protocol decoding failed, extFields length: " + extFieldsLength + ", but header length: " + headerLen);
             }
-            cmd.setExtFields(mapDeserialize(headerBuffer, extFieldsLength));
+            // kept serialized, the custom header is decoded from them, and the map only built if asked for
+            byte[] extFieldsBytes = new byte[extFieldsLength];
+            headerBuffer.readBytes(extFieldsBytes);
+            checkExtFields(extFieldsBytes);
+            cmd.setExtFieldsBytes(extFieldsBytes);
         }
         return cmd;
     }
 
+    /**
+     * Checks that the serialized ext fields are made of whole key-value pairs.
+     */
+    static void checkExtFields(byte[] extFields) throws RemotingCommandException {
+        int pos = 0;
+        while (pos < extFields.length) {
+            if (extFields.length - pos < 2) {
+                throw new RemotingCommandException("RocketMQ protocol decoding failed, truncated extFields key at " + pos);
+            }
+            int keyLen = CommandCustomHeaderCodec.getShort(extFields, pos);
+            pos += 2;
+            if (keyLen < 0 || extFields.length - pos < keyLen + 4) {
+                throw new RemotingCommandException("string length exceed limit:" + extFields.length);
+            }
+            pos += keyLen;
+            int valueLen = CommandCustomHeaderCodec.getInt(extFields, pos);
+            pos += 4;
+            if (valueLen < 0 || extFields.length - pos < valueLen) {
+                throw new RemotingCommandException("string length exceed limit:" + extFields.length);
+            }
+            pos += valueLen;
+        }
+    }
+
+    /**
+     * Deserializes ext fields checked by {@link #checkExtFields(byte[])}.
+     */
+    static HashMap<String, String> mapDeserialize(byte[] extFields) {
+        HashMap<String, String> map = new HashMap<>(128);
+        int pos = 0;
+        while (pos < extFields.length) {
+            int keyLen = CommandCustomHeaderCodec.getShort(extFields, pos);
+            pos += 2;
+            String k = keyLen == 0 ? null : new String(extFields, pos, keyLen, CHARSET_UTF8);
+            pos += keyLen;
+            int valueLen = CommandCustomHeaderCodec.getInt(extFields, pos);
+            pos += 4;
+            String v = valueLen == 0 ? null : new String(extFields, pos, valueLen, CHARSET_UTF8);
+            pos += valueLen;
+            map.put(k, v);
+        }
+        return map;
+    }
+
     public static HashMap<String, String> mapDeserialize(ByteBuf byteBuffer, int len) throws RemotingCommandException {
 
         HashMap<String, String> map = new HashMap<>(128);
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol.header;
+
+import com.google.common.base.MoreObjects;
+import org.apache.rocketmq.common.action.Action;
+import org.apache.rocketmq.common.action.RocketMQAction;
+import org.apache.rocketmq.common.resource.ResourceType;
+import org.apache.rocketmq.common.resource.RocketMQResource;
+import org.apache.rocketmq.remoting.annotation.CFNotNull;
+import org.apache.rocketmq.remoting.annotation.CFNullable;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+import org.apache.rocketmq.remoting.protocol.RequestCode;
+import org.apache.rocketmq.remoting.rpc.TopicQueueRequestHeader;
+
+@RocketMQAction(value = RequestCode.OPEN_PULL_STREAM, action = Action.SUB)
+public class OpenPullStreamRequestHeader extends TopicQueueRequestHeader {
+    @CFNotNull
+    @RocketMQResource(ResourceType.GROUP)
+    private String consumerGroup;
+    @CFNotNull
+    @RocketMQResource(ResourceType.TOPIC)
+    private String topic;
+    @CFNotNull
+    private Integer queueId;
+    @CFNotNull
+    private Long queueOffset;
+    /**
+     * chosen by the client, unique within its connection
+     */
+    @CFNotNull
+    private Long streamId;
+    /**
+     * number of messages the broker may push before it is granted more
+     */
+    @CFNotNull
+    private Integer credit;
+    @CFNotNull
+    private String subscription;
+    @CFNullable
+    private String expressionType;
+    @CFNotNull
+    private Long subVersion;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+    }
+
+    public String getConsumerGroup() {
+        return consumerGroup;
+    }
+
+    public void setConsumerGroup(String consumerGroup) {
+        this.consumerGroup = consumerGroup;
+    }
+
+    @Override
+    public String getTopic() {
+        return topic;
+    }
+
+    @Override
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    @Override
+    public Integer getQueueId() {
+        return queueId;
+    }
+
+    @Override
+    public void setQueueId(Integer queueId) {
+        this.queueId = queueId;
+    }
+
+    public Long getQueueOffset() {
+        return queueOffset;
+    }
+
+    public void setQueueOffset(Long queueOffset) {
+        this.queueOffset = queueOffset;
+    }
+
+    public Long getStreamId() {
+        return streamId;
+    }
+
+    public void setStreamId(Long streamId) {
+        this.streamId = streamId;
+    }
+
+    public Integer getCredit() {
+        return credit;
+    }
+
+    public void setCredit(Integer credit) {
+        this.credit = credit;
+    }
+
+    public String getSubscription() {
+        return subscription;
+    }
+
+    public void setSubscription(String subscription) {
+        this.subscription = subscription;
+    }
+
+    public String getExpressionType() {
+        return expressionType;
+    }
+
+    public void setExpressionType(String expressionType) {
+        this.expressionType = expressionType;
+    }
+
+    public Long getSubVersion() {
+        return subVersion;
+    }
+
+    public void setSubVersion(Long subVersion) {
+        this.subVersion = subVersion;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("consumerGroup", consumerGroup)
+            .add("topic", topic)
+            .add("queueId", queueId)
+            .add("queueOffset", queueOffset)
+            .add("streamId", streamId)
+            .add("credit", credit)
+            .add("subscription", subscription)
+            .add("expressionType", expressionType)
+            .add("subVersion", subVersion)
+            .toString();
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol.header;
+
+import io.netty.buffer.ByteBuf;
+import java.util.HashMap;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.annotation.CFNotNull;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+import org.apache.rocketmq.remoting.protocol.FastCodesHeader;
+
+/**
+ * Header of a batch pushed by the broker on a pull stream. {@code pullCode} carries the response code a pull
+ * request would have got, the body carries the messages when it is {@code SUCCESS}.
+ */
+public class PushPullStreamMessageRequestHeader implements CommandCustomHeader, FastCodesHeader {
+    @CFNotNull
+    private String consumerGroup;
+    @CFNotNull
+    private Long streamId;
+    @CFNotNull
+    private Integer pullCode;
+    /**
+     * messages taken from the credit of the stream, before any client side filtering
+     */
+    @CFNotNull
+    private Integer messageCount;
+    @CFNotNull
+    private Long nextBeginOffset;
+    @CFNotNull
+    private Long minOffset;
+    @CFNotNull
+    private Long maxOffset;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+    }
+
+    @Override
+    public void encode(ByteBuf out) {
+        writeIfNotNull(out, "consumerGroup", consumerGroup);
+        writeIfNotNull(out, "streamId", streamId);
+        writeIfNotNull(out, "pullCode", pullCode);
+        writeIfNotNull(out, "messageCount", messageCount);
+        writeIfNotNull(out, "nextBeginOffset", nextBeginOffset);
+        writeIfNotNull(out, "minOffset", minOffset);
+        writeIfNotNull(out, "maxOffset", maxOffset);
+    }
+
+    @Override
+    public void decode(HashMap<String, String> fields) throws RemotingCommandException {
+        this.consumerGroup = getAndCheckNotNull(fields, "consumerGroup");
+
+        String str = getAndCheckNotNull(fields, "streamId");
+        if (str != null) {
+            this.streamId = Long.parseLong(str);
+        }
+
+        str = getAndCheckNotNull(fields, "pullCode");
+        if (str != null) {
+            this.pullCode = Integer.parseInt(str);
+        }
+
+        str = getAndCheckNotNull(fields, "messageCount");
+        if (str != null) {
+            this.messageCount = Integer.parseInt(str);
+        }
+
+        str = getAndCheckNotNull(fields, "nextBeginOffset");
+        if (str != null) {
+            this.nextBeginOffset = Long.parseLong(str);
+        }
+
+        str = getAndCheckNotNull(fields, "minOffset");
+        if (str != null) {
+            this.minOffset = Long.parseLong(str);
+        }
+
+        str = getAndCheckNotNull(fields, "maxOffset");
+        if (str != null) {
+            this.maxOffset = Long.parseLong(str);
+        }
+    }
+
+    public String getConsumerGroup() {
+        return consumerGroup;
+    }
+
+    public void setConsumerGroup(String consumerGroup) {
+        this.consumerGroup = consumerGroup;
+    }
+
+    public Long getStreamId() {
+        return streamId;
+    }
+
+    public void setStreamId(Long streamId) {
+        this.streamId = streamId;
+    }
+
+    public Integer getPullCode() {
+        return pullCode;
+    }
+
+    public void setPullCode(Integer pullCode) {
+        this.pullCode = pullCode;
+    }
+
+    public Integer getMessageCount() {
+        return messageCount;
+    }
+
+    public void setMessageCount(Integer messageCount) {
+        this.messageCount = messageCount;
+    }
+
+    public Long getNextBeginOffset() {
+        return nextBeginOffset;
+    }
+
+    public void setNextBeginOffset(Long nextBeginOffset) {
+        this.nextBeginOffset = nextBeginOffset;
+    }
+
+    public Long getMinOffset() {
+        return minOffset;
+    }
+
+    public void setMinOffset(Long minOffset) {
+        this.minOffset = minOffset;
+    }
+
+    public Long getMaxOffset() {
+        return maxOffset;
+    }
+
+    public void setMaxOffset(Long maxOffset) {
+        this.maxOffset = maxOffset;
+    }
+}
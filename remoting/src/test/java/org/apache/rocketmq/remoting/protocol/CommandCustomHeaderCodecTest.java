@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import org.apache.rocketmq.common.BoundaryType;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.annotation.CFNotNull;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CommandCustomHeaderCodecTest {
+
+    @Test
+    public void testEncodeAndDecode() throws Exception {
+        SampleHeader header = new SampleHeader();
+        header.setTopic("topic-\u00e9\u00e8");
+        header.setQueueId(-7);
+        header.setBoxedInt(Integer.MAX_VALUE);
+        header.setOffset(Long.MIN_VALUE);
+        header.setBoxedLong(1234567890123456789L);
+        header.setFlag(true);
+        header.setRatio(0.5);
+        header.setBoundaryType(BoundaryType.UPPER);
+
+        RemotingCommand decoded = encodeAndDecode(RemotingCommand.createRequestCommand(1, header));
+        SampleHeader result = decoded.decodeCommandCustomHeader(SampleHeader.class);
+        assertThat(result.getTopic()).isEqualTo(header.getTopic());
+        assertThat(result.getQueueId()).isEqualTo(-7);
+        assertThat(result.getBoxedInt()).isEqualTo(Integer.MAX_VALUE);
+        assertThat(result.getOffset()).isEqualTo(Long.MIN_VALUE);
+        assertThat(result.getBoxedLong()).isEqualTo(1234567890123456789L);
+        assertThat(result.isFlag()).isTrue();
+        assertThat(result.getBoxedFlag()).isNull();
+        assertThat(result.getRatio()).isEqualTo(0.5);
+        assertThat(result.getBoundaryType()).isEqualTo(BoundaryType.UPPER);
+
+        // the same ext fields as the reflective encoding
+        RemotingCommand reflective = RemotingCommand.createRequestCommand(1, header);
+        reflective.makeCustomHeaderToNet();
+        assertThat(decoded.getExtFields()).isEqualTo(reflective.getExtFields());
+        assertThat(decoded.decodeCommandCustomHeaderDirectly(SampleHeader.class, false).getTopic()).isEqualTo(header.getTopic());
+    }
+
+    @Test
+    public void testHeaderFieldsWinOverExtFields() throws Exception {
+        SampleHeader header = new SampleHeader();
+        header.setTopic("header");
+        RemotingCommand command = RemotingCommand.createRequestCommand(1, header);
+        command.addExtField("topic", "ext");
+        command.addExtField("boxedFlag", "true");
+
+        RemotingCommand decoded = encodeAndDecode(command);
+        SampleHeader result = decoded.decodeCommandCustomHeader(SampleHeader.class);
+        assertThat(result.getTopic()).isEqualTo("header");
+        assertThat(result.getBoxedFlag()).isTrue();
+        assertThat(decoded.getExtFields()).containsEntry("topic", "header").containsEntry("queueId", "0");
+    }
+
+    @Test
+    public void testForwardReceivedExtFields() throws Exception {
+        SampleHeader header = new SampleHeader();
+        header.setTopic("topic");
+        header.setOffset(100);
+        RemotingCommand received = encodeAndDecode(RemotingCommand.createRequestCommand(1, header));
+
+        RemotingCommand forwarded = encodeAndDecode(received);
+        assertThat(forwarded.decodeCommandCustomHeader(SampleHeader.class).getOffset()).isEqualTo(100);
+        assertThat(forwarded.getExtFields()).isEqualTo(received.getExtFields());
+    }
+
+    @Test
+    public void testWriteDecimal() {
+        long[] values = {0, 1, -1, 9, 10, -10, 99, 100, Integer.MAX_VALUE, Integer.MIN_VALUE, 999999999999999999L,
+            Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+        for (long value : values) {
+            ByteBuf buf = Unpooled.buffer();
+            CommandCustomHeaderCodec.writeDecimal(buf, value);
+            int len = buf.readInt();
+            byte[] bytes = new byte[len];
+            buf.readBytes(bytes);
+            assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo(Long.toString(value));
+            assertThat(CommandCustomHeaderCodec.parseDecimal(bytes, 0, len)).isEqualTo(value);
+        }
+    }
+
+    @Test
+    public void testCheckExtFields() throws Exception {
+        HashMap<String, String> map = new HashMap<>();
+        map.put("key", "value");
+        byte[] extFields = RocketMQSerializable.mapSerialize(map);
+        RocketMQSerializable.checkExtFields(extFields);
+        assertThat(RocketMQSerializable.mapDeserialize(extFields)).isEqualTo(map);
+
+        byte[] truncated = new byte[extFields.length - 1];
+        System.arraycopy(extFields, 0, truncated, 0, truncated.length);
+        assertThatThrownBy(() -> RocketMQSerializable.checkExtFields(truncated)).isInstanceOf(RemotingCommandException.class);
+    }
+
+    private static RemotingCommand encodeAndDecode(RemotingCommand command) throws RemotingCommandException {
+        command.setSerializeTypeCurrentRPC(SerializeType.ROCKETMQ);
+        ByteBuf buf = Unpooled.buffer();
+        command.fastEncodeHeader(buf);
+        buf.readInt();
+        return RemotingCommand.decode(buf);
+    }
+
+    public static class SampleHeader implements CommandCustomHeader {
+        @CFNotNull
+        private String topic;
+        private int queueId;
+        private Integer boxedInt;
+        private long offset;
+        private Long boxedLong;
+        private boolean flag;
+        private Boolean boxedFlag;
+        private double ratio;
+        private BoundaryType boundaryType;
+
+        @Override
+        public void checkFields() {
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public void setTopic(String topic) {
+            this.topic = topic;
+        }
+
+        public int getQueueId() {
+            return queueId;
+        }
+
+        public void setQueueId(int queueId) {
+            this.queueId = queueId;
+        }
+
+        public Integer getBoxedInt() {
+            return boxedInt;
+        }
+
+        public void setBoxedInt(Integer boxedInt) {
+            this.boxedInt = boxedInt;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public void setOffset(long offset) {
+            this.offset = offset;
+        }
+
+        public Long getBoxedLong() {
+            return boxedLong;
+        }
+
+        public void setBoxedLong(Long boxedLong) {
+            this.boxedLong = boxedLong;
+        }
+
+        public boolean isFlag() {
+            return flag;
+        }
+
+        public void setFlag(boolean flag) {
+            this.flag = flag;
+        }
+
+        public Boolean getBoxedFlag() {
+            return boxedFlag;
+        }
+
+        public void setBoxedFlag(Boolean boxedFlag) {
+            this.boxedFlag = boxedFlag;
+        }
+
+        public double getRatio() {
+            return ratio;
+        }
+
+        public void setRatio(double ratio) {
+            this.ratio = ratio;
+        }
+
+        public BoundaryType getBoundaryType() {
+            return boundaryType;
+        }
+
+        public void setBoundaryType(BoundaryType boundaryType) {
+            this.boundaryType = boundaryType;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.store.logfile.MappedFile;
+
+/**
+ * Tracks the space reserved in the last commit log file when messages are copied outside the put message lock.
+ * <p>
+ * Space is reserved in order while holding the put message lock, the reserving threads then write their messages
+ * concurrently and report completion here. The wrote position of the file, which is what flush, commit, reput and
+ * HA read up to, only moves forward over contiguous space written successfully, so readers never observe a hole.
+ * <p>
+ * If a reserved space fails to be written, the file is ended there with a blank end of file, the same as when a
+ * message does not fit into the file, and the space reserved after it in the file is given up. The writers of that
+ * space are told so, which is why a writer waits until its space is either published or given up.
+ */
+public class AppendReservationTracker {
+
+    private MappedFile mappedFile;
+
+    /**
+     * Next free position of {@link #mappedFile}, only accessed while holding the put message lock
+     */
+    private int reservedPosition;
+
+    /**
+     * Position where {@link #mappedFile} is ended because the space reserved there failed to be written, the space
+     * reserved from it on is given up, guarded by this
+     */
+    private int abortPosition = Integer.MAX_VALUE;
+
+    /**
+     * Number of reservations that are neither published nor given up
+     */
+    private final AtomicInteger inflight = new AtomicInteger(0);
+
+    /**
+     * Written reservations waiting for an earlier one, start position to end position, guarded by this
+     */
+    private final Map<Integer, Integer> completed = new HashMap<>();
+
+    /**
+     * Returns the free space left in the file, must be called with the put message lock held.
+     */
+    public int remaining(MappedFile mappedFile) {
+        sync(mappedFile);
+        synchronized (this) {
+            if (this.abortPosition != Integer.MAX_VALUE) {
+                return 0;
+            }
+        }
+        return mappedFile.getFileSize() - this.reservedPosition;
+    }
+
+    /**
+     * Reserves {@code size} bytes at the tail of the file, must be called with the put message lock held.
+     *
+     * @return the position of the reserved space, or -1 if there is not enough space left
+     */
+    public int reserve(MappedFile mappedFile, int size) {
+        if (size > this.remaining(mappedFile)) {
+            return -1;
+        }
+        int position = this.reservedPosition;
+        this.reservedPosition += size;
+        this.inflight.incrementAndGet();
+        return position;
+    }
+
+    /**
+     * Reports the reserved space {@code [position, position + size)} as written or failed, and publishes the wrote
+     * position of the file as far as the space is contiguously written. Waits until the space is published or
+     * given up because an earlier space failed.
+     *
+     * @return true if the space is published, false if it failed or is given up
+     */
+    public boolean complete(MappedFile mappedFile, int position, int size, boolean written) {
+        synchronized (this) {
+            if (position >= this.abortPosition) {
+                // the file is already ended before this space
+                this.resolve(1);
+                return false;
+            }
+            if (written) {
+                this.completed.put(position, position + size);
+            } else {
+                this.abortPosition = position;
+            }
+            this.publish(mappedFile);
+
+            boolean interrupted = false;
+            while (position >= mappedFile.getWrotePosition() && position < this.abortPosition) {
+                try {
+                    this.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return written && position < this.abortPosition;
+        }
+    }
+
+    /**
+     * Waits until all the reserved space is published or given up, must be called with the put message lock held.
+     * After it returns the wrote position of the file may be used and moved directly again.
+     */
+    public void awaitCompleted() {
+        synchronized (this) {
+            boolean interrupted = false;
+            while (this.inflight.get() > 0) {
+                try {
+                    this.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    private void publish(MappedFile mappedFile) {
+        int end = mappedFile.getWrotePosition();
+        int published = 0;
+        Integer next;
+        while (end < this.abortPosition && (next = this.completed.remove(end)) != null) {
+            end = next;
+            published++;
+        }
+        if (end == this.abortPosition) {
+            // every space before the failed one is written, end the file there and give up the space after it
+            published += 1 + this.completed.size();
+            this.completed.clear();
+            this.writeEndOfFile(mappedFile, end);
+            end = mappedFile.getFileSize();
+        }
+        if (published > 0) {
+            mappedFile.setWrotePosition(end);
+            this.resolve(published);
+        }
+    }
+
+    private void writeEndOfFile(MappedFile mappedFile, int position) {
+        long storeTimestamp = mappedFile.getStoreTimestamp();
+        mappedFile.setWrotePosition(position);
+        mappedFile.appendMessage(ByteBuffer.allocate(0), (byteBuffer, fileFromOffset, maxBlank, ignored) -> {
+            byteBuffer.putInt(maxBlank);
+            byteBuffer.putInt(CommitLog.BLANK_MAGIC_CODE);
+            return new AppendMessageResult(AppendMessageStatus.END_OF_FILE, fileFromOffset + position, maxBlank, storeTimestamp);
+        });
+    }
+
+    private void resolve(int count) {
+        this.inflight.addAndGet(-count);
+        this.notifyAll();
+    }
+
+    private void sync(MappedFile mappedFile) {
+        // With nothing in flight the wrote position is authoritative, it may have been moved by an append that did
+        // not go through reservation, by recovery or by a newly created file.
+        if (this.mappedFile != mappedFile || this.inflight.get() == 0) {
+            synchronized (this) {
+                if (this.mappedFile != mappedFile) {
+                    this.abortPosition = Integer.MAX_VALUE;
+                }
+            }
+            this.mappedFile = mappedFile;
+            this.reservedPosition = mappedFile.getWrotePosition();
+        }
+    }
+}
@@ -21,6 +21,8 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -28,9 +30,14 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import com.sun.jna.NativeLong;
@@ -39,6 +46,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.ServiceThread;
 import org.apache.rocketmq.common.SystemClock;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.TopicConfig;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.attribute.CQType;
@@ -52,6 +60,7 @@ import org.apache.rocketmq.common.message.MessageVersion;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.apache.rocketmq.common.topic.TopicValidator;
 import org.apache.rocketmq.common.utils.QueueTypeUtils;
+import org.apache.rocketmq.common.utils.ThreadUtils;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
 import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
 import org.apache.rocketmq.store.MessageExtEncoder.PutMessageThreadLocal;
@@ -61,6 +70,7 @@ import org.apache.rocketmq.store.config.MessageStoreConfig;
 import org.apache.rocketmq.store.ha.HAService;
 import org.apache.rocketmq.store.ha.autoswitch.AutoSwitchHAService;
 import org.apache.rocketmq.store.logfile.MappedFile;
+import org.apache.rocketmq.store.metrics.DefaultStoreMetricsManager;
 import org.apache.rocketmq.store.util.LibC;
 import org.rocksdb.RocksDBException;
 
@@ -92,10 +102,21 @@ public class CommitLog implements Swappable {
 
     private volatile long beginTimeInLock = 0;
 
+    /**
+     * The single write head of the commit log. Every physical offset is assigned under this lock, as consume queue
+     * entries, message ids, HA transfer, confirm offset and recovery all rely on one global monotonic offset, so the
+     * commit log is not split into stripes with their own locks. Its wait and hold time are recorded in
+     * {@link DefaultStoreMetricsManager#recordPutMessageLock(long, long)} when enablePutMessageLockMetrics is set.
+     */
     protected final PutMessageLock putMessageLock;
 
     protected final TopicQueueLock topicQueueLock;
 
+    /**
+     * Not null if messages are copied into the commit log outside the put message lock
+     */
+    protected final AppendReservationTracker appendReservationTracker;
+
     private volatile Set<String> fullStorePaths = Collections.emptySet();
 
     private final FlushDiskWatcher flushDiskWatcher;
@@ -119,7 +140,12 @@ public class CommitLog implements Swappable {
 
         this.defaultMessageStore = messageStore;
 
-        this.flushManager = new DefaultFlushManager();
+        if (FlushDiskType.SYNC_FLUSH == messageStore.getMessageStoreConfig().getFlushDiskType()
+            && messageStore.getMessageStoreConfig().isEnablePipelinedFlush()) {
+            this.flushManager = new PipelinedFlushManager();
+        } else {
+            this.flushManager = new DefaultFlushManager();
+        }
         this.coldDataCheckService = new ColdDataCheckService();
 
         this.appendMessageCallback = new DefaultAppendMessageCallback(defaultMessageStore.getMessageStoreConfig());
@@ -135,6 +161,9 @@ public class CommitLog implements Swappable {
 
         this.topicQueueLock = new TopicQueueLock(messageStore.getMessageStoreConfig().getTopicQueueLockNum());
 
+        this.appendReservationTracker = messageStore.getMessageStoreConfig().isEnableCopyOutsidePutMessageLock()
+            ? new AppendReservationTracker() : null;
+
         this.commitLogSize = messageStore.getMessageStoreConfig().getMappedFileSizeCommitLog();
 
         this.enabledAppendPropCRC = messageStore.getMessageStoreConfig().isEnabledAppendPropCRC();
@@ -987,7 +1016,17 @@ public class CommitLog implements Swappable {
             msg.setEncodedBuff(putMessageThreadLocal.getEncoder().getEncoderBuffer());
             PutMessageContext putMessageContext = new PutMessageContext(topicQueueKey);
 
+            // Only reserve space while holding the lock and copy the message after releasing it, LMQ messages are
+            // excluded as their properties are rewritten with the multi dispatch offsets during append
+            boolean copyOutsideLock = this.appendReservationTracker != null
+                && !(defaultMessageStore.getMessageStoreConfig().isEnableMultiDispatch() && isMultiDispatchMsg(msg));
+            int reservedPosition = -1;
+            int reservedSize = 0;
+
+            boolean recordLockMetrics = defaultMessageStore.getMessageStoreConfig().isEnablePutMessageLockMetrics();
+            long lockRequestNanos = recordLockMetrics ? System.nanoTime() : 0L;
             putMessageLock.lock(); //spin or ReentrantLock ,depending on store config
+            long lockAcquiredNanos = recordLockMetrics ? System.nanoTime() : 0L;
             try {
                 long beginLockTimestamp = this.defaultMessageStore.getSystemClock().now();
                 this.beginTimeInLock = beginLockTimestamp;
@@ -998,56 +1037,114 @@ public class CommitLog implements Swappable {
                     msg.setStoreTimestamp(beginLockTimestamp);
                 }
 
-                if (null == mappedFile || mappedFile.isFull()) {
-                    mappedFile = this.mappedFileQueue.getLastMappedFile(0); // Mark: NewFile may be cause noise
-                    if (isCloseReadAhead()) {
-                        setFileReadMode(mappedFile, LibC.MADV_RANDOM);
-                    }
-                }
-                if (null == mappedFile) {
-                    log.error("create mapped file1 error, topic: " + msg.getTopic() + " clientAddr: " + msg.getBornHostString());
-                    beginTimeInLock = 0;
-                    return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.CREATE_MAPPED_FILE_FAILED, null));
-                }
-
-                result = mappedFile.appendMessage(msg, this.appendMessageCallback, putMessageContext);
-                switch (result.getStatus()) {
-                    case PUT_OK:
-                        onCommitLogAppend(msg, result, mappedFile);
-                        break;
-                    case END_OF_FILE:
-                        onCommitLogAppend(msg, result, mappedFile);
-                        unlockMappedFile = mappedFile;
-                        // Create a new file, re-write the message
+                if (copyOutsideLock) {
+                    reservedSize = msg.getEncodedBuff().getInt(0);
+                    mappedFile = this.mappedFileQueue.getLastMappedFile();
+                    int remaining = null == mappedFile ? 0 : this.appendReservationTracker.remaining(mappedFile);
+                    if (null == mappedFile || remaining < reservedSize + DefaultAppendMessageCallback.END_FILE_MIN_BLANK_LENGTH) {
+                        if (null != mappedFile) {
+                            if (remaining > 0) {
+                                int blankPosition = this.appendReservationTracker.reserve(mappedFile, remaining);
+                                result = mappedFile.appendMessageAt(blankPosition, msg, this.appendMessageCallback, putMessageContext);
+                                if (this.appendReservationTracker.complete(mappedFile, blankPosition, remaining,
+                                    AppendMessageStatus.END_OF_FILE.equals(result.getStatus()))) {
+                                    onCommitLogAppend(msg, result, mappedFile);
+                                }
+                            }
+                            // The next file can only be created once every message of this one is written
+                            this.appendReservationTracker.awaitCompleted();
+                            unlockMappedFile = mappedFile;
+                        }
                         mappedFile = this.mappedFileQueue.getLastMappedFile(0);
                         if (null == mappedFile) {
-                            // XXX: warn and notify me
-                            log.error("create mapped file2 error, topic: " + msg.getTopic() + " clientAddr: " + msg.getBornHostString());
+                            log.error("create mapped file error, topic: " + msg.getTopic() + " clientAddr: " + msg.getBornHostString());
                             beginTimeInLock = 0;
                             return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.CREATE_MAPPED_FILE_FAILED, result));
                         }
                         if (isCloseReadAhead()) {
                             setFileReadMode(mappedFile, LibC.MADV_RANDOM);
                         }
-                        result = mappedFile.appendMessage(msg, this.appendMessageCallback, putMessageContext);
-                        if (AppendMessageStatus.PUT_OK.equals(result.getStatus())) {
-                            onCommitLogAppend(msg, result, mappedFile);
-                        }
-                        break;
-                    case MESSAGE_SIZE_EXCEEDED:
-                    case PROPERTIES_SIZE_EXCEEDED:
+                    }
+                    reservedPosition = this.appendReservationTracker.reserve(mappedFile, reservedSize);
+                    if (reservedPosition < 0) {
                         beginTimeInLock = 0;
-                        return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, result));
-                    case UNKNOWN_ERROR:
-                    default:
+                        return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, null));
+                    }
+                    elapsedTimeInLock = this.defaultMessageStore.getSystemClock().now() - beginLockTimestamp;
+                    beginTimeInLock = 0;
+                } else {
+                    awaitReservedAppends();
+
+                    if (null == mappedFile || mappedFile.isFull()) {
+                        mappedFile = this.mappedFileQueue.getLastMappedFile(0); // Mark: NewFile may be cause noise
+                        if (isCloseReadAhead()) {
+                            setFileReadMode(mappedFile, LibC.MADV_RANDOM);
+                        }
+                    }
+                    if (null == mappedFile) {
+                        log.error("create mapped file1 error, topic: " + msg.getTopic() + " clientAddr: " + msg.getBornHostString());
                         beginTimeInLock = 0;
-                        return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.UNKNOWN_ERROR, result));
-                }
+                        return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.CREATE_MAPPED_FILE_FAILED, null));
+                    }
 
-                elapsedTimeInLock = this.defaultMessageStore.getSystemClock().now() - beginLockTimestamp;
-                beginTimeInLock = 0;
+                    result = mappedFile.appendMessage(msg, this.appendMessageCallback, putMessageContext);
+                    switch (result.getStatus()) {
+                        case PUT_OK:
+                            onCommitLogAppend(msg, result, mappedFile);
+                            break;
+                        case END_OF_FILE:
+                            onCommitLogAppend(msg, result, mappedFile);
+                            unlockMappedFile = mappedFile;
+                            // Create a new file, re-write the message
+                            mappedFile = this.mappedFileQueue.getLastMappedFile(0);
+                            if (null == mappedFile) {
+                                // XXX: warn and notify me
+                                log.error("create mapped file2 error, topic: " + msg.getTopic() + " clientAddr: " + msg.getBornHostString());
+                                beginTimeInLock = 0;
+                                return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.CREATE_MAPPED_FILE_FAILED, result));
+                            }
+                            if (isCloseReadAhead()) {
+                                setFileReadMode(mappedFile, LibC.MADV_RANDOM);
+                            }
+                            result = mappedFile.appendMessage(msg, this.appendMessageCallback, putMessageContext);
+                            if (AppendMessageStatus.PUT_OK.equals(result.getStatus())) {
+                                onCommitLogAppend(msg, result, mappedFile);
+                            }
+                            break;
+                        case MESSAGE_SIZE_EXCEEDED:
+                        case PROPERTIES_SIZE_EXCEEDED:
+                            beginTimeInLock = 0;
+                            return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.MESSAGE_ILLEGAL, result));
+                        case UNKNOWN_ERROR:
+                        default:
+                            beginTimeInLock = 0;
+                            return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.UNKNOWN_ERROR, result));
+                    }
+
+                    elapsedTimeInLock = this.defaultMessageStore.getSystemClock().now() - beginLockTimestamp;
+                    beginTimeInLock = 0;
+                }
             } finally {
                 putMessageLock.unlock();
+                if (recordLockMetrics) {
+                    DefaultStoreMetricsManager.recordPutMessageLock(lockAcquiredNanos - lockRequestNanos, System.nanoTime() - lockAcquiredNanos);
+                }
+            }
+            if (reservedPosition >= 0) {
+                boolean written = false;
+                boolean published;
+                try {
+                    result = mappedFile.appendMessageAt(reservedPosition, msg, this.appendMessageCallback, putMessageContext);
+                    written = AppendMessageStatus.PUT_OK.equals(result.getStatus());
+                } finally {
+                    // the space is only published if it is written, otherwise the file is ended before it
+                    published = this.appendReservationTracker.complete(mappedFile, reservedPosition, reservedSize, written);
+                }
+                if (!published) {
+                    log.error("append message into reserved space error, topic: {} result: {}", msg.getTopic(), result);
+                    return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.UNKNOWN_ERROR, result));
+                }
+                onCommitLogAppend(msg, result, mappedFile);
             }
             // Increase queue offset when messages are successfully written
             if (AppendMessageStatus.PUT_OK.equals(result.getStatus())) {
@@ -1154,7 +1251,10 @@ public class CommitLog implements Swappable {
         try {
             defaultMessageStore.assignOffset(messageExtBatch);
 
+            boolean recordLockMetrics = defaultMessageStore.getMessageStoreConfig().isEnablePutMessageLockMetrics();
+            long lockRequestNanos = recordLockMetrics ? System.nanoTime() : 0L;
             putMessageLock.lock();
+            long lockAcquiredNanos = recordLockMetrics ? System.nanoTime() : 0L;
             try {
                 long beginLockTimestamp = this.defaultMessageStore.getSystemClock().now();
                 this.beginTimeInLock = beginLockTimestamp;
@@ -1163,6 +1263,8 @@ public class CommitLog implements Swappable {
                 // global
                 messageExtBatch.setStoreTimestamp(beginLockTimestamp);
 
+                awaitReservedAppends();
+
                 if (null == mappedFile || mappedFile.isFull()) {
                     mappedFile = this.mappedFileQueue.getLastMappedFile(0); // Mark: NewFile may be cause noise
                     if (isCloseReadAhead()) {
@@ -1208,6 +1310,9 @@ public class CommitLog implements Swappable {
                 beginTimeInLock = 0;
             } finally {
                 putMessageLock.unlock();
+                if (recordLockMetrics) {
+                    DefaultStoreMetricsManager.recordPutMessageLock(lockAcquiredNanos - lockRequestNanos, System.nanoTime() - lockAcquiredNanos);
+                }
             }
 
             // Increase queue offset when messages are successfully written
@@ -1370,6 +1475,7 @@ public class CommitLog implements Swappable {
     public boolean appendData(long startOffset, byte[] data, int dataStart, int dataLength) {
         putMessageLock.lock();
         try {
+            awaitReservedAppends();
             MappedFile mappedFile = this.mappedFileQueue.getLastMappedFile(startOffset);
             if (null == mappedFile) {
                 log.error("appendData getLastMappedFile error  " + startOffset);
@@ -1382,6 +1488,16 @@ public class CommitLog implements Swappable {
         }
     }
 
+    /**
+     * Waits for messages being copied outside the put message lock, must be called with the lock held before the
+     * wrote position of the last file is used directly.
+     */
+    private void awaitReservedAppends() {
+        if (this.appendReservationTracker != null) {
+            this.appendReservationTracker.awaitCompleted();
+        }
+    }
+
     public boolean retryDeleteFirstFile(final long intervalForcibly) {
         return this.mappedFileQueue.retryDeleteFirstFile(intervalForcibly);
     }
@@ -1614,6 +1730,8 @@ public class CommitLog implements Swappable {
         private volatile LinkedList<GroupCommitRequest> requestsWrite = new LinkedList<>();
         private volatile LinkedList<GroupCommitRequest> requestsRead = new LinkedList<>();
         private final PutMessageSpinLock lock = new PutMessageSpinLock();
+        private final GroupCommitWindow groupCommitWindow = new GroupCommitWindow(
+            TimeUnit.MICROSECONDS.toNanos(CommitLog.this.defaultMessageStore.getMessageStoreConfig().getGroupCommitMaxHoldMicros()));
 
         public void putRequest(final GroupCommitRequest request) {
             lock.lock();
@@ -1636,12 +1754,40 @@ public class CommitLog implements Swappable {
             }
         }
 
+        /**
+         * Hold the flush for the adaptive window and merge the requests arrived meanwhile into the current batch.
+         */
+        private void holdForGroupCommit() {
+            if (this.requestsRead.isEmpty()) {
+                return;
+            }
+            long holdNanos = this.groupCommitWindow.nextHoldNanos();
+            if (holdNanos <= 0) {
+                return;
+            }
+            LockSupport.parkNanos(holdNanos);
+            lock.lock();
+            try {
+                this.requestsRead.addAll(this.requestsWrite);
+                this.requestsWrite.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
         private void doCommit() {
             if (!this.requestsRead.isEmpty()) {
+                int batchSize = this.requestsRead.size();
+                boolean adaptive = CommitLog.this.defaultMessageStore.getMessageStoreConfig().isEnableAdaptiveGroupCommit();
+                long flushNanos = 0;
                 for (GroupCommitRequest req : this.requestsRead) {
                     boolean flushOK = CommitLog.this.mappedFileQueue.getFlushedWhere() >= req.getNextOffset();
                     for (int i = 0; i < 1000 && !flushOK; i++) {
+                        long beginNanos = adaptive ? System.nanoTime() : 0;
                         CommitLog.this.mappedFileQueue.flush(0);
+                        if (adaptive) {
+                            flushNanos += System.nanoTime() - beginNanos;
+                        }
                         flushOK = CommitLog.this.mappedFileQueue.getFlushedWhere() >= req.getNextOffset();
                         if (flushOK) {
                             break;
@@ -1659,6 +1805,11 @@ public class CommitLog implements Swappable {
                     req.wakeupCustomer(flushOK ? PutMessageStatus.PUT_OK : PutMessageStatus.FLUSH_DISK_TIMEOUT);
                 }
 
+                if (adaptive) {
+                    this.groupCommitWindow.onCommit(batchSize, flushNanos, System.nanoTime());
+                    DefaultStoreMetricsManager.recordGroupCommit(batchSize, flushNanos);
+                }
+
                 long storeTimestamp = CommitLog.this.mappedFileQueue.getStoreTimestamp();
                 if (storeTimestamp > 0) {
                     CommitLog.this.defaultMessageStore.getStoreCheckpoint().setPhysicMsgTimestamp(storeTimestamp);
@@ -1679,6 +1830,9 @@ public class CommitLog implements Swappable {
             while (!this.isStopped()) {
                 try {
                     this.waitForRunning(10);
+                    if (CommitLog.this.defaultMessageStore.getMessageStoreConfig().isEnableAdaptiveGroupCommit()) {
+                        this.holdForGroupCommit();
+                    }
                     this.doCommit();
                 } catch (Exception e) {
                     CommitLog.log.warn(this.getServiceName() + " service has exception. ", e);
@@ -2206,6 +2360,291 @@ public class CommitLog implements Swappable {
 
     }
 
+    /**
+     * Flush manager for SYNC_FLUSH which keeps several flushes in flight. The dispatcher cuts what has been written
+     * into ranges, one mapped file at most each, and hands them to a pool of flushers as long as fewer than
+     * pipelinedFlushMaxInflight are in flight. A flusher forces only the pages of its range when the JDK allows it,
+     * so the device sees several outstanding writes instead of one blocking fsync at a time. Ranges become durable
+     * in any order, the durable position only moves over contiguous durable ranges, and the sync flush requests it
+     * covers are completed in offset order.
+     */
+    class PipelinedFlushManager implements FlushManager {
+
+        private final PriorityBlockingQueue<GroupCommitRequest> pendingRequests =
+            new PriorityBlockingQueue<>(1024, Comparator.comparingLong(GroupCommitRequest::getNextOffset));
+
+        private final PipelinedFlushService pipelinedFlushService = new PipelinedFlushService();
+
+        private final int maxInflight =
+            Math.max(1, CommitLog.this.defaultMessageStore.getMessageStoreConfig().getPipelinedFlushMaxInflight());
+
+        private final ExecutorService flushExecutor = ThreadUtils.newThreadPoolExecutor(maxInflight,
+            new ThreadFactoryImpl("PipelinedFlushThread_", CommitLog.this.defaultMessageStore.getBrokerIdentity()));
+
+        private final AtomicInteger inflight = new AtomicInteger(0);
+
+        /**
+         * Ranges failed to be forced, submitted again before new ones
+         */
+        private final ConcurrentLinkedQueue<FlushRange> retryRanges = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Durable ranges waiting for an earlier one, start offset to range, guarded by this
+         */
+        private final Map<Long, FlushRange> durableRanges = new HashMap<>();
+
+        /**
+         * End of the ranges handed to the flushers, only accessed by the dispatcher
+         */
+        private long submittedWhere;
+
+        /**
+         * Every byte before it is durable, guarded by this
+         */
+        private long durableWhere;
+
+        @Override
+        public void start() {
+            this.submittedWhere = CommitLog.this.mappedFileQueue.getFlushedWhere();
+            this.durableWhere = this.submittedWhere;
+            this.pipelinedFlushService.start();
+        }
+
+        @Override
+        public void handleDiskFlush(AppendMessageResult result, PutMessageResult putMessageResult,
+            MessageExt messageExt) {
+            if (!messageExt.isWaitStoreMsgOK()) {
+                this.pipelinedFlushService.wakeup();
+                return;
+            }
+            GroupCommitRequest request = new GroupCommitRequest(result.getWroteOffset() + result.getWroteBytes(),
+                CommitLog.this.defaultMessageStore.getMessageStoreConfig().getSyncFlushTimeout());
+            this.putRequest(request);
+            PutMessageStatus flushStatus = null;
+            try {
+                flushStatus = request.future().get(CommitLog.this.defaultMessageStore.getMessageStoreConfig().getSyncFlushTimeout(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                //flushOK=false;
+            }
+            if (flushStatus != PutMessageStatus.PUT_OK) {
+                log.error("do pipelined flush, wait for flush failed, topic: " + messageExt.getTopic() + " tags: " + messageExt.getTags() + " client address: " + messageExt.getBornHostString());
+                putMessageResult.setPutMessageStatus(PutMessageStatus.FLUSH_DISK_TIMEOUT);
+            }
+        }
+
+        @Override
+        public CompletableFuture<PutMessageStatus> handleDiskFlush(AppendMessageResult result, MessageExt messageExt) {
+            if (!messageExt.isWaitStoreMsgOK()) {
+                this.pipelinedFlushService.wakeup();
+                return CompletableFuture.completedFuture(PutMessageStatus.PUT_OK);
+            }
+            GroupCommitRequest request = new GroupCommitRequest(result.getWroteOffset() + result.getWroteBytes(),
+                CommitLog.this.defaultMessageStore.getMessageStoreConfig().getSyncFlushTimeout());
+            flushDiskWatcher.add(request);
+            this.putRequest(request);
+            return request.future();
+        }
+
+        private void putRequest(GroupCommitRequest request) {
+            this.pendingRequests.offer(request);
+            synchronized (this) {
+                // the range may have become durable before the request was queued
+                this.completeRequests();
+            }
+            this.pipelinedFlushService.wakeup();
+        }
+
+        @Override
+        public void wakeUpFlush() {
+            this.pipelinedFlushService.wakeup();
+        }
+
+        @Override
+        public void wakeUpCommit() {
+            this.pipelinedFlushService.wakeup();
+        }
+
+        @Override
+        public void shutdown() {
+            this.pipelinedFlushService.shutdown();
+            this.flushExecutor.shutdown();
+        }
+
+        public long getDurableWhere() {
+            synchronized (this) {
+                return this.durableWhere;
+            }
+        }
+
+        public int getInflight() {
+            return this.inflight.get();
+        }
+
+        /**
+         * Hand the written data to the flushers, ranges failed before first
+         *
+         * @return whether any range is submitted
+         */
+        private boolean submitRanges() {
+            if (CommitLog.this.defaultMessageStore.isTransientStorePoolEnable()) {
+                CommitLog.this.mappedFileQueue.commit(0);
+            }
+            long storeTimestamp = CommitLog.this.mappedFileQueue.getStoreTimestamp();
+            long maxOffset = CommitLog.this.mappedFileQueue.getMaxOffset();
+            boolean submitted = false;
+            while (this.inflight.get() < this.maxInflight) {
+                FlushRange range = this.retryRanges.poll();
+                if (range == null) {
+                    if (this.submittedWhere >= maxOffset) {
+                        break;
+                    }
+                    MappedFile mappedFile = CommitLog.this.mappedFileQueue.findMappedFileByOffset(this.submittedWhere, false);
+                    if (mappedFile == null) {
+                        log.warn("pipelined flush, no mapped file found for offset {}", this.submittedWhere);
+                        break;
+                    }
+                    long end = Math.min(maxOffset, mappedFile.getFileFromOffset() + mappedFile.getFileSize());
+                    range = new FlushRange(mappedFile, this.submittedWhere, end, storeTimestamp);
+                    this.submittedWhere = end;
+                }
+                this.inflight.incrementAndGet();
+                final FlushRange flushRange = range;
+                try {
+                    this.flushExecutor.execute(() -> this.flush(flushRange));
+                } catch (Throwable e) {
+                    this.inflight.decrementAndGet();
+                    this.retryRanges.offer(flushRange);
+                    log.warn("pipelined flush, submit range failed, {}", flushRange, e);
+                    break;
+                }
+                submitted = true;
+            }
+            return submitted;
+        }
+
+        private void flush(FlushRange range) {
+            MappedFile mappedFile = range.mappedFile;
+            boolean durable = mappedFile.force((int) (range.begin - mappedFile.getFileFromOffset()),
+                (int) (range.end - range.begin));
+            if (durable) {
+                synchronized (this) {
+                    this.durableRanges.put(range.begin, range);
+                    this.advance();
+                }
+            } else {
+                this.retryRanges.offer(range);
+            }
+            this.inflight.decrementAndGet();
+            this.pipelinedFlushService.wakeup();
+        }
+
+        /**
+         * Move the durable position over the contiguous durable ranges, must be called holding this
+         */
+        private void advance() {
+            FlushRange range;
+            FlushRange last = null;
+            while ((range = this.durableRanges.remove(this.durableWhere)) != null) {
+                MappedFile mappedFile = range.mappedFile;
+                int flushedPosition = (int) (range.end - mappedFile.getFileFromOffset());
+                if (flushedPosition > mappedFile.getFlushedPosition()) {
+                    mappedFile.setFlushedPosition(flushedPosition);
+                }
+                this.durableWhere = range.end;
+                last = range;
+            }
+            if (last == null) {
+                return;
+            }
+            CommitLog.this.mappedFileQueue.setFlushedWhere(this.durableWhere);
+            if (last.storeTimestamp > 0) {
+                CommitLog.this.defaultMessageStore.getStoreCheckpoint().setPhysicMsgTimestamp(last.storeTimestamp);
+            }
+            this.completeRequests();
+        }
+
+        /**
+         * Complete the requests covered by the durable position in offset order, must be called holding this
+         */
+        private void completeRequests() {
+            GroupCommitRequest request;
+            while ((request = this.pendingRequests.peek()) != null && request.getNextOffset() <= this.durableWhere) {
+                if (this.pendingRequests.remove(request)) {
+                    request.wakeupCustomer(PutMessageStatus.PUT_OK);
+                }
+            }
+        }
+
+        class PipelinedFlushService extends FlushCommitLogService {
+
+            @Override
+            public void run() {
+                CommitLog.log.info(this.getServiceName() + " service started");
+
+                while (!this.isStopped()) {
+                    try {
+                        if (!PipelinedFlushManager.this.submitRanges()) {
+                            this.waitForRunning(pendingRequests.isEmpty() ? 10 : 1);
+                        }
+                    } catch (Throwable e) {
+                        CommitLog.log.warn(this.getServiceName() + " service has exception. ", e);
+                    }
+                }
+
+                // Normal shutdown, to ensure that all the flush before exit
+                for (int i = 0; i < RETRY_TIMES_OVER; i++) {
+                    PipelinedFlushManager.this.submitRanges();
+                    if (inflight.get() == 0 && getDurableWhere() >= submittedWhere
+                        && submittedWhere >= CommitLog.this.mappedFileQueue.getMaxOffset()) {
+                        break;
+                    }
+                    this.waitForRunning(10);
+                }
+                synchronized (PipelinedFlushManager.this) {
+                    GroupCommitRequest request;
+                    while ((request = pendingRequests.poll()) != null) {
+                        request.wakeupCustomer(request.getNextOffset() <= durableWhere ?
+                            PutMessageStatus.PUT_OK : PutMessageStatus.FLUSH_DISK_TIMEOUT);
+                    }
+                }
+
+                CommitLog.log.info(this.getServiceName() + " service end");
+            }
+
+            @Override
+            public String getServiceName() {
+                if (CommitLog.this.defaultMessageStore.getBrokerConfig().isInBrokerContainer()) {
+                    return CommitLog.this.defaultMessageStore.getBrokerConfig().getIdentifier() + PipelinedFlushService.class.getSimpleName();
+                }
+                return PipelinedFlushService.class.getSimpleName();
+            }
+
+            @Override
+            public long getJoinTime() {
+                return 1000 * 60 * 5;
+            }
+        }
+    }
+
+    static class FlushRange {
+        private final MappedFile mappedFile;
+        private final long begin;
+        private final long end;
+        private final long storeTimestamp;
+
+        FlushRange(MappedFile mappedFile, long begin, long end, long storeTimestamp) {
+            this.mappedFile = mappedFile;
+            this.begin = begin;
+            this.end = end;
+            this.storeTimestamp = storeTimestamp;
+        }
+
+        @Override
+        public String toString() {
+            return "FlushRange{file=" + mappedFile.getFileName() + ", begin=" + begin + ", end=" + end + "}";
+        }
+    }
+
     public int getCommitLogSize() {
         return commitLogSize;
     }
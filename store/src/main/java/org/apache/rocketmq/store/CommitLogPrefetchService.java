@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.org.slf4j.Logger;
+import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.logfile.DefaultMappedFile;
+import org.apache.rocketmq.store.logfile.MappedFile;
+import org.apache.rocketmq.store.queue.ConsumeQueueInterface;
+import org.apache.rocketmq.store.queue.CqUnitCursor;
+import org.apache.rocketmq.store.util.LibC;
+import sun.nio.ch.DirectBuffer;
+
+/**
+ * Prefetches the commit log that sequential catch-up readers will pull next.
+ *
+ * <p>A reader is a (group, topic, queueId). It counts as sequential when a pull starts at the next begin offset of
+ * its previous pull. Its rate in queue offsets per millisecond is smoothed over pulls and decides how many consume
+ * queue units ahead are prefetched. Once less than half of that window is left, the commit log ranges of the next
+ * window are resolved from the consume queue, merged when close to each other, and passed to
+ * madvise(MADV_WILLNEED) on this thread, so the kernel reads them in before the pull arrives.
+ */
+public class CommitLogPrefetchService extends ServiceThread {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    private static final int MAX_PENDING_REQUEST_NUM = 1024;
+    private static final long MERGE_GAP_BYTES = 64 * 1024;
+    private static final long READER_EXPIRE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private final DefaultMessageStore messageStore;
+    private final ConcurrentMap<String, ReaderState> readerTable = new ConcurrentHashMap<>();
+    private final BlockingQueue<PrefetchRequest> requestQueue = new LinkedBlockingQueue<>(MAX_PENDING_REQUEST_NUM);
+    private long lastCleanTime = System.currentTimeMillis();
+    // only used by the service thread
+    private CqUnitCursor reusedCursor;
+
+    public CommitLogPrefetchService(DefaultMessageStore messageStore) {
+        this.messageStore = messageStore;
+    }
+
+    @Override
+    public String getServiceName() {
+        if (this.messageStore.getBrokerConfig().isInBrokerContainer()) {
+            return this.messageStore.getBrokerIdentity().getIdentifier() + CommitLogPrefetchService.class.getSimpleName();
+        }
+        return CommitLogPrefetchService.class.getSimpleName();
+    }
+
+    /**
+     * Called after a pull of a reader beyond the in-memory ratio found messages.
+     *
+     * @param offset queue offset the pull started from
+     * @param nextBeginOffset queue offset the next pull of the reader is expected to start from
+     */
+    public void onMessagesRead(String group, String topic, int queueId, long offset, long nextBeginOffset) {
+        ReaderState state = this.readerTable.computeIfAbsent(group + '@' + topic + '@' + queueId, k -> new ReaderState());
+        PrefetchRequest request = state.update(this.messageStore.getMessageStoreConfig(), topic, queueId,
+            offset, nextBeginOffset, System.currentTimeMillis());
+        if (request != null && !this.requestQueue.offer(request)) {
+            state.reset(nextBeginOffset);
+        }
+    }
+
+    @Override
+    public void run() {
+        LOGGER.info("{} service started", this.getServiceName());
+        while (!this.isStopped()) {
+            try {
+                PrefetchRequest request = this.requestQueue.poll(1000, TimeUnit.MILLISECONDS);
+                if (request != null) {
+                    prefetch(request);
+                }
+                cleanExpiredReaders();
+            } catch (Throwable e) {
+                LOGGER.warn("{} service has exception. ", this.getServiceName(), e);
+            }
+        }
+        LOGGER.info("{} service end", this.getServiceName());
+    }
+
+    void prefetch(PrefetchRequest request) throws Exception {
+        ConsumeQueueInterface consumeQueue = this.messageStore.findConsumeQueue(request.topic, request.queueId);
+        if (consumeQueue == null) {
+            return;
+        }
+        CqUnitCursor cursor = consumeQueue.cursorFrom(request.fromOffset,
+            (int) (request.toOffset - request.fromOffset), this.reusedCursor);
+        if (cursor == null) {
+            return;
+        }
+        this.reusedCursor = cursor;
+        long rangeStart = -1;
+        long rangeEnd = -1;
+        try {
+            while (cursor.next() && cursor.getQueueOffset() < request.toOffset) {
+                long offsetPy = cursor.getPos();
+                long endPy = offsetPy + cursor.getSize();
+                if (rangeStart >= 0 && offsetPy >= rangeStart && offsetPy - rangeEnd <= MERGE_GAP_BYTES) {
+                    rangeEnd = Math.max(rangeEnd, endPy);
+                    continue;
+                }
+                if (rangeStart >= 0) {
+                    willNeed(rangeStart, rangeEnd);
+                }
+                rangeStart = offsetPy;
+                rangeEnd = endPy;
+            }
+        } finally {
+            cursor.release();
+        }
+        if (rangeStart >= 0) {
+            willNeed(rangeStart, rangeEnd);
+        }
+    }
+
+    private void willNeed(long start, long end) {
+        MappedFileQueue mappedFileQueue = this.messageStore.getCommitLog().getMappedFileQueue();
+        while (start < end) {
+            MappedFile mappedFile = mappedFileQueue.findMappedFileByOffset(start);
+            if (mappedFile == null) {
+                return;
+            }
+            long fileEnd = mappedFile.getFileFromOffset() + mappedFile.getFileSize();
+            if (mappedFile.hold()) {
+                try {
+                    int position = (int) (start - mappedFile.getFileFromOffset());
+                    int alignedPosition = position - position % DefaultMappedFile.OS_PAGE_SIZE;
+                    int length = (int) (Math.min(end, fileEnd) - mappedFile.getFileFromOffset()) - alignedPosition;
+                    advise(mappedFile, alignedPosition, length);
+                } finally {
+                    mappedFile.release();
+                }
+            }
+            start = fileEnd;
+        }
+    }
+
+    protected void advise(MappedFile mappedFile, int position, int length) {
+        long address = ((DirectBuffer) mappedFile.getMappedByteBuffer()).address() + position;
+        int ret = LibC.INSTANCE.madvise(new Pointer(address), new NativeLong(length), LibC.MADV_WILLNEED);
+        if (ret != 0) {
+            LOGGER.warn("prefetch madvise failed, file={}, position={}, length={}, ret={}", mappedFile.getFileName(), position, length, ret);
+        }
+    }
+
+    private void cleanExpiredReaders() {
+        long now = System.currentTimeMillis();
+        if (now - this.lastCleanTime < READER_EXPIRE_MILLIS) {
+            return;
+        }
+        this.lastCleanTime = now;
+        Iterator<Map.Entry<String, ReaderState>> iterator = this.readerTable.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getValue().lastReadTime > READER_EXPIRE_MILLIS) {
+                iterator.remove();
+            }
+        }
+    }
+
+    int getReaderNum() {
+        return this.readerTable.size();
+    }
+
+    static class ReaderState {
+        private long nextBeginOffset = -1;
+        private long lastReadTime;
+        /**
+         * queue offsets consumed per millisecond
+         */
+        private double rate;
+        private long prefetchedOffset = -1;
+
+        synchronized PrefetchRequest update(MessageStoreConfig config, String topic, int queueId,
+            long offset, long nextBeginOffset, long now) {
+            boolean sequential = offset == this.nextBeginOffset && now > this.lastReadTime;
+            long lastReadTime = this.lastReadTime;
+            this.nextBeginOffset = nextBeginOffset;
+            this.lastReadTime = now;
+            if (!sequential) {
+                this.rate = 0;
+                this.prefetchedOffset = nextBeginOffset;
+                return null;
+            }
+
+            double currentRate = (double) (nextBeginOffset - offset) / (now - lastReadTime);
+            this.rate = this.rate == 0 ? currentRate : RATE_SMOOTHING * currentRate + (1 - RATE_SMOOTHING) * this.rate;
+            long window = (long) Math.ceil(this.rate * config.getCommitLogPrefetchLookaheadMillis());
+            window = Math.max(config.getCommitLogPrefetchMinMessageNum(), Math.min(config.getCommitLogPrefetchMaxMessageNum(), window));
+
+            long fromOffset = Math.max(this.prefetchedOffset, nextBeginOffset);
+            if (fromOffset - nextBeginOffset >= window / 2) {
+                return null;
+            }
+            this.prefetchedOffset = nextBeginOffset + window;
+            return new PrefetchRequest(topic, queueId, fromOffset, this.prefetchedOffset);
+        }
+
+        synchronized void reset(long nextBeginOffset) {
+            this.prefetchedOffset = nextBeginOffset;
+        }
+    }
+
+    static class PrefetchRequest {
+        private final String topic;
+        private final int queueId;
+        private final long fromOffset;
+        private final long toOffset;
+
+        PrefetchRequest(String topic, int queueId, long fromOffset, long toOffset) {
+            this.topic = topic;
+            this.queueId = queueId;
+            this.fromOffset = fromOffset;
+            this.toOffset = toOffset;
+        }
+
+        long getFromOffset() {
+            return fromOffset;
+        }
+
+        long getToOffset() {
+            return toOffset;
+        }
+    }
+}
@@ -36,6 +36,7 @@ import org.apache.rocketmq.store.config.StorePathConfigHelper;
 import org.apache.rocketmq.store.logfile.MappedFile;
 import org.apache.rocketmq.store.queue.ConsumeQueueInterface;
 import org.apache.rocketmq.store.queue.CqUnit;
+import org.apache.rocketmq.store.queue.CqUnitCursor;
 import org.apache.rocketmq.store.queue.FileQueueLifeCycle;
 import org.apache.rocketmq.store.queue.MultiDispatchUtils;
 import org.apache.rocketmq.store.queue.QueueOffsetOperator;
@@ -772,16 +773,14 @@ public class ConsumeQueue implements ConsumeQueueInterface, FileQueueLifeCycle {
 
     @Override
     public void assignQueueOffset(QueueOffsetOperator queueOffsetOperator, MessageExtBrokerInner msg) {
-        String topicQueueKey = getTopic() + "-" + getQueueId();
-        long queueOffset = queueOffsetOperator.getQueueOffset(topicQueueKey);
+        long queueOffset = queueOffsetOperator.getQueueOffset(getTopic(), getQueueId());
         msg.setQueueOffset(queueOffset);
     }
 
     @Override
     public void increaseQueueOffset(QueueOffsetOperator queueOffsetOperator, MessageExtBrokerInner msg,
         short messageNum) {
-        String topicQueueKey = getTopic() + "-" + getQueueId();
-        queueOffsetOperator.increaseQueueOffset(topicQueueKey, messageNum);
+        queueOffsetOperator.increaseQueueOffset(getTopic(), getQueueId(), messageNum);
     }
 
     private boolean putMessagePositionInfo(final long offset, final int size, final long tagsCode,
@@ -876,6 +875,27 @@ public class ConsumeQueue implements ConsumeQueueInterface, FileQueueLifeCycle {
         return iterateFrom(startIndex);
     }
 
+    @Override
+    public CqUnitCursor cursorFrom(long startIndex, int count, CqUnitCursor reuse) {
+        long offset = startIndex * CQ_STORE_UNIT_SIZE;
+        if (offset < this.getMinLogicOffset()) {
+            return null;
+        }
+        MappedFile mappedFile = this.mappedFileQueue.findMappedFileByOffset(offset);
+        if (mappedFile == null) {
+            return null;
+        }
+        int pos = (int) (offset % this.mappedFileSize);
+        int readPosition = mappedFile.getReadPosition();
+        if (pos < 0 || pos >= readPosition || !mappedFile.hold()) {
+            return null;
+        }
+        ConsumeQueueCursor cursor = reuse instanceof ConsumeQueueCursor && ((ConsumeQueueCursor) reuse).mappedFile == null
+            ? (ConsumeQueueCursor) reuse : new ConsumeQueueCursor();
+        cursor.open(this, mappedFile, startIndex, pos, readPosition);
+        return cursor;
+    }
+
     @Override
     public CqUnit get(long offset) {
         ReferredIterator<CqUnit> it = iterateFrom(offset);
@@ -999,6 +1019,103 @@ public class ConsumeQueue implements ConsumeQueueInterface, FileQueueLifeCycle {
         }
     }
 
+    /**
+     * Cursor reading the units directly from a held mapped file, it can be reused once released so that walking the
+     * queue allocates nothing.
+     */
+    private static class ConsumeQueueCursor implements CqUnitCursor {
+        private ConsumeQueue consumeQueue;
+        private MappedFile mappedFile;
+        private ByteBuffer byteBuffer;
+        private int position;
+        private int limit;
+        private long queueOffset;
+        private long pos;
+        private int size;
+        private long tagsCode;
+        private ConsumeQueueExt.CqExtUnit cqExtUnit;
+        private ConsumeQueueExt.CqExtUnit reusedCqExtUnit;
+
+        private void open(ConsumeQueue consumeQueue, MappedFile mappedFile, long startIndex, int position, int limit) {
+            this.consumeQueue = consumeQueue;
+            this.mappedFile = mappedFile;
+            this.byteBuffer = mappedFile.getMappedByteBuffer();
+            this.position = position;
+            this.limit = limit;
+            // moved to the first unit by the first call of next()
+            this.queueOffset = startIndex - 1;
+            this.cqExtUnit = null;
+        }
+
+        @Override
+        public boolean next() {
+            if (mappedFile == null || position + CQ_STORE_UNIT_SIZE > limit) {
+                return false;
+            }
+            this.queueOffset++;
+            this.pos = byteBuffer.getLong(position);
+            this.size = byteBuffer.getInt(position + 8);
+            this.tagsCode = byteBuffer.getLong(position + 12);
+            this.position += CQ_STORE_UNIT_SIZE;
+            this.cqExtUnit = null;
+
+            if (consumeQueue.isExtAddr(this.tagsCode)) {
+                if (this.reusedCqExtUnit == null) {
+                    this.reusedCqExtUnit = new ConsumeQueueExt.CqExtUnit();
+                }
+                if (consumeQueue.getExt(this.tagsCode, this.reusedCqExtUnit)) {
+                    this.tagsCode = this.reusedCqExtUnit.getTagsCode();
+                    this.cqExtUnit = this.reusedCqExtUnit;
+                } else {
+                    // can't find ext content.Client will filter messages by tag also.
+                    log.error("[BUG] can't find consume queue extend file content! addr={}, offsetPy={}, sizePy={}, topic={}",
+                        this.tagsCode, this.pos, this.size, consumeQueue.getTopic());
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public long getQueueOffset() {
+            return queueOffset;
+        }
+
+        @Override
+        public long getPos() {
+            return pos;
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public long getTagsCode() {
+            return tagsCode;
+        }
+
+        @Override
+        public short getBatchNum() {
+            return 1;
+        }
+
+        @Override
+        public ConsumeQueueExt.CqExtUnit getCqExtUnit() {
+            return cqExtUnit;
+        }
+
+        @Override
+        public void release() {
+            if (mappedFile != null) {
+                mappedFile.release();
+                mappedFile = null;
+                byteBuffer = null;
+                consumeQueue = null;
+            }
+        }
+    }
+
     public ConsumeQueueExt.CqExtUnit getExt(final long offset) {
         if (isExtReadEnable()) {
             return this.consumeQueueExt.get(offset);
@@ -36,6 +36,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -49,6 +50,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -77,6 +79,7 @@ import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageExtBatch;
 import org.apache.rocketmq.common.message.MessageExtBrokerInner;
+import org.apache.rocketmq.common.message.MessageVersion;
 import org.apache.rocketmq.common.running.RunningStats;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.apache.rocketmq.common.topic.TopicValidator;
@@ -87,6 +90,7 @@ import org.apache.rocketmq.common.utils.ThreadUtils;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
 import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
 import org.apache.rocketmq.remoting.protocol.body.HARuntimeInfo;
+import org.apache.rocketmq.store.cache.HotMessageCache;
 import org.apache.rocketmq.store.config.BrokerRole;
 import org.apache.rocketmq.store.config.FlushDiskType;
 import org.apache.rocketmq.store.config.MessageStoreConfig;
@@ -108,6 +112,7 @@ import org.apache.rocketmq.store.queue.ConsumeQueueInterface;
 import org.apache.rocketmq.store.queue.ConsumeQueueStore;
 import org.apache.rocketmq.store.queue.ConsumeQueueStoreInterface;
 import org.apache.rocketmq.store.queue.CqUnit;
+import org.apache.rocketmq.store.queue.CqUnitCursor;
 import org.apache.rocketmq.store.queue.ReferredIterator;
 import org.apache.rocketmq.store.stats.BrokerStatsManager;
 import org.apache.rocketmq.store.timer.TimerMessageStore;
@@ -147,8 +152,15 @@ public class DefaultMessageStore implements MessageStore {
 
     private CompactionService compactionService;
 
+    private final HotMessageCache hotMessageCache;
+
+    private final CommitLogPrefetchService commitLogPrefetchService;
+
     private final StoreStatsService storeStatsService;
 
+    // released consume queue cursor of the last getMessage, reused by the next call of the same thread
+    private final ThreadLocal<CqUnitCursor> cqUnitCursorThreadLocal = new ThreadLocal<>();
+
     private final TransientStorePool transientStorePool;
 
     protected final RunningFlags runningFlags = new RunningFlags();
@@ -249,11 +261,7 @@ public class DefaultMessageStore implements MessageStore {
             }
         }
 
-        if (!messageStoreConfig.isEnableBuildConsumeQueueConcurrently()) {
-            this.reputMessageService = new ReputMessageService();
-        } else {
-            this.reputMessageService = new ConcurrentReputMessageService();
-        }
+        this.reputMessageService = createReputMessageService();
 
         this.transientStorePool = new TransientStorePool(messageStoreConfig.getTransientStorePoolSize(), messageStoreConfig.getMappedFileSizeCommitLog());
 
@@ -268,6 +276,18 @@ public class DefaultMessageStore implements MessageStore {
             this.compactionService = new CompactionService(commitLog, this, compactionStore);
             this.dispatcherList.addLast(new CommitLogDispatcherCompaction(compactionService));
         }
+        if (messageStoreConfig.isHotMessageCacheEnable()) {
+            this.hotMessageCache = new HotMessageCache(messageStoreConfig.getHotMessageCacheCapacity(),
+                messageStoreConfig.getHotMessageCacheSegmentNum(), messageStoreConfig.getHotMessageCacheMaxMessageSize());
+            this.dispatcherList.addLast(new CommitLogDispatcherHotMessageCache());
+        } else {
+            this.hotMessageCache = null;
+        }
+        if (messageStoreConfig.isCommitLogPrefetchEnable() && !MixAll.isWindows()) {
+            this.commitLogPrefetchService = new CommitLogPrefetchService(this);
+        } else {
+            this.commitLogPrefetchService = null;
+        }
 
         File file = new File(StorePathConfigHelper.getLockFile(messageStoreConfig.getStorePathRootDir()));
         UtilAll.ensureDirOK(file.getParent());
@@ -328,6 +348,9 @@ public class DefaultMessageStore implements MessageStore {
     @Override
     public void truncateDirtyLogicFiles(long phyOffset) throws RocksDBException {
         this.consumeQueueStore.truncateDirty(phyOffset);
+        if (this.hotMessageCache != null) {
+            this.hotMessageCache.clear();
+        }
     }
 
     /**
@@ -416,6 +439,9 @@ public class DefaultMessageStore implements MessageStore {
         this.commitLog.start();
         this.consumeQueueStore.start();
         this.storeStatsService.start();
+        if (this.commitLogPrefetchService != null) {
+            this.commitLogPrefetchService.start();
+        }
 
         if (this.haService != null) {
             this.haService.start();
@@ -501,6 +527,9 @@ public class DefaultMessageStore implements MessageStore {
             }
 
             this.storeStatsService.shutdown();
+            if (this.commitLogPrefetchService != null) {
+                this.commitLogPrefetchService.shutdown();
+            }
             this.commitLog.shutdown();
             this.reputMessageService.shutdown();
             this.consumeQueueStore.shutdown();
@@ -526,6 +555,9 @@ public class DefaultMessageStore implements MessageStore {
         }
 
         this.transientStorePool.destroy();
+        if (this.hotMessageCache != null) {
+            this.hotMessageCache.destroy();
+        }
 
         if (lockFile != null && lock != null) {
             try {
@@ -726,11 +758,7 @@ public class DefaultMessageStore implements MessageStore {
 
         this.recoverTopicQueueTable();
 
-        if (!messageStoreConfig.isEnableBuildConsumeQueueConcurrently()) {
-            this.reputMessageService = new ReputMessageService();
-        } else {
-            this.reputMessageService = new ConcurrentReputMessageService();
-        }
+        this.reputMessageService = createReputMessageService();
 
         long resetReputOffset = Math.min(oldReputFromOffset, offsetToTruncate);
 
@@ -839,16 +867,19 @@ public class DefaultMessageStore implements MessageStore {
                 status = GetMessageStatus.NO_MATCHED_MESSAGE;
                 long maxPhyOffsetPulling = 0;
                 int cqFileNum = 0;
+                int cacheHitNum = 0;
+                int cacheMissNum = 0;
+                long cacheHitBytes = 0;
 
                 while (getResult.getBufferTotalSize() <= 0
                     && nextBeginOffset < maxOffset
                     && cqFileNum++ < this.messageStoreConfig.getTravelCqFileNumWhenGetMessage()) {
-                    ReferredIterator<CqUnit> bufferConsumeQueue = null;
+                    CqUnitCursor cqUnit = null;
 
                     try {
-                        bufferConsumeQueue = consumeQueue.iterateFrom(nextBeginOffset, maxMsgNums);
+                        cqUnit = consumeQueue.cursorFrom(nextBeginOffset, maxMsgNums, this.cqUnitCursorThreadLocal.get());
 
-                        if (bufferConsumeQueue == null) {
+                        if (cqUnit == null) {
                             status = GetMessageStatus.OFFSET_FOUND_NULL;
                             nextBeginOffset = nextOffsetCorrection(nextBeginOffset, this.consumeQueueStore.rollNextFile(consumeQueue, nextBeginOffset));
                             LOGGER.warn("consumer request topic: " + topic + ", offset: " + offset + ", minOffset: " + minOffset + ", maxOffset: "
@@ -856,10 +887,11 @@ public class DefaultMessageStore implements MessageStore {
                             break;
                         }
 
+                        this.cqUnitCursorThreadLocal.set(cqUnit);
+
                         long nextPhyFileStartOffset = Long.MIN_VALUE;
-                        while (bufferConsumeQueue.hasNext()
-                            && nextBeginOffset < maxOffset) {
-                            CqUnit cqUnit = bufferConsumeQueue.next();
+                        while (nextBeginOffset < maxOffset
+                            && cqUnit.next()) {
                             long offsetPy = cqUnit.getPos();
                             int sizePy = cqUnit.getSize();
 
@@ -897,7 +929,19 @@ public class DefaultMessageStore implements MessageStore {
                                 continue;
                             }
 
-                            SelectMappedBufferResult selectResult = this.commitLog.getMessage(offsetPy, sizePy);
+                            SelectMappedBufferResult selectResult = null;
+                            if (this.hotMessageCache != null) {
+                                selectResult = this.hotMessageCache.get(offsetPy, sizePy);
+                                if (selectResult != null) {
+                                    cacheHitNum++;
+                                    cacheHitBytes += sizePy;
+                                } else {
+                                    cacheMissNum++;
+                                }
+                            }
+                            if (null == selectResult) {
+                                selectResult = this.commitLog.getMessage(offsetPy, sizePy);
+                            }
                             if (null == selectResult) {
                                 if (getResult.getBufferTotalSize() == 0) {
                                     status = GetMessageStatus.MESSAGE_WAS_REMOVING;
@@ -929,12 +973,16 @@ public class DefaultMessageStore implements MessageStore {
                         ERROR_LOG.error("getMessage Failed. cid: {}, topic: {}, queueId: {}, offset: {}, minOffset: {}, maxOffset: {}, {}",
                             group, topic, queueId, offset, minOffset, maxOffset, e.getMessage());
                     } finally {
-                        if (bufferConsumeQueue != null) {
-                            bufferConsumeQueue.release();
+                        if (cqUnit != null) {
+                            cqUnit.release();
                         }
                     }
                 }
 
+                if (cacheHitNum + cacheMissNum > 0) {
+                    DefaultStoreMetricsManager.recordHotMessageCache(topic, cacheHitNum, cacheMissNum, cacheHitBytes);
+                }
+
                 if (diskFallRecorded) {
                     long fallBehind = maxOffsetPy - maxPhyOffsetPulling;
                     brokerStatsManager.recordDiskFallBehindSize(group, topic, queueId, fallBehind);
@@ -944,6 +992,9 @@ public class DefaultMessageStore implements MessageStore {
                 long memory = (long) (StoreUtil.TOTAL_PHYSICAL_MEMORY_SIZE
                     * (this.messageStoreConfig.getAccessMessageInMemoryMaxRatio() / 100.0));
                 getResult.setSuggestPullingFromSlave(diff > memory);
+                if (this.commitLogPrefetchService != null && diff > memory && GetMessageStatus.FOUND == status) {
+                    this.commitLogPrefetchService.onMessagesRead(group, topic, queueId, offset, nextBeginOffset);
+                }
             }
         } else {
             status = GetMessageStatus.NO_MATCHED_LOGIC_QUEUE;
@@ -1949,6 +2000,14 @@ public class DefaultMessageStore implements MessageStore {
         return storeStatsService;
     }
 
+    public CommitLogPrefetchService getCommitLogPrefetchService() {
+        return commitLogPrefetchService;
+    }
+
+    public HotMessageCache getHotMessageCache() {
+        return hotMessageCache;
+    }
+
     public RunningFlags getAccessRights() {
         return runningFlags;
     }
@@ -1972,6 +2031,18 @@ public class DefaultMessageStore implements MessageStore {
         return runningFlags;
     }
 
+    /**
+     * Let the hot message cache copy the message from the buffer reput read it from, instead of reading it again.
+     */
+    private void attachMessageBuffer(DispatchRequest dispatchRequest, ByteBuffer byteBuffer, int position) {
+        if (this.hotMessageCache != null && dispatchRequest.getMsgSize() <= this.hotMessageCache.getMaxMessageSize()) {
+            ByteBuffer messageBuffer = byteBuffer.duplicate();
+            messageBuffer.limit(position + dispatchRequest.getMsgSize());
+            messageBuffer.position(position);
+            dispatchRequest.setMessageBuffer(messageBuffer);
+        }
+    }
+
     public void doDispatch(DispatchRequest req) throws RocksDBException {
         for (CommitLogDispatcher dispatcher : this.dispatcherList) {
             dispatcher.dispatch(req);
@@ -2177,6 +2248,33 @@ public class DefaultMessageStore implements MessageStore {
         }
     }
 
+    class CommitLogDispatcherHotMessageCache implements CommitLogDispatcher {
+
+        @Override
+        public void dispatch(DispatchRequest request) {
+            final int tranType = MessageSysFlag.getTransactionValue(request.getSysFlag());
+            if (tranType == MessageSysFlag.TRANSACTION_PREPARED_TYPE || tranType == MessageSysFlag.TRANSACTION_ROLLBACK_TYPE) {
+                return;
+            }
+            if (request.getMsgSize() > hotMessageCache.getMaxMessageSize()) {
+                return;
+            }
+            if (request.getMessageBuffer() != null) {
+                hotMessageCache.put(request.getCommitLogOffset(), request.getMessageBuffer());
+                return;
+            }
+            // the message was just written, so this reads from the page cache
+            SelectMappedBufferResult result = commitLog.getMessage(request.getCommitLogOffset(), request.getMsgSize());
+            if (result != null) {
+                try {
+                    hotMessageCache.put(request.getCommitLogOffset(), result.getByteBuffer());
+                } finally {
+                    result.release();
+                }
+            }
+        }
+    }
+
     class CleanCommitLogService {
 
         private final static int MAX_MANUAL_DELETE_FILE_TIMES = 20;
@@ -2835,6 +2933,7 @@ public class DefaultMessageStore implements MessageStore {
                     this.reputFromOffset = result.getStartOffset();
 
                     for (int readSize = 0; readSize < result.getSize() && reputFromOffset < DefaultMessageStore.this.getConfirmOffset() && doNext; ) {
+                        int position = result.getByteBuffer().position();
                         DispatchRequest dispatchRequest =
                             DefaultMessageStore.this.commitLog.checkMessageAndReturnSize(result.getByteBuffer(), false, false, false);
                         int size = dispatchRequest.getBufferSize() == -1 ? dispatchRequest.getMsgSize() : dispatchRequest.getBufferSize();
@@ -2846,6 +2945,7 @@ public class DefaultMessageStore implements MessageStore {
 
                         if (dispatchRequest.isSuccess()) {
                             if (size > 0) {
+                                attachMessageBuffer(dispatchRequest, result.getByteBuffer(), position);
                                 DefaultMessageStore.this.doDispatch(dispatchRequest);
 
                                 if (!notifyMessageArriveInBatch) {
@@ -3233,6 +3333,272 @@ public class DefaultMessageStore implements MessageStore {
         }
     }
 
+    /**
+     * Reput service which decodes messages and builds consume queues on lanes partitioned by topic and queue id, so
+     * the order inside each queue is kept. Dispatchers after the consume queue one, such as the index, still run in
+     * commit log order on the reput thread, and reputFromOffset only moves past a message once it is fully
+     * dispatched. At most one batch of messages is in flight, which bounds the work queued on the lanes.
+     */
+    class ParallelReputMessageService extends ReputMessageService {
+
+        private final ExecutorService[] dispatchLanes;
+
+        private final List<Future<DispatchRequest>> dispatchFutures = new ArrayList<>();
+
+        /**
+         * Set once a dispatch on the lanes failed, the lanes skip the rest of the batch so that no later message of
+         * the same queue is dispatched before the failed one is replayed
+         */
+        private volatile boolean laneFailed = false;
+
+        public ParallelReputMessageService() {
+            int laneNum = Math.max(1, DefaultMessageStore.this.messageStoreConfig.getParallelReputThreadNum());
+            this.dispatchLanes = new ExecutorService[laneNum];
+            for (int i = 0; i < laneNum; i++) {
+                this.dispatchLanes[i] = ThreadUtils.newSingleThreadExecutor(new ThreadFactoryImpl("ParallelReputLane_" + i + "_"));
+            }
+        }
+
+        @Override
+        public void doReput() {
+            if (this.reputFromOffset < DefaultMessageStore.this.commitLog.getMinOffset()) {
+                LOGGER.warn("The reputFromOffset={} is smaller than minPyOffset={}, this usually indicate that the dispatch behind too much and the commitlog has expired.",
+                    this.reputFromOffset, DefaultMessageStore.this.commitLog.getMinOffset());
+                this.reputFromOffset = DefaultMessageStore.this.commitLog.getMinOffset();
+            }
+            int laneDispatcherNum = this.laneDispatcherNum();
+            int batchSize = Math.max(1, DefaultMessageStore.this.messageStoreConfig.getParallelReputBatchSize());
+            for (boolean doNext = true; this.isCommitLogAvailable() && doNext; ) {
+
+                SelectMappedBufferResult result = DefaultMessageStore.this.commitLog.getData(reputFromOffset);
+
+                if (result == null) {
+                    break;
+                }
+
+                boolean sequentialReput = false;
+                try {
+                    this.reputFromOffset = result.getStartOffset();
+
+                    ByteBuffer byteBuffer = result.getByteBuffer();
+                    long readFromOffset = this.reputFromOffset;
+                    boolean batchOk = true;
+                    while (byteBuffer.remaining() >= 8 && readFromOffset < DefaultMessageStore.this.getConfirmOffset()) {
+                        int position = byteBuffer.position();
+                        int totalSize = byteBuffer.getInt(position);
+                        int magicCode = byteBuffer.getInt(position + MessageDecoder.MESSAGE_MAGIC_CODE_POSITION);
+
+                        if (magicCode == MessageDecoder.BLANK_MAGIC_CODE) {
+                            batchOk = this.finishBatch(laneDispatcherNum);
+                            if (batchOk) {
+                                this.reputFromOffset = DefaultMessageStore.this.commitLog.rollNextFile(this.reputFromOffset);
+                            }
+                            break;
+                        }
+
+                        if (magicCode != MessageDecoder.MESSAGE_MAGIC_CODE && magicCode != MessageDecoder.MESSAGE_MAGIC_CODE_V2
+                            || totalSize <= 0 || totalSize > byteBuffer.remaining()) {
+                            // Leave the broken message to the sequential reput, which knows how to skip it
+                            sequentialReput = true;
+                            break;
+                        }
+
+                        if (readFromOffset + totalSize > DefaultMessageStore.this.getConfirmOffset()) {
+                            doNext = false;
+                            break;
+                        }
+
+                        ByteBuffer messageBuffer = byteBuffer.slice();
+                        messageBuffer.limit(totalSize);
+                        ExecutorService lane = this.dispatchLanes[this.laneIndex(byteBuffer, position, magicCode)];
+                        this.dispatchFutures.add(lane.submit(() -> this.dispatchOnLane(messageBuffer, laneDispatcherNum)));
+
+                        byteBuffer.position(position + totalSize);
+                        readFromOffset += totalSize;
+                        if (this.dispatchFutures.size() >= batchSize) {
+                            batchOk = this.finishBatch(laneDispatcherNum);
+                            if (!batchOk) {
+                                break;
+                            }
+                        }
+                    }
+                    if (batchOk) {
+                        batchOk = this.finishBatch(laneDispatcherNum);
+                    }
+                    if (!batchOk) {
+                        // Leave the message the batch stopped at to the sequential reput, which rolls over an empty
+                        // one and skips a broken one, instead of stalling here
+                        sequentialReput = true;
+                    }
+                } catch (RocksDBException e) {
+                    ERROR_LOG.info("dispatch message to cq exception. reputFromOffset: {}", this.reputFromOffset, e);
+                    return;
+                } finally {
+                    this.awaitDispatchFutures();
+                    result.release();
+                }
+
+                finishCommitLogDispatch();
+
+                if (sequentialReput) {
+                    super.doReput();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Run the dispatchers after the lanes in commit log order, and move reputFromOffset past every message of the
+         * batch that has been fully dispatched.
+         *
+         * @return false if the batch stopped at a message which could not be dispatched, reputFromOffset is left at it
+         */
+        private boolean finishBatch(int laneDispatcherNum) throws RocksDBException {
+            try {
+                for (Future<DispatchRequest> future : this.dispatchFutures) {
+                    DispatchRequest dispatchRequest;
+                    try {
+                        dispatchRequest = future.get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        ERROR_LOG.info("dispatch message to cq exception. reputFromOffset: {}", this.reputFromOffset, e);
+                        return false;
+                    }
+                    int size = dispatchRequest.getBufferSize() == -1 ? dispatchRequest.getMsgSize() : dispatchRequest.getBufferSize();
+                    if (size <= 0) {
+                        return false;
+                    }
+
+                    if (dispatchRequest.isSuccess()) {
+                        Iterator<CommitLogDispatcher> iterator = DefaultMessageStore.this.dispatcherList.listIterator(laneDispatcherNum);
+                        while (iterator.hasNext()) {
+                            iterator.next().dispatch(dispatchRequest);
+                        }
+
+                        if (!notifyMessageArriveInBatch) {
+                            notifyMessageArriveIfNecessary(dispatchRequest);
+                        }
+
+                        if (!DefaultMessageStore.this.getMessageStoreConfig().isDuplicationEnable() &&
+                            DefaultMessageStore.this.getMessageStoreConfig().getBrokerRole() == BrokerRole.SLAVE) {
+                            DefaultMessageStore.this.storeStatsService
+                                .getSinglePutMessageTopicTimesTotal(dispatchRequest.getTopic()).add(dispatchRequest.getBatchSize());
+                            DefaultMessageStore.this.storeStatsService
+                                .getSinglePutMessageTopicSizeTotal(dispatchRequest.getTopic())
+                                .add(dispatchRequest.getMsgSize());
+                        }
+                    } else {
+                        LOGGER.error("[BUG]read total count not equals msg total size. reputFromOffset={}", reputFromOffset);
+                    }
+                    this.reputFromOffset += size;
+                }
+                return true;
+            } finally {
+                this.awaitDispatchFutures();
+            }
+        }
+
+        private void awaitDispatchFutures() {
+            for (Future<DispatchRequest> future : this.dispatchFutures) {
+                try {
+                    future.get();
+                } catch (InterruptedException | ExecutionException ignored) {
+                }
+            }
+            this.dispatchFutures.clear();
+            this.laneFailed = false;
+        }
+
+        private DispatchRequest dispatchOnLane(ByteBuffer messageBuffer, int laneDispatcherNum) throws RocksDBException {
+            if (this.laneFailed) {
+                throw new IllegalStateException("skip dispatch after a failed one in the same batch");
+            }
+            try {
+                DispatchRequest dispatchRequest =
+                    DefaultMessageStore.this.commitLog.checkMessageAndReturnSize(messageBuffer, false, false, false);
+                if (dispatchRequest.isSuccess() && dispatchRequest.getMsgSize() > 0) {
+                    attachMessageBuffer(dispatchRequest, messageBuffer, 0);
+                    Iterator<CommitLogDispatcher> iterator = DefaultMessageStore.this.dispatcherList.iterator();
+                    for (int i = 0; i < laneDispatcherNum; i++) {
+                        iterator.next().dispatch(dispatchRequest);
+                    }
+                }
+                return dispatchRequest;
+            } catch (Throwable t) {
+                this.laneFailed = true;
+                throw t;
+            }
+        }
+
+        /**
+         * Dispatchers up to the consume queue one only touch the queue of the message, so they can run on the lanes.
+         */
+        private int laneDispatcherNum() {
+            int index = 0;
+            for (CommitLogDispatcher dispatcher : DefaultMessageStore.this.dispatcherList) {
+                index++;
+                if (dispatcher instanceof CommitLogDispatcherBuildConsumeQueue) {
+                    return index;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Choose the lane by the topic and queue id of the message, read in place without decoding it.
+         */
+        private int laneIndex(ByteBuffer byteBuffer, int position, int magicCode) {
+            int queueId = byteBuffer.getInt(position + 4 + 4 + 4);
+            int sysFlag = byteBuffer.getInt(position + MessageDecoder.SYSFLAG_POSITION);
+            int bornHostLength = (sysFlag & MessageSysFlag.BORNHOST_V6_FLAG) == 0 ? 8 : 20;
+            int storeHostLength = (sysFlag & MessageSysFlag.STOREHOSTADDRESS_V6_FLAG) == 0 ? 8 : 20;
+            int bodyLengthPosition = position + MessageDecoder.SYSFLAG_POSITION + 4 + 8 + bornHostLength + 8
+                + storeHostLength + 4 + 8;
+            int topicLengthPosition = bodyLengthPosition + 4 + byteBuffer.getInt(bodyLengthPosition);
+            MessageVersion messageVersion = MessageVersion.valueOfMagicCode(magicCode);
+            int topicLength = messageVersion.getTopicLength(byteBuffer, topicLengthPosition);
+            int topicPosition = topicLengthPosition + messageVersion.getTopicLengthSize();
+
+            int hash = queueId;
+            for (int i = 0; i < topicLength; i++) {
+                hash = 31 * hash + byteBuffer.get(topicPosition + i);
+            }
+            return (hash & Integer.MAX_VALUE) % this.dispatchLanes.length;
+        }
+
+        @Override
+        public void shutdown() {
+            super.shutdown();
+            for (ExecutorService dispatchLane : this.dispatchLanes) {
+                dispatchLane.shutdown();
+            }
+        }
+
+        @Override
+        public String getServiceName() {
+            if (DefaultMessageStore.this.getBrokerConfig().isInBrokerContainer()) {
+                return DefaultMessageStore.this.getBrokerIdentity().getIdentifier() + ParallelReputMessageService.class.getSimpleName();
+            }
+            return ParallelReputMessageService.class.getSimpleName();
+        }
+    }
+
+    private ReputMessageService createReputMessageService() {
+        if (messageStoreConfig.isEnableBuildConsumeQueueConcurrently()) {
+            return new ConcurrentReputMessageService();
+        }
+        if (messageStoreConfig.isEnableParallelReput()) {
+            // Multi dispatch writes to queues of other lanes, and the rocksdb consume queue batches writes per reput
+            if (messageStoreConfig.isEnableMultiDispatch() || messageStoreConfig.isEnableLmq()
+                || messageStoreConfig.isEnableRocksDBStore()) {
+                LOGGER.warn("Parallel reput does not support multi dispatch, lmq or rocksdb consume queue, use {} instead",
+                    ReputMessageService.class.getSimpleName());
+                return new ReputMessageService();
+            }
+            return new ParallelReputMessageService();
+        }
+        return new ReputMessageService();
+    }
+
     @Override
     public HARuntimeInfo getHARuntimeInfo() {
         if (haService != null) {
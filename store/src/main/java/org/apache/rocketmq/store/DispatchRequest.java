@@ -16,6 +16,7 @@
  */
 package org.apache.rocketmq.store;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 public class DispatchRequest {
@@ -45,6 +46,9 @@ public class DispatchRequest {
 
     private String offsetId;
 
+    // bytes of the message read by reput, only valid while the request is dispatched, null if not provided
+    private ByteBuffer messageBuffer;
+
     public DispatchRequest(
         final String topic,
         final int queueId,
@@ -228,6 +232,14 @@ public class DispatchRequest {
         this.offsetId = offsetId;
     }
 
+    public ByteBuffer getMessageBuffer() {
+        return messageBuffer;
+    }
+
+    public void setMessageBuffer(ByteBuffer messageBuffer) {
+        this.messageBuffer = messageBuffer;
+    }
+
     @Override
     public String toString() {
         return "DispatchRequest{" +
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+/**
+ * Chooses how long the group commit service holds a flush so that more sync flush requests are served by one force.
+ * <p>
+ * The hold window follows the recent flush latency and request arrival rate: a hold is only worth it when at least
+ * one more request is expected to arrive while waiting, and it never exceeds the recent flush latency or the
+ * configured upper bound, so the added latency stays within one flush.
+ * <p>
+ * Not thread safe, it is only used by the group commit service thread.
+ */
+public class GroupCommitWindow {
+    private static final double SMOOTHING_FACTOR = 0.2;
+
+    private final long maxHoldNanos;
+
+    private double avgFlushNanos;
+    private double avgArrivalPerNanos;
+    private long lastCommitNanos;
+
+    public GroupCommitWindow(long maxHoldNanos) {
+        this.maxHoldNanos = maxHoldNanos;
+    }
+
+    /**
+     * Record a finished group commit.
+     *
+     * @param batchSize requests served by the commit
+     * @param flushNanos time spent flushing
+     * @param nowNanos {@link System#nanoTime()} when the commit finished
+     */
+    public void onCommit(int batchSize, long flushNanos, long nowNanos) {
+        avgFlushNanos = smooth(avgFlushNanos, flushNanos);
+        if (lastCommitNanos > 0 && nowNanos > lastCommitNanos) {
+            avgArrivalPerNanos = smooth(avgArrivalPerNanos, (double) batchSize / (nowNanos - lastCommitNanos));
+        }
+        lastCommitNanos = nowNanos;
+    }
+
+    /**
+     * @return nanoseconds to hold the next flush for, 0 means flush immediately
+     */
+    public long nextHoldNanos() {
+        long window = (long) Math.min(avgFlushNanos, maxHoldNanos);
+        if (window <= 0 || avgArrivalPerNanos * window < 1) {
+            return 0;
+        }
+        return window;
+    }
+
+    public long getAvgFlushNanos() {
+        return (long) avgFlushNanos;
+    }
+
+    public double getAvgArrivalPerNanos() {
+        return avgArrivalPerNanos;
+    }
+
+    private static double smooth(double avg, double sample) {
+        return avg == 0 ? sample : avg + SMOOTHING_FACTOR * (sample - avg);
+    }
+}
@@ -53,9 +53,8 @@ public class MultiDispatch {
         Long[] queueOffsets = new Long[queues.length];
         if (messageStore.getMessageStoreConfig().isEnableLmq()) {
             for (int i = 0; i < queues.length; i++) {
-                String key = queueKey(queues[i], msg);
-                if (MixAll.isLmq(key)) {
-                    queueOffsets[i] = messageStore.getQueueStore().getLmqQueueOffset(key);
+                if (MixAll.isLmq(queues[i])) {
+                    queueOffsets[i] = messageStore.getQueueStore().getLmqQueueOffset(queues[i], 0);
                 }
             }
         }
@@ -68,9 +67,9 @@ public class MultiDispatch {
         String multiDispatchQueue = msgInner.getProperty(MessageConst.PROPERTY_INNER_MULTI_DISPATCH);
         String[] queues = multiDispatchQueue.split(MixAll.MULTI_DISPATCH_QUEUE_SPLITTER);
         for (String queue : queues) {
-            String key = queueKey(queue, msgInner);
-            if (messageStore.getMessageStoreConfig().isEnableLmq() && MixAll.isLmq(key)) {
-                messageStore.getQueueStore().increaseLmqOffset(key, VALUE_OF_EACH_INCREMENT);
+            // LMQ offsets always live under queue id 0, see queueKey
+            if (messageStore.getMessageStoreConfig().isEnableLmq() && MixAll.isLmq(queue)) {
+                messageStore.getQueueStore().increaseLmqOffset(queue, 0, VALUE_OF_EACH_INCREMENT);
             }
         }
     }
@@ -0,0 +1,398 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+
+/**
+ * An off-heap cache of recently dispatched messages keyed by their commit log offset, so that many consumer groups
+ * tailing the same queues are served from memory instead of going back to the commit log once the page cache has
+ * dropped the data.
+ *
+ * <p>The cache is split into segments, each with its own lock and a share of the capacity. A segment follows
+ * W-TinyLFU: new messages enter a small LRU window, and once they leave it they only stay in the main space if they
+ * were read more often than the entry they would replace. The main space is a segmented LRU of a probation and a
+ * protected part. Message bytes are copied into pooled direct buffers rounded up to a power of two, and a buffer is
+ * reused only after the last reader released it. The direct memory of a segment is capped, buffers dropped from the
+ * pool to make room for another size are freed at once rather than left to the garbage collector.
+ */
+public class HotMessageCache {
+    private static final int MIN_SLOT_SIZE = 128;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final Segment[] segments;
+    private final int maxMessageSize;
+
+    public HotMessageCache(long capacity, int segmentNum, int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+        int slotClassNum = slotIndex(maxMessageSize) + 1;
+        int maxSlotSize = MIN_SLOT_SIZE << (slotClassNum - 1);
+        this.segments = new Segment[Math.max(1, segmentNum)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(capacity / segments.length, slotClassNum, maxSlotSize);
+        }
+    }
+
+    /**
+     * Copy the remaining bytes of the message into the cache.
+     *
+     * @return false if the message is too large, already cached or no buffer could be allocated for it
+     */
+    public boolean put(long commitLogOffset, ByteBuffer message) {
+        int size = message.remaining();
+        if (size <= 0 || size > maxMessageSize) {
+            return false;
+        }
+        return segmentOf(commitLogOffset).put(commitLogOffset, message);
+    }
+
+    /**
+     * @return the cached message, which must be released like one read from the commit log, or null on a miss
+     */
+    public SelectMappedBufferResult get(long commitLogOffset, int size) {
+        if (size > maxMessageSize) {
+            return null;
+        }
+        return segmentOf(commitLogOffset).get(commitLogOffset, size);
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Clear the cache and free its buffers, a buffer still held by a reader is freed when it is released.
+     */
+    public void destroy() {
+        for (Segment segment : segments) {
+            segment.destroy();
+        }
+    }
+
+    /**
+     * @return bytes held by cached messages, counted in whole buffers
+     */
+    public long getCachedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.getCachedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return direct memory held by the cache, including pooled buffers and buffers still held by readers
+     */
+    public long getAllocatedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.getAllocatedBytes();
+        }
+        return bytes;
+    }
+
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    private Segment segmentOf(long commitLogOffset) {
+        long h = commitLogOffset * 0x9E3779B97F4A7C15L;
+        return segments[(int) ((h ^ (h >>> 32)) & Integer.MAX_VALUE) % segments.length];
+    }
+
+    private static int slotIndex(int size) {
+        if (size <= MIN_SLOT_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MIN_SLOT_SIZE);
+    }
+
+    private static final class Entry {
+        private final long offset;
+        private final int size;
+        private final ByteBuffer slot;
+        private int queue = WINDOW;
+        /**
+         * One reference belongs to the cache itself, the others to readers.
+         */
+        private int refCnt = 1;
+
+        private Entry(long offset, int size, ByteBuffer slot) {
+            this.offset = offset;
+            this.size = size;
+            this.slot = slot;
+        }
+
+        private int charge() {
+            return slot.capacity();
+        }
+    }
+
+    private static final class Segment {
+        private final long windowCapacity;
+        private final long mainCapacity;
+        private final long protectedCapacity;
+        private final long allocateLimit;
+
+        private final Map<Long, Entry> entries = new HashMap<>();
+        private final LinkedHashMap<Long, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<Long, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<Long, Entry> protectedQueue = new LinkedHashMap<>(16, 0.75f, true);
+        private long windowBytes;
+        private long probationBytes;
+        private long protectedBytes;
+
+        private final ArrayDeque<ByteBuffer>[] freeSlots;
+        private long allocatedBytes;
+        private boolean destroyed;
+
+        private final FrequencySketch sketch;
+
+        @SuppressWarnings("unchecked")
+        private Segment(long capacity, int slotClassNum, int maxSlotSize) {
+            this.windowCapacity = Math.min(capacity, Math.max(capacity / 100, maxSlotSize));
+            this.mainCapacity = capacity - windowCapacity;
+            this.protectedCapacity = mainCapacity * 4 / 5;
+            // room for the entry being added before the eviction brings the segment back under its capacity
+            this.allocateLimit = capacity + maxSlotSize;
+            this.freeSlots = new ArrayDeque[slotClassNum];
+            for (int i = 0; i < slotClassNum; i++) {
+                freeSlots[i] = new ArrayDeque<>();
+            }
+            this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, capacity / 1024));
+        }
+
+        private synchronized boolean put(long offset, ByteBuffer message) {
+            if (destroyed || entries.containsKey(offset)) {
+                return false;
+            }
+            int size = message.remaining();
+            ByteBuffer slot = allocate(size);
+            if (slot == null) {
+                return false;
+            }
+            slot.clear();
+            slot.put(message.duplicate());
+            Entry entry = new Entry(offset, size, slot);
+            entries.put(offset, entry);
+            window.put(offset, entry);
+            windowBytes += entry.charge();
+            sketch.increment(offset);
+            evict();
+            return true;
+        }
+
+        private SelectMappedBufferResult get(long offset, int size) {
+            Entry entry;
+            synchronized (this) {
+                entry = entries.get(offset);
+                if (entry == null || entry.size != size) {
+                    return null;
+                }
+                sketch.increment(offset);
+                onAccess(entry);
+                entry.refCnt++;
+            }
+            ByteBuffer byteBuffer = entry.slot.duplicate();
+            byteBuffer.position(0);
+            byteBuffer.limit(size);
+            return new CachedMessageBufferResult(offset, byteBuffer.slice(), size, this, entry);
+        }
+
+        private synchronized void release(Entry entry) {
+            if (--entry.refCnt == 0) {
+                if (destroyed) {
+                    free(entry.slot);
+                } else {
+                    freeSlots[slotIndex(entry.charge())].addLast(entry.slot);
+                }
+            }
+        }
+
+        private synchronized void destroy() {
+            clear();
+            destroyed = true;
+            for (ArrayDeque<ByteBuffer> slots : freeSlots) {
+                while (!slots.isEmpty()) {
+                    free(slots.pollLast());
+                }
+            }
+        }
+
+        private void free(ByteBuffer slot) {
+            allocatedBytes -= slot.capacity();
+            UtilAll.cleanBuffer(slot);
+        }
+
+        private synchronized void clear() {
+            for (Entry entry : entries.values()) {
+                release(entry);
+            }
+            entries.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+            windowBytes = 0;
+            probationBytes = 0;
+            protectedBytes = 0;
+        }
+
+        private synchronized long getCachedBytes() {
+            return windowBytes + probationBytes + protectedBytes;
+        }
+
+        private synchronized long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        private void onAccess(Entry entry) {
+            switch (entry.queue) {
+                case WINDOW:
+                    window.get(entry.offset);
+                    break;
+                case PROBATION:
+                    probation.remove(entry.offset);
+                    probationBytes -= entry.charge();
+                    entry.queue = PROTECTED;
+                    protectedQueue.put(entry.offset, entry);
+                    protectedBytes += entry.charge();
+                    while (protectedBytes > protectedCapacity) {
+                        Entry demoted = pollFirst(protectedQueue);
+                        protectedBytes -= demoted.charge();
+                        demoted.queue = PROBATION;
+                        probation.put(demoted.offset, demoted);
+                        probationBytes += demoted.charge();
+                    }
+                    break;
+                default:
+                    protectedQueue.get(entry.offset);
+                    break;
+            }
+        }
+
+        /**
+         * Move entries out of the window into probation, and let each of them compete with the least recently used
+         * entry of the main space while the main space is over capacity.
+         */
+        private void evict() {
+            while (windowBytes > windowCapacity) {
+                Entry candidate = pollFirst(window);
+                windowBytes -= candidate.charge();
+                candidate.queue = PROBATION;
+                probation.put(candidate.offset, candidate);
+                probationBytes += candidate.charge();
+
+                while (probationBytes + protectedBytes > mainCapacity) {
+                    Entry victim = firstOf(probation.isEmpty() ? protectedQueue : probation);
+                    if (victim == candidate || sketch.frequency(candidate.offset) <= sketch.frequency(victim.offset)) {
+                        remove(candidate);
+                        break;
+                    }
+                    remove(victim);
+                }
+            }
+        }
+
+        private void remove(Entry entry) {
+            entries.remove(entry.offset);
+            switch (entry.queue) {
+                case WINDOW:
+                    window.remove(entry.offset);
+                    windowBytes -= entry.charge();
+                    break;
+                case PROBATION:
+                    probation.remove(entry.offset);
+                    probationBytes -= entry.charge();
+                    break;
+                default:
+                    protectedQueue.remove(entry.offset);
+                    protectedBytes -= entry.charge();
+                    break;
+            }
+            release(entry);
+        }
+
+        private ByteBuffer allocate(int size) {
+            int index = slotIndex(size);
+            ByteBuffer slot = freeSlots[index].pollLast();
+            if (slot != null) {
+                return slot;
+            }
+            int slotSize = MIN_SLOT_SIZE << index;
+            // make room by freeing pooled buffers of other sizes
+            for (int i = 0; i < freeSlots.length && allocatedBytes + slotSize > allocateLimit; i++) {
+                while (!freeSlots[i].isEmpty() && allocatedBytes + slotSize > allocateLimit) {
+                    free(freeSlots[i].pollLast());
+                }
+            }
+            if (allocatedBytes + slotSize > allocateLimit) {
+                return null;
+            }
+            allocatedBytes += slotSize;
+            return ByteBuffer.allocateDirect(slotSize);
+        }
+
+        private static Entry firstOf(LinkedHashMap<Long, Entry> queue) {
+            return queue.values().iterator().next();
+        }
+
+        private static Entry pollFirst(LinkedHashMap<Long, Entry> queue) {
+            Iterator<Entry> iterator = queue.values().iterator();
+            Entry entry = iterator.next();
+            iterator.remove();
+            return entry;
+        }
+    }
+
+    private static final class CachedMessageBufferResult extends SelectMappedBufferResult {
+        private final Segment segment;
+        private Entry entry;
+
+        private CachedMessageBufferResult(long startOffset, ByteBuffer byteBuffer, int size, Segment segment,
+            Entry entry) {
+            super(startOffset, byteBuffer, size, null);
+            this.segment = segment;
+            this.entry = entry;
+        }
+
+        @Override
+        public synchronized void release() {
+            if (this.entry != null) {
+                this.segment.release(this.entry);
+                this.entry = null;
+            }
+        }
+
+        @Override
+        public synchronized boolean hasReleased() {
+            return this.entry == null;
+        }
+    }
+}
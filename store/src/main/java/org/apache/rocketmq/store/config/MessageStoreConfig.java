@@ -137,6 +137,18 @@ public class MessageStoreConfig {
      */
     private boolean useReentrantLockWhenPutMessage = true;
 
+    /**
+     * Record how long appenders wait for and hold the put message lock, published as histograms
+     */
+    private boolean enablePutMessageLockMetrics = false;
+
+    /**
+     * Only reserve commit log space while holding the put message lock and copy single messages into it after the
+     * lock is released, so that large messages are copied in parallel.
+     * It cannot be changed after the broker is started.
+     */
+    private boolean enableCopyOutsidePutMessageLock = false;
+
     // Whether schedule flush
     @ImportantField
     private boolean flushCommitLogTimed = true;
@@ -198,6 +210,39 @@ public class MessageStoreConfig {
     private int maxMsgsNumBatch = 64;
     @ImportantField
     private boolean messageIndexSafe = false;
+
+    /**
+     * Keep a Bloom filter of key hashes for each index file, so that queries skip files that cannot contain the key.
+     * The filters live on heap and are persisted beside the index files, costing bitsPerKey / 8 bytes per index.
+     */
+    private boolean indexBloomFilterEnable = false;
+    private int indexBloomFilterBitsPerKey = 8;
+
+    /**
+     * Threads used to search several index files of one query in parallel, 0 searches them one by one.
+     */
+    private int indexQueryThreadNum = 0;
+    private long indexQueryTimeoutMillis = 3000;
+
+    /**
+     * Keep recently dispatched messages in an off-heap cache, so that consumers reading the tail of a queue are
+     * served from memory. Messages larger than hotMessageCacheMaxMessageSize are not cached.
+     */
+    private boolean hotMessageCacheEnable = false;
+    private long hotMessageCacheCapacity = 256 * 1024 * 1024L;
+    private int hotMessageCacheSegmentNum = 16;
+    private int hotMessageCacheMaxMessageSize = 64 * 1024;
+
+    /**
+     * Ask the kernel to read in the commit log that sequential readers beyond the in-memory ratio will pull next.
+     * A reader prefetches what it consumes in commitLogPrefetchLookaheadMillis at its recent rate, bounded by the
+     * min and max message numbers.
+     */
+    private boolean commitLogPrefetchEnable = false;
+    private long commitLogPrefetchLookaheadMillis = 2000;
+    private int commitLogPrefetchMinMessageNum = 64;
+    private int commitLogPrefetchMaxMessageNum = 4096;
+
     private int haListenPort = 10912;
     private int haSendHeartbeatInterval = 1000 * 5;
     private int haHousekeepingInterval = 1000 * 20;
@@ -215,6 +260,21 @@ public class MessageStoreConfig {
     private FlushDiskType flushDiskType = FlushDiskType.ASYNC_FLUSH;
     // Used by GroupTransferService to sync messages from master to slave
     private int syncFlushTimeout = 1000 * 5;
+    /**
+     * Hold the SYNC_FLUSH group commit for a window chosen from recent flush latency and request arrival rate, so that
+     * more requests are served by one flush.
+     */
+    private boolean enableAdaptiveGroupCommit = false;
+    // Upper bound of the adaptive group commit hold window
+    private int groupCommitMaxHoldMicros = 1000;
+    /**
+     * For SYNC_FLUSH, force the written ranges of the commit log from a pool of flushers with up to
+     * pipelinedFlushMaxInflight ranges in flight, completing sync flush requests in offset order as the ranges
+     * become durable, instead of one blocking flush at a time.
+     * It cannot be changed after the broker is started.
+     */
+    private boolean enablePipelinedFlush = false;
+    private int pipelinedFlushMaxInflight = 4;
     // Used by PutMessage to wait messages be flushed to disk and synchronized in current broker member group.
     private int putMessageTimeout = 1000 * 8;
     private int slaveTimeout = 3000;
@@ -404,6 +464,17 @@ public class MessageStoreConfig {
 
     private int batchDispatchRequestThreadPoolNums = 16;
 
+    /**
+     * Decode messages and build consume queues on threads partitioned by topic and queue id when dispatching the
+     * commit log. Not used together with multi dispatch, lmq or the rocksdb consume queue.
+     */
+    private boolean enableParallelReput = false;
+
+    private int parallelReputThreadNum = 4;
+
+    // Max messages dispatched on the parallel reput threads before the reput thread catches up with them
+    private int parallelReputBatchSize = 4096;
+
     // rocksdb mode
     private long cleanRocksDBDirtyCQIntervalMin = 60;
     private long statRocksDBCQIntervalSec = 10;
@@ -956,6 +1027,38 @@ public class MessageStoreConfig {
         this.syncFlushTimeout = syncFlushTimeout;
     }
 
+    public boolean isEnableAdaptiveGroupCommit() {
+        return enableAdaptiveGroupCommit;
+    }
+
+    public void setEnableAdaptiveGroupCommit(boolean enableAdaptiveGroupCommit) {
+        this.enableAdaptiveGroupCommit = enableAdaptiveGroupCommit;
+    }
+
+    public boolean isEnablePipelinedFlush() {
+        return enablePipelinedFlush;
+    }
+
+    public void setEnablePipelinedFlush(boolean enablePipelinedFlush) {
+        this.enablePipelinedFlush = enablePipelinedFlush;
+    }
+
+    public int getPipelinedFlushMaxInflight() {
+        return pipelinedFlushMaxInflight;
+    }
+
+    public void setPipelinedFlushMaxInflight(int pipelinedFlushMaxInflight) {
+        this.pipelinedFlushMaxInflight = pipelinedFlushMaxInflight;
+    }
+
+    public int getGroupCommitMaxHoldMicros() {
+        return groupCommitMaxHoldMicros;
+    }
+
+    public void setGroupCommitMaxHoldMicros(int groupCommitMaxHoldMicros) {
+        this.groupCommitMaxHoldMicros = groupCommitMaxHoldMicros;
+    }
+
     public int getPutMessageTimeout() {
         return putMessageTimeout;
     }
@@ -1012,6 +1115,102 @@ public class MessageStoreConfig {
         this.messageIndexSafe = messageIndexSafe;
     }
 
+    public boolean isIndexBloomFilterEnable() {
+        return indexBloomFilterEnable;
+    }
+
+    public void setIndexBloomFilterEnable(boolean indexBloomFilterEnable) {
+        this.indexBloomFilterEnable = indexBloomFilterEnable;
+    }
+
+    public int getIndexBloomFilterBitsPerKey() {
+        return indexBloomFilterBitsPerKey;
+    }
+
+    public void setIndexBloomFilterBitsPerKey(int indexBloomFilterBitsPerKey) {
+        this.indexBloomFilterBitsPerKey = indexBloomFilterBitsPerKey;
+    }
+
+    public int getIndexQueryThreadNum() {
+        return indexQueryThreadNum;
+    }
+
+    public void setIndexQueryThreadNum(int indexQueryThreadNum) {
+        this.indexQueryThreadNum = indexQueryThreadNum;
+    }
+
+    public long getIndexQueryTimeoutMillis() {
+        return indexQueryTimeoutMillis;
+    }
+
+    public void setIndexQueryTimeoutMillis(long indexQueryTimeoutMillis) {
+        this.indexQueryTimeoutMillis = indexQueryTimeoutMillis;
+    }
+
+    public boolean isHotMessageCacheEnable() {
+        return hotMessageCacheEnable;
+    }
+
+    public void setHotMessageCacheEnable(boolean hotMessageCacheEnable) {
+        this.hotMessageCacheEnable = hotMessageCacheEnable;
+    }
+
+    public long getHotMessageCacheCapacity() {
+        return hotMessageCacheCapacity;
+    }
+
+    public void setHotMessageCacheCapacity(long hotMessageCacheCapacity) {
+        this.hotMessageCacheCapacity = hotMessageCacheCapacity;
+    }
+
+    public int getHotMessageCacheSegmentNum() {
+        return hotMessageCacheSegmentNum;
+    }
+
+    public void setHotMessageCacheSegmentNum(int hotMessageCacheSegmentNum) {
+        this.hotMessageCacheSegmentNum = hotMessageCacheSegmentNum;
+    }
+
+    public int getHotMessageCacheMaxMessageSize() {
+        return hotMessageCacheMaxMessageSize;
+    }
+
+    public void setHotMessageCacheMaxMessageSize(int hotMessageCacheMaxMessageSize) {
+        this.hotMessageCacheMaxMessageSize = hotMessageCacheMaxMessageSize;
+    }
+
+    public boolean isCommitLogPrefetchEnable() {
+        return commitLogPrefetchEnable;
+    }
+
+    public void setCommitLogPrefetchEnable(boolean commitLogPrefetchEnable) {
+        this.commitLogPrefetchEnable = commitLogPrefetchEnable;
+    }
+
+    public long getCommitLogPrefetchLookaheadMillis() {
+        return commitLogPrefetchLookaheadMillis;
+    }
+
+    public void setCommitLogPrefetchLookaheadMillis(long commitLogPrefetchLookaheadMillis) {
+        this.commitLogPrefetchLookaheadMillis = commitLogPrefetchLookaheadMillis;
+    }
+
+    public int getCommitLogPrefetchMinMessageNum() {
+        return commitLogPrefetchMinMessageNum;
+    }
+
+    public void setCommitLogPrefetchMinMessageNum(int commitLogPrefetchMinMessageNum) {
+        this.commitLogPrefetchMinMessageNum = commitLogPrefetchMinMessageNum;
+    }
+
+    public int getCommitLogPrefetchMaxMessageNum() {
+        return commitLogPrefetchMaxMessageNum;
+    }
+
+    public void setCommitLogPrefetchMaxMessageNum(int commitLogPrefetchMaxMessageNum) {
+        this.commitLogPrefetchMaxMessageNum = commitLogPrefetchMaxMessageNum;
+    }
+
     public boolean isFlushCommitLogTimed() {
         return flushCommitLogTimed;
     }
@@ -1092,6 +1291,22 @@ public class MessageStoreConfig {
         this.useReentrantLockWhenPutMessage = useReentrantLockWhenPutMessage;
     }
 
+    public boolean isEnablePutMessageLockMetrics() {
+        return enablePutMessageLockMetrics;
+    }
+
+    public void setEnablePutMessageLockMetrics(boolean enablePutMessageLockMetrics) {
+        this.enablePutMessageLockMetrics = enablePutMessageLockMetrics;
+    }
+
+    public boolean isEnableCopyOutsidePutMessageLock() {
+        return enableCopyOutsidePutMessageLock;
+    }
+
+    public void setEnableCopyOutsidePutMessageLock(boolean enableCopyOutsidePutMessageLock) {
+        this.enableCopyOutsidePutMessageLock = enableCopyOutsidePutMessageLock;
+    }
+
     public int getCommitCommitLogLeastPages() {
         return commitCommitLogLeastPages;
     }
@@ -1764,6 +1979,30 @@ public class MessageStoreConfig {
         this.enableBuildConsumeQueueConcurrently = enableBuildConsumeQueueConcurrently;
     }
 
+    public boolean isEnableParallelReput() {
+        return enableParallelReput;
+    }
+
+    public void setEnableParallelReput(boolean enableParallelReput) {
+        this.enableParallelReput = enableParallelReput;
+    }
+
+    public int getParallelReputThreadNum() {
+        return parallelReputThreadNum;
+    }
+
+    public void setParallelReputThreadNum(int parallelReputThreadNum) {
+        this.parallelReputThreadNum = parallelReputThreadNum;
+    }
+
+    public int getParallelReputBatchSize() {
+        return parallelReputBatchSize;
+    }
+
+    public void setParallelReputBatchSize(int parallelReputBatchSize) {
+        this.parallelReputBatchSize = parallelReputBatchSize;
+    }
+
     public int getBatchDispatchRequestThreadPoolNums() {
         return batchDispatchRequestThreadPoolNums;
     }
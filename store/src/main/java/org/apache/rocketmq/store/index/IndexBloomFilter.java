@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.store.logfile.DefaultMappedFile;
+import org.apache.rocketmq.store.logfile.MappedFile;
+
+/**
+ * Bloom filter over the key hashes of one {@link IndexFile}.
+ *
+ * <p>An index file matches entries by key hash only, so filtering on the same hash never hides an entry the
+ * file would have returned. There is a single writer, the index building thread; readers may run concurrently.
+ *
+ * <p>The bits live in a mapped file next to the index file, so a filter costs page cache rather than heap, and
+ * filters of files which are not queried can be paged out like the index files themselves.
+ */
+public class IndexBloomFilter {
+    private static final int MAGIC_CODE = 0x1DB100F1;
+    /**
+     * Magic code(4) + Index count(4) + Hash num(4) + Word count(4)
+     */
+    private static final int HEADER_SIZE = 16;
+    private static final int INDEX_COUNT_POSITION = 4;
+    /**
+     * Index count of a filter which has not been persisted yet
+     */
+    private static final int NOT_PERSISTED = -1;
+
+    private final MappedFile mappedFile;
+    private final MappedByteBuffer mappedByteBuffer;
+    private final long bitCount;
+    private final int hashNum;
+
+    private IndexBloomFilter(final MappedFile mappedFile, final int wordCount, final int hashNum) {
+        this.mappedFile = mappedFile;
+        this.mappedByteBuffer = mappedFile.getMappedByteBuffer();
+        this.bitCount = (long) wordCount << 6;
+        this.hashNum = hashNum;
+    }
+
+    /**
+     * Create an empty filter in {@code fileName}, replacing any filter left there.
+     */
+    public static IndexBloomFilter create(final String fileName, final int expectedKeys,
+        final int bitsPerKey) throws IOException {
+        long bits = Math.max(64L, (long) expectedKeys * Math.max(1, bitsPerKey));
+        int wordCount = (int) Math.min((Integer.MAX_VALUE - HEADER_SIZE) >>> 3, (bits + 63) >>> 6);
+        int hashNum = Math.max(1, (int) Math.round(Math.max(1, bitsPerKey) * Math.log(2)));
+
+        UtilAll.deleteFile(new File(fileName));
+        MappedFile mappedFile = new DefaultMappedFile(fileName, HEADER_SIZE + (wordCount << 3));
+        MappedByteBuffer buffer = mappedFile.getMappedByteBuffer();
+        buffer.putInt(0, MAGIC_CODE);
+        buffer.putInt(INDEX_COUNT_POSITION, NOT_PERSISTED);
+        buffer.putInt(8, hashNum);
+        buffer.putInt(12, wordCount);
+        return new IndexBloomFilter(mappedFile, wordCount, hashNum);
+    }
+
+    /**
+     * Map a filter persisted by {@link #persist(int)}. A filter which can not be used is deleted.
+     *
+     * @return the filter, or null if the file is missing, corrupt or does not cover {@code indexCount} indexes
+     */
+    public static IndexBloomFilter load(final String fileName, final int indexCount) throws IOException {
+        File file = new File(fileName);
+        if (!file.exists()) {
+            return null;
+        }
+        long fileSize = file.length();
+        if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+            UtilAll.deleteFile(file);
+            return null;
+        }
+        MappedFile mappedFile = new DefaultMappedFile(fileName, (int) fileSize);
+        MappedByteBuffer buffer = mappedFile.getMappedByteBuffer();
+        int hashNum = buffer.getInt(8);
+        int wordCount = buffer.getInt(12);
+        if (buffer.getInt(0) != MAGIC_CODE || buffer.getInt(INDEX_COUNT_POSITION) != indexCount
+            || hashNum <= 0 || wordCount <= 0 || fileSize != HEADER_SIZE + wordCount * 8L) {
+            mappedFile.destroy(0);
+            return null;
+        }
+        return new IndexBloomFilter(mappedFile, wordCount, hashNum);
+    }
+
+    public void put(final int keyHash) {
+        long h1 = mix(keyHash);
+        long h2 = mix((int) h1 ^ 0x5bd1e995) | 1;
+        for (int i = 0; i < hashNum; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int position = wordPosition(bit);
+            long mask = 1L << bit;
+            long word = mappedByteBuffer.getLong(position);
+            if ((word & mask) == 0) {
+                mappedByteBuffer.putLong(position, word | mask);
+            }
+        }
+    }
+
+    public boolean mightContain(final int keyHash) {
+        long h1 = mix(keyHash);
+        long h2 = mix((int) h1 ^ 0x5bd1e995) | 1;
+        for (int i = 0; i < hashNum; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((mappedByteBuffer.getLong(wordPosition(bit)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tag the filter with the index count it covers and force it to disk.
+     */
+    public void persist(final int indexCount) {
+        if (this.mappedFile.hold()) {
+            try {
+                this.mappedByteBuffer.putInt(INDEX_COUNT_POSITION, indexCount);
+                this.mappedByteBuffer.force();
+            } finally {
+                this.mappedFile.release();
+            }
+        }
+    }
+
+    /**
+     * Unmap the filter, keeping its file.
+     */
+    public void shutdown() {
+        this.mappedFile.shutdown(0);
+    }
+
+    /**
+     * Unmap the filter and delete its file.
+     */
+    public boolean destroy(final long intervalForcibly) {
+        return this.mappedFile.destroy(intervalForcibly);
+    }
+
+    private static int wordPosition(long bit) {
+        return HEADER_SIZE + (int) (bit >>> 6) * 8;
+    }
+
+    private static long mix(int keyHash) {
+        long h = keyHash * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xC2B2AE3D27D4EB4FL;
+        h ^= h >>> 29;
+        return h;
+    }
+}
@@ -51,6 +51,10 @@ public class IndexFile {
     private final MappedFile mappedFile;
     private final MappedByteBuffer mappedByteBuffer;
     private final IndexHeader indexHeader;
+    /**
+     * Null when the file has no filter, in which case every key might be contained.
+     */
+    private volatile IndexBloomFilter bloomFilter;
 
     public IndexFile(final String fileName, final int hashSlotNum, final int indexNum,
         final long endPhyOffset, final long endTimestamp) throws IOException {
@@ -90,6 +94,7 @@ public class IndexFile {
     public void shutdown() {
         this.flush();
         UtilAll.cleanBuffer(this.mappedByteBuffer);
+        this.replaceBloomFilter(null);
     }
 
     public void flush() {
@@ -102,12 +107,69 @@ public class IndexFile {
         }
     }
 
+    /**
+     * Start a Bloom filter in {@code fileName} for a file that has no index yet.
+     */
+    public void createBloomFilter(final String fileName, final int bitsPerKey) {
+        if (this.indexHeader.getIndexCount() <= 1) {
+            try {
+                this.replaceBloomFilter(IndexBloomFilter.create(fileName, this.indexNum, bitsPerKey));
+            } catch (IOException e) {
+                log.warn("create index bloom filter {} failed", fileName, e);
+                this.replaceBloomFilter(null);
+            }
+        }
+    }
+
+    /**
+     * Load the Bloom filter persisted for this file. A filter written before the last index was put is ignored.
+     *
+     * @return whether a filter was loaded
+     */
+    public boolean loadBloomFilter(final String fileName) {
+        try {
+            this.replaceBloomFilter(IndexBloomFilter.load(fileName, this.indexHeader.getIndexCount()));
+        } catch (IOException e) {
+            log.warn("load index bloom filter {} failed", fileName, e);
+            this.replaceBloomFilter(null);
+        }
+        return this.bloomFilter != null;
+    }
+
+    public void persistBloomFilter() {
+        IndexBloomFilter filter = this.bloomFilter;
+        if (filter != null) {
+            filter.persist(this.indexHeader.getIndexCount());
+        }
+    }
+
+    private void replaceBloomFilter(final IndexBloomFilter filter) {
+        IndexBloomFilter oldFilter = this.bloomFilter;
+        this.bloomFilter = filter;
+        if (oldFilter != null) {
+            oldFilter.shutdown();
+        }
+    }
+
+    public boolean hasBloomFilter() {
+        return this.bloomFilter != null;
+    }
+
+    public boolean mightContain(final String key) {
+        IndexBloomFilter filter = this.bloomFilter;
+        return filter == null || filter.mightContain(indexKeyHashMethod(key));
+    }
+
     public boolean isWriteFull() {
         return this.indexHeader.getIndexCount() >= this.indexNum;
     }
 
     public boolean destroy(final long intervalForcibly) {
-        return this.mappedFile.destroy(intervalForcibly);
+        boolean destroyed = this.mappedFile.destroy(intervalForcibly);
+        if (destroyed) {
+            this.replaceBloomFilter(null);
+        }
+        return destroyed;
     }
 
     public boolean putKey(final String key, final long phyOffset, final long storeTimestamp) {
@@ -139,6 +201,11 @@ public class IndexFile {
                     IndexHeader.INDEX_HEADER_SIZE + this.hashSlotNum * hashSlotSize
                         + this.indexHeader.getIndexCount() * indexSize;
 
+                IndexBloomFilter filter = this.bloomFilter;
+                if (filter != null) {
+                    filter.put(keyHash);
+                }
+
                 this.mappedByteBuffer.putInt(absIndexPos, keyHash);
                 this.mappedByteBuffer.putLong(absIndexPos + 4, phyOffset);
                 this.mappedByteBuffer.putInt(absIndexPos + 4 + 8, (int) timeDiff);
@@ -200,6 +267,9 @@ public class IndexFile {
 
     public void selectPhyOffset(final List<Long> phyOffsets, final String key, final int maxNum,
                                 final long begin, final long end) {
+        if (!mightContain(key)) {
+            return;
+        }
         if (this.mappedFile.hold()) {
             int keyHash = indexKeyHashMethod(key);
             int slotPos = keyHash % this.hashSlotNum;
@@ -21,15 +21,25 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.rocketmq.common.AbstractBrokerRunnable;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
 import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
+import org.apache.rocketmq.common.utils.ThreadUtils;
 import org.apache.rocketmq.store.DefaultMessageStore;
 import org.apache.rocketmq.store.DispatchRequest;
 import org.apache.rocketmq.store.config.StorePathConfigHelper;
@@ -44,6 +54,13 @@ public class IndexService {
     private final int hashSlotNum;
     private final int indexNum;
     private final String storePath;
+    private final String bloomStorePath;
+    private final boolean bloomFilterEnable;
+    private final int bloomFilterBitsPerKey;
+    /**
+     * Searches the index files of one query in parallel, null when they are searched one by one.
+     */
+    private final ExecutorService queryExecutor;
     private final ArrayList<IndexFile> indexFileList = new ArrayList<>();
     private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
 
@@ -53,6 +70,22 @@ public class IndexService {
         this.indexNum = store.getMessageStoreConfig().getMaxIndexNum();
         this.storePath =
             StorePathConfigHelper.getStorePathIndex(defaultMessageStore.getMessageStoreConfig().getStorePathRootDir());
+        this.bloomStorePath =
+            StorePathConfigHelper.getStorePathIndexBloom(defaultMessageStore.getMessageStoreConfig().getStorePathRootDir());
+        this.bloomFilterEnable = store.getMessageStoreConfig().isIndexBloomFilterEnable();
+        this.bloomFilterBitsPerKey = store.getMessageStoreConfig().getIndexBloomFilterBitsPerKey();
+        int queryThreadNum = store.getMessageStoreConfig().getIndexQueryThreadNum();
+        if (queryThreadNum > 0) {
+            this.queryExecutor = ThreadUtils.newThreadPoolExecutor(
+                queryThreadNum,
+                queryThreadNum,
+                1000 * 60,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1024),
+                new ThreadFactoryImpl("IndexQueryThread_"));
+        } else {
+            this.queryExecutor = null;
+        }
     }
 
     public boolean load(final boolean lastExitOK) {
@@ -74,6 +107,10 @@ public class IndexService {
                         }
                     }
 
+                    if (this.bloomFilterEnable && !f.loadBloomFilter(bloomFileName(f))) {
+                        LOGGER.info("no valid bloom filter for index file {}, it will always be searched", f.getFileName());
+                    }
+
                     LOGGER.info("load index file OK, " + f.getFileName());
                     this.indexFileList.add(f);
                 } catch (IOException e) {
@@ -136,6 +173,9 @@ public class IndexService {
                 for (IndexFile file : files) {
                     boolean destroyed = file.destroy(3000);
                     destroyed = destroyed && this.indexFileList.remove(file);
+                    if (destroyed) {
+                        UtilAll.deleteFile(new File(bloomFileName(file)));
+                    }
                     if (!destroyed) {
                         LOGGER.error("deleteExpiredFile remove failed.");
                         break;
@@ -154,6 +194,7 @@ public class IndexService {
             this.readWriteLock.writeLock().lock();
             for (IndexFile f : this.indexFileList) {
                 f.destroy(1000 * 3);
+                UtilAll.deleteFile(new File(bloomFileName(f)));
             }
             this.indexFileList.clear();
         } catch (Exception e) {
@@ -169,9 +210,12 @@ public class IndexService {
         long indexLastUpdateTimestamp = 0;
         long indexLastUpdatePhyoffset = 0;
         maxNum = Math.min(maxNum, this.defaultMessageStore.getMessageStoreConfig().getMaxMsgsNumBatch());
+        String idxKey = buildKey(topic, key);
         try {
             this.readWriteLock.readLock().lock();
             if (!this.indexFileList.isEmpty()) {
+                // newest first
+                List<IndexFile> candidates = new ArrayList<>();
                 for (int i = this.indexFileList.size(); i > 0; i--) {
                     IndexFile f = this.indexFileList.get(i - 1);
                     boolean lastFile = i == this.indexFileList.size();
@@ -180,18 +224,24 @@ public class IndexService {
                         indexLastUpdatePhyoffset = f.getEndPhyOffset();
                     }
 
-                    if (f.isTimeMatched(begin, end)) {
-
-                        f.selectPhyOffset(phyOffsets, buildKey(topic, key), maxNum, begin, end);
+                    if (f.isTimeMatched(begin, end) && f.mightContain(idxKey)) {
+                        candidates.add(f);
                     }
 
                     if (f.getBeginTimestamp() < begin) {
                         break;
                     }
+                }
 
-                    if (phyOffsets.size() >= maxNum) {
-                        break;
+                if (this.queryExecutor == null || candidates.size() <= 1) {
+                    for (IndexFile f : candidates) {
+                        f.selectPhyOffset(phyOffsets, idxKey, maxNum, begin, end);
+                        if (phyOffsets.size() >= maxNum) {
+                            break;
+                        }
                     }
+                } else {
+                    this.parallelSelectPhyOffset(candidates, phyOffsets, idxKey, maxNum, begin, end);
                 }
             }
         } catch (Exception e) {
@@ -203,6 +253,49 @@ public class IndexService {
         return new QueryOffsetResult(phyOffsets, indexLastUpdateTimestamp, indexLastUpdatePhyoffset);
     }
 
+    /**
+     * Search the candidate files concurrently and merge their results newest file first. Files not searched
+     * before the query timeout are left out of the result.
+     */
+    private void parallelSelectPhyOffset(final List<IndexFile> candidates, final List<Long> phyOffsets,
+        final String idxKey, final int maxNum, final long begin, final long end) throws InterruptedException {
+        List<Future<List<Long>>> futures = new ArrayList<>(candidates.size());
+        for (IndexFile f : candidates) {
+            try {
+                futures.add(this.queryExecutor.submit(() -> {
+                    List<Long> result = new ArrayList<>();
+                    f.selectPhyOffset(result, idxKey, maxNum, begin, end);
+                    return result;
+                }));
+            } catch (RejectedExecutionException e) {
+                List<Long> result = new ArrayList<>();
+                f.selectPhyOffset(result, idxKey, maxNum, begin, end);
+                futures.add(CompletableFuture.completedFuture(result));
+            }
+        }
+
+        long deadline = System.nanoTime()
+            + TimeUnit.MILLISECONDS.toNanos(this.defaultMessageStore.getMessageStoreConfig().getIndexQueryTimeoutMillis());
+        for (int i = 0; i < futures.size(); i++) {
+            Future<List<Long>> future = futures.get(i);
+            if (phyOffsets.size() >= maxNum) {
+                future.cancel(false);
+                continue;
+            }
+            try {
+                List<Long> result = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                for (int j = 0; j < result.size() && phyOffsets.size() < maxNum; j++) {
+                    phyOffsets.add(result.get(j));
+                }
+            } catch (TimeoutException e) {
+                future.cancel(false);
+                LOGGER.warn("query index file {} timeout, key: {}", candidates.get(i).getFileName(), idxKey);
+            } catch (ExecutionException e) {
+                LOGGER.error("query index file {} exception", candidates.get(i).getFileName(), e);
+            }
+        }
+    }
+
     private String buildKey(final String topic, final String key) {
         return topic + "#" + key;
     }
@@ -329,6 +422,9 @@ public class IndexService {
                 indexFile =
                     new IndexFile(fileName, this.hashSlotNum, this.indexNum, lastUpdateEndPhyOffset,
                         lastUpdateIndexTimestamp);
+                if (this.bloomFilterEnable) {
+                    indexFile.createBloomFilter(bloomFileName(indexFile), this.bloomFilterBitsPerKey);
+                }
                 this.readWriteLock.writeLock().lock();
                 this.indexFileList.add(indexFile);
             } catch (Exception e) {
@@ -368,6 +464,10 @@ public class IndexService {
 
         f.flush();
 
+        if (indexMsgTimestamp > 0 && this.bloomFilterEnable) {
+            f.persistBloomFilter();
+        }
+
         if (indexMsgTimestamp > 0) {
             this.defaultMessageStore.getStoreCheckpoint().setIndexMsgTimestamp(indexMsgTimestamp);
             this.defaultMessageStore.getStoreCheckpoint().flush();
@@ -383,6 +483,9 @@ public class IndexService {
             this.readWriteLock.writeLock().lock();
             for (IndexFile f : this.indexFileList) {
                 try {
+                    if (this.bloomFilterEnable) {
+                        f.persistBloomFilter();
+                    }
                     f.shutdown();
                 } catch (Exception e) {
                     LOGGER.error("shutdown " + f.getFileName() + " exception", e);
@@ -394,5 +497,12 @@ public class IndexService {
         } finally {
             this.readWriteLock.writeLock().unlock();
         }
+        if (this.queryExecutor != null) {
+            this.queryExecutor.shutdown();
+        }
+    }
+
+    private String bloomFileName(final IndexFile f) {
+        return this.bloomStorePath + File.separator + new File(f.getFileName()).getName();
     }
 }
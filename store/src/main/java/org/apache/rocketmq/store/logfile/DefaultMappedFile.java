@@ -22,6 +22,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
@@ -62,6 +65,10 @@ public class DefaultMappedFile extends AbstractMappedFile {
     public static final int OS_PAGE_SIZE = 1024 * 4;
     public static final Unsafe UNSAFE = getUnsafe();
     private static final Method IS_LOADED_METHOD;
+    // ByteBuffer#slice(int, int) of JDK 13+, which creates the view of a range with one allocation
+    static final MethodHandle SLICE_RANGE_METHOD;
+    // MappedByteBuffer#force(int, int) of JDK 13+, which forces only the pages of a range
+    static final MethodHandle FORCE_RANGE_METHOD;
     public static final int UNSAFE_PAGE_SIZE = UNSAFE == null ? OS_PAGE_SIZE : UNSAFE.pageSize();
 
     protected static final Logger log = LoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
@@ -124,6 +131,22 @@ public class DefaultMappedFile extends AbstractMappedFile {
             }
         }
         IS_LOADED_METHOD = isLoaded0method;
+
+        MethodHandle sliceRangeMethod = null;
+        try {
+            sliceRangeMethod = MethodHandles.publicLookup().findVirtual(ByteBuffer.class, "slice",
+                MethodType.methodType(ByteBuffer.class, int.class, int.class));
+        } catch (NoSuchMethodException | IllegalAccessException ignore) {
+        }
+        SLICE_RANGE_METHOD = sliceRangeMethod;
+
+        MethodHandle forceRangeMethod = null;
+        try {
+            forceRangeMethod = MethodHandles.publicLookup().findVirtual(MappedByteBuffer.class, "force",
+                MethodType.methodType(MappedByteBuffer.class, int.class, int.class));
+        } catch (NoSuchMethodException | IllegalAccessException ignore) {
+        }
+        FORCE_RANGE_METHOD = forceRangeMethod;
     }
 
     public DefaultMappedFile() {
@@ -297,6 +320,26 @@ public class DefaultMappedFile extends AbstractMappedFile {
         return new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR);
     }
 
+    @Override
+    public AppendMessageResult appendMessageAt(final int position, final MessageExtBrokerInner msg,
+        final AppendMessageCallback cb, PutMessageContext putMessageContext) {
+        assert msg != null;
+        assert cb != null;
+
+        if (position < this.fileSize) {
+            ByteBuffer byteBuffer = appendMessageBuffer().slice();
+            byteBuffer.position(position);
+            AppendMessageResult result = cb.doAppend(this.getFileFromOffset(), byteBuffer, this.fileSize - position,
+                msg, putMessageContext);
+            if (result.getStoreTimestamp() > this.storeTimestamp) {
+                this.storeTimestamp = result.getStoreTimestamp();
+            }
+            return result;
+        }
+        log.error("MappedFile.appendMessageAt return null, position: {} fileSize: {}", position, this.fileSize);
+        return new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR);
+    }
+
     protected ByteBuffer appendMessageBuffer() {
         this.mappedByteBufferAccessCountSinceLastSwap++;
         return writeBuffer != null ? writeBuffer : this.mappedByteBuffer;
@@ -390,6 +433,31 @@ public class DefaultMappedFile extends AbstractMappedFile {
         return this.getFlushedPosition();
     }
 
+    @Override
+    public boolean force(final int position, final int length) {
+        if (!this.hold()) {
+            log.warn("in force, hold failed, position = {}, length = {}", position, length);
+            return false;
+        }
+        try {
+            //We only append data to fileChannel or mappedByteBuffer, never both.
+            if (writeBuffer != null || this.fileChannel.position() != 0) {
+                this.fileChannel.force(false);
+            } else if (FORCE_RANGE_METHOD != null) {
+                MappedByteBuffer ignored = (MappedByteBuffer) FORCE_RANGE_METHOD.invokeExact(this.mappedByteBuffer, position, length);
+            } else {
+                this.mappedByteBuffer.force();
+            }
+            this.lastFlushTime = System.currentTimeMillis();
+            return true;
+        } catch (Throwable e) {
+            log.error("Error occurred when force range to disk, position = {}, length = {}", position, length, e);
+            return false;
+        } finally {
+            this.release();
+        }
+    }
+
     @Override
     public int commit(final int commitLeastPages) {
         if (writeBuffer == null) {
@@ -481,18 +549,41 @@ public class DefaultMappedFile extends AbstractMappedFile {
         return this.fileSize == WROTE_POSITION_UPDATER.get(this);
     }
 
+    /**
+     * Create a view of [pos, pos + size) of the mapped buffer, with one allocation instead of two when running on JDK
+     * 13 or later.
+     */
+    private ByteBuffer sliceMappedByteBuffer(int pos, int size) {
+        return slice(this.mappedByteBuffer, pos, size, SLICE_RANGE_METHOD);
+    }
+
+    /**
+     * Create a view of [pos, pos + size) of the buffer through the given ByteBuffer#slice(int, int) handle, or by
+     * slicing twice if the handle is null.
+     */
+    static ByteBuffer slice(ByteBuffer buffer, int pos, int size, MethodHandle sliceRangeMethod) {
+        if (sliceRangeMethod != null) {
+            try {
+                return (ByteBuffer) sliceRangeMethod.invokeExact(buffer, pos, size);
+            } catch (Throwable e) {
+                // falls back to slicing twice, keep the hot read path quiet
+                log.debug("slice buffer range error, pos: {}, size: {}", pos, size, e);
+            }
+        }
+        ByteBuffer byteBuffer = buffer.duplicate();
+        byteBuffer.position(pos);
+        ByteBuffer byteBufferNew = byteBuffer.slice();
+        byteBufferNew.limit(size);
+        return byteBufferNew;
+    }
+
     @Override
     public SelectMappedBufferResult selectMappedBuffer(int pos, int size) {
         int readPosition = getReadPosition();
         if ((pos + size) <= readPosition) {
             if (this.hold()) {
                 this.mappedByteBufferAccessCountSinceLastSwap++;
-
-                ByteBuffer byteBuffer = this.mappedByteBuffer.slice();
-                byteBuffer.position(pos);
-                ByteBuffer byteBufferNew = byteBuffer.slice();
-                byteBufferNew.limit(size);
-                return new SelectMappedBufferResult(this.fileFromOffset + pos, byteBufferNew, size, this);
+                return new SelectMappedBufferResult(this.fileFromOffset + pos, sliceMappedByteBuffer(pos, size), size, this);
             } else {
                 log.warn("matched, but hold failed, request pos: " + pos + ", fileFromOffset: "
                     + this.fileFromOffset);
@@ -511,12 +602,8 @@ public class DefaultMappedFile extends AbstractMappedFile {
         if (pos < readPosition && pos >= 0) {
             if (this.hold()) {
                 this.mappedByteBufferAccessCountSinceLastSwap++;
-                ByteBuffer byteBuffer = this.mappedByteBuffer.slice();
-                byteBuffer.position(pos);
                 int size = readPosition - pos;
-                ByteBuffer byteBufferNew = byteBuffer.slice();
-                byteBufferNew.limit(size);
-                return new SelectMappedBufferResult(this.fileFromOffset + pos, byteBufferNew, size, this);
+                return new SelectMappedBufferResult(this.fileFromOffset + pos, sliceMappedByteBuffer(pos, size), size, this);
             }
         }
 
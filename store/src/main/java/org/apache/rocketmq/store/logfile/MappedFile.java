@@ -97,6 +97,20 @@ public interface MappedFile {
      */
     AppendMessageResult appendMessages(MessageExtBatch message, AppendMessageCallback messageCallback, PutMessageContext putMessageContext);
 
+    /**
+     * Appends a message object into space that was reserved at {@code position} beforehand. Unlike
+     * {@link #appendMessage(MessageExtBrokerInner, AppendMessageCallback, PutMessageContext)} the wrote position
+     * is not moved, it is published by the caller once all the space before it has been written.
+     *
+     * @param position the reserved position to write the message at
+     * @param message a message to append
+     * @param messageCallback the specific call back to execute the real append action
+     * @param putMessageContext
+     * @return the append result
+     */
+    AppendMessageResult appendMessageAt(int position, MessageExtBrokerInner message,
+        AppendMessageCallback messageCallback, PutMessageContext putMessageContext);
+
     AppendMessageResult appendMessage(final ByteBuffer byteBufferMsg, final CompactionAppendMsgCallback cb);
 
     /**
@@ -141,6 +155,16 @@ public interface MappedFile {
      */
     int flush(int flushLeastPages);
 
+    /**
+     * Forces the range [position, position + length) of this file to disk without moving the flushed position, the
+     * whole file is forced when a range can not be forced on its own.
+     *
+     * @param position the start position of the range in this file
+     * @param length the length of the range
+     * @return true if the range is durable
+     */
+    boolean force(int position, int length);
+
     /**
      * Flushes the data in the secondary cache to page cache or disk immediately.
      *
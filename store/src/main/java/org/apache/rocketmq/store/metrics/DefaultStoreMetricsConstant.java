@@ -32,6 +32,13 @@ public class DefaultStoreMetricsConstant {
     public static final String COUNTER_TIMER_DEQUEUE_TOTAL = "rocketmq_timer_dequeue_total";
     public static final String GAUGE_TIMER_MESSAGE_SNAPSHOT = "rocketmq_timer_message_snapshot";
     public static final String HISTOGRAM_DELAY_MSG_LATENCY = "rocketmq_delay_message_latency";
+    public static final String HISTOGRAM_GROUP_COMMIT_BATCH_SIZE = "rocketmq_storage_group_commit_batch_size";
+    public static final String HISTOGRAM_GROUP_COMMIT_FLUSH_LATENCY = "rocketmq_storage_group_commit_flush_latency";
+    public static final String HISTOGRAM_PUT_MESSAGE_LOCK_WAIT_LATENCY = "rocketmq_storage_put_message_lock_wait_latency";
+    public static final String HISTOGRAM_PUT_MESSAGE_LOCK_HOLD_LATENCY = "rocketmq_storage_put_message_lock_hold_latency";
+    public static final String GAUGE_HOT_MESSAGE_CACHE_SIZE = "rocketmq_storage_hot_message_cache_size";
+    public static final String COUNTER_HOT_MESSAGE_CACHE_REQUESTS_TOTAL = "rocketmq_storage_hot_message_cache_requests_total";
+    public static final String COUNTER_HOT_MESSAGE_CACHE_HIT_BYTES_TOTAL = "rocketmq_storage_hot_message_cache_hit_bytes_total";
 
     public static final String LABEL_STORAGE_TYPE = "storage_type";
     public static final String DEFAULT_STORAGE_TYPE = "local";
@@ -39,6 +46,9 @@ public class DefaultStoreMetricsConstant {
     public static final String DEFAULT_STORAGE_MEDIUM = "disk";
     public static final String LABEL_TOPIC = "topic";
     public static final String LABEL_TIMING_BOUND = "timer_bound_s";
+    public static final String LABEL_CACHE_RESULT = "result";
+    public static final String CACHE_RESULT_HIT = "hit";
+    public static final String CACHE_RESULT_MISS = "miss";
     public static final String GAUGE_BYTES_ROCKSDB_WRITTEN = "rocketmq_rocksdb_bytes_written";
     public static final String GAUGE_BYTES_ROCKSDB_READ = "rocketmq_rocksdb_bytes_read";
 
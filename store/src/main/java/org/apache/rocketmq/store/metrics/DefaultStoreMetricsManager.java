@@ -44,10 +44,15 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.function.Supplier;
 
+import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.CACHE_RESULT_HIT;
+import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.CACHE_RESULT_MISS;
+import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.COUNTER_HOT_MESSAGE_CACHE_HIT_BYTES_TOTAL;
+import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.COUNTER_HOT_MESSAGE_CACHE_REQUESTS_TOTAL;
 import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.COUNTER_TIMER_DEQUEUE_TOTAL;
 import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.COUNTER_TIMER_ENQUEUE_TOTAL;
 import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.DEFAULT_STORAGE_MEDIUM;
 import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.DEFAULT_STORAGE_TYPE;
+import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.GAUGE_HOT_MESSAGE_CACHE_SIZE;
 import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.GAUGE_STORAGE_DISPATCH_BEHIND;
 import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.GAUGE_STORAGE_FLUSH_BEHIND;
 import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.GAUGE_STORAGE_MESSAGE_RESERVE_TIME;
@@ -59,6 +64,11 @@ import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.GAUG
 import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.GAUGE_TIMER_MESSAGE_SNAPSHOT;
 import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.GAUGE_TIMING_MESSAGES;
 import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.HISTOGRAM_DELAY_MSG_LATENCY;
+import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.HISTOGRAM_GROUP_COMMIT_BATCH_SIZE;
+import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.HISTOGRAM_GROUP_COMMIT_FLUSH_LATENCY;
+import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.HISTOGRAM_PUT_MESSAGE_LOCK_HOLD_LATENCY;
+import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.HISTOGRAM_PUT_MESSAGE_LOCK_WAIT_LATENCY;
+import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.LABEL_CACHE_RESULT;
 import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.LABEL_STORAGE_MEDIUM;
 import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.LABEL_STORAGE_TYPE;
 import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.LABEL_TIMING_BOUND;
@@ -84,6 +94,16 @@ public class DefaultStoreMetricsManager {
     public static ObservableLongGauge timerMessageSnapshot = new NopObservableLongGauge();
     public static LongHistogram timerMessageSetLatency = new NopLongHistogram();
 
+    public static LongHistogram groupCommitBatchSize = new NopLongHistogram();
+    public static LongHistogram groupCommitFlushLatency = new NopLongHistogram();
+
+    public static LongHistogram putMessageLockWaitLatency = new NopLongHistogram();
+    public static LongHistogram putMessageLockHoldLatency = new NopLongHistogram();
+
+    public static ObservableLongGauge hotMessageCacheSize = new NopObservableLongGauge();
+    public static LongCounter hotMessageCacheRequestsTotal = new NopLongCounter();
+    public static LongCounter hotMessageCacheHitBytesTotal = new NopLongCounter();
+
     public static List<Pair<InstrumentSelector, ViewBuilder>> getMetricsView() {
         List<Double> rpcCostTimeBuckets = Arrays.asList(
                 // day * hour * min * second
@@ -100,7 +120,50 @@ public class DefaultStoreMetricsManager {
                 .build();
         ViewBuilder viewBuilder = View.builder()
                 .setAggregation(Aggregation.explicitBucketHistogram(rpcCostTimeBuckets));
-        return Lists.newArrayList(new Pair<>(selector, viewBuilder));
+
+        List<Double> groupCommitBatchSizeBuckets = Arrays.asList(
+                1d, 2d, 4d, 8d, 16d, 32d, 64d, 128d, 256d, 512d
+        );
+        InstrumentSelector groupCommitBatchSizeSelector = InstrumentSelector.builder()
+                .setType(InstrumentType.HISTOGRAM)
+                .setName(HISTOGRAM_GROUP_COMMIT_BATCH_SIZE)
+                .build();
+        ViewBuilder groupCommitBatchSizeViewBuilder = View.builder()
+                .setAggregation(Aggregation.explicitBucketHistogram(groupCommitBatchSizeBuckets));
+
+        List<Double> groupCommitFlushLatencyBuckets = Arrays.asList(
+                // microseconds
+                50d, 100d, 250d, 500d, 1000d, 2000d, 5000d, 10000d, 50000d, 100000d
+        );
+        InstrumentSelector groupCommitFlushLatencySelector = InstrumentSelector.builder()
+                .setType(InstrumentType.HISTOGRAM)
+                .setName(HISTOGRAM_GROUP_COMMIT_FLUSH_LATENCY)
+                .build();
+        ViewBuilder groupCommitFlushLatencyViewBuilder = View.builder()
+                .setAggregation(Aggregation.explicitBucketHistogram(groupCommitFlushLatencyBuckets));
+
+        List<Double> putMessageLockLatencyBuckets = Arrays.asList(
+                // microseconds
+                1d, 5d, 10d, 50d, 100d, 500d, 1000d, 5000d, 10000d, 50000d
+        );
+        InstrumentSelector putMessageLockWaitSelector = InstrumentSelector.builder()
+                .setType(InstrumentType.HISTOGRAM)
+                .setName(HISTOGRAM_PUT_MESSAGE_LOCK_WAIT_LATENCY)
+                .build();
+        ViewBuilder putMessageLockWaitViewBuilder = View.builder()
+                .setAggregation(Aggregation.explicitBucketHistogram(putMessageLockLatencyBuckets));
+        InstrumentSelector putMessageLockHoldSelector = InstrumentSelector.builder()
+                .setType(InstrumentType.HISTOGRAM)
+                .setName(HISTOGRAM_PUT_MESSAGE_LOCK_HOLD_LATENCY)
+                .build();
+        ViewBuilder putMessageLockHoldViewBuilder = View.builder()
+                .setAggregation(Aggregation.explicitBucketHistogram(putMessageLockLatencyBuckets));
+
+        return Lists.newArrayList(new Pair<>(selector, viewBuilder),
+                new Pair<>(groupCommitBatchSizeSelector, groupCommitBatchSizeViewBuilder),
+                new Pair<>(groupCommitFlushLatencySelector, groupCommitFlushLatencyViewBuilder),
+                new Pair<>(putMessageLockWaitSelector, putMessageLockWaitViewBuilder),
+                new Pair<>(putMessageLockHoldSelector, putMessageLockHoldViewBuilder));
     }
 
     public static void init(Meter meter, Supplier<AttributesBuilder> attributesBuilderSupplier,
@@ -146,6 +209,46 @@ public class DefaultStoreMetricsManager {
                 measurement.record(System.currentTimeMillis() - earliestMessageTime, newAttributesBuilder().build());
             });
 
+        groupCommitBatchSize = meter.histogramBuilder(HISTOGRAM_GROUP_COMMIT_BATCH_SIZE)
+            .setDescription("Number of sync flush requests served by one group commit")
+            .ofLongs()
+            .build();
+
+        groupCommitFlushLatency = meter.histogramBuilder(HISTOGRAM_GROUP_COMMIT_FLUSH_LATENCY)
+            .setDescription("Group commit flush latency distribution")
+            .setUnit("microseconds")
+            .ofLongs()
+            .build();
+
+        putMessageLockWaitLatency = meter.histogramBuilder(HISTOGRAM_PUT_MESSAGE_LOCK_WAIT_LATENCY)
+            .setDescription("Time appenders wait for the commit log put message lock")
+            .setUnit("microseconds")
+            .ofLongs()
+            .build();
+
+        putMessageLockHoldLatency = meter.histogramBuilder(HISTOGRAM_PUT_MESSAGE_LOCK_HOLD_LATENCY)
+            .setDescription("Time appenders hold the commit log put message lock")
+            .setUnit("microseconds")
+            .ofLongs()
+            .build();
+
+        if (messageStore.getHotMessageCache() != null) {
+            hotMessageCacheSize = meter.gaugeBuilder(GAUGE_HOT_MESSAGE_CACHE_SIZE)
+                .setDescription("Bytes held by the hot message cache")
+                .setUnit("bytes")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(messageStore.getHotMessageCache().getCachedBytes(), newAttributesBuilder().build()));
+
+            hotMessageCacheRequestsTotal = meter.counterBuilder(COUNTER_HOT_MESSAGE_CACHE_REQUESTS_TOTAL)
+                .setDescription("Total number of messages looked up in the hot message cache")
+                .build();
+
+            hotMessageCacheHitBytesTotal = meter.counterBuilder(COUNTER_HOT_MESSAGE_CACHE_HIT_BYTES_TOTAL)
+                .setDescription("Total bytes served by the hot message cache")
+                .setUnit("bytes")
+                .build();
+        }
+
         if (messageStore.getMessageStoreConfig().isTimerWheelEnable()) {
             timerEnqueueLag = meter.gaugeBuilder(GAUGE_TIMER_ENQUEUE_LAG)
                 .setDescription("Timer enqueue messages lag")
@@ -240,6 +343,35 @@ public class DefaultStoreMetricsManager {
         timerEnqueueTotal.add(1, attributesBuilder.build());
     }
 
+    public static void recordGroupCommit(int batchSize, long flushNanos) {
+        Attributes attributes = newAttributesBuilder().build();
+        groupCommitBatchSize.record(batchSize, attributes);
+        groupCommitFlushLatency.record(flushNanos / 1000, attributes);
+    }
+
+    public static void recordPutMessageLock(long waitNanos, long holdNanos) {
+        Attributes attributes = newAttributesBuilder().build();
+        putMessageLockWaitLatency.record(waitNanos / 1000, attributes);
+        putMessageLockHoldLatency.record(holdNanos / 1000, attributes);
+    }
+
+    public static void recordHotMessageCache(String topic, int hitNum, int missNum, long hitBytes) {
+        if (hitNum > 0) {
+            Attributes attributes = newAttributesBuilder()
+                .put(LABEL_TOPIC, topic)
+                .put(LABEL_CACHE_RESULT, CACHE_RESULT_HIT)
+                .build();
+            hotMessageCacheRequestsTotal.add(hitNum, attributes);
+            hotMessageCacheHitBytesTotal.add(hitBytes, newAttributesBuilder().put(LABEL_TOPIC, topic).build());
+        }
+        if (missNum > 0) {
+            hotMessageCacheRequestsTotal.add(missNum, newAttributesBuilder()
+                .put(LABEL_TOPIC, topic)
+                .put(LABEL_CACHE_RESULT, CACHE_RESULT_MISS)
+                .build());
+        }
+    }
+
     public static AttributesBuilder newAttributesBuilder() {
         if (attributesBuilderSupplier == null) {
             return Attributes.builder();
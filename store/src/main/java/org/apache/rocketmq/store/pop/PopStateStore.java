@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.pop;
+
+import com.alibaba.fastjson.JSON;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.utils.DataConverter;
+import org.apache.rocketmq.logging.org.slf4j.Logger;
+import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
+import org.apache.rocketmq.store.rocksdb.PopStateRocksDBStorage;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+
+/**
+ * Pop checkpoints and acks kept in RocksDB instead of the revive topic.
+ *
+ * <p>Keys sort by revive queue, then revive time, then checkpoint identity, and the acks of a checkpoint sort
+ * right after it:
+ * <pre>
+ * reviveQid(4) | reviveTime(8) | popTime(8) | startOffset(8) | queueId(4) | topic | cid | brokerName | type(1) [| ackOffset(8)]
+ * </pre>
+ * An ack knows the revive time of its checkpoint from its extra info, so acking is a blind put, and everything due
+ * on a revive queue is one range scan from the start of the queue.
+ */
+public class PopStateStore {
+    private static final Logger POP_LOGGER = LoggerFactory.getLogger(LoggerName.ROCKETMQ_POP_LOGGER_NAME);
+
+    private static final byte TYPE_CK = 0;
+    private static final byte TYPE_ACK = 1;
+    private static final byte TYPE_END = 2;
+    private static final int FIXED_PREFIX_LENGTH = 4 + 8 + 8 + 8 + 4;
+
+    private final PopStateRocksDBStorage storage;
+
+    public PopStateStore(String dbPath) {
+        this.storage = new PopStateRocksDBStorage(dbPath);
+    }
+
+    public boolean start() {
+        return this.storage.start();
+    }
+
+    public boolean shutdown() {
+        return this.storage.shutdown();
+    }
+
+    public void flushWAL() {
+        try {
+            this.storage.flushWAL();
+        } catch (Exception e) {
+            POP_LOGGER.error("pop state flush WAL failed", e);
+        }
+    }
+
+    public boolean putCheckPoint(int reviveQid, PopCheckPoint ck) {
+        try (WriteBatch writeBatch = new WriteBatch()) {
+            writeBatch.put(this.storage.getPopStateCFHandle(), buildCheckPointKey(reviveQid, ck, TYPE_CK), JSON.toJSONBytes(ck));
+            this.storage.batchPut(writeBatch);
+            return true;
+        } catch (Exception e) {
+            POP_LOGGER.error("put pop checkpoint failed, reviveQid={}, ck={}", reviveQid, ck, e);
+            return false;
+        }
+    }
+
+    /**
+     * @param reviveTime revive time of the checkpoint being acked, i.e. its pop time plus invisible time
+     */
+    public boolean putAck(int reviveQid, AckMsg ackMsg, long reviveTime) {
+        try (WriteBatch writeBatch = new WriteBatch()) {
+            if (ackMsg instanceof BatchAckMsg) {
+                for (Long ackOffset : ((BatchAckMsg) ackMsg).getAckOffsetList()) {
+                    writeBatch.put(this.storage.getPopStateCFHandle(), buildAckKey(reviveQid, ackMsg, reviveTime, ackOffset), new byte[0]);
+                }
+            } else {
+                writeBatch.put(this.storage.getPopStateCFHandle(), buildAckKey(reviveQid, ackMsg, reviveTime, ackMsg.getAckOffset()), new byte[0]);
+            }
+            this.storage.batchPut(writeBatch);
+            return true;
+        } catch (Exception e) {
+            POP_LOGGER.error("put pop ack failed, reviveQid={}, ack={}", reviveQid, ackMsg, e);
+            return false;
+        }
+    }
+
+    /**
+     * Collects up to maxNum checkpoints of a revive queue that are due by reviveTimeTo, with the bits of acked
+     * messages set. Acks whose checkpoint is gone are removed on the way. The checkpoints stay in the store until
+     * {@link #replaceCheckPoint} is called for them.
+     */
+    public List<PopCheckPoint> scanExpiredCheckPoints(int reviveQid, long reviveTimeTo, int maxNum) {
+        List<PopCheckPoint> ckList = new ArrayList<>();
+        try (RocksIterator iterator = this.storage.seekPopStateCF(); WriteBatch writeBatch = new WriteBatch()) {
+            PopCheckPoint current = null;
+            ByteBuffer currentPrefix = null;
+            iterator.seek(ByteBuffer.allocate(4).putInt(reviveQid).array());
+            for (; iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                ByteBuffer keyBuffer = ByteBuffer.wrap(key);
+                if (keyBuffer.getInt() != reviveQid || keyBuffer.getLong() > reviveTimeTo) {
+                    break;
+                }
+                int prefixLength = prefixLength(key);
+                byte type = key[prefixLength];
+                if (type == TYPE_CK) {
+                    if (ckList.size() >= maxNum) {
+                        break;
+                    }
+                    current = JSON.parseObject(iterator.value(), PopCheckPoint.class);
+                    currentPrefix = ByteBuffer.wrap(key, 0, prefixLength);
+                    ckList.add(current);
+                    continue;
+                }
+                long ackOffset = ByteBuffer.wrap(key, prefixLength + 1, 8).getLong();
+                int index = current == null || !currentPrefix.equals(ByteBuffer.wrap(key, 0, prefixLength)) ? -1 : current.indexOfAck(ackOffset);
+                if (index < 0) {
+                    writeBatch.delete(this.storage.getPopStateCFHandle(), key);
+                    continue;
+                }
+                current.setBitMap(DataConverter.setBit(current.getBitMap(), index, true));
+            }
+            if (writeBatch.count() > 0) {
+                this.storage.batchPut(writeBatch);
+            }
+        } catch (Exception e) {
+            POP_LOGGER.error("scan pop state failed, reviveQid={}", reviveQid, e);
+        }
+        return ckList;
+    }
+
+    /**
+     * Removes a checkpoint and its acks, and puts the checkpoints that replace it, in one write.
+     */
+    public boolean replaceCheckPoint(int reviveQid, PopCheckPoint oldCk, List<PopCheckPoint> newCkList) {
+        try (WriteBatch writeBatch = new WriteBatch()) {
+            writeBatch.deleteRange(this.storage.getPopStateCFHandle(),
+                buildCheckPointKey(reviveQid, oldCk, TYPE_CK), buildCheckPointKey(reviveQid, oldCk, TYPE_END));
+            for (PopCheckPoint newCk : newCkList) {
+                writeBatch.put(this.storage.getPopStateCFHandle(), buildCheckPointKey(reviveQid, newCk, TYPE_CK), JSON.toJSONBytes(newCk));
+            }
+            this.storage.batchPut(writeBatch);
+            return true;
+        } catch (Exception e) {
+            POP_LOGGER.error("replace pop checkpoint failed, reviveQid={}, ck={}", reviveQid, oldCk, e);
+            return false;
+        }
+    }
+
+    private static byte[] buildCheckPointKey(int reviveQid, PopCheckPoint ck, byte type) {
+        return buildKey(reviveQid, ck.getReviveTime(), ck.getPopTime(), ck.getStartOffset(), ck.getQueueId(),
+            ck.getTopic(), ck.getCId(), ck.getBrokerName(), type, 0);
+    }
+
+    private static byte[] buildAckKey(int reviveQid, AckMsg ackMsg, long reviveTime, long ackOffset) {
+        return buildKey(reviveQid, reviveTime, ackMsg.getPopTime(), ackMsg.getStartOffset(), ackMsg.getQueueId(),
+            ackMsg.getTopic(), ackMsg.getConsumerGroup(), ackMsg.getBrokerName(), TYPE_ACK, ackOffset);
+    }
+
+    private static byte[] buildKey(int reviveQid, long reviveTime, long popTime, long startOffset, int queueId,
+        String topic, String cid, String brokerName, byte type, long ackOffset) {
+        byte[] topicBytes = toBytes(topic);
+        byte[] cidBytes = toBytes(cid);
+        byte[] brokerNameBytes = toBytes(brokerName);
+        int length = FIXED_PREFIX_LENGTH + 6 + topicBytes.length + cidBytes.length + brokerNameBytes.length + 1;
+        if (type == TYPE_ACK) {
+            length += 8;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length)
+            .putInt(reviveQid)
+            .putLong(reviveTime)
+            .putLong(popTime)
+            .putLong(startOffset)
+            .putInt(queueId);
+        buffer.putShort((short) topicBytes.length).put(topicBytes);
+        buffer.putShort((short) cidBytes.length).put(cidBytes);
+        buffer.putShort((short) brokerNameBytes.length).put(brokerNameBytes);
+        buffer.put(type);
+        if (type == TYPE_ACK) {
+            buffer.putLong(ackOffset);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @return length of the checkpoint identity at the head of a key, which is also the index of its type byte
+     */
+    private static int prefixLength(byte[] key) {
+        ByteBuffer buffer = ByteBuffer.wrap(key);
+        int position = FIXED_PREFIX_LENGTH;
+        for (int i = 0; i < 3; i++) {
+            position += 2 + buffer.getShort(position);
+        }
+        return position;
+    }
+
+    private static byte[] toBytes(String value) {
+        return value == null ? new byte[0] : value.getBytes(DataConverter.CHARSET_UTF8);
+    }
+}
@@ -48,7 +48,7 @@ public abstract class AbstractConsumeQueueStore implements ConsumeQueueStoreInte
 
     @Override
     public Long getMaxOffset(String topic, int queueId) {
-        return this.queueOffsetOperator.currentQueueOffset(topic + "-" + queueId);
+        return this.queueOffsetOperator.currentQueueOffset(topic, queueId);
     }
 
     @Override
@@ -79,11 +79,21 @@ public abstract class AbstractConsumeQueueStore implements ConsumeQueueStoreInte
         queueOffsetOperator.increaseLmqOffset(queueKey, messageNum);
     }
 
+    @Override
+    public void increaseLmqOffset(String topic, int queueId, short messageNum) {
+        queueOffsetOperator.increaseLmqOffset(topic, queueId, messageNum);
+    }
+
     @Override
     public long getLmqQueueOffset(String queueKey) {
         return queueOffsetOperator.getLmqOffset(queueKey);
     }
 
+    @Override
+    public long getLmqQueueOffset(String topic, int queueId) {
+        return queueOffsetOperator.getLmqOffset(topic, queueId);
+    }
+
     @Override
     public void removeTopicQueueTable(String topic, Integer queueId) {
         this.queueOffsetOperator.remove(topic, queueId);
@@ -35,6 +35,7 @@ import org.apache.rocketmq.common.message.MessageExtBrokerInner;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
 import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
+import org.apache.rocketmq.store.ConsumeQueueExt;
 import org.apache.rocketmq.store.DispatchRequest;
 import org.apache.rocketmq.store.MappedFileQueue;
 import org.apache.rocketmq.store.MessageFilter;
@@ -317,6 +318,18 @@ public class BatchConsumeQueue implements ConsumeQueueInterface {
         return iterateFrom(startIndex);
     }
 
+    @Override
+    public CqUnitCursor cursorFrom(long startIndex, int count, CqUnitCursor reuse) {
+        SelectMappedBufferResult sbr = getBatchMsgIndexBuffer(startIndex);
+        if (sbr == null) {
+            return null;
+        }
+        BatchConsumeQueueCursor cursor = reuse instanceof BatchConsumeQueueCursor && ((BatchConsumeQueueCursor) reuse).sbr == null
+            ? (BatchConsumeQueueCursor) reuse : new BatchConsumeQueueCursor();
+        cursor.open(sbr);
+        return cursor;
+    }
+
     @Override
     public CqUnit get(long offset) {
         ReferredIterator<CqUnit> it = iterateFrom(offset);
@@ -537,9 +550,7 @@ public class BatchConsumeQueue implements ConsumeQueueInterface {
 
     @Override
     public void assignQueueOffset(QueueOffsetOperator queueOffsetOperator, MessageExtBrokerInner msg) {
-        String topicQueueKey = getTopic() + "-" + getQueueId();
-
-        long queueOffset = queueOffsetOperator.getBatchQueueOffset(topicQueueKey);
+        long queueOffset = queueOffsetOperator.getBatchQueueOffset(getTopic(), getQueueId());
 
         if (MessageSysFlag.check(msg.getSysFlag(), MessageSysFlag.INNER_BATCH_FLAG)) {
             MessageAccessor.putProperty(msg, MessageConst.PROPERTY_INNER_BASE, String.valueOf(queueOffset));
@@ -551,8 +562,7 @@ public class BatchConsumeQueue implements ConsumeQueueInterface {
     @Override
     public void increaseQueueOffset(QueueOffsetOperator queueOffsetOperator, MessageExtBrokerInner msg,
         short messageNum) {
-        String topicQueueKey = getTopic() + "-" + getQueueId();
-        queueOffsetOperator.increaseBatchQueueOffset(topicQueueKey, messageNum);
+        queueOffsetOperator.increaseBatchQueueOffset(getTopic(), getQueueId(), messageNum);
     }
 
     public boolean putBatchMessagePositionInfo(final long offset, final int size, final long tagsCode,
@@ -994,6 +1004,82 @@ public class BatchConsumeQueue implements ConsumeQueueInterface {
         }
     }
 
+    /**
+     * Cursor reading the units directly from the index buffer, it can be reused once released so that walking the
+     * queue allocates nothing but the index buffer.
+     */
+    static class BatchConsumeQueueCursor implements CqUnitCursor {
+        private SelectMappedBufferResult sbr;
+        private ByteBuffer byteBuffer;
+        private int position;
+        private int limit;
+        private long queueOffset;
+        private long pos;
+        private int size;
+        private long tagsCode;
+        private short batchNum;
+
+        private void open(SelectMappedBufferResult sbr) {
+            this.sbr = sbr;
+            this.byteBuffer = sbr.getByteBuffer();
+            this.position = byteBuffer.position();
+            this.limit = byteBuffer.limit();
+        }
+
+        @Override
+        public boolean next() {
+            if (sbr == null || position + CQ_STORE_UNIT_SIZE > limit) {
+                return false;
+            }
+            this.pos = byteBuffer.getLong(position);
+            this.size = byteBuffer.getInt(position + 8);
+            this.tagsCode = byteBuffer.getLong(position + MSG_TAG_OFFSET_INDEX);
+            this.queueOffset = byteBuffer.getLong(position + MSG_BASE_OFFSET_INDEX);
+            this.batchNum = byteBuffer.getShort(position + MSG_BATCH_SIZE_INDEX);
+            this.position += CQ_STORE_UNIT_SIZE;
+            return true;
+        }
+
+        @Override
+        public long getQueueOffset() {
+            return queueOffset;
+        }
+
+        @Override
+        public long getPos() {
+            return pos;
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public long getTagsCode() {
+            return tagsCode;
+        }
+
+        @Override
+        public short getBatchNum() {
+            return batchNum;
+        }
+
+        @Override
+        public ConsumeQueueExt.CqExtUnit getCqExtUnit() {
+            return null;
+        }
+
+        @Override
+        public void release() {
+            if (sbr != null) {
+                sbr.release();
+                sbr = null;
+                byteBuffer = null;
+            }
+        }
+    }
+
     @Override
     public String getTopic() {
         return topic;
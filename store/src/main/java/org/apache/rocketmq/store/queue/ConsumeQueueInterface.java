@@ -56,6 +56,37 @@ public interface ConsumeQueueInterface extends FileQueueLifeCycle {
      */
     ReferredIterator<CqUnit> iterateFrom(long startIndex, int count) throws RocksDBException;
 
+    /**
+     * Get a cursor over the units from the start offset, which does not create an object per unit when the consume
+     * queue supports it.
+     *
+     * @param startIndex start index
+     * @param count the unit counts will be iterated
+     * @return the cursor, or null if the start index is not available
+     * @throws RocksDBException only in rocksdb mode
+     */
+    default CqUnitCursor cursorFrom(long startIndex, int count) throws RocksDBException {
+        return cursorFrom(startIndex, count, null);
+    }
+
+    /**
+     * Get a cursor over the units from the start offset, reusing the given released cursor when the consume queue
+     * supports it, so that a caller walking queues repeatedly allocates no cursor.
+     *
+     * @param startIndex start index
+     * @param count the unit counts will be iterated
+     * @param reuse a released cursor got from this method before, may be null
+     * @return the cursor, or null if the start index is not available
+     * @throws RocksDBException only in rocksdb mode
+     */
+    default CqUnitCursor cursorFrom(long startIndex, int count, CqUnitCursor reuse) throws RocksDBException {
+        ReferredIterator<CqUnit> iterator = iterateFrom(startIndex, count);
+        if (iterator == null) {
+            return null;
+        }
+        return new ReferredIteratorCursor(iterator);
+    }
+
     /**
      * Get cq unit at specified index
      * @param index index
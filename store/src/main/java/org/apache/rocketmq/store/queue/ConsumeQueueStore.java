@@ -419,8 +419,7 @@ public class ConsumeQueueStore extends AbstractConsumeQueueStore {
     }
 
     public void updateQueueOffset(String topic, int queueId, long offset) {
-        String topicQueueKey = topic + "-" + queueId;
-        this.queueOffsetOperator.updateQueueOffset(topicQueueKey, offset);
+        this.queueOffsetOperator.updateQueueOffset(topic, queueId, offset);
     }
 
     private void putConsumeQueue(final String topic, final int queueId, final ConsumeQueueInterface consumeQueue) {
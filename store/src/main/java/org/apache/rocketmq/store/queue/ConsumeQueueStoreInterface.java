@@ -197,6 +197,22 @@ public interface ConsumeQueueStoreInterface {
      */
     long getLmqQueueOffset(String queueKey);
 
+    /**
+     * Increase lmq offset without building a "topic-queueId" key
+     * @param topic
+     * @param queueId
+     * @param messageNum
+     */
+    void increaseLmqOffset(String topic, int queueId, short messageNum);
+
+    /**
+     * get lmq queue offset without building a "topic-queueId" key
+     * @param topic
+     * @param queueId
+     * @return
+     */
+    long getLmqQueueOffset(String topic, int queueId);
+
     /**
      * recover topicQueue table by minPhyOffset
      * @param minPhyOffset
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.queue;
+
+import org.apache.rocketmq.store.ConsumeQueueExt;
+
+/**
+ * Forward-only cursor over consume queue units. Unlike {@link ReferredIterator}, the current unit is exposed through
+ * accessors of the cursor itself, so implementations can walk the queue without creating an object per unit.
+ * <p>
+ * The accessors are only valid after {@link #next()} returned true, and the values are overwritten by the next call.
+ * {@link #release()} must be called once the cursor is no longer used.
+ */
+public interface CqUnitCursor {
+
+    /**
+     * Move to the next unit.
+     *
+     * @return false if there are no more units
+     */
+    boolean next();
+
+    long getQueueOffset();
+
+    long getPos();
+
+    int getSize();
+
+    long getTagsCode();
+
+    short getBatchNum();
+
+    /**
+     * @return extended unit of the current unit, or null if it has none
+     */
+    ConsumeQueueExt.CqExtUnit getCqExtUnit();
+
+    default boolean isTagsCodeValid() {
+        return !ConsumeQueueExt.isExtAddr(getTagsCode());
+    }
+
+    default Long getValidTagsCodeAsLong() {
+        if (!isTagsCodeValid()) {
+            return null;
+        }
+        return getTagsCode();
+    }
+
+    /**
+     * Release the referred resources.
+     */
+    void release();
+}
@@ -18,85 +18,122 @@
 package org.apache.rocketmq.store.queue;
 
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.constant.LoggerName;
-import org.apache.rocketmq.common.utils.ConcurrentHashMapUtils;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
 import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
 
 /**
  * QueueOffsetOperator is a component for operating offsets for queues.
+ *
+ * <p>Offsets are kept in {@link QueueOffsetTable}s, so the (topic, queueId) methods used on the put path
+ * neither build "topic-queueId" strings nor box offsets. The String-key methods remain for callers
+ * that already hold such a key.
  */
 public class QueueOffsetOperator {
     private static final Logger log = LoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
 
-    private ConcurrentMap<String, Long> topicQueueTable = new ConcurrentHashMap<>(1024);
-    private ConcurrentMap<String, Long> batchTopicQueueTable = new ConcurrentHashMap<>(1024);
-    private ConcurrentMap<String/* topic-queueid */, Long/* offset */> lmqTopicQueueTable = new ConcurrentHashMap<>(1024);
+    private static final long ABSENT = Long.MIN_VALUE;
+
+    private volatile QueueOffsetTable topicQueueTable = new QueueOffsetTable(1024);
+    private volatile QueueOffsetTable batchTopicQueueTable = new QueueOffsetTable(1024);
+    private volatile QueueOffsetTable lmqTopicQueueTable = new QueueOffsetTable(1024);
 
     public long getQueueOffset(String topicQueueKey) {
-        return ConcurrentHashMapUtils.computeIfAbsent(this.topicQueueTable, topicQueueKey, k -> 0L);
+        return this.topicQueueTable.getOrInit(topicQueueKey);
+    }
+
+    public long getQueueOffset(String topic, int queueId) {
+        return this.topicQueueTable.getOrInit(topic, queueId);
     }
 
     public Long getTopicQueueNextOffset(String topicQueueKey) {
-        return this.topicQueueTable.get(topicQueueKey);
+        return toNullable(this.topicQueueTable.get(topicQueueKey, ABSENT));
+    }
+
+    public Long getTopicQueueNextOffset(String topic, int queueId) {
+        return toNullable(this.topicQueueTable.get(topic, queueId, ABSENT));
     }
 
     public void increaseQueueOffset(String topicQueueKey, short messageNum) {
-        Long queueOffset = ConcurrentHashMapUtils.computeIfAbsent(this.topicQueueTable, topicQueueKey, k -> 0L);
-        topicQueueTable.put(topicQueueKey, queueOffset + messageNum);
+        this.topicQueueTable.add(topicQueueKey, messageNum);
+    }
+
+    public void increaseQueueOffset(String topic, int queueId, short messageNum) {
+        this.topicQueueTable.add(topic, queueId, messageNum);
     }
 
     public void updateQueueOffset(String topicQueueKey, long offset) {
         this.topicQueueTable.put(topicQueueKey, offset);
     }
 
+    public void updateQueueOffset(String topic, int queueId, long offset) {
+        this.topicQueueTable.put(topic, queueId, offset);
+    }
+
     public long getBatchQueueOffset(String topicQueueKey) {
-        return ConcurrentHashMapUtils.computeIfAbsent(this.batchTopicQueueTable, topicQueueKey, k -> 0L);
+        return this.batchTopicQueueTable.getOrInit(topicQueueKey);
+    }
+
+    public long getBatchQueueOffset(String topic, int queueId) {
+        return this.batchTopicQueueTable.getOrInit(topic, queueId);
     }
 
     public void increaseBatchQueueOffset(String topicQueueKey, short messageNum) {
-        Long batchQueueOffset = ConcurrentHashMapUtils.computeIfAbsent(this.batchTopicQueueTable, topicQueueKey, k -> 0L);
-        this.batchTopicQueueTable.put(topicQueueKey, batchQueueOffset + messageNum);
+        this.batchTopicQueueTable.add(topicQueueKey, messageNum);
+    }
+
+    public void increaseBatchQueueOffset(String topic, int queueId, short messageNum) {
+        this.batchTopicQueueTable.add(topic, queueId, messageNum);
     }
 
     public long getLmqOffset(String topicQueueKey) {
-        return ConcurrentHashMapUtils.computeIfAbsent(this.lmqTopicQueueTable, topicQueueKey, k -> 0L);
+        return this.lmqTopicQueueTable.getOrInit(topicQueueKey);
+    }
+
+    public long getLmqOffset(String topic, int queueId) {
+        return this.lmqTopicQueueTable.getOrInit(topic, queueId);
     }
 
     public Long getLmqTopicQueueNextOffset(String topicQueueKey) {
-        return this.lmqTopicQueueTable.get(topicQueueKey);
+        return toNullable(this.lmqTopicQueueTable.get(topicQueueKey, ABSENT));
     }
 
     public void increaseLmqOffset(String queueKey, short messageNum) {
-        Long lmqOffset = ConcurrentHashMapUtils.computeIfAbsent(this.lmqTopicQueueTable, queueKey, k -> 0L);
-        this.lmqTopicQueueTable.put(queueKey, lmqOffset + messageNum);
+        this.lmqTopicQueueTable.add(queueKey, messageNum);
+    }
+
+    public void increaseLmqOffset(String topic, int queueId, short messageNum) {
+        this.lmqTopicQueueTable.add(topic, queueId, messageNum);
     }
 
     public long currentQueueOffset(String topicQueueKey) {
-        Long currentQueueOffset = this.topicQueueTable.get(topicQueueKey);
-        return currentQueueOffset == null ? 0L : currentQueueOffset;
+        return this.topicQueueTable.get(topicQueueKey, 0L);
+    }
+
+    public long currentQueueOffset(String topic, int queueId) {
+        return this.topicQueueTable.get(topic, queueId, 0L);
     }
 
     public synchronized void remove(String topic, Integer queueId) {
-        String topicQueueKey = topic + "-" + queueId;
         // Beware of thread-safety
-        this.topicQueueTable.remove(topicQueueKey);
-        this.batchTopicQueueTable.remove(topicQueueKey);
-        this.lmqTopicQueueTable.remove(topicQueueKey);
+        this.topicQueueTable.remove(topic, queueId);
+        this.batchTopicQueueTable.remove(topic, queueId);
+        this.lmqTopicQueueTable.remove(topic, queueId);
 
         log.info("removeQueueFromTopicQueueTable OK Topic: {} QueueId: {}", topic, queueId);
     }
 
     public void setTopicQueueTable(ConcurrentMap<String, Long> topicQueueTable) {
-        this.topicQueueTable = topicQueueTable;
+        QueueOffsetTable table = new QueueOffsetTable(Math.max(topicQueueTable.size() * 2, 1024));
+        table.putAll(topicQueueTable);
+        this.topicQueueTable = table;
     }
 
     public void setLmqTopicQueueTable(ConcurrentMap<String, Long> lmqTopicQueueTable) {
-        ConcurrentMap<String, Long> table = new ConcurrentHashMap<String, Long>(1024);
+        QueueOffsetTable table = new QueueOffsetTable(1024);
         for (Map.Entry<String, Long> entry : lmqTopicQueueTable.entrySet()) {
             if (MixAll.isLmq(entry.getKey())) {
                 table.put(entry.getKey(), entry.getValue());
@@ -105,11 +142,20 @@ public class QueueOffsetOperator {
         this.lmqTopicQueueTable = table;
     }
 
+    /**
+     * @return a snapshot of the topic queue table keyed by "topic-queueId"
+     */
     public ConcurrentMap<String, Long> getTopicQueueTable() {
-        return topicQueueTable;
+        return topicQueueTable.toMap();
     }
 
     public void setBatchTopicQueueTable(ConcurrentMap<String, Long> batchTopicQueueTable) {
-        this.batchTopicQueueTable = batchTopicQueueTable;
+        QueueOffsetTable table = new QueueOffsetTable(Math.max(batchTopicQueueTable.size() * 2, 1024));
+        table.putAll(batchTopicQueueTable);
+        this.batchTopicQueueTable = table;
+    }
+
+    private static Long toNullable(long offset) {
+        return offset == ABSENT ? null : offset;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.queue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An offset table keyed by (topic, queueId) that stores primitive longs.
+ *
+ * <p>Topics are interned to an int id once, so a lookup packs the id and the queue id into one long
+ * and probes an open-addressing table without building a "topic-queueId" string or boxing the offset.
+ * The table is split into lock-striped segments; each segment is a linear-probing hash table with
+ * backward-shift deletion. The id of a topic is released when the last queue of the topic is removed,
+ * so the topic maps do not keep growing with deleted topics.
+ *
+ * <p>String keys in the legacy "topic-queueId" form are still accepted by {@link #put(String, long)}
+ * and produced by {@link #toMap()}, so snapshots and recovery keep their old format.
+ */
+public class QueueOffsetTable {
+
+    private static final long EMPTY = -1L;
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private static final int SEGMENT_SHIFT = 28;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final ConcurrentMap<String, Topic> topicIds = new ConcurrentHashMap<>(1024);
+
+    private final ConcurrentMap<Integer, String> topicNames = new ConcurrentHashMap<>(1024);
+
+    private final AtomicInteger nextTopicId = new AtomicInteger(0);
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    public QueueOffsetTable() {
+        this(1024);
+    }
+
+    public QueueOffsetTable(int initialCapacity) {
+        int segmentCapacity = Math.max(initialCapacity / SEGMENT_COUNT, 4);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * Return the offset of the queue, initializing it to 0 if absent.
+     */
+    public long getOrInit(String topic, int queueId) {
+        while (true) {
+            Topic t = topic(topic);
+            long key = key(t.id, queueId);
+            Segment segment = segmentFor(key);
+            synchronized (segment) {
+                if (!t.released) {
+                    return segment.getOrInit(key, t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the offset of the queue, or {@code defaultValue} if absent.
+     */
+    public long get(String topic, int queueId, long defaultValue) {
+        Topic t = topicIds.get(topic);
+        if (t == null) {
+            return defaultValue;
+        }
+        long key = key(t.id, queueId);
+        return segmentFor(key).get(key, defaultValue);
+    }
+
+    /**
+     * Add {@code delta} to the offset of the queue, treating an absent queue as 0.
+     */
+    public long add(String topic, int queueId, long delta) {
+        while (true) {
+            Topic t = topic(topic);
+            long key = key(t.id, queueId);
+            Segment segment = segmentFor(key);
+            synchronized (segment) {
+                if (!t.released) {
+                    return segment.add(key, delta, t);
+                }
+            }
+        }
+    }
+
+    public void put(String topic, int queueId, long offset) {
+        while (true) {
+            Topic t = topic(topic);
+            long key = key(t.id, queueId);
+            Segment segment = segmentFor(key);
+            synchronized (segment) {
+                if (!t.released) {
+                    segment.put(key, offset, t);
+                    return;
+                }
+            }
+        }
+    }
+
+    public void remove(String topic, int queueId) {
+        Topic t = topicIds.get(topic);
+        if (t == null) {
+            return;
+        }
+        long key = key(t.id, queueId);
+        if (segmentFor(key).remove(key, t) && t.queueNum.get() == 0) {
+            release(t, 0);
+        }
+    }
+
+    /**
+     * Return the offset for a legacy "topic-queueId" key, initializing it to 0 if absent.
+     */
+    public long getOrInit(String topicQueueKey) {
+        int queueId = queueIdOf(topicQueueKey);
+        return getOrInit(topicOf(topicQueueKey, queueId), queueId);
+    }
+
+    /**
+     * Return the offset for a legacy "topic-queueId" key, or {@code defaultValue} if absent.
+     */
+    public long get(String topicQueueKey, long defaultValue) {
+        int queueId = queueIdOf(topicQueueKey);
+        return get(topicOf(topicQueueKey, queueId), queueId, defaultValue);
+    }
+
+    public long add(String topicQueueKey, long delta) {
+        int queueId = queueIdOf(topicQueueKey);
+        return add(topicOf(topicQueueKey, queueId), queueId, delta);
+    }
+
+    /**
+     * Put an offset using a legacy "topic-queueId" key. A key without a numeric queue id suffix is
+     * kept verbatim as a topic with queue id -1.
+     */
+    public void put(String topicQueueKey, long offset) {
+        int queueId = queueIdOf(topicQueueKey);
+        put(topicOf(topicQueueKey, queueId), queueId, offset);
+    }
+
+    public void putAll(Map<String, Long> table) {
+        for (Map.Entry<String, Long> entry : table.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Copy the table into a map keyed by "topic-queueId".
+     */
+    public ConcurrentMap<String, Long> toMap() {
+        ConcurrentMap<String, Long> map = new ConcurrentHashMap<>(Math.max(size() * 2, 16));
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (int i = 0; i < segment.keys.length; i++) {
+                    long key = segment.keys[i];
+                    if (key != EMPTY) {
+                        map.put(topicQueueKey(key), segment.values[i]);
+                    }
+                }
+            }
+        }
+        return map;
+    }
+
+    private String topicQueueKey(long key) {
+        String topic = topicNames.get((int) (key >>> 32));
+        int queueId = (int) key;
+        return queueId < 0 ? topic : topic + "-" + queueId;
+    }
+
+    /**
+     * Number of topics holding an id, for tests.
+     */
+    int topicNum() {
+        return topicIds.size();
+    }
+
+    private static int queueIdOf(String topicQueueKey) {
+        int index = topicQueueKey.lastIndexOf('-');
+        return index < 0 ? -1 : parseQueueId(topicQueueKey, index + 1);
+    }
+
+    private static String topicOf(String topicQueueKey, int queueId) {
+        return queueId < 0 ? topicQueueKey : topicQueueKey.substring(0, topicQueueKey.lastIndexOf('-'));
+    }
+
+    private Topic topic(String topic) {
+        Topic t = topicIds.get(topic);
+        if (t != null) {
+            return t;
+        }
+        synchronized (topicIds) {
+            t = topicIds.get(topic);
+            if (t == null) {
+                t = new Topic(nextTopicId.getAndIncrement());
+                topicNames.put(t.id, topic);
+                topicIds.put(topic, t);
+            }
+            return t;
+        }
+    }
+
+    /**
+     * Release the id of a topic without queues, holding the locks of all segments from {@code segmentIndex}
+     * on so that no queue of the topic can be inserted meanwhile.
+     */
+    private void release(Topic topic, int segmentIndex) {
+        if (segmentIndex < SEGMENT_COUNT) {
+            synchronized (segments[segmentIndex]) {
+                release(topic, segmentIndex + 1);
+            }
+            return;
+        }
+        if (topic.queueNum.get() == 0 && !topic.released) {
+            topic.released = true;
+            synchronized (topicIds) {
+                topicIds.remove(topicNames.remove(topic.id), topic);
+            }
+        }
+    }
+
+    private Segment segmentFor(long key) {
+        return segments[(hash(key) >>> SEGMENT_SHIFT) & (SEGMENT_COUNT - 1)];
+    }
+
+    private static int parseQueueId(String key, int from) {
+        if (from >= key.length() || key.length() - from > 9) {
+            return -1;
+        }
+        int queueId = 0;
+        for (int i = from; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            queueId = queueId * 10 + (c - '0');
+        }
+        return queueId;
+    }
+
+    private static long key(int topicId, int queueId) {
+        return ((long) topicId << 32) | (queueId & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static final class Topic {
+        private final int id;
+        // number of queues of the topic in the table, changed while holding the lock of the segment of the queue
+        private final AtomicInteger queueNum = new AtomicInteger(0);
+        // set while holding the locks of all segments, queues must not be inserted with a released id
+        private boolean released;
+
+        Topic(int id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * The methods which may insert a queue must be called holding the lock of the segment and with a topic
+     * not released.
+     */
+    private static final class Segment {
+        private long[] keys;
+        private long[] values;
+        private int mask;
+        private int size;
+        private int threshold;
+
+        Segment(int capacity) {
+            allocate(Integer.highestOneBit(capacity - 1) << 1);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            mask = capacity - 1;
+            threshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+        private int indexOf(long key) {
+            int index = hash(key) & mask;
+            while (true) {
+                long k = keys[index];
+                if (k == key || k == EMPTY) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+        synchronized long get(long key, long defaultValue) {
+            int index = indexOf(key);
+            return keys[index] == EMPTY ? defaultValue : values[index];
+        }
+
+        long getOrInit(long key, Topic topic) {
+            int index = indexOf(key);
+            if (keys[index] == EMPTY) {
+                insert(index, key, 0L, topic);
+                return 0L;
+            }
+            return values[index];
+        }
+
+        long add(long key, long delta, Topic topic) {
+            int index = indexOf(key);
+            if (keys[index] == EMPTY) {
+                insert(index, key, delta, topic);
+                return delta;
+            }
+            return values[index] += delta;
+        }
+
+        void put(long key, long value, Topic topic) {
+            int index = indexOf(key);
+            if (keys[index] == EMPTY) {
+                insert(index, key, value, topic);
+            } else {
+                values[index] = value;
+            }
+        }
+
+        /**
+         * @return true if the key is removed
+         */
+        synchronized boolean remove(long key, Topic topic) {
+            int index = indexOf(key);
+            if (keys[index] == EMPTY) {
+                return false;
+            }
+            // Backward-shift the following cluster so probing never needs tombstones
+            int next = index;
+            while (true) {
+                next = (next + 1) & mask;
+                long k = keys[next];
+                if (k == EMPTY) {
+                    break;
+                }
+                int home = hash(k) & mask;
+                boolean movable = index <= next ? home <= index || home > next : home <= index && home > next;
+                if (movable) {
+                    keys[index] = k;
+                    values[index] = values[next];
+                    index = next;
+                }
+            }
+            keys[index] = EMPTY;
+            size--;
+            topic.queueNum.decrementAndGet();
+            return true;
+        }
+
+        private void insert(int index, long key, long value, Topic topic) {
+            topic.queueNum.incrementAndGet();
+            keys[index] = key;
+            values[index] = value;
+            if (++size > threshold) {
+                rehash();
+            }
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            allocate(oldKeys.length << 1);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int index = indexOf(oldKeys[i]);
+                    keys[index] = oldKeys[i];
+                    values[index] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.queue;
+
+import org.apache.rocketmq.store.ConsumeQueueExt;
+
+/**
+ * {@link CqUnitCursor} backed by a {@link ReferredIterator}, used by consume queues without a dedicated cursor.
+ */
+public class ReferredIteratorCursor implements CqUnitCursor {
+    private final ReferredIterator<CqUnit> iterator;
+    private CqUnit current;
+
+    public ReferredIteratorCursor(ReferredIterator<CqUnit> iterator) {
+        this.iterator = iterator;
+    }
+
+    @Override
+    public boolean next() {
+        if (!iterator.hasNext()) {
+            return false;
+        }
+        current = iterator.next();
+        return current != null;
+    }
+
+    @Override
+    public long getQueueOffset() {
+        return current.getQueueOffset();
+    }
+
+    @Override
+    public long getPos() {
+        return current.getPos();
+    }
+
+    @Override
+    public int getSize() {
+        return current.getSize();
+    }
+
+    @Override
+    public long getTagsCode() {
+        return current.getTagsCode();
+    }
+
+    @Override
+    public short getBatchNum() {
+        return current.getBatchNum();
+    }
+
+    @Override
+    public ConsumeQueueExt.CqExtUnit getCqExtUnit() {
+        return current.getCqExtUnit();
+    }
+
+    @Override
+    public void release() {
+        iterator.release();
+    }
+}
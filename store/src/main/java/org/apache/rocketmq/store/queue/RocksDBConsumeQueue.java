@@ -205,20 +205,18 @@ public class RocksDBConsumeQueue implements ConsumeQueueInterface {
 
     @Override
     public void assignQueueOffset(QueueOffsetOperator queueOffsetOperator, MessageExtBrokerInner msg) throws RocksDBException {
-        String topicQueueKey = getTopic() + "-" + getQueueId();
-        Long queueOffset = queueOffsetOperator.getTopicQueueNextOffset(topicQueueKey);
+        Long queueOffset = queueOffsetOperator.getTopicQueueNextOffset(getTopic(), getQueueId());
         if (queueOffset == null) {
             // we will recover topic queue table from rocksdb when we use it.
             queueOffset = this.messageStore.getQueueStore().getMaxOffsetInQueue(topic, queueId);
-            queueOffsetOperator.updateQueueOffset(topicQueueKey, queueOffset);
+            queueOffsetOperator.updateQueueOffset(getTopic(), getQueueId(), queueOffset);
         }
         msg.setQueueOffset(queueOffset);
     }
 
     @Override
     public void increaseQueueOffset(QueueOffsetOperator queueOffsetOperator, MessageExtBrokerInner msg, short messageNum) {
-        String topicQueueKey = getTopic() + "-" + getQueueId();
-        queueOffsetOperator.increaseQueueOffset(topicQueueKey, messageNum);
+        queueOffsetOperator.increaseQueueOffset(getTopic(), getQueueId(), messageNum);
     }
 
     @Override
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.rocksdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.config.AbstractRocksDBStorage;
+import org.apache.rocketmq.common.utils.DataConverter;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+/**
+ * Keeps pop checkpoints and acks in the "popState" column family. Unlike consume queues they cannot be rebuilt
+ * from the commit log, so writes go through the WAL.
+ */
+public class PopStateRocksDBStorage extends AbstractRocksDBStorage {
+    private volatile ColumnFamilyHandle popStateCFHandle;
+
+    public PopStateRocksDBStorage(final String dbPath) {
+        this.dbPath = dbPath;
+        this.readOnly = false;
+    }
+
+    private void initOptions() {
+        this.options = RocksDBOptionsFactory.createDBOptions();
+
+        this.writeOptions = new WriteOptions();
+        this.writeOptions.setSync(false);
+        this.writeOptions.setDisableWAL(false);
+        this.writeOptions.setNoSlowdown(false);
+
+        this.totalOrderReadOptions = new ReadOptions();
+        this.totalOrderReadOptions.setPrefixSameAsStart(false);
+        this.totalOrderReadOptions.setTotalOrderSeek(true);
+    }
+
+    @Override
+    protected boolean postLoad() {
+        try {
+            UtilAll.ensureDirOK(this.dbPath);
+
+            initOptions();
+
+            final List<ColumnFamilyDescriptor> cfDescriptors = new ArrayList<>();
+
+            ColumnFamilyOptions defaultCfOptions = RocksDBOptionsFactory.createPopStateCFOptions();
+            this.cfOptions.add(defaultCfOptions);
+            cfDescriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, defaultCfOptions));
+
+            ColumnFamilyOptions popStateCfOptions = RocksDBOptionsFactory.createPopStateCFOptions();
+            this.cfOptions.add(popStateCfOptions);
+            cfDescriptors.add(new ColumnFamilyDescriptor("popState".getBytes(DataConverter.CHARSET_UTF8), popStateCfOptions));
+
+            final List<ColumnFamilyHandle> cfHandles = new ArrayList<>();
+            open(cfDescriptors, cfHandles);
+
+            this.defaultCFHandle = cfHandles.get(0);
+            this.popStateCFHandle = cfHandles.get(1);
+        } catch (final Exception e) {
+            LOGGER.error("postLoad Failed. {}", this.dbPath, e);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected void preShutdown() {
+        this.popStateCFHandle.close();
+    }
+
+    public void batchPut(final WriteBatch batch) throws RocksDBException {
+        batchPut(this.writeOptions, batch);
+    }
+
+    public RocksIterator seekPopStateCF() {
+        return this.db.newIterator(this.popStateCFHandle, this.totalOrderReadOptions);
+    }
+
+    public ColumnFamilyHandle getPopStateCFHandle() {
+        return this.popStateCFHandle;
+    }
+}
@@ -123,6 +123,38 @@ public class RocksDBOptionsFactory {
                 setInplaceUpdateSupport(true);
     }
 
+    /**
+     * Pop checkpoints and acks live for one invisible time and are only read by range scans, so the column family
+     * skips bloom filters and compression and keeps levels small for quick tombstone cleanup.
+     */
+    public static ColumnFamilyOptions createPopStateCFOptions() {
+        BlockBasedTableConfig blockBasedTableConfig = new BlockBasedTableConfig().
+                setFormatVersion(5).
+                setIndexType(IndexType.kBinarySearch).
+                setDataBlockIndexType(DataBlockIndexType.kDataBlockBinarySearch).
+                setBlockSize(32 * SizeUnit.KB).
+                setCacheIndexAndFilterBlocks(false).
+                setPinTopLevelIndexAndFilter(true).
+                setBlockCache(new LRUCache(128 * SizeUnit.MB, 8, false));
+
+        ColumnFamilyOptions columnFamilyOptions = new ColumnFamilyOptions();
+        return columnFamilyOptions.setMaxWriteBufferNumber(4).
+                setWriteBufferSize(64 * SizeUnit.MB).
+                setMinWriteBufferNumberToMerge(1).
+                setTableFormatConfig(blockBasedTableConfig).
+                setMemTableConfig(new SkipListMemTableConfig()).
+                setCompressionType(CompressionType.NO_COMPRESSION).
+                setNumLevels(7).
+                setCompactionStyle(CompactionStyle.LEVEL).
+                setLevel0FileNumCompactionTrigger(2).
+                setLevel0SlowdownWritesTrigger(8).
+                setLevel0StopWritesTrigger(10).
+                setTargetFileSizeBase(64 * SizeUnit.MB).
+                setTargetFileSizeMultiplier(2).
+                setMaxBytesForLevelBase(256 * SizeUnit.MB).
+                setMaxBytesForLevelMultiplier(2);
+    }
+
     /**
      * Create a rocksdb db options, the user must take care to close it after closing db.
      * @return
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageExtBrokerInner;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.logfile.DefaultMappedFile;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AppendReservationTrackerTest {
+
+    private static final String TOPIC = "ReservationTopic";
+
+    private final String storePath = System.getProperty("java.io.tmpdir") + File.separator
+        + "reservation-" + UUID.randomUUID();
+    private DefaultMessageStore messageStore;
+
+    @After
+    public void destroy() {
+        if (messageStore != null) {
+            messageStore.shutdown();
+            messageStore.destroy();
+        }
+        UtilAll.deleteFile(new File(storePath));
+    }
+
+    @Test
+    public void testPublishContiguousSpaceOnly() throws Exception {
+        DefaultMappedFile mappedFile = new DefaultMappedFile(storePath + File.separator + "00000000000000000000", 1024);
+        AppendReservationTracker tracker = new AppendReservationTracker();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        int first = tracker.reserve(mappedFile, 100);
+        int second = tracker.reserve(mappedFile, 200);
+        int third = tracker.reserve(mappedFile, 300);
+        assertThat(first).isEqualTo(0);
+        assertThat(second).isEqualTo(100);
+        assertThat(third).isEqualTo(300);
+        assertThat(tracker.remaining(mappedFile)).isEqualTo(1024 - 600);
+        assertThat(tracker.reserve(mappedFile, 1024)).isEqualTo(-1);
+
+        // Later space waits for the earlier one to be published
+        Future<Boolean> thirdFuture = executor.submit(() -> tracker.complete(mappedFile, third, 300, true));
+        Future<Boolean> secondFuture = executor.submit(() -> tracker.complete(mappedFile, second, 200, true));
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertThat(thirdFuture.isDone()).isFalse();
+        assertThat(secondFuture.isDone()).isFalse();
+        assertThat(mappedFile.getWrotePosition()).isEqualTo(0);
+        assertThat(tracker.getInflight()).isEqualTo(3);
+
+        assertThat(tracker.complete(mappedFile, first, 100, true)).isTrue();
+        assertThat(secondFuture.get(3, TimeUnit.SECONDS)).isTrue();
+        assertThat(thirdFuture.get(3, TimeUnit.SECONDS)).isTrue();
+        assertThat(mappedFile.getWrotePosition()).isEqualTo(600);
+        assertThat(tracker.getInflight()).isEqualTo(0);
+
+        // Appends that bypass the tracker are picked up once nothing is in flight
+        mappedFile.setWrotePosition(700);
+        assertThat(tracker.reserve(mappedFile, 10)).isEqualTo(700);
+        executor.shutdown();
+        mappedFile.destroy(1000);
+    }
+
+    @Test
+    public void testFailedSpaceEndsFile() throws Exception {
+        DefaultMappedFile mappedFile = new DefaultMappedFile(storePath + File.separator + "00000000000000000000", 1024);
+        AppendReservationTracker tracker = new AppendReservationTracker();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        int first = tracker.reserve(mappedFile, 100);
+        int second = tracker.reserve(mappedFile, 200);
+        int third = tracker.reserve(mappedFile, 300);
+        Future<Boolean> thirdFuture = executor.submit(() -> tracker.complete(mappedFile, third, 300, true));
+        Future<Boolean> secondFuture = executor.submit(() -> tracker.complete(mappedFile, second, 200, false));
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertThat(mappedFile.getWrotePosition()).isEqualTo(0);
+
+        // The space before the failed one is published, the file is ended at the failed one
+        assertThat(tracker.complete(mappedFile, first, 100, true)).isTrue();
+        assertThat(secondFuture.get(3, TimeUnit.SECONDS)).isFalse();
+        assertThat(thirdFuture.get(3, TimeUnit.SECONDS)).isFalse();
+        assertThat(mappedFile.getWrotePosition()).isEqualTo(1024);
+        assertThat(mappedFile.getMappedByteBuffer().getInt(second)).isEqualTo(1024 - second);
+        assertThat(mappedFile.getMappedByteBuffer().getInt(second + 4)).isEqualTo(CommitLog.BLANK_MAGIC_CODE);
+        assertThat(tracker.getInflight()).isEqualTo(0);
+        assertThat(tracker.remaining(mappedFile)).isEqualTo(0);
+        assertThat(tracker.reserve(mappedFile, 10)).isEqualTo(-1);
+        executor.shutdown();
+        mappedFile.destroy(1000);
+    }
+
+    @Test
+    public void testAwaitCompleted() throws Exception {
+        DefaultMappedFile mappedFile = new DefaultMappedFile(storePath + File.separator + "00000000000000000000", 1024);
+        AppendReservationTracker tracker = new AppendReservationTracker();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        int position = tracker.reserve(mappedFile, 100);
+        Future<?> awaitFuture = executor.submit(tracker::awaitCompleted);
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertThat(awaitFuture.isDone()).isFalse();
+
+        assertThat(tracker.complete(mappedFile, position, 100, true)).isTrue();
+        awaitFuture.get(3, TimeUnit.SECONDS);
+        assertThat(mappedFile.getWrotePosition()).isEqualTo(100);
+        executor.shutdown();
+        mappedFile.destroy(1000);
+    }
+
+    @Test
+    public void testConcurrentPutMessage() throws Exception {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMappedFileSizeCommitLog(1024 * 16);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 4);
+        messageStoreConfig.setMaxHashSlotNum(100);
+        messageStoreConfig.setMaxIndexNum(100 * 10);
+        messageStoreConfig.setFlushDiskType(FlushDiskType.ASYNC_FLUSH);
+        messageStoreConfig.setEnableCopyOutsidePutMessageLock(true);
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        messageStoreConfig.setHaListenPort(0);
+        messageStore = new DefaultMessageStore(messageStoreConfig, new BrokerStatsManager("simpleTest", true),
+            null, new BrokerConfig(), new ConcurrentHashMap<>());
+        assertThat(messageStore.load()).isTrue();
+        messageStore.start();
+
+        final int threadNum = 8;
+        final int queueNum = 4;
+        final int messagesPerThread = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(threadNum);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threadNum; t++) {
+            final int threadIndex = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < messagesPerThread; i++) {
+                    // vary the size so that files end with blanks of different lengths
+                    String body = threadIndex + "-" + i + "-" + new String(new char[(i * 37) % 500]).replace('\0', 'x');
+                    PutMessageResult result = messageStore.putMessage(buildMessage(body, threadIndex % queueNum));
+                    assertThat(result.isOk()).isTrue();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        StoreTestUtil.waitCommitLogReput(messageStore);
+
+        int total = 0;
+        for (int queueId = 0; queueId < queueNum; queueId++) {
+            long maxOffset = messageStore.getMaxOffsetInQueue(TOPIC, queueId);
+            assertThat(maxOffset).isEqualTo((long) messagesPerThread * threadNum / queueNum);
+            for (long offset = 0; offset < maxOffset; offset++) {
+                GetMessageResult result = messageStore.getMessage("group", TOPIC, queueId, offset, 1, null);
+                assertThat(result.getStatus()).isEqualTo(GetMessageStatus.FOUND);
+                MessageExt messageExt = MessageDecoder.decode(result.getMessageBufferList().get(0));
+                assertThat(messageExt.getQueueOffset()).isEqualTo(offset);
+                assertThat(new String(messageExt.getBody(), StandardCharsets.UTF_8)).contains("-");
+                result.release();
+                total++;
+            }
+        }
+        assertThat(total).isEqualTo(threadNum * messagesPerThread);
+        assertThat(messageStore.getCommitLog().getMappedFileQueue().getMappedFiles().size()).isGreaterThan(1);
+    }
+
+    private MessageExtBrokerInner buildMessage(String body, int queueId) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(TOPIC);
+        msg.setTags("TAG1");
+        msg.setKeys("Hello");
+        msg.setBody(body.getBytes(StandardCharsets.UTF_8));
+        msg.setQueueId(queueId);
+        msg.setSysFlag(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(new InetSocketAddress("127.0.0.1", 8123));
+        msg.setBornHost(new InetSocketAddress("127.0.0.1", 0));
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+        return msg;
+    }
+}
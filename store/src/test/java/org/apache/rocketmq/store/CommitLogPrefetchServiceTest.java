@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageExtBrokerInner;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.logfile.DefaultMappedFile;
+import org.apache.rocketmq.store.logfile.MappedFile;
+import org.apache.rocketmq.store.queue.CqUnit;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommitLogPrefetchServiceTest {
+
+    private final String storePath = System.getProperty("java.io.tmpdir") + File.separator
+        + "commitlog-prefetch-" + UUID.randomUUID();
+    private DefaultMessageStore messageStore;
+
+    @After
+    public void destroy() {
+        if (messageStore != null) {
+            messageStore.shutdown();
+            messageStore.destroy();
+        }
+        UtilAll.deleteFile(new File(storePath));
+    }
+
+    @Test
+    public void testReaderWindowFollowsRate() {
+        MessageStoreConfig config = new MessageStoreConfig();
+        config.setCommitLogPrefetchLookaheadMillis(1000);
+        config.setCommitLogPrefetchMinMessageNum(64);
+        config.setCommitLogPrefetchMaxMessageNum(4096);
+        CommitLogPrefetchService.ReaderState state = new CommitLogPrefetchService.ReaderState();
+
+        assertThat(state.update(config, "topic", 0, 0, 32, 1000)).isNull();
+
+        // 32 offsets in 100ms, 320 offsets ahead
+        CommitLogPrefetchService.PrefetchRequest request = state.update(config, "topic", 0, 32, 64, 1100);
+        assertThat(request).isNotNull();
+        assertThat(request.getFromOffset()).isEqualTo(64);
+        assertThat(request.getToOffset()).isEqualTo(64 + 320);
+
+        // more than half of the window is still ahead
+        assertThat(state.update(config, "topic", 0, 64, 96, 1200)).isNull();
+
+        // a slow reader falls back to the min window
+        request = state.update(config, "topic", 0, 96, 128, 1300);
+        assertThat(request).isNull();
+        for (long offset = 128, now = 11300; offset < 384; offset += 32, now += 10000) {
+            request = state.update(config, "topic", 0, offset, offset + 32, now);
+        }
+        assertThat(request).isNotNull();
+        assertThat(request.getToOffset() - 384).isLessThan(320);
+
+        // seeking elsewhere starts over
+        assertThat(state.update(config, "topic", 0, 0, 32, 100000)).isNull();
+    }
+
+    @Test
+    public void testPrefetchAdvisesCommitLogOfNextUnits() throws Exception {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMappedFileSizeCommitLog(1024 * 64);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 4);
+        messageStoreConfig.setMaxHashSlotNum(1000);
+        messageStoreConfig.setMaxIndexNum(1000 * 10);
+        messageStoreConfig.setFlushDiskType(FlushDiskType.ASYNC_FLUSH);
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        messageStoreConfig.setHaListenPort(0);
+        messageStore = new DefaultMessageStore(messageStoreConfig, new BrokerStatsManager("simpleTest", true),
+            null, new BrokerConfig(), new ConcurrentHashMap<>());
+        assertThat(messageStore.load()).isTrue();
+        messageStore.start();
+
+        // a sparse queue, most of the commit log belongs to another topic
+        for (int i = 0; i < 400; i++) {
+            String topic = i % 4 == 0 ? "PrefetchTopic" : "OtherTopic";
+            assertThat(messageStore.putMessage(buildMessage(topic, i)).isOk()).isTrue();
+        }
+        StoreTestUtil.waitCommitLogReput(messageStore);
+
+        List<long[]> advisedRanges = new ArrayList<>();
+        CommitLogPrefetchService prefetchService = new CommitLogPrefetchService(messageStore) {
+            @Override
+            protected void advise(MappedFile mappedFile, int position, int length) {
+                assertThat(position % DefaultMappedFile.OS_PAGE_SIZE).isZero();
+                assertThat(position + length).isLessThanOrEqualTo(mappedFile.getFileSize());
+                advisedRanges.add(new long[] {mappedFile.getFileFromOffset() + position, mappedFile.getFileFromOffset() + position + length});
+            }
+        };
+        prefetchService.prefetch(new CommitLogPrefetchService.PrefetchRequest("PrefetchTopic", 0, 10, 60));
+
+        assertThat(advisedRanges).isNotEmpty();
+        for (long offset = 10; offset < 60; offset++) {
+            CqUnit cqUnit = messageStore.findConsumeQueue("PrefetchTopic", 0).get(offset);
+            assertThat(advisedRanges).anyMatch(range -> range[0] <= cqUnit.getPos() && cqUnit.getPos() + cqUnit.getSize() <= range[1]);
+        }
+        CqUnit first = messageStore.findConsumeQueue("PrefetchTopic", 0).get(10);
+        CqUnit afterLast = messageStore.findConsumeQueue("PrefetchTopic", 0).get(60);
+        assertThat(advisedRanges).allMatch(range -> range[0] >= first.getPos() - DefaultMappedFile.OS_PAGE_SIZE && range[1] <= afterLast.getPos());
+    }
+
+    private MessageExtBrokerInner buildMessage(String topic, int index) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(topic);
+        msg.setTags("TAG1");
+        msg.setBody(new byte[512]);
+        msg.setQueueId(0);
+        msg.setSysFlag(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(new InetSocketAddress("127.0.0.1", 8123));
+        msg.setBornHost(new InetSocketAddress("127.0.0.1", 8123));
+        msg.setPropertiesString("index=" + index);
+        return msg;
+    }
+}
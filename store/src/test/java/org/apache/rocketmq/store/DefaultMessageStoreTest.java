@@ -132,7 +132,13 @@ public class DefaultMessageStoreTest {
     }
 
     private MessageStore buildMessageStore(String storePathRootDir) throws Exception {
+        return buildMessageStore(storePathRootDir, false);
+    }
+
+    private MessageStore buildMessageStore(String storePathRootDir, boolean hotMessageCacheEnable) throws Exception {
         MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setHotMessageCacheEnable(hotMessageCacheEnable);
+        messageStoreConfig.setHotMessageCacheCapacity(1024 * 1024);
         messageStoreConfig.setMappedFileSizeCommitLog(1024 * 1024 * 10);
         messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 1024 * 10);
         messageStoreConfig.setMaxHashSlotNum(10000);
@@ -176,6 +182,37 @@ public class DefaultMessageStoreTest {
         verifyThatMasterIsFunctional(totalMsgs, messageStore);
     }
 
+    @Test
+    public void testGetMessageFromHotMessageCache() throws Exception {
+        messageStore.shutdown();
+        messageStore.destroy();
+        messageStore = buildMessageStore(null, true);
+        assertTrue(messageStore.load());
+        messageStore.start();
+
+        int totalMsgs = 10;
+        queueTotal = 1;
+        messageBody = storeMessage.getBytes();
+        for (int i = 0; i < totalMsgs; i++) {
+            messageStore.putMessage(buildMessage());
+        }
+        StoreTestUtil.waitCommitLogReput((DefaultMessageStore) messageStore);
+        assertThat(((DefaultMessageStore) messageStore).getHotMessageCache().getCachedBytes()).isGreaterThan(0);
+
+        GetMessageResult result = messageStore.getMessage("GROUP_A", messageTopic, 0, 0, totalMsgs, null);
+        assertThat(result.getMessageCount()).isEqualTo(totalMsgs);
+        for (SelectMappedBufferResult selectResult : result.getMessageMapedList()) {
+            // served from the cache rather than a mapped commit log file
+            assertThat(selectResult.getMappedFile()).isNull();
+        }
+        for (int i = 0; i < totalMsgs; i++) {
+            MessageExt messageExt = MessageDecoder.decode(result.getMessageBufferList().get(i));
+            assertThat(messageExt.getQueueOffset()).isEqualTo(i);
+            assertThat(new String(messageExt.getBody())).isEqualTo(storeMessage);
+        }
+        result.release();
+    }
+
     @Test
     public void testLookMessageByOffset_OffsetIsFirst() {
         final int totalCount = 10;
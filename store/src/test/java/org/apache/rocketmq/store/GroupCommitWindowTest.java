@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GroupCommitWindowTest {
+
+    @Test
+    public void testNoHoldWithoutHistory() {
+        GroupCommitWindow window = new GroupCommitWindow(TimeUnit.MILLISECONDS.toNanos(1));
+        assertThat(window.nextHoldNanos()).isEqualTo(0);
+    }
+
+    @Test
+    public void testNoHoldWhenArrivalRateIsLow() {
+        GroupCommitWindow window = new GroupCommitWindow(TimeUnit.MILLISECONDS.toNanos(1));
+        long now = TimeUnit.SECONDS.toNanos(1);
+        // one request every 10ms with a 100us flush, nobody would join a held flush
+        for (int i = 0; i < 10; i++) {
+            now += TimeUnit.MILLISECONDS.toNanos(10);
+            window.onCommit(1, TimeUnit.MICROSECONDS.toNanos(100), now);
+        }
+        assertThat(window.nextHoldNanos()).isEqualTo(0);
+    }
+
+    @Test
+    public void testHoldBoundedByFlushLatency() {
+        GroupCommitWindow window = new GroupCommitWindow(TimeUnit.MILLISECONDS.toNanos(1));
+        long now = TimeUnit.SECONDS.toNanos(1);
+        // 20 requests every 200us with a 100us flush
+        for (int i = 0; i < 10; i++) {
+            now += TimeUnit.MICROSECONDS.toNanos(200);
+            window.onCommit(20, TimeUnit.MICROSECONDS.toNanos(100), now);
+        }
+        assertThat(window.nextHoldNanos()).isEqualTo(TimeUnit.MICROSECONDS.toNanos(100));
+    }
+
+    @Test
+    public void testHoldBoundedByMaxHold() {
+        GroupCommitWindow window = new GroupCommitWindow(TimeUnit.MICROSECONDS.toNanos(500));
+        long now = TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i < 10; i++) {
+            now += TimeUnit.MILLISECONDS.toNanos(5);
+            window.onCommit(100, TimeUnit.MILLISECONDS.toNanos(4), now);
+        }
+        assertThat(window.nextHoldNanos()).isEqualTo(TimeUnit.MICROSECONDS.toNanos(500));
+    }
+}
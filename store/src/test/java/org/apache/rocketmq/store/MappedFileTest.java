@@ -52,6 +52,30 @@ public class MappedFileTest {
         assertThat(mappedFile.destroy(1000)).isTrue();
     }
 
+    @Test
+    public void testSelectMappedBufferRange() throws IOException {
+        DefaultMappedFile mappedFile = new DefaultMappedFile("target/unit_test_store/MappedFileTest/001", 1024 * 64);
+        assertThat(mappedFile.appendMessage(storeMessage.getBytes())).isTrue();
+        assertThat(mappedFile.appendMessage(storeMessage.getBytes())).isTrue();
+
+        int pos = storeMessage.length() + 6;
+        int size = 10;
+        SelectMappedBufferResult selectMappedBufferResult = mappedFile.selectMappedBuffer(pos, size);
+        assertThat(selectMappedBufferResult.getStartOffset()).isEqualTo(mappedFile.getFileFromOffset() + pos);
+        assertThat(selectMappedBufferResult.getSize()).isEqualTo(size);
+        assertThat(selectMappedBufferResult.getByteBuffer().position()).isEqualTo(0);
+        assertThat(selectMappedBufferResult.getByteBuffer().remaining()).isEqualTo(size);
+        byte[] data = new byte[size];
+        selectMappedBufferResult.getByteBuffer().get(data);
+        assertThat(new String(data)).isEqualTo(storeMessage.substring(6, 6 + size));
+        selectMappedBufferResult.release();
+
+        assertThat(mappedFile.selectMappedBuffer(storeMessage.length() * 2 - 4, 8)).isNull();
+
+        mappedFile.shutdown(1000);
+        assertThat(mappedFile.destroy(1000)).isTrue();
+    }
+
     @After
     public void destroy() {
         File file = new File("target/unit_test_store");
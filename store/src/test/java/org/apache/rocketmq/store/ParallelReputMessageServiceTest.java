@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageExtBrokerInner;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelReputMessageServiceTest {
+
+    private static final String TOPIC_PREFIX = "ParallelReputTopic";
+
+    private final String storePath = System.getProperty("java.io.tmpdir") + File.separator
+        + "parallel-reput-" + UUID.randomUUID();
+    private DefaultMessageStore messageStore;
+
+    @After
+    public void destroy() {
+        if (messageStore != null) {
+            messageStore.shutdown();
+            messageStore.destroy();
+        }
+        UtilAll.deleteFile(new File(storePath));
+    }
+
+    @Test
+    public void testDispatchInQueueOrder() throws Exception {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMappedFileSizeCommitLog(1024 * 64);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 4);
+        messageStoreConfig.setMaxHashSlotNum(1000);
+        messageStoreConfig.setMaxIndexNum(1000 * 10);
+        messageStoreConfig.setFlushDiskType(FlushDiskType.ASYNC_FLUSH);
+        messageStoreConfig.setEnableParallelReput(true);
+        messageStoreConfig.setParallelReputThreadNum(3);
+        messageStoreConfig.setParallelReputBatchSize(16);
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        messageStoreConfig.setHaListenPort(0);
+        messageStore = new DefaultMessageStore(messageStoreConfig, new BrokerStatsManager("simpleTest", true),
+            null, new BrokerConfig(), new ConcurrentHashMap<>());
+        assertThat(messageStore.load()).isTrue();
+        messageStore.start();
+
+        final int topicNum = 2;
+        final int queueNum = 4;
+        final int messageNum = 1000;
+        for (int i = 0; i < messageNum; i++) {
+            PutMessageResult result = messageStore.putMessage(buildMessage(TOPIC_PREFIX + (i % topicNum), (i / topicNum) % queueNum, i));
+            assertThat(result.isOk()).isTrue();
+        }
+        StoreTestUtil.waitCommitLogReput(messageStore);
+        assertThat(messageStore.dispatchBehindBytes()).isEqualTo(0);
+
+        int total = 0;
+        for (int topicIndex = 0; topicIndex < topicNum; topicIndex++) {
+            String topic = TOPIC_PREFIX + topicIndex;
+            for (int queueId = 0; queueId < queueNum; queueId++) {
+                long maxOffset = messageStore.getMaxOffsetInQueue(topic, queueId);
+                assertThat(maxOffset).isEqualTo((long) messageNum / topicNum / queueNum);
+                int lastIndex = -1;
+                for (long offset = 0; offset < maxOffset; offset++) {
+                    GetMessageResult result = messageStore.getMessage("group", topic, queueId, offset, 1, null);
+                    assertThat(result.getStatus()).isEqualTo(GetMessageStatus.FOUND);
+                    MessageExt messageExt = MessageDecoder.decode(result.getMessageBufferList().get(0));
+                    result.release();
+                    assertThat(messageExt.getQueueOffset()).isEqualTo(offset);
+                    int index = Integer.parseInt(new String(messageExt.getBody(), StandardCharsets.UTF_8));
+                    assertThat(index).isGreaterThan(lastIndex);
+                    lastIndex = index;
+                    total++;
+                }
+            }
+        }
+        assertThat(total).isEqualTo(messageNum);
+        assertThat(messageStore.getCommitLog().getMappedFileQueue().getMappedFiles().size()).isGreaterThan(1);
+
+        QueryMessageResult queryResult = messageStore.queryMessage(TOPIC_PREFIX + 1, "key-999", 1, 0, Long.MAX_VALUE);
+        assertThat(queryResult.getMessageBufferList()).hasSize(1);
+        queryResult.release();
+    }
+
+    @Test
+    public void testFallbackToSequentialReputOnLaneFailure() throws Exception {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMappedFileSizeCommitLog(1024 * 64);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 4);
+        messageStoreConfig.setMaxHashSlotNum(1000);
+        messageStoreConfig.setMaxIndexNum(1000 * 10);
+        messageStoreConfig.setFlushDiskType(FlushDiskType.ASYNC_FLUSH);
+        messageStoreConfig.setEnableParallelReput(true);
+        messageStoreConfig.setParallelReputThreadNum(3);
+        messageStoreConfig.setParallelReputBatchSize(16);
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        messageStoreConfig.setHaListenPort(0);
+        messageStore = new DefaultMessageStore(messageStoreConfig, new BrokerStatsManager("simpleTest", true),
+            null, new BrokerConfig(), new ConcurrentHashMap<>());
+        // Runs on the lanes, fails the first dispatch of the 100th message
+        AtomicInteger dispatchTimes = new AtomicInteger(0);
+        messageStore.getDispatcherList().addFirst(request -> {
+            if (dispatchTimes.incrementAndGet() == 100) {
+                throw new IllegalStateException("dispatch failure for test");
+            }
+        });
+        assertThat(messageStore.load()).isTrue();
+        messageStore.start();
+
+        final int queueNum = 4;
+        final int messageNum = 400;
+        for (int i = 0; i < messageNum; i++) {
+            PutMessageResult result = messageStore.putMessage(buildMessage(TOPIC_PREFIX, i % queueNum, i));
+            assertThat(result.isOk()).isTrue();
+        }
+        StoreTestUtil.waitCommitLogReput(messageStore);
+        assertThat(messageStore.dispatchBehindBytes()).isEqualTo(0);
+        assertThat(dispatchTimes.get()).isGreaterThan(messageNum);
+        for (int queueId = 0; queueId < queueNum; queueId++) {
+            assertThat(messageStore.getMaxOffsetInQueue(TOPIC_PREFIX, queueId)).isEqualTo((long) messageNum / queueNum);
+        }
+    }
+
+    private MessageExtBrokerInner buildMessage(String topic, int queueId, int index) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(topic);
+        msg.setTags("TAG1");
+        msg.setKeys("key-" + index);
+        msg.setBody(String.valueOf(index).getBytes(StandardCharsets.UTF_8));
+        msg.setQueueId(queueId);
+        msg.setSysFlag(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(new InetSocketAddress("127.0.0.1", 8123));
+        msg.setBornHost(new InetSocketAddress("127.0.0.1", 0));
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+        return msg;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExtBrokerInner;
+import org.apache.rocketmq.store.config.FlushDiskType;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.logfile.MappedFile;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PipelinedFlushManagerTest {
+
+    private static final String TOPIC = "PipelinedFlushTopic";
+
+    private final String storePath = System.getProperty("java.io.tmpdir") + File.separator
+        + "pipelined-flush-" + UUID.randomUUID();
+    private DefaultMessageStore messageStore;
+
+    @Before
+    public void init() throws Exception {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMappedFileSizeCommitLog(1024 * 16);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 4);
+        messageStoreConfig.setMaxHashSlotNum(100);
+        messageStoreConfig.setMaxIndexNum(100 * 10);
+        messageStoreConfig.setFlushDiskType(FlushDiskType.SYNC_FLUSH);
+        messageStoreConfig.setEnablePipelinedFlush(true);
+        messageStoreConfig.setPipelinedFlushMaxInflight(4);
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        messageStoreConfig.setHaListenPort(0);
+        messageStore = new DefaultMessageStore(messageStoreConfig, new BrokerStatsManager("simpleTest", true),
+            null, new BrokerConfig(), new ConcurrentHashMap<>());
+        assertThat(messageStore.load()).isTrue();
+        messageStore.start();
+    }
+
+    @After
+    public void destroy() {
+        if (messageStore != null) {
+            messageStore.shutdown();
+            messageStore.destroy();
+        }
+        UtilAll.deleteFile(new File(storePath));
+    }
+
+    @Test
+    public void testConcurrentSyncFlush() throws Exception {
+        CommitLog commitLog = messageStore.getCommitLog();
+        assertThat(commitLog.getFlushManager()).isInstanceOf(CommitLog.PipelinedFlushManager.class);
+
+        final int threadNum = 8;
+        final int messagesPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threadNum);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threadNum; t++) {
+            final int threadIndex = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < messagesPerThread; i++) {
+                    PutMessageResult result = messageStore.putMessage(buildMessage(threadIndex + "-" + i, threadIndex % 4));
+                    assertThat(result.getPutMessageStatus()).isEqualTo(PutMessageStatus.PUT_OK);
+                    // the message is acknowledged only once it is durable
+                    long nextOffset = result.getAppendMessageResult().getWroteOffset()
+                        + result.getAppendMessageResult().getWroteBytes();
+                    assertThat(commitLog.getFlushedWhere()).isGreaterThanOrEqualTo(nextOffset);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        List<CompletableFuture<PutMessageResult>> asyncResults = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            asyncResults.add(messageStore.asyncPutMessage(buildMessage("async-" + i, i % 4)));
+        }
+        for (CompletableFuture<PutMessageResult> future : asyncResults) {
+            assertThat(future.get(10, TimeUnit.SECONDS).getPutMessageStatus()).isEqualTo(PutMessageStatus.PUT_OK);
+        }
+
+        CommitLog.PipelinedFlushManager flushManager = (CommitLog.PipelinedFlushManager) commitLog.getFlushManager();
+        assertThat(commitLog.getMappedFileQueue().getMappedFiles().size()).isGreaterThan(1);
+        assertThat(flushManager.getDurableWhere()).isEqualTo(commitLog.getMaxOffset());
+        assertThat(commitLog.getFlushedWhere()).isEqualTo(commitLog.getMaxOffset());
+        for (MappedFile mappedFile : commitLog.getMappedFileQueue().getMappedFiles()) {
+            assertThat(mappedFile.getFlushedPosition()).isEqualTo(mappedFile.getWrotePosition());
+        }
+        assertThat(flushManager.getInflight()).isEqualTo(0);
+    }
+
+    private MessageExtBrokerInner buildMessage(String body, int queueId) {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(TOPIC);
+        msg.setTags("TAG1");
+        msg.setKeys("Hello");
+        msg.setBody(body.getBytes(StandardCharsets.UTF_8));
+        msg.setQueueId(queueId);
+        msg.setSysFlag(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(new InetSocketAddress("127.0.0.1", 8123));
+        msg.setBornHost(new InetSocketAddress("127.0.0.1", 0));
+        msg.setWaitStoreMsgOK(true);
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+        return msg;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.cache;
+
+import java.nio.ByteBuffer;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HotMessageCacheTest {
+
+    @Test
+    public void testPutAndGet() {
+        HotMessageCache cache = new HotMessageCache(1024 * 1024, 4, 4096);
+        assertThat(cache.put(100, message(200, (byte) 1))).isTrue();
+        assertThat(cache.put(100, message(200, (byte) 1))).isFalse();
+        assertThat(cache.put(200, message(8192, (byte) 2))).isFalse();
+
+        SelectMappedBufferResult result = cache.get(100, 200);
+        assertThat(result).isNotNull();
+        assertThat(result.getStartOffset()).isEqualTo(100);
+        assertThat(result.getByteBuffer().remaining()).isEqualTo(200);
+        assertThat(result.getByteBuffer().get(199)).isEqualTo((byte) 1);
+        assertThat(result.isInCache()).isTrue();
+        result.release();
+        assertThat(result.hasReleased()).isTrue();
+
+        assertThat(cache.get(100, 300)).isNull();
+        assertThat(cache.get(300, 200)).isNull();
+        assertThat(cache.getCachedBytes()).isEqualTo(256);
+
+        cache.clear();
+        assertThat(cache.get(100, 200)).isNull();
+        assertThat(cache.getCachedBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void testFrequentlyReadMessagesSurvive() {
+        int size = 1024;
+        HotMessageCache cache = new HotMessageCache(128 * 1024, 1, 4096);
+        for (long offset = 0; offset < 64; offset++) {
+            cache.put(offset * size, message(size, (byte) offset));
+            for (int i = 0; i < 4; i++) {
+                cache.get(offset * size, size).release();
+            }
+        }
+        // a scan of messages read only once must not push the frequently read ones out
+        for (long offset = 64; offset < 1024; offset++) {
+            cache.put(offset * size, message(size, (byte) offset));
+        }
+        assertThat(cache.getCachedBytes()).isLessThanOrEqualTo(128 * 1024);
+        int hit = 0;
+        for (long offset = 0; offset < 64; offset++) {
+            SelectMappedBufferResult result = cache.get(offset * size, size);
+            if (result != null) {
+                hit++;
+                result.release();
+            }
+        }
+        assertThat(hit).isGreaterThan(48);
+    }
+
+    @Test
+    public void testEvictedMessageKeptUntilReleased() {
+        int size = 1024;
+        HotMessageCache cache = new HotMessageCache(16 * 1024, 1, 1024);
+        cache.put(0, message(size, (byte) 7));
+        SelectMappedBufferResult result = cache.get(0, size);
+        cache.clear();
+        for (long offset = 1; offset < 64; offset++) {
+            cache.put(offset * size, message(size, (byte) 9));
+        }
+        // the buffer of the evicted message is not reused while it is still being read
+        assertThat(result.getByteBuffer().get(0)).isEqualTo((byte) 7);
+        assertThat(result.getByteBuffer().get(size - 1)).isEqualTo((byte) 7);
+        result.release();
+    }
+
+    @Test
+    public void testAllocatedBytesCapped() {
+        HotMessageCache cache = new HotMessageCache(16 * 1024, 1, 4096);
+        for (long offset = 0; offset < 64; offset++) {
+            cache.put(offset * 4096, message(1024, (byte) 1));
+        }
+        cache.clear();
+        // the pooled 1k buffers are freed to make room for 4k ones
+        for (long offset = 0; offset < 64; offset++) {
+            cache.put(offset * 4096, message(4096, (byte) 2));
+        }
+        assertThat(cache.getAllocatedBytes()).isLessThanOrEqualTo(16 * 1024 + 4096);
+    }
+
+    @Test
+    public void testDestroy() {
+        HotMessageCache cache = new HotMessageCache(16 * 1024, 1, 1024);
+        cache.put(0, message(1024, (byte) 7));
+        cache.put(1024, message(1024, (byte) 8));
+        SelectMappedBufferResult result = cache.get(0, 1024);
+
+        cache.destroy();
+        assertThat(cache.get(1024, 1024)).isNull();
+        assertThat(cache.put(2048, message(1024, (byte) 9))).isFalse();
+        // only the buffer still being read is kept
+        assertThat(cache.getAllocatedBytes()).isEqualTo(1024);
+        assertThat(result.getByteBuffer().get(0)).isEqualTo((byte) 7);
+
+        result.release();
+        assertThat(cache.getAllocatedBytes()).isEqualTo(0);
+    }
+
+    private static ByteBuffer message(int size, byte value) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            buffer.put(value);
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -70,4 +70,48 @@ public class IndexFileTest {
         File file = new File("200");
         UtilAll.deleteFile(file);
     }
+
+    @Test
+    public void testBloomFilter() throws Exception {
+        String bloomFileName = "bloom" + File.separator + "300";
+        IndexFile indexFile = new IndexFile("300", HASH_SLOT_NUM, INDEX_NUM, 0, 0);
+        indexFile.createBloomFilter(bloomFileName, 10);
+        assertThat(indexFile.hasBloomFilter()).isTrue();
+        // the bits are kept in a mapped file rather than on the heap
+        assertThat(new File(bloomFileName).length()).isGreaterThan(0);
+        for (long i = 0; i < (INDEX_NUM - 1); i++) {
+            boolean putResult = indexFile.putKey(Long.toString(i), i, System.currentTimeMillis());
+            assertThat(putResult).isTrue();
+        }
+
+        int falsePositive = 0;
+        for (long i = 0; i < (INDEX_NUM - 1); i++) {
+            assertThat(indexFile.mightContain(Long.toString(i))).isTrue();
+            if (indexFile.mightContain("absent-" + i)) {
+                falsePositive++;
+            }
+        }
+        assertThat(falsePositive).isLessThan(INDEX_NUM / 10);
+
+        final List<Long> phyOffsets = new ArrayList<>();
+        indexFile.selectPhyOffset(phyOffsets, "60", 10, 0, Long.MAX_VALUE);
+        assertThat(phyOffsets).containsExactly(60L);
+
+        indexFile.persistBloomFilter();
+        assertThat(indexFile.loadBloomFilter(bloomFileName)).isTrue();
+        assertThat(indexFile.mightContain("60")).isTrue();
+        indexFile.destroy(0);
+        UtilAll.deleteFile(new File("300"));
+
+        // a filter persisted for fewer indexes than the file holds must be ignored
+        IndexFile newFile = new IndexFile("301", HASH_SLOT_NUM, INDEX_NUM, 0, 0);
+        newFile.putKey("0", 0, System.currentTimeMillis());
+        newFile.putKey("1", 1, System.currentTimeMillis());
+        assertThat(newFile.loadBloomFilter(bloomFileName)).isFalse();
+        assertThat(newFile.hasBloomFilter()).isFalse();
+        assertThat(newFile.mightContain("absent")).isTrue();
+        newFile.destroy(0);
+        UtilAll.deleteFile(new File("301"));
+        UtilAll.deleteFile(new File("bloom"));
+    }
 }
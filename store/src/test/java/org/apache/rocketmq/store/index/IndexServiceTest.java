@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.index;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.DispatchRequest;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexServiceTest {
+    private static final String TOPIC = "IndexServiceTopic";
+    private static final int MESSAGE_NUM = 300;
+
+    private final String storePath = System.getProperty("java.io.tmpdir") + File.separator
+        + "index-service-" + UUID.randomUUID();
+    private DefaultMessageStore messageStore;
+
+    @Before
+    public void init() throws Exception {
+        MessageStoreConfig messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMaxHashSlotNum(64);
+        messageStoreConfig.setMaxIndexNum(100);
+        messageStoreConfig.setIndexBloomFilterEnable(true);
+        messageStoreConfig.setIndexQueryThreadNum(2);
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        messageStoreConfig.setHaListenPort(0);
+        messageStore = new DefaultMessageStore(messageStoreConfig, new BrokerStatsManager("simpleTest", true),
+            null, new BrokerConfig(), new ConcurrentHashMap<>());
+        assertThat(messageStore.load()).isTrue();
+    }
+
+    @After
+    public void destroy() {
+        messageStore.shutdown();
+        messageStore.destroy();
+        UtilAll.deleteFile(new File(storePath));
+    }
+
+    @Test
+    public void testQueryAcrossFiles() throws Exception {
+        IndexService indexService = new IndexService(messageStore);
+        assertThat(indexService.load(true)).isTrue();
+        buildIndex(indexService);
+
+        assertQueryResult(indexService);
+
+        indexService.shutdown();
+        indexService = new IndexService(messageStore);
+        assertThat(indexService.load(true)).isTrue();
+        assertThat(indexService.getAndCreateLastIndexFile().hasBloomFilter()).isTrue();
+        assertQueryResult(indexService);
+        indexService.shutdown();
+    }
+
+    private void assertQueryResult(IndexService indexService) {
+        for (int i = 0; i < MESSAGE_NUM; i += 7) {
+            QueryOffsetResult result = indexService.queryOffset(TOPIC, "key-" + i, 10, 0, Long.MAX_VALUE);
+            assertThat(result.getPhyOffsets()).containsExactly((long) i);
+        }
+        assertThat(indexService.queryOffset(TOPIC, "absent", 10, 0, Long.MAX_VALUE).getPhyOffsets()).isEmpty();
+
+        // a key present in every file comes back newest first, as a sequential search returns it
+        List<Long> expected = new ArrayList<>();
+        for (long i = MESSAGE_NUM - 1; expected.size() < 32; i--) {
+            expected.add(i);
+        }
+        QueryOffsetResult result = indexService.queryOffset(TOPIC, "common", 32, 0, Long.MAX_VALUE);
+        assertThat(result.getPhyOffsets()).isEqualTo(expected);
+    }
+
+    private void buildIndex(IndexService indexService) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < MESSAGE_NUM; i++) {
+            indexService.buildIndex(new DispatchRequest(TOPIC, 0, i, 100, 0, now + i, i,
+                "key-" + i + " common", null, 0, 0, null));
+            // index files are named by creation millisecond
+            Thread.sleep(1);
+        }
+    }
+}
@@ -16,12 +16,15 @@
  */
 package org.apache.rocketmq.store.logfile;
 
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -29,6 +32,7 @@ import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 
 public class DefaultMappedFileTest {
 
@@ -61,4 +65,34 @@ public class DefaultMappedFileTest {
         assertEquals(222, p);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testSliceWithSliceRangeMethod() {
+        Assume.assumeNotNull(DefaultMappedFile.SLICE_RANGE_METHOD);
+        assertSlice(DefaultMappedFile.SLICE_RANGE_METHOD);
+    }
+
+    @Test
+    public void testSliceWithoutSliceRangeMethod() {
+        assertSlice(null);
+    }
+
+    private void assertSlice(MethodHandle sliceRangeMethod) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+        for (int i = 0; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) i);
+        }
+        buffer.position(7);
+
+        ByteBuffer slice = DefaultMappedFile.slice(buffer, 16, 10, sliceRangeMethod);
+        assertNotSame(buffer, slice);
+        assertEquals(0, slice.position());
+        assertEquals(10, slice.remaining());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(16 + i, slice.get());
+        }
+        // the view shares the content of the buffer and leaves its position unchanged
+        buffer.put(20, (byte) -1);
+        assertEquals(-1, slice.get(4));
+        assertEquals(7, buffer.position());
+    }
+}
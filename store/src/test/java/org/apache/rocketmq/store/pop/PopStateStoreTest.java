@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.pop;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.utils.DataConverter;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PopStateStoreTest {
+    private static final String TOPIC = "topic";
+    private static final String GROUP = "group";
+    private static final String BROKER_NAME = "broker-a";
+
+    private String storePath;
+    private PopStateStore popStateStore;
+
+    @Before
+    public void init() {
+        Assume.assumeFalse(MixAll.isMac());
+        storePath = System.getProperty("java.io.tmpdir") + File.separator + "popState-" + UUID.randomUUID();
+        popStateStore = new PopStateStore(storePath);
+        assertTrue(popStateStore.start());
+    }
+
+    @After
+    public void destroy() {
+        if (popStateStore != null) {
+            popStateStore.shutdown();
+            UtilAll.deleteFile(new File(storePath));
+        }
+    }
+
+    @Test
+    public void testScanMergesAcks() {
+        PopCheckPoint ck = buildCheckPoint(100, 1000, 3);
+        assertTrue(popStateStore.putCheckPoint(0, ck));
+        assertTrue(popStateStore.putAck(0, buildAckMsg(ck, 101), ck.getReviveTime()));
+
+        BatchAckMsg batchAckMsg = new BatchAckMsg();
+        fillAckMsg(batchAckMsg, ck);
+        batchAckMsg.setAckOffsetList(Arrays.asList(100L, 102L));
+        assertTrue(popStateStore.putAck(0, batchAckMsg, ck.getReviveTime()));
+
+        assertTrue(popStateStore.scanExpiredCheckPoints(0, ck.getReviveTime() - 1, 16).isEmpty());
+        assertTrue(popStateStore.scanExpiredCheckPoints(1, ck.getReviveTime(), 16).isEmpty());
+
+        List<PopCheckPoint> ckList = popStateStore.scanExpiredCheckPoints(0, ck.getReviveTime(), 16);
+        assertEquals(1, ckList.size());
+        assertEquals(ck.getStartOffset(), ckList.get(0).getStartOffset());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(DataConverter.getBit(ckList.get(0).getBitMap(), i));
+        }
+    }
+
+    @Test
+    public void testScanOrderAndLimit() {
+        PopCheckPoint late = buildCheckPoint(200, 3000, 1);
+        PopCheckPoint early = buildCheckPoint(100, 1000, 2);
+        assertTrue(popStateStore.putCheckPoint(0, late));
+        assertTrue(popStateStore.putCheckPoint(0, early));
+        assertTrue(popStateStore.putAck(0, buildAckMsg(early, 101), early.getReviveTime()));
+
+        List<PopCheckPoint> ckList = popStateStore.scanExpiredCheckPoints(0, Long.MAX_VALUE, 1);
+        assertEquals(1, ckList.size());
+        assertEquals(early.getStartOffset(), ckList.get(0).getStartOffset());
+        assertFalse(DataConverter.getBit(ckList.get(0).getBitMap(), 0));
+        assertTrue(DataConverter.getBit(ckList.get(0).getBitMap(), 1));
+
+        ckList = popStateStore.scanExpiredCheckPoints(0, Long.MAX_VALUE, 16);
+        assertEquals(2, ckList.size());
+        assertEquals(late.getStartOffset(), ckList.get(1).getStartOffset());
+    }
+
+    @Test
+    public void testReplaceCheckPoint() {
+        PopCheckPoint ck = buildCheckPoint(100, 1000, 2);
+        assertTrue(popStateStore.putCheckPoint(0, ck));
+        assertTrue(popStateStore.putAck(0, buildAckMsg(ck, 100), ck.getReviveTime()));
+
+        PopCheckPoint retryCk = buildCheckPoint(101, 1000, 1);
+        assertTrue(popStateStore.replaceCheckPoint(0, ck, Collections.singletonList(retryCk)));
+
+        List<PopCheckPoint> ckList = popStateStore.scanExpiredCheckPoints(0, Long.MAX_VALUE, 16);
+        assertEquals(1, ckList.size());
+        assertEquals(101, ckList.get(0).getStartOffset());
+        assertEquals(0, ckList.get(0).getBitMap());
+
+        assertTrue(popStateStore.replaceCheckPoint(0, retryCk, Collections.emptyList()));
+        assertTrue(popStateStore.scanExpiredCheckPoints(0, Long.MAX_VALUE, 16).isEmpty());
+    }
+
+    @Test
+    public void testOrphanAckRemoved() {
+        PopCheckPoint ck = buildCheckPoint(100, 1000, 1);
+        assertTrue(popStateStore.putAck(0, buildAckMsg(ck, 100), ck.getReviveTime()));
+        assertTrue(popStateStore.scanExpiredCheckPoints(0, Long.MAX_VALUE, 16).isEmpty());
+
+        // the ack was dropped by the first scan, so a late checkpoint comes back unacked
+        assertTrue(popStateStore.putCheckPoint(0, ck));
+        List<PopCheckPoint> ckList = popStateStore.scanExpiredCheckPoints(0, Long.MAX_VALUE, 16);
+        assertEquals(1, ckList.size());
+        assertEquals(0, ckList.get(0).getBitMap());
+    }
+
+    private static PopCheckPoint buildCheckPoint(long startOffset, long popTime, int num) {
+        PopCheckPoint ck = new PopCheckPoint();
+        ck.setStartOffset(startOffset);
+        ck.setPopTime(popTime);
+        ck.setInvisibleTime(1000);
+        ck.setQueueId(0);
+        ck.setCId(GROUP);
+        ck.setTopic(TOPIC);
+        ck.setBrokerName(BROKER_NAME);
+        ck.setNum((byte) num);
+        ck.setBitMap(0);
+        for (int i = 0; i < num; i++) {
+            ck.addDiff(i);
+        }
+        return ck;
+    }
+
+    private static AckMsg buildAckMsg(PopCheckPoint ck, long ackOffset) {
+        AckMsg ackMsg = new AckMsg();
+        fillAckMsg(ackMsg, ck);
+        ackMsg.setAckOffset(ackOffset);
+        return ackMsg;
+    }
+
+    private static void fillAckMsg(AckMsg ackMsg, PopCheckPoint ck) {
+        ackMsg.setStartOffset(ck.getStartOffset());
+        ackMsg.setPopTime(ck.getPopTime());
+        ackMsg.setQueueId(ck.getQueueId());
+        ackMsg.setConsumerGroup(ck.getCId());
+        ackMsg.setTopic(ck.getTopic());
+        ackMsg.setBrokerName(ck.getBrokerName());
+    }
+}
@@ -106,6 +106,27 @@ public class BatchConsumeQueueTest extends StoreTestBase {
             Assert.assertEquals(111, cqUnit.getTagsCode());
             Assert.assertNull(cqUnit.getCqExtUnit());
         }
+
+        CqUnitCursor cursor = null;
+        for (int i = 0; i < initialMsgOffset + batchNum * unitNum + 10; i += 7) {
+            cursor = batchConsumeQueue.cursorFrom(i, 32, cursor);
+            if (i < initialMsgOffset || i >= initialMsgOffset + batchNum * unitNum) {
+                Assert.assertNull(cursor);
+                continue;
+            }
+            Assert.assertNotNull(cursor);
+            long baseOffset = (i / batchNum) * batchNum;
+            for (int j = 0; j < 3 && cursor.next(); j++) {
+                Assert.assertEquals(baseOffset, cursor.getQueueOffset());
+                Assert.assertEquals(batchNum, cursor.getBatchNum());
+                Assert.assertEquals((baseOffset - initialMsgOffset) / batchNum, cursor.getPos());
+                Assert.assertEquals(1024, cursor.getSize());
+                Assert.assertEquals(111, cursor.getTagsCode());
+                Assert.assertNull(cursor.getCqExtUnit());
+                baseOffset += batchNum;
+            }
+            cursor.release();
+        }
         batchConsumeQueue.destroy();
     }
 
@@ -179,6 +179,36 @@ public class ConsumeQueueTest extends QueueTestBase {
             }
             Assert.assertEquals(msgNum, queueOffset);
         }
+
+        Assert.assertNull(consumeQueue.cursorFrom(-1, 1));
+        Assert.assertNull(consumeQueue.cursorFrom(msgNum, 1));
+        CqUnitCursor reusedCursor = null;
+        for (int i = 0; i < msgNum; i++) {
+            CqUnitCursor cursor = consumeQueue.cursorFrom(i, msgNum, reusedCursor);
+            Assert.assertNotNull(cursor);
+            if (reusedCursor != null) {
+                Assert.assertSame(reusedCursor, cursor);
+            }
+            long queueOffset = i;
+            while (cursor.next()) {
+                Assert.assertEquals(queueOffset, cursor.getQueueOffset());
+                Assert.assertEquals(queueOffset * msgSize, cursor.getPos());
+                Assert.assertEquals(msgSize, cursor.getSize());
+                Assert.assertTrue(cursor.isTagsCodeValid());
+                Assert.assertEquals(queueOffset, cursor.getTagsCode());
+                Assert.assertEquals(queueOffset, cursor.getValidTagsCodeAsLong().longValue());
+                Assert.assertEquals(1, cursor.getBatchNum());
+                Assert.assertNotNull(cursor.getCqExtUnit());
+                Assert.assertEquals(queueOffset, cursor.getCqExtUnit().getTagsCode());
+                queueOffset++;
+            }
+            Assert.assertEquals(msgNum, queueOffset);
+            cursor.release();
+            reusedCursor = cursor;
+        }
+        // a cursor still in use is not reused
+        CqUnitCursor cursor = consumeQueue.cursorFrom(0, msgNum, reusedCursor);
+        Assert.assertNotSame(cursor, consumeQueue.cursorFrom(0, msgNum, cursor));
         messageStore.getQueueStore().destroy(consumeQueue);
     }
 
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.store.queue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class QueueOffsetTableTest {
+
+    @Test
+    public void testBasicOperations() {
+        QueueOffsetTable table = new QueueOffsetTable(16);
+        assertThat(table.get("topic-a", 1, -1L)).isEqualTo(-1L);
+        assertThat(table.getOrInit("topic-a", 1)).isEqualTo(0L);
+        assertThat(table.add("topic-a", 1, 5)).isEqualTo(5L);
+        assertThat(table.add("topic-a", 2, 3)).isEqualTo(3L);
+        table.put("topic-b", 1, 100L);
+
+        assertThat(table.get("topic-a", 1, -1L)).isEqualTo(5L);
+        assertThat(table.get("topic-a-1", 0L)).isEqualTo(5L);
+        assertThat(table.get("topic-b", 1, -1L)).isEqualTo(100L);
+        assertThat(table.size()).isEqualTo(3);
+
+        table.remove("topic-a", 1);
+        assertThat(table.get("topic-a", 1, -1L)).isEqualTo(-1L);
+        assertThat(table.get("topic-a", 2, -1L)).isEqualTo(3L);
+        assertThat(table.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testLegacyKeysRoundTrip() {
+        ConcurrentMap<String, Long> source = new ConcurrentHashMap<>();
+        source.put("TopicTest-0", 10L);
+        source.put("Topic-With-Dash-12", 20L);
+        source.put("%LMQ%abc-0", 30L);
+        source.put("no_queue_suffix", 40L);
+        source.put("trailing-", 50L);
+
+        QueueOffsetTable table = new QueueOffsetTable();
+        table.putAll(source);
+
+        assertThat(table.get("Topic-With-Dash", 12, -1L)).isEqualTo(20L);
+        assertThat(table.get("%LMQ%abc", 0, -1L)).isEqualTo(30L);
+        assertThat(table.toMap()).isEqualTo(source);
+    }
+
+    @Test
+    public void testReleaseTopicAfterLastQueueRemoved() {
+        QueueOffsetTable table = new QueueOffsetTable(16);
+        table.put("topic-a", 0, 10L);
+        table.add("topic-a", 1, 5L);
+        table.put("topic-b-0", 7L);
+        assertThat(table.topicNum()).isEqualTo(2);
+
+        table.remove("topic-a", 0);
+        assertThat(table.topicNum()).isEqualTo(2);
+        table.remove("topic-a", 1);
+        table.remove("topic-a", 1);
+        assertThat(table.topicNum()).isEqualTo(1);
+        assertThat(table.get("topic-a", 1, -1L)).isEqualTo(-1L);
+        assertThat(table.toMap()).containsOnlyKeys("topic-b-0");
+
+        table.remove("topic-b", 0);
+        assertThat(table.topicNum()).isEqualTo(0);
+        assertThat(table.size()).isEqualTo(0);
+        assertThat(table.toMap()).isEmpty();
+
+        // a released topic gets a new id when it is used again
+        assertThat(table.add("topic-a", 1, 3L)).isEqualTo(3L);
+        assertThat(table.topicNum()).isEqualTo(1);
+        assertThat(table.toMap()).containsEntry("topic-a-1", 3L);
+    }
+
+    @Test
+    public void testConcurrentRemoveAndAdd() throws InterruptedException {
+        QueueOffsetTable table = new QueueOffsetTable(16);
+        int loop = 100000;
+        Thread remover = new Thread(() -> {
+            for (int i = 0; i < loop; i++) {
+                table.remove("topic", i % 4);
+            }
+        });
+        remover.start();
+        for (int i = 0; i < loop; i++) {
+            table.add("topic", i % 4, 1);
+        }
+        remover.join();
+        // every queue left is reachable through its topic and exported under its name
+        Map<String, Long> map = table.toMap();
+        assertThat(map).hasSize(table.size());
+        for (int queueId = 0; queueId < 4; queueId++) {
+            Long offset = map.get("topic-" + queueId);
+            assertThat(table.get("topic", queueId, -1L)).isEqualTo(offset == null ? -1L : offset);
+        }
+        for (int queueId = 0; queueId < 4; queueId++) {
+            table.remove("topic", queueId);
+        }
+        assertThat(table.topicNum()).isEqualTo(0);
+    }
+
+    @Test
+    public void testMatchesHashMapUnderRandomOperations() {
+        QueueOffsetTable table = new QueueOffsetTable(4);
+        Map<String, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200000; i++) {
+            String topic = "topic" + random.nextInt(50);
+            int queueId = random.nextInt(64);
+            String key = topic + "-" + queueId;
+            switch (random.nextInt(4)) {
+                case 0:
+                    table.remove(topic, queueId);
+                    expected.remove(key);
+                    break;
+                case 1:
+                    long value = random.nextInt(1000);
+                    table.put(topic, queueId, value);
+                    expected.put(key, value);
+                    break;
+                default:
+                    table.add(topic, queueId, 1);
+                    expected.merge(key, 1L, Long::sum);
+                    break;
+            }
+        }
+        assertThat(table.size()).isEqualTo(expected.size());
+        assertThat(table.toMap()).isEqualTo(expected);
+        assertThat(table.topicNum()).isEqualTo(expected.keySet().stream()
+            .map(key -> key.substring(0, key.lastIndexOf('-'))).distinct().count());
+    }
+}
@@ -93,6 +93,12 @@ public class MessageStoreConfig {
     private int tieredStoreIndexFileMaxIndexNum = 5000000 * 4;
     // index file will force rolling to next file after idle specified time, default is 3h
     private int tieredStoreIndexFileRollingIdleInterval = 3 * 60 * 60 * 1000;
+    // compact sealed index files into runs sorted by key hash, with a sparse block index and a bloom filter
+    private boolean tieredStoreIndexSortedRunEnable = false;
+    // index items of each block of a sorted run, default is 128
+    private int tieredStoreIndexSortedRunBlockItemCount = 128;
+    // bloom filter bits of each key in a sorted run, default is 10, about 1% false positive
+    private int tieredStoreIndexBloomFilterBitsPerKey = 10;
     private String tieredMetadataServiceProvider = "org.apache.rocketmq.tieredstore.metadata.DefaultMetadataStore";
     private String tieredBackendServiceProvider = "org.apache.rocketmq.tieredstore.provider.MemoryFileSegment";
     // file reserved time, default is 72 hour
@@ -120,9 +126,42 @@ public class MessageStoreConfig {
     private long readAheadCacheExpireDuration = 15 * 1000;
     private double readAheadCacheSizeThresholdRate = 0.3;
 
+    // merge adjacent reads of a file segment and prefetch ahead of sequential readers
+    private boolean tieredStoreReadSchedulerEnable = true;
+    // max size of a read merged from several requests, default is 8M
+    private int tieredStoreReadMergeMaxSize = 8 * 1024 * 1024;
+    // size read ahead of a sequential reader, 0 means disable prefetch, default is 4M
+    private int tieredStoreReadPrefetchSize = 4 * 1024 * 1024;
+    // max size of reads in flight to the backend, and of data prefetched, default is 64M
+    private long tieredStoreReadMaxInflightSize = 64 * 1024 * 1024;
+
     private int tieredStoreMaxPendingLimit = 10000;
     private boolean tieredStoreCrcCheckEnable = false;
 
+    // compression of new commitLog file segments, one of NONE, LZ4, ZSTD or ZLIB, default is NONE
+    private String tieredStoreCommitLogCompressionType = "NONE";
+    private int tieredStoreCommitLogCompressionLevel = 5;
+    // uncompressed size of each block in a compressed file segment, default is 64K
+    private int tieredStoreCommitLogCompressionBlockSize = 64 * 1024;
+
+    // commit buffers larger than a part as parts uploaded in parallel, if the provider supports multipart upload
+    private boolean tieredStoreCommitMultipartEnable = true;
+    // size of each part of a multipart commit, default is 8M
+    private int tieredStoreCommitMultipartPartSize = 8 * 1024 * 1024;
+    // max parts of a multipart commit uploaded at the same time, default is 4
+    private int tieredStoreCommitMultipartConcurrency = 4;
+    // retry times of each part before the commit fails, default is 3
+    private int tieredStoreCommitMultipartRetryTimes = 3;
+
+    // keep blocks of file segments read from the backend in a local disk directory
+    private boolean tieredStoreDiskCacheEnable = false;
+    // directory of the disk cache, default is tieredcache under the store root dir
+    private String tieredStoreDiskCachePath = "";
+    // max size of the disk cache, least recently used blocks are evicted, default is 10G
+    private long tieredStoreDiskCacheMaxSize = 10L * 1024 * 1024 * 1024;
+    // size of each block of the disk cache, default is 1M
+    private int tieredStoreDiskCacheBlockSize = 1024 * 1024;
+
     private String tieredStoreFilePath = "";
     private String objectStoreEndpoint = "";
     private String objectStoreBucket = "";
@@ -234,6 +273,30 @@ public class MessageStoreConfig {
         this.tieredStoreIndexFileRollingIdleInterval = tieredStoreIndexFileRollingIdleInterval;
     }
 
+    public boolean isTieredStoreIndexSortedRunEnable() {
+        return tieredStoreIndexSortedRunEnable;
+    }
+
+    public void setTieredStoreIndexSortedRunEnable(boolean tieredStoreIndexSortedRunEnable) {
+        this.tieredStoreIndexSortedRunEnable = tieredStoreIndexSortedRunEnable;
+    }
+
+    public int getTieredStoreIndexSortedRunBlockItemCount() {
+        return tieredStoreIndexSortedRunBlockItemCount;
+    }
+
+    public void setTieredStoreIndexSortedRunBlockItemCount(int tieredStoreIndexSortedRunBlockItemCount) {
+        this.tieredStoreIndexSortedRunBlockItemCount = tieredStoreIndexSortedRunBlockItemCount;
+    }
+
+    public int getTieredStoreIndexBloomFilterBitsPerKey() {
+        return tieredStoreIndexBloomFilterBitsPerKey;
+    }
+
+    public void setTieredStoreIndexBloomFilterBitsPerKey(int tieredStoreIndexBloomFilterBitsPerKey) {
+        this.tieredStoreIndexBloomFilterBitsPerKey = tieredStoreIndexBloomFilterBitsPerKey;
+    }
+
     public String getTieredMetadataServiceProvider() {
         return tieredMetadataServiceProvider;
     }
@@ -370,6 +433,38 @@ public class MessageStoreConfig {
         this.readAheadCacheSizeThresholdRate = rate;
     }
 
+    public boolean isTieredStoreReadSchedulerEnable() {
+        return tieredStoreReadSchedulerEnable;
+    }
+
+    public void setTieredStoreReadSchedulerEnable(boolean tieredStoreReadSchedulerEnable) {
+        this.tieredStoreReadSchedulerEnable = tieredStoreReadSchedulerEnable;
+    }
+
+    public int getTieredStoreReadMergeMaxSize() {
+        return tieredStoreReadMergeMaxSize;
+    }
+
+    public void setTieredStoreReadMergeMaxSize(int tieredStoreReadMergeMaxSize) {
+        this.tieredStoreReadMergeMaxSize = tieredStoreReadMergeMaxSize;
+    }
+
+    public int getTieredStoreReadPrefetchSize() {
+        return tieredStoreReadPrefetchSize;
+    }
+
+    public void setTieredStoreReadPrefetchSize(int tieredStoreReadPrefetchSize) {
+        this.tieredStoreReadPrefetchSize = tieredStoreReadPrefetchSize;
+    }
+
+    public long getTieredStoreReadMaxInflightSize() {
+        return tieredStoreReadMaxInflightSize;
+    }
+
+    public void setTieredStoreReadMaxInflightSize(long tieredStoreReadMaxInflightSize) {
+        this.tieredStoreReadMaxInflightSize = tieredStoreReadMaxInflightSize;
+    }
+
     public int getTieredStoreMaxPendingLimit() {
         return tieredStoreMaxPendingLimit;
     }
@@ -386,6 +481,94 @@ public class MessageStoreConfig {
         this.tieredStoreCrcCheckEnable = tieredStoreCrcCheckEnable;
     }
 
+    public String getTieredStoreCommitLogCompressionType() {
+        return tieredStoreCommitLogCompressionType;
+    }
+
+    public void setTieredStoreCommitLogCompressionType(String tieredStoreCommitLogCompressionType) {
+        this.tieredStoreCommitLogCompressionType = tieredStoreCommitLogCompressionType;
+    }
+
+    public int getTieredStoreCommitLogCompressionLevel() {
+        return tieredStoreCommitLogCompressionLevel;
+    }
+
+    public void setTieredStoreCommitLogCompressionLevel(int tieredStoreCommitLogCompressionLevel) {
+        this.tieredStoreCommitLogCompressionLevel = tieredStoreCommitLogCompressionLevel;
+    }
+
+    public int getTieredStoreCommitLogCompressionBlockSize() {
+        return tieredStoreCommitLogCompressionBlockSize;
+    }
+
+    public void setTieredStoreCommitLogCompressionBlockSize(int tieredStoreCommitLogCompressionBlockSize) {
+        this.tieredStoreCommitLogCompressionBlockSize = tieredStoreCommitLogCompressionBlockSize;
+    }
+
+    public boolean isTieredStoreCommitMultipartEnable() {
+        return tieredStoreCommitMultipartEnable;
+    }
+
+    public void setTieredStoreCommitMultipartEnable(boolean tieredStoreCommitMultipartEnable) {
+        this.tieredStoreCommitMultipartEnable = tieredStoreCommitMultipartEnable;
+    }
+
+    public int getTieredStoreCommitMultipartPartSize() {
+        return tieredStoreCommitMultipartPartSize;
+    }
+
+    public void setTieredStoreCommitMultipartPartSize(int tieredStoreCommitMultipartPartSize) {
+        this.tieredStoreCommitMultipartPartSize = tieredStoreCommitMultipartPartSize;
+    }
+
+    public int getTieredStoreCommitMultipartConcurrency() {
+        return tieredStoreCommitMultipartConcurrency;
+    }
+
+    public void setTieredStoreCommitMultipartConcurrency(int tieredStoreCommitMultipartConcurrency) {
+        this.tieredStoreCommitMultipartConcurrency = tieredStoreCommitMultipartConcurrency;
+    }
+
+    public int getTieredStoreCommitMultipartRetryTimes() {
+        return tieredStoreCommitMultipartRetryTimes;
+    }
+
+    public void setTieredStoreCommitMultipartRetryTimes(int tieredStoreCommitMultipartRetryTimes) {
+        this.tieredStoreCommitMultipartRetryTimes = tieredStoreCommitMultipartRetryTimes;
+    }
+
+    public boolean isTieredStoreDiskCacheEnable() {
+        return tieredStoreDiskCacheEnable;
+    }
+
+    public void setTieredStoreDiskCacheEnable(boolean tieredStoreDiskCacheEnable) {
+        this.tieredStoreDiskCacheEnable = tieredStoreDiskCacheEnable;
+    }
+
+    public String getTieredStoreDiskCachePath() {
+        return tieredStoreDiskCachePath;
+    }
+
+    public void setTieredStoreDiskCachePath(String tieredStoreDiskCachePath) {
+        this.tieredStoreDiskCachePath = tieredStoreDiskCachePath;
+    }
+
+    public long getTieredStoreDiskCacheMaxSize() {
+        return tieredStoreDiskCacheMaxSize;
+    }
+
+    public void setTieredStoreDiskCacheMaxSize(long tieredStoreDiskCacheMaxSize) {
+        this.tieredStoreDiskCacheMaxSize = tieredStoreDiskCacheMaxSize;
+    }
+
+    public int getTieredStoreDiskCacheBlockSize() {
+        return tieredStoreDiskCacheBlockSize;
+    }
+
+    public void setTieredStoreDiskCacheBlockSize(int tieredStoreDiskCacheBlockSize) {
+        this.tieredStoreDiskCacheBlockSize = tieredStoreDiskCacheBlockSize;
+    }
+
     public String getTieredStoreFilePath() {
         return tieredStoreFilePath;
     }
@@ -61,7 +61,7 @@ public class FlatAppendFile {
         List<FileSegment> fileSegmentList = new ArrayList<>();
         this.metadataStore.iterateFileSegment(this.filePath, this.fileType, metadata -> {
             FileSegment fileSegment = this.fileSegmentFactory.createSegment(
-                this.fileType, metadata.getPath(), metadata.getBaseOffset());
+                this.fileType, metadata.getPath(), metadata.getBaseOffset(), metadata.getCompressionType());
             fileSegment.initPosition(metadata.getSize());
             fileSegment.setMinTimestamp(metadata.getBeginTimestamp());
             fileSegment.setMaxTimestamp(metadata.getEndTimestamp());
@@ -102,6 +102,7 @@ public class FlatAppendFile {
             metadata = new FileSegmentMetadata(
                 this.filePath, fileSegment.getBaseOffset(), fileSegment.getFileType().getCode());
             metadata.setCreateTimestamp(System.currentTimeMillis());
+            metadata.setCompressionType(fileSegment.getCompressionType());
         }
         metadata.setSize(fileSegment.getCommitPosition());
         metadata.setBeginTimestamp(fileSegment.getMinTimestamp());
@@ -253,6 +254,7 @@ public class FlatAppendFile {
                 }
 
                 fileSegment.destroyFile();
+                fileSegment.evictDiskCache();
                 if (!fileSegment.exists()) {
                     fileSegmentTable.remove(0);
                     metadataStore.deleteFileSegment(filePath, fileType, fileSegment.getBaseOffset());
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tieredstore.index;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bloom filter over the key hash codes of a sorted run
+ * <p>
+ * format: hash function num(4) + word num(4) + words(8 * word num)
+ */
+public class IndexBloomFilter {
+
+    private static final int MAX_HASH_FUNCTION_NUM = 30;
+
+    private final int hashFunctionNum;
+    private final long[] words;
+    private final long bitCount;
+
+    public IndexBloomFilter(int expectedCount, int bitsPerKey) {
+        int bits = Math.max(1, bitsPerKey);
+        this.hashFunctionNum = Math.max(1, Math.min(MAX_HASH_FUNCTION_NUM, (int) Math.round(bits * Math.log(2))));
+        this.words = new long[(int) Math.max(1L, ((long) Math.max(1, expectedCount) * bits + 63) / 64)];
+        this.bitCount = (long) words.length * Long.SIZE;
+    }
+
+    private IndexBloomFilter(int hashFunctionNum, long[] words) {
+        this.hashFunctionNum = hashFunctionNum;
+        this.words = words;
+        this.bitCount = (long) words.length * Long.SIZE;
+    }
+
+    /**
+     * Spread the bits of a key hash code, the hash codes of index keys are derived from strings
+     * and are not uniform enough to be probed directly
+     */
+    private static long mix(int hashCode) {
+        long h = hashCode;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public void put(int hashCode) {
+        long h = mix(hashCode);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 1; i <= hashFunctionNum; i++) {
+            long bitIndex = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            words[(int) (bitIndex >>> 6)] |= 1L << bitIndex;
+        }
+    }
+
+    public boolean mightContain(int hashCode) {
+        long h = mix(hashCode);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 1; i <= hashFunctionNum; i++) {
+            long bitIndex = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((words[(int) (bitIndex >>> 6)] & (1L << bitIndex)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getByteSize() {
+        return Integer.BYTES * 2 + words.length * Long.BYTES;
+    }
+
+    public void writeTo(ByteBuffer byteBuffer) {
+        byteBuffer.putInt(hashFunctionNum);
+        byteBuffer.putInt(words.length);
+        for (long word : words) {
+            byteBuffer.putLong(word);
+        }
+    }
+
+    public static IndexBloomFilter readFrom(ByteBuffer byteBuffer) {
+        int hashFunctionNum = byteBuffer.getInt();
+        int wordNum = byteBuffer.getInt();
+        if (hashFunctionNum <= 0 || hashFunctionNum > MAX_HASH_FUNCTION_NUM ||
+            wordNum <= 0 || wordNum > byteBuffer.remaining() / Long.BYTES) {
+            throw new IllegalArgumentException("Bloom filter format not correct");
+        }
+        long[] words = new long[wordNum];
+        for (int i = 0; i < wordNum; i++) {
+            words[i] = byteBuffer.getLong();
+        }
+        return new IndexBloomFilter(hashFunctionNum, words);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tieredstore.index;
+
+import java.nio.ByteBuffer;
+
+import static org.apache.rocketmq.tieredstore.index.IndexItem.COMPACT_INDEX_ITEM_SIZE;
+import static org.apache.rocketmq.tieredstore.index.IndexStoreFile.INDEX_HEADER_SIZE;
+
+/**
+ * Metadata of an index file compacted into a sorted run
+ * <p>
+ * file format:
+ * header(28) + items(28 * item num) + block item num(4) + block num(4) + block first keys(8 * block num) + bloom filter
+ * <p>
+ * Items are sorted by (hash slot, hash code) and the newest first for the same key, the header stores the hash slot
+ * num in place of the slot count. The metadata after the items is loaded once and kept in memory, so that a query
+ * of a key not in the run reads nothing, and a query of a key in the run reads only the blocks holding it.
+ */
+public class IndexSortedRun {
+
+    private final int hashSlotNum;
+    private final int itemCount;
+    private final int blockItemCount;
+    private final long[] blockFirstKeys;
+    private final IndexBloomFilter bloomFilter;
+
+    public IndexSortedRun(int hashSlotNum, int itemCount, int blockItemCount,
+        long[] blockFirstKeys, IndexBloomFilter bloomFilter) {
+
+        this.hashSlotNum = hashSlotNum;
+        this.itemCount = itemCount;
+        this.blockItemCount = blockItemCount;
+        this.blockFirstKeys = blockFirstKeys;
+        this.bloomFilter = bloomFilter;
+    }
+
+    public static long sortKey(int hashCode, int hashSlotNum) {
+        return ((long) (hashCode % hashSlotNum) << 32) | (hashCode & 0xFFFFFFFFL);
+    }
+
+    public static int getItemPosition(int itemIndex) {
+        return INDEX_HEADER_SIZE + itemIndex * COMPACT_INDEX_ITEM_SIZE;
+    }
+
+    public static int getMetadataPosition(int itemCount) {
+        return getItemPosition(itemCount);
+    }
+
+    public static int getMetadataSize(int blockCount, IndexBloomFilter bloomFilter) {
+        return Integer.BYTES * 2 + blockCount * Long.BYTES + bloomFilter.getByteSize();
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public int getBlockItemCount() {
+        return blockItemCount;
+    }
+
+    public int getBlockCount() {
+        return blockFirstKeys.length;
+    }
+
+    /**
+     * Find the blocks that may hold the key
+     *
+     * @return first and last block index, null if the key is not in the run
+     */
+    public int[] getBlockRange(int hashCode) {
+        if (blockFirstKeys.length == 0 || !bloomFilter.mightContain(hashCode)) {
+            return null;
+        }
+        long key = sortKey(hashCode, hashSlotNum);
+        // items of the key may start in the last block whose first key is smaller
+        int first = Math.max(0, this.searchFirstBlock(key, false) - 1);
+        int last = this.searchFirstBlock(key, true) - 1;
+        return last < 0 ? null : new int[] {first, last};
+    }
+
+    /**
+     * @return index of the first block whose first key is larger than (or equal to, if not inclusive) the key
+     */
+    private int searchFirstBlock(long key, boolean inclusive) {
+        int low = 0;
+        int high = blockFirstKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blockFirstKeys[mid] < key || inclusive && blockFirstKeys[mid] == key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Narrow the items read from the blocks of the key to the items of the key, which are adjacent in the run
+     *
+     * @param byteBuffer items of whole blocks, sorted by sort key
+     * @return a buffer of the items of the key, or the buffer itself if it does not hold whole items
+     */
+    public ByteBuffer sliceItems(ByteBuffer byteBuffer, int hashCode) {
+        if (byteBuffer == null || byteBuffer.remaining() % COMPACT_INDEX_ITEM_SIZE != 0) {
+            return byteBuffer;
+        }
+        long key = sortKey(hashCode, hashSlotNum);
+        int begin = this.searchFirstItem(byteBuffer, key, false);
+        int end = this.searchFirstItem(byteBuffer, key, true);
+        ByteBuffer result = byteBuffer.duplicate();
+        result.limit(byteBuffer.position() + end * COMPACT_INDEX_ITEM_SIZE);
+        result.position(byteBuffer.position() + begin * COMPACT_INDEX_ITEM_SIZE);
+        return result.slice();
+    }
+
+    /**
+     * @return index of the first item whose key is larger than (or equal to, if not inclusive) the key
+     */
+    private int searchFirstItem(ByteBuffer byteBuffer, long key, boolean inclusive) {
+        int low = 0;
+        int high = byteBuffer.remaining() / COMPACT_INDEX_ITEM_SIZE;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long itemKey = sortKey(byteBuffer.getInt(byteBuffer.position() + mid * COMPACT_INDEX_ITEM_SIZE), hashSlotNum);
+            if (itemKey < key || inclusive && itemKey == key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public void writeTo(ByteBuffer byteBuffer) {
+        byteBuffer.putInt(blockItemCount);
+        byteBuffer.putInt(blockFirstKeys.length);
+        for (long blockFirstKey : blockFirstKeys) {
+            byteBuffer.putLong(blockFirstKey);
+        }
+        bloomFilter.writeTo(byteBuffer);
+    }
+
+    public static IndexSortedRun readFrom(int hashSlotNum, int itemCount, ByteBuffer byteBuffer) {
+        int blockItemCount = byteBuffer.getInt();
+        int blockCount = byteBuffer.getInt();
+        if (hashSlotNum <= 0 || blockItemCount <= 0 ||
+            blockCount != (itemCount + blockItemCount - 1) / blockItemCount ||
+            blockCount > byteBuffer.remaining() / Long.BYTES) {
+            throw new IllegalArgumentException("Sorted run format not correct");
+        }
+        long[] blockFirstKeys = new long[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            blockFirstKeys[i] = byteBuffer.getLong();
+        }
+        return new IndexSortedRun(hashSlotNum, itemCount, blockItemCount,
+            blockFirstKeys, IndexBloomFilter.readFrom(byteBuffer));
+    }
+}
@@ -22,7 +22,9 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -73,6 +75,7 @@ public class IndexStoreFile implements IndexFile {
 
     public static final int BEGIN_MAGIC_CODE = 0xCCDDEEFF ^ 1880681586 + 4;
     public static final int END_MAGIC_CODE = 0xCCDDEEFF ^ 1880681586 + 8;
+    public static final int SORTED_RUN_MAGIC_CODE = 0xCCDDEEFF ^ 1880681586 + 12;
 
     /**
      * hash slot
@@ -83,6 +86,9 @@ public class IndexStoreFile implements IndexFile {
 
     private final int hashSlotMaxCount;
     private final int indexItemMaxCount;
+    private final boolean sortedRunEnable;
+    private final int sortedRunBlockItemCount;
+    private final int bloomFilterBitsPerKey;
 
     private final ReadWriteLock fileReadWriteLock;
     private final AtomicReference<IndexStatusEnum> fileStatus;
@@ -95,10 +101,14 @@ public class IndexStoreFile implements IndexFile {
     private ByteBuffer byteBuffer;
     private MappedFile compactMappedFile;
     private FileSegment fileSegment;
+    private final AtomicReference<CompletableFuture<IndexSortedRun>> sortedRunFuture = new AtomicReference<>();
 
     public IndexStoreFile(MessageStoreConfig storeConfig, long timestamp) throws IOException {
         this.hashSlotMaxCount = storeConfig.getTieredStoreIndexFileMaxHashSlotNum();
         this.indexItemMaxCount = storeConfig.getTieredStoreIndexFileMaxIndexNum();
+        this.sortedRunEnable = storeConfig.isTieredStoreIndexSortedRunEnable();
+        this.sortedRunBlockItemCount = Math.max(1, storeConfig.getTieredStoreIndexSortedRunBlockItemCount());
+        this.bloomFilterBitsPerKey = storeConfig.getTieredStoreIndexBloomFilterBitsPerKey();
         this.fileStatus = new AtomicReference<>(UNSEALED);
         this.fileReadWriteLock = new ReentrantReadWriteLock();
         this.mappedFile = new DefaultMappedFile(
@@ -124,6 +134,9 @@ public class IndexStoreFile implements IndexFile {
         this.indexItemCount.set(storeConfig.getTieredStoreIndexFileMaxIndexNum());
         this.hashSlotMaxCount = hashSlotCount.get();
         this.indexItemMaxCount = indexItemCount.get();
+        this.sortedRunEnable = storeConfig.isTieredStoreIndexSortedRunEnable();
+        this.sortedRunBlockItemCount = Math.max(1, storeConfig.getTieredStoreIndexSortedRunBlockItemCount());
+        this.bloomFilterBitsPerKey = storeConfig.getTieredStoreIndexBloomFilterBitsPerKey();
     }
 
     @Override
@@ -320,22 +333,11 @@ public class IndexStoreFile implements IndexFile {
 
         Stopwatch stopwatch = Stopwatch.createStarted();
         int hashCode = this.hashCode(key);
-        int slotPosition = this.getSlotPosition(hashCode % this.hashSlotMaxCount);
 
-        CompletableFuture<List<IndexItem>> future = this.fileSegment.readAsync(slotPosition, HASH_SLOT_SIZE)
-            .thenCompose(slotBuffer -> {
-                if (slotBuffer.remaining() < HASH_SLOT_SIZE) {
-                    log.error("IndexStoreFile query from tiered storage return error slot buffer, " +
-                        "key: {}, maxCount: {}, timestamp={}-{}", key, maxCount, beginTime, endTime);
-                    return CompletableFuture.completedFuture(null);
-                }
-                int indexPosition = slotBuffer.getInt();
-                int indexTotalSize = Math.min(slotBuffer.getInt(), COMPACT_INDEX_ITEM_SIZE * 1024);
-                if (indexPosition <= INVALID_INDEX || indexTotalSize <= 0) {
-                    return CompletableFuture.completedFuture(null);
-                }
-                return this.fileSegment.readAsync(indexPosition, indexTotalSize);
-            })
+        CompletableFuture<List<IndexItem>> future = this.getSortedRunAsync()
+            .thenCompose(sortedRun -> sortedRun != null ?
+                this.readItemsFromSortedRun(sortedRun, hashCode) :
+                this.readItemsFromHashSlot(hashCode, key, maxCount, beginTime, endTime))
             .thenApply(itemBuffer -> {
                 List<IndexItem> result = new ArrayList<>();
                 if (itemBuffer == null) {
@@ -353,7 +355,7 @@ public class IndexStoreFile implements IndexFile {
                 for (int i = 0; i < size; i++) {
                     itemBuffer.get(bytes);
                     IndexItem indexItem = new IndexItem(bytes);
-                    long storeTimestamp = indexItem.getTimeDiff() + beginTimestamp.get();
+                    long storeTimestamp = this.getStoreTimestamp(indexItem);
                     if (hashCode == indexItem.getHashCode() &&
                         beginTime <= storeTimestamp && storeTimestamp <= endTime &&
                         result.size() < maxCount) {
@@ -383,12 +385,95 @@ public class IndexStoreFile implements IndexFile {
         });
     }
 
+    /**
+     * The time diff of an item is kept in seconds since the begin timestamp of the file
+     */
+    protected long getStoreTimestamp(IndexItem indexItem) {
+        return beginTimestamp.get() + TimeUnit.SECONDS.toMillis(indexItem.getTimeDiff());
+    }
+
+    /**
+     * Load the metadata of the uploaded file once, the future returns null if the file is in hash slot format
+     */
+    protected CompletableFuture<IndexSortedRun> getSortedRunAsync() {
+        CompletableFuture<IndexSortedRun> future = this.sortedRunFuture.get();
+        if (future != null) {
+            return future;
+        }
+        CompletableFuture<IndexSortedRun> loadFuture = new CompletableFuture<>();
+        if (!this.sortedRunFuture.compareAndSet(null, loadFuture)) {
+            return this.sortedRunFuture.get();
+        }
+
+        this.fileSegment.readAsync(0, INDEX_HEADER_SIZE)
+            .thenCompose(headerBuffer -> {
+                if (headerBuffer.remaining() < INDEX_HEADER_SIZE ||
+                    headerBuffer.getInt(headerBuffer.position() + INDEX_MAGIC_CODE) != SORTED_RUN_MAGIC_CODE) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                int hashSlotNum = headerBuffer.getInt(headerBuffer.position() + INDEX_SLOT_COUNT);
+                int itemCount = headerBuffer.getInt(headerBuffer.position() + INDEX_ITEM_INDEX);
+                int metadataPosition = IndexSortedRun.getMetadataPosition(itemCount);
+                int metadataSize = (int) (this.fileSegment.getCommitPosition() - metadataPosition);
+                return this.fileSegment.readAsync(metadataPosition, metadataSize)
+                    .thenApply(buffer -> IndexSortedRun.readFrom(hashSlotNum, itemCount, buffer));
+            })
+            .whenComplete((sortedRun, throwable) -> {
+                if (throwable != null) {
+                    log.error("IndexStoreFile load sorted run metadata error, timestamp: {}", getTimestamp(), throwable);
+                    // allow the next query to load again
+                    this.sortedRunFuture.compareAndSet(loadFuture, null);
+                    loadFuture.completeExceptionally(throwable);
+                } else {
+                    log.debug("IndexStoreFile load sorted run metadata, timestamp: {}, sorted run: {}",
+                        getTimestamp(), sortedRun != null);
+                    loadFuture.complete(sortedRun);
+                }
+            });
+        return loadFuture;
+    }
+
+    /**
+     * Read the blocks that may hold the key, the future returns only the items of the key
+     */
+    protected CompletableFuture<ByteBuffer> readItemsFromSortedRun(IndexSortedRun sortedRun, int hashCode) {
+        int[] blockRange = sortedRun.getBlockRange(hashCode);
+        if (blockRange == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        int beginIndex = blockRange[0] * sortedRun.getBlockItemCount();
+        int endIndex = Math.min(sortedRun.getItemCount(), (blockRange[1] + 1) * sortedRun.getBlockItemCount());
+        return this.fileSegment.readAsync(IndexSortedRun.getItemPosition(beginIndex),
+                (endIndex - beginIndex) * COMPACT_INDEX_ITEM_SIZE)
+            .thenApply(itemBuffer -> sortedRun.sliceItems(itemBuffer, hashCode));
+    }
+
+    protected CompletableFuture<ByteBuffer> readItemsFromHashSlot(
+        int hashCode, String key, int maxCount, long beginTime, long endTime) {
+
+        int slotPosition = this.getSlotPosition(hashCode % this.hashSlotMaxCount);
+        return this.fileSegment.readAsync(slotPosition, HASH_SLOT_SIZE)
+            .thenCompose(slotBuffer -> {
+                if (slotBuffer.remaining() < HASH_SLOT_SIZE) {
+                    log.error("IndexStoreFile query from tiered storage return error slot buffer, " +
+                        "key: {}, maxCount: {}, timestamp={}-{}", key, maxCount, beginTime, endTime);
+                    return CompletableFuture.completedFuture(null);
+                }
+                int indexPosition = slotBuffer.getInt();
+                int indexTotalSize = Math.min(slotBuffer.getInt(), COMPACT_INDEX_ITEM_SIZE * 1024);
+                if (indexPosition <= INVALID_INDEX || indexTotalSize <= 0) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return this.fileSegment.readAsync(indexPosition, indexTotalSize);
+            });
+    }
+
     @Override
     public ByteBuffer doCompaction() {
         Stopwatch stopwatch = Stopwatch.createStarted();
         ByteBuffer buffer;
         try {
-            buffer = compactToNewFile();
+            buffer = sortedRunEnable ? compactToSortedRun() : compactToNewFile();
             log.debug("IndexStoreFile do compaction, timestamp: {}, file size: {}, cost: {}ms",
                 this.getTimestamp(), buffer.capacity(), stopwatch.elapsed(TimeUnit.MICROSECONDS));
         } catch (Exception e) {
@@ -457,6 +542,76 @@ public class IndexStoreFile implements IndexFile {
         return newBuffer;
     }
 
+    /**
+     * Write the items of each hash slot sorted by hash code, the same order as the slots, then the
+     * sparse block index and the bloom filter, see {@link IndexSortedRun} for the format
+     */
+    protected ByteBuffer compactToSortedRun() throws IOException {
+
+        // count the items linked from the slots first, so that the file and the bloom filter are sized by them
+        int itemMaxCount = 0;
+        for (int i = 0; i < hashSlotMaxCount; i++) {
+            int slotValue = this.getSlotValue(this.getSlotPosition(i));
+            while (slotValue > INVALID_INDEX && itemMaxCount < indexItemCount.get()) {
+                slotValue = this.byteBuffer.getInt(this.getItemPosition(slotValue) + COMPACT_INDEX_ITEM_SIZE);
+                itemMaxCount++;
+            }
+        }
+        int blockMaxCount = (itemMaxCount + sortedRunBlockItemCount - 1) / sortedRunBlockItemCount;
+        IndexBloomFilter bloomFilter = new IndexBloomFilter(itemMaxCount, bloomFilterBitsPerKey);
+        long[] blockFirstKeys = new long[blockMaxCount];
+        int fileMaxLength = IndexSortedRun.getMetadataPosition(itemMaxCount) +
+            IndexSortedRun.getMetadataSize(blockMaxCount, bloomFilter);
+
+        compactMappedFile = new DefaultMappedFile(this.getCompactedFilePath(), fileMaxLength);
+        MappedByteBuffer newBuffer = compactMappedFile.getMappedByteBuffer();
+
+        int itemCount = 0;
+        List<byte[]> slotItemList = new ArrayList<>();
+        for (int i = 0; i < hashSlotMaxCount; i++) {
+            int slotValue = this.getSlotValue(this.getSlotPosition(i));
+
+            // items in the slot are linked from the newest
+            slotItemList.clear();
+            while (slotValue > INVALID_INDEX && itemCount + slotItemList.size() < itemMaxCount) {
+                byte[] payload = new byte[IndexItem.INDEX_ITEM_SIZE];
+                ByteBuffer buffer = this.byteBuffer.duplicate();
+                buffer.position(this.getItemPosition(slotValue));
+                buffer.get(payload);
+                slotItemList.add(payload);
+                slotValue = ByteBuffer.wrap(payload).getInt(COMPACT_INDEX_ITEM_SIZE);
+            }
+
+            // stable sort keeps the newest first for the same hash code
+            slotItemList.sort(Comparator.comparingInt(payload -> ByteBuffer.wrap(payload).getInt(0)));
+            for (byte[] payload : slotItemList) {
+                int hashCode = ByteBuffer.wrap(payload).getInt(0);
+                if (itemCount % sortedRunBlockItemCount == 0) {
+                    blockFirstKeys[itemCount / sortedRunBlockItemCount] =
+                        IndexSortedRun.sortKey(hashCode, hashSlotMaxCount);
+                }
+                bloomFilter.put(hashCode);
+                newBuffer.position(IndexSortedRun.getItemPosition(itemCount));
+                newBuffer.put(payload, 0, COMPACT_INDEX_ITEM_SIZE);
+                itemCount++;
+            }
+        }
+
+        int blockCount = (itemCount + sortedRunBlockItemCount - 1) / sortedRunBlockItemCount;
+        IndexSortedRun sortedRun = new IndexSortedRun(hashSlotMaxCount, itemCount, sortedRunBlockItemCount,
+            Arrays.copyOf(blockFirstKeys, blockCount), bloomFilter);
+        newBuffer.position(IndexSortedRun.getMetadataPosition(itemCount));
+        sortedRun.writeTo(newBuffer);
+
+        newBuffer.putInt(INDEX_MAGIC_CODE, SORTED_RUN_MAGIC_CODE);
+        newBuffer.putLong(INDEX_BEGIN_TIME_STAMP, this.beginTimestamp.get());
+        newBuffer.putLong(INDEX_END_TIME_STAMP, this.endTimestamp.get());
+        newBuffer.putInt(INDEX_SLOT_COUNT, hashSlotMaxCount);
+        newBuffer.putInt(INDEX_ITEM_INDEX, itemCount);
+        newBuffer.flip();
+        return newBuffer;
+    }
+
     @Override
     public void shutdown() {
         try {
@@ -52,6 +52,10 @@ public class FileSegmentMetadata {
     @JSONField(ordinal = 9)
     private long sealTimestamp;
 
+    // 0 if the segment is stored as is, otherwise the value of its CompressionType
+    @JSONField(ordinal = 10)
+    private int compressionType;
+
     // default constructor is used by fastjson
     @SuppressWarnings("unused")
     public FileSegmentMetadata() {
@@ -141,6 +145,14 @@ public class FileSegmentMetadata {
         this.sealTimestamp = sealTimestamp;
     }
 
+    public int getCompressionType() {
+        return compressionType;
+    }
+
+    public void setCompressionType(int compressionType) {
+        this.compressionType = compressionType;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
@@ -156,11 +168,12 @@ public class FileSegmentMetadata {
             && createTimestamp == metadata.createTimestamp
             && beginTimestamp == metadata.beginTimestamp
             && endTimestamp == metadata.endTimestamp
-            && sealTimestamp == metadata.sealTimestamp;
+            && sealTimestamp == metadata.sealTimestamp
+            && compressionType == metadata.compressionType;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(type, path, baseOffset, status, size, createTimestamp, beginTimestamp, endTimestamp, sealTimestamp);
+        return Objects.hash(type, path, baseOffset, status, size, createTimestamp, beginTimestamp, endTimestamp, sealTimestamp, compressionType);
     }
 }
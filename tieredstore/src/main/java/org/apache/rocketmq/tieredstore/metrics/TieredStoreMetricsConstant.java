@@ -21,6 +21,9 @@ public class TieredStoreMetricsConstant {
     public static final String HISTOGRAM_PROVIDER_RPC_LATENCY = "rocketmq_tiered_store_provider_rpc_latency";
     public static final String HISTOGRAM_UPLOAD_BYTES = "rocketmq_tiered_store_provider_upload_bytes";
     public static final String HISTOGRAM_DOWNLOAD_BYTES = "rocketmq_tiered_store_provider_download_bytes";
+    public static final String HISTOGRAM_COMMIT_PART_LATENCY = "rocketmq_tiered_store_commit_part_latency";
+    public static final String COUNTER_COMMIT_BYTES_TOTAL = "rocketmq_tiered_store_commit_bytes_total";
+    public static final String COUNTER_COMMIT_PART_RETRY_TOTAL = "rocketmq_tiered_store_commit_part_retry_total";
 
     public static final String GAUGE_DISPATCH_BEHIND = "rocketmq_tiered_store_dispatch_behind";
     public static final String GAUGE_DISPATCH_LATENCY = "rocketmq_tiered_store_dispatch_latency";
@@ -56,6 +56,8 @@ import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.LABE
 import static org.apache.rocketmq.store.metrics.DefaultStoreMetricsConstant.LABEL_STORAGE_TYPE;
 import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.COUNTER_CACHE_ACCESS;
 import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.COUNTER_CACHE_HIT;
+import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.COUNTER_COMMIT_BYTES_TOTAL;
+import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.COUNTER_COMMIT_PART_RETRY_TOTAL;
 import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.COUNTER_GET_MESSAGE_FALLBACK_TOTAL;
 import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.COUNTER_MESSAGES_DISPATCH_TOTAL;
 import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.COUNTER_MESSAGES_OUT_TOTAL;
@@ -65,6 +67,7 @@ import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant
 import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.GAUGE_DISPATCH_LATENCY;
 import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.GAUGE_STORAGE_MESSAGE_RESERVE_TIME;
 import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.HISTOGRAM_API_LATENCY;
+import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.HISTOGRAM_COMMIT_PART_LATENCY;
 import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.HISTOGRAM_DOWNLOAD_BYTES;
 import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.HISTOGRAM_PROVIDER_RPC_LATENCY;
 import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.HISTOGRAM_UPLOAD_BYTES;
@@ -85,6 +88,9 @@ public class TieredStoreMetricsManager {
     public static LongHistogram providerRpcLatency = new NopLongHistogram();
     public static LongHistogram uploadBytes = new NopLongHistogram();
     public static LongHistogram downloadBytes = new NopLongHistogram();
+    public static LongHistogram commitPartLatency = new NopLongHistogram();
+    public static LongCounter commitBytesTotal = new NopLongCounter();
+    public static LongCounter commitPartRetryTotal = new NopLongCounter();
 
     public static ObservableLongGauge dispatchBehind = new NopObservableLongGauge();
     public static ObservableLongGauge dispatchLatency = new NopObservableLongGauge();
@@ -113,6 +119,11 @@ public class TieredStoreMetricsManager {
             .setName(HISTOGRAM_API_LATENCY)
             .build();
 
+        InstrumentSelector commitPartLatencySelector = InstrumentSelector.builder()
+            .setType(InstrumentType.HISTOGRAM)
+            .setName(HISTOGRAM_COMMIT_PART_LATENCY)
+            .build();
+
         ViewBuilder rpcLatencyViewBuilder = View.builder()
             .setAggregation(Aggregation.explicitBucketHistogram(Arrays.asList(1d, 3d, 5d, 7d, 10d, 100d, 200d, 400d, 600d, 800d, 1d * 1000, 1d * 1500, 1d * 3000)))
             .setDescription("tiered_store_rpc_latency_view");
@@ -133,6 +144,7 @@ public class TieredStoreMetricsManager {
 
         res.add(new Pair<>(rpcLatencySelector, rpcLatencyViewBuilder));
         res.add(new Pair<>(providerRpcLatencySelector, rpcLatencyViewBuilder));
+        res.add(new Pair<>(commitPartLatencySelector, rpcLatencyViewBuilder));
         res.add(new Pair<>(uploadBufferSizeSelector, bufferSizeViewBuilder));
         res.add(new Pair<>(downloadBufferSizeSelector, bufferSizeViewBuilder));
         return res;
@@ -172,6 +184,21 @@ public class TieredStoreMetricsManager {
             .ofLongs()
             .build();
 
+        commitPartLatency = meter.histogramBuilder(HISTOGRAM_COMMIT_PART_LATENCY)
+            .setDescription("Tiered store multipart commit part upload latency")
+            .setUnit("milliseconds")
+            .ofLongs()
+            .build();
+
+        commitBytesTotal = meter.counterBuilder(COUNTER_COMMIT_BYTES_TOTAL)
+            .setDescription("Total bytes committed to tiered store")
+            .setUnit("bytes")
+            .build();
+
+        commitPartRetryTotal = meter.counterBuilder(COUNTER_COMMIT_PART_RETRY_TOTAL)
+            .setDescription("Total times of retrying to upload a part of multipart commit")
+            .build();
+
         dispatchBehind = meter.gaugeBuilder(GAUGE_DISPATCH_BEHIND)
             .setDescription("Tiered store dispatch behind message count")
             .ofLongs()
@@ -0,0 +1,591 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tieredstore.provider;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.apache.rocketmq.common.compression.CompressionType;
+import org.apache.rocketmq.common.compression.Compressor;
+import org.apache.rocketmq.common.compression.CompressorFactory;
+import org.apache.rocketmq.tieredstore.MessageStoreConfig;
+import org.apache.rocketmq.tieredstore.MessageStoreExecutor;
+import org.apache.rocketmq.tieredstore.exception.TieredStoreErrorCode;
+import org.apache.rocketmq.tieredstore.exception.TieredStoreException;
+import org.apache.rocketmq.tieredstore.stream.FileSegmentInputStream;
+import org.apache.rocketmq.tieredstore.util.MessageStoreUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A file segment stored block-compressed in a file segment of the backend service provider.
+ * <p>
+ * Positions of this segment are uncompressed positions, so offsets kept in the consume queue do not change.
+ * Each commit is written as one chunk: its data is cut into blocks of at most the configured block size,
+ * each compressed on its own, followed by a footer recording the length of every block. A read only fetches
+ * and decompresses the blocks covering the requested range. A block which does not shrink is stored as is.
+ * <pre>
+ * chunk:  block * n | footer
+ * footer: (uncompressed length int, stored length int) * n | chunk position long | n int | magic int
+ * </pre>
+ * The block index is kept in memory. A copy of every footer is also appended to a small block index file beside
+ * the backend file, so the index is rebuilt with one read of it. Chunks it misses, after a crash or when it is
+ * damaged, are found by walking the footers back from the end of the backend file, and written to it again.
+ * <pre>
+ * block index record: chunk position long | stored position long | n int | (uncompressed length int, stored length int) * n
+ * </pre>
+ */
+public class CompressedFileSegment extends FileSegment {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageStoreUtil.TIERED_STORE_LOGGER_NAME);
+
+    public static final int NO_COMPRESSION = 0;
+
+    private static final int FOOTER_MAGIC = 0x434D5031;
+    private static final int FOOTER_FIXED_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final int FOOTER_ENTRY_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final int RECORD_FIXED_SIZE = Long.BYTES + Long.BYTES + Integer.BYTES;
+
+    /**
+     * Appended to the file path of a segment to get the path of its block index file
+     */
+    public static final String BLOCK_INDEX_PATH_SUFFIX = "_block_index";
+
+    private final FileSegment fileSegment;
+    // null if the block index is only rebuilt from the footers
+    private final FileSegment blockIndexSegment;
+    private final CompressionType compressionType;
+    private final Compressor compressor;
+    private final int compressionLevel;
+    private final int blockSize;
+
+    // null until loaded from the backend file
+    private volatile BlockIndex blockIndex;
+
+    // records of the chunks not yet in the block index file and its size, guarded by this
+    private final Deque<byte[]> pendingRecords = new ArrayDeque<>();
+    private long blockIndexPosition = 0L;
+    private boolean blockIndexFlushing = false;
+
+    public CompressedFileSegment(MessageStoreConfig storeConfig,
+        FileSegment fileSegment, CompressionType compressionType) {
+
+        this(storeConfig, fileSegment, null, compressionType);
+    }
+
+    public CompressedFileSegment(MessageStoreConfig storeConfig,
+        FileSegment fileSegment, FileSegment blockIndexSegment, CompressionType compressionType) {
+
+        super(storeConfig, fileSegment.getFileType(), fileSegment.filePath, fileSegment.getBaseOffset());
+        this.fileSegment = fileSegment;
+        this.blockIndexSegment = blockIndexSegment;
+        this.compressionType = compressionType;
+        this.compressor = CompressorFactory.getCompressor(compressionType);
+        this.compressionLevel = storeConfig.getTieredStoreCommitLogCompressionLevel();
+        this.blockSize = Math.max(1, storeConfig.getTieredStoreCommitLogCompressionBlockSize());
+    }
+
+    public FileSegment getFileSegment() {
+        return fileSegment;
+    }
+
+    public FileSegment getBlockIndexSegment() {
+        return blockIndexSegment;
+    }
+
+    @Override
+    public int getCompressionType() {
+        return compressionType.getValue();
+    }
+
+    /**
+     * @return the size of the compressed data in the backend file, or -1 if unknown
+     */
+    public long getStoredSize() {
+        BlockIndex index = this.getBlockIndex();
+        return index == null ? GET_FILE_SIZE_ERROR : index.storedSize;
+    }
+
+    @Override
+    public String getPath() {
+        return fileSegment.getPath();
+    }
+
+    /**
+     * Get the uncompressed size of all the complete chunks of the backend file
+     */
+    @Override
+    public long getSize() {
+        BlockIndex index = this.loadBlockIndex();
+        return index == null ? GET_FILE_SIZE_ERROR : index.size;
+    }
+
+    @Override
+    public boolean exists() {
+        return fileSegment.exists();
+    }
+
+    @Override
+    public void createFile() {
+        fileSegment.createFile();
+    }
+
+    @Override
+    public void destroyFile() {
+        this.close();
+        fileSegment.destroyFile();
+        if (blockIndexSegment != null) {
+            blockIndexSegment.destroyFile();
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        fileSegment.close();
+        if (blockIndexSegment != null) {
+            blockIndexSegment.close();
+        }
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> read0(long position, int length) {
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        BlockIndex index = this.getBlockIndex();
+        if (index == null) {
+            future.completeExceptionally(new TieredStoreException(
+                TieredStoreErrorCode.STORAGE_PROVIDER_ERROR, "CompressedFileSegment load block index failed"));
+            return future;
+        }
+        if (position < 0 || position >= index.size || length <= 0) {
+            future.completeExceptionally(new TieredStoreException(
+                TieredStoreErrorCode.ILLEGAL_PARAM, "CompressedFileSegment read position or length is illegal"));
+            return future;
+        }
+
+        int readLength = (int) Math.min(length, index.size - position);
+        int first = index.indexOf(position);
+        int last = index.indexOf(position + readLength - 1);
+        long storedPosition = index.storedPositions[first];
+        int storedLength = (int) (index.storedPositions[last] + index.storedLengths[last] - storedPosition);
+
+        return fileSegment.read0(storedPosition, storedLength).thenApply(buffer -> {
+            ByteBuffer result = ByteBuffer.allocate(readLength);
+            for (int i = first; i <= last; i++) {
+                ByteBuffer stored = buffer.duplicate();
+                stored.position(buffer.position() + (int) (index.storedPositions[i] - storedPosition));
+                stored.limit(stored.position() + index.storedLengths[i]);
+
+                int from = (int) Math.max(0L, position - index.positions[i]);
+                int to = (int) Math.min(index.lengths[i], position + readLength - index.positions[i]);
+                if (index.storedLengths[i] == index.lengths[i]) {
+                    stored.position(stored.position() + from);
+                    stored.limit(stored.position() + to - from);
+                    result.put(stored);
+                } else {
+                    byte[] block = this.decompress(stored);
+                    result.put(block, from, to - from);
+                }
+            }
+            result.flip();
+            return result;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> commit0(
+        FileSegmentInputStream inputStream, long position, int length, boolean append) {
+
+        BlockIndex index = this.getBlockIndex();
+        if (index == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        if (position != index.size) {
+            log.warn("CompressedFileSegment commit position not match, filePath={}, position={}, size={}",
+                filePath, position, index.size);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return CompletableFuture.supplyAsync(
+                () -> this.buildChunk(inputStream, position, length),
+                MessageStoreExecutor.getInstance().bufferCommitExecutor)
+            .thenCompose(chunk -> {
+                FileSegmentInputStream chunkStream = new FileSegmentInputStream(
+                    fileType, Collections.singletonList(ByteBuffer.wrap(chunk.data)), chunk.data.length);
+                return fileSegment.commitInParts(chunkStream, index.storedSize, chunk.data.length, append)
+                    .thenApply(success -> {
+                        if (success) {
+                            this.appendChunk(index, chunk);
+                        }
+                        return success;
+                    });
+            });
+    }
+
+    private BlockIndex getBlockIndex() {
+        BlockIndex index = this.blockIndex;
+        return index != null ? index : this.loadBlockIndex();
+    }
+
+    /**
+     * Adds the chunks written to the backend file since the index was last loaded, return null if failed
+     */
+    private synchronized BlockIndex loadBlockIndex() {
+        boolean recover = this.blockIndex == null;
+        BlockIndex index = recover ? BlockIndex.EMPTY : this.blockIndex;
+        long storedSize = fileSegment.getSize();
+        if (storedSize == GET_FILE_SIZE_ERROR) {
+            return null;
+        }
+        if (storedSize == index.storedSize) {
+            return this.blockIndex = index;
+        }
+        if (storedSize < index.storedSize) {
+            log.error("CompressedFileSegment backend file shrink, filePath={}, expect={}, actual={}",
+                filePath, index.storedSize, storedSize);
+            return null;
+        }
+
+        try {
+            if (recover && blockIndexSegment != null) {
+                this.pendingRecords.clear();
+                index = this.readBlockIndexFile(storedSize);
+            }
+            Deque<Chunk> chunkList = new ArrayDeque<>();
+            long end = storedSize;
+            while (end > index.storedSize) {
+                Chunk chunk = this.readChunkFooter(end, index.storedSize);
+                chunkList.addFirst(chunk);
+                end = chunk.storedPosition;
+            }
+            for (Chunk chunk : chunkList) {
+                if (chunk.position != index.size) {
+                    throw new IOException("chunk position " + chunk.position + " not match size " + index.size);
+                }
+                if (recover && blockIndexSegment != null) {
+                    this.pendingRecords.addLast(buildRecord(chunk, index.storedSize));
+                }
+                index = index.append(chunk);
+            }
+            this.blockIndex = index;
+            if (!chunkList.isEmpty() && recover) {
+                log.info("CompressedFileSegment recover chunks from footers, filePath={}, chunks={}",
+                    filePath, chunkList.size());
+                this.flushBlockIndex();
+            }
+            return index;
+        } catch (Exception e) {
+            log.error("CompressedFileSegment load block index failed, filePath={}, storedSize={}",
+                filePath, storedSize, e);
+            return null;
+        }
+    }
+
+    /**
+     * Read the block index file in one request and build the index of the chunks it records. Records which do not
+     * match the backend file end the index, and are overwritten by the records of the chunks read from the footers.
+     */
+    private BlockIndex readBlockIndexFile(long storedSize) {
+        blockIndexSegment.createFile();
+        long fileSize = blockIndexSegment.getSize();
+        this.blockIndexPosition = 0L;
+        if (fileSize <= 0L || fileSize > Integer.MAX_VALUE) {
+            return BlockIndex.EMPTY;
+        }
+
+        ByteBuffer buffer;
+        try {
+            buffer = blockIndexSegment.read0(0L, (int) fileSize).join();
+        } catch (Exception e) {
+            log.warn("CompressedFileSegment read block index failed, filePath={}, size={}", filePath, fileSize, e);
+            return BlockIndex.EMPTY;
+        }
+
+        BlockIndex index = BlockIndex.EMPTY;
+        int begin = buffer.position();
+        int valid = begin;
+        while (buffer.remaining() >= RECORD_FIXED_SIZE) {
+            long position = buffer.getLong();
+            long storedPosition = buffer.getLong();
+            int count = buffer.getInt();
+            if (position != index.size || storedPosition != index.storedSize
+                || count < 0 || (long) count * FOOTER_ENTRY_SIZE > buffer.remaining()) {
+                break;
+            }
+            int[] lengths = new int[count];
+            int[] storedLengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                lengths[i] = buffer.getInt();
+                storedLengths[i] = buffer.getInt();
+            }
+            BlockIndex next = index.append(new Chunk(position, storedPosition, lengths, storedLengths, null));
+            if (next.storedSize > storedSize) {
+                break;
+            }
+            index = next;
+            valid = buffer.position();
+        }
+        if (valid != buffer.limit()) {
+            log.warn("CompressedFileSegment block index has unmatched records, filePath={}, size={}, valid={}",
+                filePath, fileSize, valid - begin);
+        }
+        this.blockIndexPosition = valid - begin;
+        return index;
+    }
+
+    /**
+     * Append the pending records to the block index file, one write at a time
+     */
+    private synchronized void flushBlockIndex() {
+        if (blockIndexSegment == null || blockIndexFlushing || pendingRecords.isEmpty()) {
+            return;
+        }
+        int recordCount = pendingRecords.size();
+        int length = 0;
+        for (byte[] record : pendingRecords) {
+            length += record.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (byte[] record : pendingRecords) {
+            buffer.put(record);
+        }
+        buffer.flip();
+
+        long position = this.blockIndexPosition;
+        int writeLength = length;
+        this.blockIndexFlushing = true;
+        blockIndexSegment.createFile();
+        FileSegmentInputStream inputStream = new FileSegmentInputStream(
+            fileType, Collections.singletonList(buffer), writeLength);
+        blockIndexSegment.commit0(inputStream, position, writeLength, true)
+            .exceptionally(throwable -> false)
+            .thenAccept(success -> {
+                boolean flushAgain;
+                synchronized (this) {
+                    this.blockIndexFlushing = false;
+                    if (success) {
+                        this.blockIndexPosition = position + writeLength;
+                        for (int i = 0; i < recordCount; i++) {
+                            pendingRecords.pollFirst();
+                        }
+                    } else {
+                        // kept for the next commit, chunks still missing on recover are read from the footers
+                        log.warn("CompressedFileSegment write block index failed, filePath={}, position={}",
+                            filePath, position);
+                    }
+                    flushAgain = success && !pendingRecords.isEmpty();
+                }
+                if (flushAgain) {
+                    this.flushBlockIndex();
+                }
+            });
+    }
+
+    private static byte[] buildRecord(Chunk chunk, long storedPosition) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_FIXED_SIZE + chunk.lengths.length * FOOTER_ENTRY_SIZE);
+        buffer.putLong(chunk.position).putLong(storedPosition).putInt(chunk.lengths.length);
+        for (int i = 0; i < chunk.lengths.length; i++) {
+            buffer.putInt(chunk.lengths[i]).putInt(chunk.storedLengths[i]);
+        }
+        return buffer.array();
+    }
+
+    private Chunk readChunkFooter(long end, long begin) throws IOException {
+        if (end - begin < FOOTER_FIXED_SIZE) {
+            throw new IOException("incomplete chunk footer at " + end);
+        }
+        ByteBuffer fixed = fileSegment.read0(end - FOOTER_FIXED_SIZE, FOOTER_FIXED_SIZE).join();
+        long position = fixed.getLong();
+        int count = fixed.getInt();
+        if (fixed.getInt() != FOOTER_MAGIC || count < 0
+            || (long) count * FOOTER_ENTRY_SIZE > end - begin - FOOTER_FIXED_SIZE) {
+            throw new IOException("illegal chunk footer at " + end);
+        }
+
+        int[] lengths = new int[count];
+        int[] storedLengths = new int[count];
+        long storedSum = 0L;
+        if (count > 0) {
+            ByteBuffer entries = fileSegment.read0(
+                end - FOOTER_FIXED_SIZE - (long) count * FOOTER_ENTRY_SIZE, count * FOOTER_ENTRY_SIZE).join();
+            for (int i = 0; i < count; i++) {
+                lengths[i] = entries.getInt();
+                storedLengths[i] = entries.getInt();
+                storedSum += storedLengths[i];
+            }
+        }
+        long storedPosition = end - FOOTER_FIXED_SIZE - (long) count * FOOTER_ENTRY_SIZE - storedSum;
+        if (storedPosition < begin) {
+            throw new IOException("illegal chunk footer at " + end);
+        }
+        return new Chunk(position, storedPosition, lengths, storedLengths, null);
+    }
+
+    private synchronized void appendChunk(BlockIndex index, Chunk chunk) {
+        if (this.blockIndex == index) {
+            this.blockIndex = index.append(chunk);
+            if (blockIndexSegment != null) {
+                this.pendingRecords.addLast(buildRecord(chunk, index.storedSize));
+                this.flushBlockIndex();
+            }
+        } else {
+            // the index has been reloaded meanwhile, take the chunk from the backend file
+            this.loadBlockIndex();
+        }
+    }
+
+    private Chunk buildChunk(FileSegmentInputStream inputStream, long position, int length) {
+        try {
+            byte[] data = ByteStreams.toByteArray(inputStream);
+            if (data.length != length) {
+                throw new IOException("stream length " + data.length + " not match " + length);
+            }
+
+            int count = (length + blockSize - 1) / blockSize;
+            int[] lengths = new int[count];
+            int[] storedLengths = new int[count];
+            byte[][] blocks = new byte[count][];
+            int storedSum = 0;
+            for (int i = 0; i < count; i++) {
+                byte[] block = Arrays.copyOfRange(data, i * blockSize, Math.min(length, (i + 1) * blockSize));
+                byte[] compressed = compressor.compress(block, compressionLevel);
+                blocks[i] = compressed.length < block.length ? compressed : block;
+                lengths[i] = block.length;
+                storedLengths[i] = blocks[i].length;
+                storedSum += storedLengths[i];
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(storedSum + count * FOOTER_ENTRY_SIZE + FOOTER_FIXED_SIZE);
+            for (byte[] block : blocks) {
+                buffer.put(block);
+            }
+            for (int i = 0; i < count; i++) {
+                buffer.putInt(lengths[i]).putInt(storedLengths[i]);
+            }
+            buffer.putLong(position).putInt(count).putInt(FOOTER_MAGIC);
+            return new Chunk(position, -1L, lengths, storedLengths, buffer.array());
+        } catch (IOException e) {
+            throw new CompletionException(new TieredStoreException(TieredStoreErrorCode.IO_ERROR,
+                "CompressedFileSegment compress failed, filePath=" + filePath + ", " + e.getMessage()));
+        }
+    }
+
+    private byte[] decompress(ByteBuffer stored) {
+        byte[] src = new byte[stored.remaining()];
+        stored.get(src);
+        try {
+            return compressor.decompress(src);
+        } catch (IOException e) {
+            throw new CompletionException(new TieredStoreException(TieredStoreErrorCode.IO_ERROR,
+                "CompressedFileSegment decompress failed, filePath=" + filePath + ", " + e.getMessage()));
+        }
+    }
+
+    private static class Chunk {
+        private final long position;
+        private final long storedPosition;
+        private final int[] lengths;
+        private final int[] storedLengths;
+        private final byte[] data;
+
+        private Chunk(long position, long storedPosition, int[] lengths, int[] storedLengths, byte[] data) {
+            this.position = position;
+            this.storedPosition = storedPosition;
+            this.lengths = lengths;
+            this.storedLengths = storedLengths;
+            this.data = data;
+        }
+    }
+
+    /**
+     * An immutable view of the blocks, the arrays are shared with later views which only write past count
+     */
+    private static class BlockIndex {
+        private static final BlockIndex EMPTY = new BlockIndex(
+            new long[16], new int[16], new long[16], new int[16], 0, 0L, 0L);
+
+        private final long[] positions;
+        private final int[] lengths;
+        private final long[] storedPositions;
+        private final int[] storedLengths;
+        private final int count;
+        private final long size;
+        private final long storedSize;
+
+        private BlockIndex(long[] positions, int[] lengths, long[] storedPositions, int[] storedLengths,
+            int count, long size, long storedSize) {
+            this.positions = positions;
+            this.lengths = lengths;
+            this.storedPositions = storedPositions;
+            this.storedLengths = storedLengths;
+            this.count = count;
+            this.size = size;
+            this.storedSize = storedSize;
+        }
+
+        private BlockIndex append(Chunk chunk) {
+            int newCount = count + chunk.lengths.length;
+            long[] positions = this.positions;
+            int[] lengths = this.lengths;
+            long[] storedPositions = this.storedPositions;
+            int[] storedLengths = this.storedLengths;
+            if (this == EMPTY || newCount > positions.length) {
+                int capacity = Math.max(newCount, positions.length * 2);
+                positions = Arrays.copyOf(positions, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                storedPositions = Arrays.copyOf(storedPositions, capacity);
+                storedLengths = Arrays.copyOf(storedLengths, capacity);
+            }
+
+            long position = size;
+            long storedPosition = storedSize;
+            for (int i = 0; i < chunk.lengths.length; i++) {
+                positions[count + i] = position;
+                lengths[count + i] = chunk.lengths[i];
+                storedPositions[count + i] = storedPosition;
+                storedLengths[count + i] = chunk.storedLengths[i];
+                position += chunk.lengths[i];
+                storedPosition += chunk.storedLengths[i];
+            }
+            storedPosition += (long) chunk.lengths.length * FOOTER_ENTRY_SIZE + FOOTER_FIXED_SIZE;
+            return new BlockIndex(positions, lengths, storedPositions, storedLengths, newCount, position, storedPosition);
+        }
+
+        /**
+         * @return the block containing the position, which must be less than size
+         */
+        private int indexOf(long position) {
+            int low = 0;
+            int high = count - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (positions[mid] <= position) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+    }
+}
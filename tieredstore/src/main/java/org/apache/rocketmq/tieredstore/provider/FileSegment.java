@@ -27,12 +27,15 @@ import org.apache.rocketmq.tieredstore.common.AppendResult;
 import org.apache.rocketmq.tieredstore.common.FileSegmentType;
 import org.apache.rocketmq.tieredstore.exception.TieredStoreErrorCode;
 import org.apache.rocketmq.tieredstore.exception.TieredStoreException;
+import org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsManager;
 import org.apache.rocketmq.tieredstore.stream.FileSegmentInputStream;
 import org.apache.rocketmq.tieredstore.stream.FileSegmentInputStreamFactory;
 import org.apache.rocketmq.tieredstore.util.MessageStoreUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.LABEL_FILE_TYPE;
+
 public abstract class FileSegment implements Comparable<FileSegment>, FileSegmentProvider {
 
     private static final Logger log = LoggerFactory.getLogger(MessageStoreUtil.TIERED_STORE_LOGGER_NAME);
@@ -57,6 +60,8 @@ public abstract class FileSegment implements Comparable<FileSegment>, FileSegmen
     protected volatile List<ByteBuffer> bufferList = new ArrayList<>();
     protected volatile FileSegmentInputStream fileSegmentInputStream;
     protected volatile CompletableFuture<Boolean> flightCommitRequest;
+    protected volatile FileSegmentReadScheduler readScheduler;
+    protected volatile FileSegmentDiskCache diskCache;
 
     public FileSegment(MessageStoreConfig storeConfig,
         FileSegmentType fileType, String filePath, long baseOffset) {
@@ -85,6 +90,47 @@ public abstract class FileSegment implements Comparable<FileSegment>, FileSegmen
         } finally {
             fileLock.unlock();
         }
+        this.clearReadScheduler();
+    }
+
+    /**
+     * Schedule reads through a read scheduler bounded by the limiter of the backend service provider
+     */
+    public void initReadScheduler(FileSegmentReadLimiter readLimiter) {
+        this.readScheduler = new FileSegmentReadScheduler(this, storeConfig, readLimiter);
+    }
+
+    public FileSegmentReadScheduler getReadScheduler() {
+        return readScheduler;
+    }
+
+    /**
+     * Keep the blocks read from the backend in the local disk cache of the backend service provider
+     */
+    public void initDiskCache(FileSegmentDiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * Drop the blocks of this file segment from the local disk cache, called when the file is destroyed
+     */
+    public void evictDiskCache() {
+        FileSegmentDiskCache cache = this.diskCache;
+        if (cache != null) {
+            cache.evict(this);
+        }
+    }
+
+    protected CompletableFuture<ByteBuffer> readThroughCache(long position, int length) {
+        FileSegmentDiskCache cache = this.diskCache;
+        return cache != null ? cache.read(this, position, length) : this.read0(position, length);
+    }
+
+    private void clearReadScheduler() {
+        FileSegmentReadScheduler scheduler = this.readScheduler;
+        if (scheduler != null) {
+            scheduler.clear();
+        }
     }
 
     public long getCommitPosition() {
@@ -119,6 +165,13 @@ public abstract class FileSegment implements Comparable<FileSegment>, FileSegmen
         }
     }
 
+    /**
+     * @return 0 if the segment is stored as is, otherwise the value of the CompressionType of its blocks
+     */
+    public int getCompressionType() {
+        return CompressedFileSegment.NO_COMPRESSION;
+    }
+
     public long getMaxSize() {
         return maxSize;
     }
@@ -150,6 +203,7 @@ public abstract class FileSegment implements Comparable<FileSegment>, FileSegmen
         } finally {
             fileLock.unlock();
         }
+        this.clearReadScheduler();
     }
 
     protected List<ByteBuffer> borrowBuffer() {
@@ -252,11 +306,14 @@ public abstract class FileSegment implements Comparable<FileSegment>, FileSegmen
 
         boolean append = fileType != FileSegmentType.INDEX;
         return flightCommitRequest =
-            this.commit0(fileSegmentInputStream, commitPosition, bufferSize, append)
+            this.commitInParts(fileSegmentInputStream, commitPosition, bufferSize, append)
                 .thenApply(result -> {
                     if (result) {
                         commitPosition += bufferSize;
                         fileSegmentInputStream = null;
+                        TieredStoreMetricsManager.commitBytesTotal.add(bufferSize,
+                            TieredStoreMetricsManager.newAttributesBuilder()
+                                .put(LABEL_FILE_TYPE, fileType.name().toLowerCase()).build());
                         return true;
                     } else {
                         fileSegmentInputStream.rewind();
@@ -267,6 +324,21 @@ public abstract class FileSegment implements Comparable<FileSegment>, FileSegmen
                 .whenComplete((result, e) -> releaseCommitLock());
     }
 
+    /**
+     * Commit as a multipart upload if supported by the provider and the data is larger than one part
+     */
+    protected CompletableFuture<Boolean> commitInParts(
+        FileSegmentInputStream inputStream, long position, int length, boolean append) {
+
+        if (append && this instanceof MultipartFileSegmentProvider
+            && storeConfig.isTieredStoreCommitMultipartEnable()
+            && length > storeConfig.getTieredStoreCommitMultipartPartSize()) {
+            return new FileSegmentMultipartCommit(
+                this, (MultipartFileSegmentProvider) this, inputStream, position, length).commit();
+        }
+        return this.commit0(inputStream, position, length, append);
+    }
+
     private boolean handleCommitException(Throwable e) {
 
         log.warn("FileSegment commit exception, filePath={}", this.filePath, e);
@@ -313,6 +385,7 @@ public abstract class FileSegment implements Comparable<FileSegment>, FileSegmen
 
         long expectPosition = commitPosition + fileSegmentInputStream.getContentLength();
         commitPosition = fileSize;
+        this.clearReadScheduler();
         return expectPosition == fileSize;
     }
 
@@ -341,6 +414,7 @@ public abstract class FileSegment implements Comparable<FileSegment>, FileSegmen
                     "file: {}, request position: {}, commit position: {}, change length from {} to {}",
                 getPath(), position, commitPosition, length, readableBytes);
         }
-        return this.read0(position, length);
+        FileSegmentReadScheduler scheduler = this.readScheduler;
+        return scheduler != null ? scheduler.read(position, length) : this.readThroughCache(position, length);
     }
 }
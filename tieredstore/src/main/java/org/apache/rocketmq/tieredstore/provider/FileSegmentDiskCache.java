@@ -0,0 +1,367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tieredstore.provider;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.tieredstore.MessageStoreConfig;
+import org.apache.rocketmq.tieredstore.MessageStoreExecutor;
+import org.apache.rocketmq.tieredstore.exception.TieredStoreErrorCode;
+import org.apache.rocketmq.tieredstore.exception.TieredStoreException;
+import org.apache.rocketmq.tieredstore.util.MessageStoreUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps blocks of file segments read from the backend in a local disk directory, shared by the file segments of
+ * one backend service provider, so that data read again, for example by several consumer groups replaying the
+ * same period, is read from the backend only once.
+ * <p>
+ * Only whole blocks below the commit position are cached, they never change since file segments are append only.
+ * Each block is a file written atomically under the path of its file segment, and the block table is rebuilt by
+ * scanning the directory on start, so the cache survives restarts. Blocks are evicted in least recently used
+ * order when the cache is larger than the max size.
+ */
+public class FileSegmentDiskCache {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageStoreUtil.TIERED_STORE_LOGGER_NAME);
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    // names of the file segment directories and of the blocks in them, see getBlockKey
+    private static final Pattern SEGMENT_NAME_PATTERN = Pattern.compile("([0-9a-f]{8})?\\d{20}");
+    private static final Pattern BLOCK_NAME_PATTERN = Pattern.compile("\\d{20}");
+
+    private final Path rootPath;
+    private final int blockSize;
+    private final long maxSize;
+
+    // relative path and size of the blocks cached, in access order
+    private final LinkedHashMap<String, Long> blockTable = new LinkedHashMap<>(1024, 0.75f, true);
+    private long cacheSize = 0L;
+
+    public FileSegmentDiskCache(MessageStoreConfig storeConfig) {
+        String path = StringUtils.isNotBlank(storeConfig.getTieredStoreDiskCachePath()) ?
+            storeConfig.getTieredStoreDiskCachePath() :
+            Paths.get(storeConfig.getStorePathRootDir(), "tieredcache").toString();
+        this.rootPath = Paths.get(path).toAbsolutePath();
+        this.blockSize = storeConfig.getTieredStoreDiskCacheBlockSize();
+        this.maxSize = storeConfig.getTieredStoreDiskCacheMaxSize();
+        this.load();
+    }
+
+    public synchronized long getCacheSize() {
+        return cacheSize;
+    }
+
+    public synchronized int getBlockCount() {
+        return blockTable.size();
+    }
+
+    /**
+     * Rebuild the block table from the directory, older blocks are evicted first. Only files named as blocks are
+     * touched, the directory may be shared with other files.
+     */
+    private synchronized void load() {
+        try {
+            Files.createDirectories(rootPath);
+            List<File> fileList;
+            try (Stream<Path> stream = Files.walk(rootPath)) {
+                fileList = stream.filter(Files::isRegularFile).map(Path::toFile).collect(Collectors.toList());
+            }
+            fileList.sort(Comparator.comparingLong(File::lastModified));
+            for (File file : fileList) {
+                String name = StringUtils.removeEnd(file.getName(), TEMP_FILE_SUFFIX);
+                if (!BLOCK_NAME_PATTERN.matcher(name).matches()
+                    || !SEGMENT_NAME_PATTERN.matcher(file.getParentFile().getName()).matches()) {
+                    continue;
+                }
+                if (file.getName().endsWith(TEMP_FILE_SUFFIX) || file.length() != blockSize) {
+                    Files.deleteIfExists(file.toPath());
+                    continue;
+                }
+                blockTable.put(rootPath.relativize(file.toPath()).toString(), file.length());
+                cacheSize += file.length();
+            }
+            this.evictOversize();
+            log.info("FileSegmentDiskCache load success, path={}, blockCount={}, cacheSize={}",
+                rootPath, blockTable.size(), cacheSize);
+        } catch (IOException e) {
+            log.error("FileSegmentDiskCache load failed, path={}", rootPath, e);
+        }
+    }
+
+    /**
+     * Read a range below the commit position of the file segment, the blocks not cached are read from the backend
+     * as a single read extended to whole blocks
+     */
+    public CompletableFuture<ByteBuffer> read(FileSegment fileSegment, long position, int length) {
+        long end = position + length;
+        long firstBlock = position / blockSize;
+        long lastBlock = (end - 1) / blockSize;
+        long firstMissBlock = -1L;
+        long lastMissBlock = -1L;
+        for (long block = firstBlock; block <= lastBlock; block++) {
+            if (!this.contains(this.getBlockKey(fileSegment, block))) {
+                firstMissBlock = firstMissBlock < 0 ? block : firstMissBlock;
+                lastMissBlock = block;
+            }
+        }
+
+        if (firstMissBlock < 0) {
+            // read the disk off the calling thread, which may be a netty or query thread
+            CompletableFuture<ByteBuffer> future;
+            try {
+                future = CompletableFuture.supplyAsync(
+                    () -> this.readCachedRange(fileSegment, position, length, firstBlock, lastBlock),
+                    MessageStoreExecutor.getInstance().bufferFetchExecutor);
+            } catch (RejectedExecutionException e) {
+                future = CompletableFuture.completedFuture(
+                    this.readCachedRange(fileSegment, position, length, firstBlock, lastBlock));
+            }
+            return future.thenCompose(result -> result != null ?
+                CompletableFuture.completedFuture(result) : fileSegment.read0(position, length));
+        }
+
+        // extend the read to whole blocks, unless beyond the commit position
+        long fetchBegin = firstMissBlock * blockSize;
+        long blockEnd = (lastMissBlock + 1) * blockSize;
+        long fetchEnd = blockEnd < end ?
+            blockEnd : Math.max(end, Math.min(blockEnd, fileSegment.getCommitPosition()));
+        long missBegin = firstMissBlock;
+        long missEnd = lastMissBlock;
+        return fileSegment.read0(fetchBegin, (int) (fetchEnd - fetchBegin)).thenCompose(buffer -> {
+            if (buffer.remaining() != fetchEnd - fetchBegin) {
+                throw new TieredStoreException(TieredStoreErrorCode.DOWNLOAD_LENGTH_NOT_CORRECT,
+                    "FileSegmentDiskCache read length not correct, expect=" + (fetchEnd - fetchBegin)
+                        + ", actual=" + buffer.remaining());
+            }
+            this.cacheBlocks(fileSegment, buffer, fetchBegin, missBegin, missEnd);
+            try {
+                ByteBuffer result = ByteBuffer.allocate(length);
+                this.readCachedBlocks(fileSegment, result, position, firstBlock, missBegin - 1);
+                ByteBuffer fetched = buffer.duplicate();
+                fetched.position(buffer.position() + (int) (Math.max(position, fetchBegin) - fetchBegin));
+                fetched.limit(buffer.position() + (int) (Math.min(end, fetchEnd) - fetchBegin));
+                result.put(fetched);
+                this.readCachedBlocks(fileSegment, result, result.position() + position, missEnd + 1, lastBlock);
+                result.flip();
+                return CompletableFuture.completedFuture(result);
+            } catch (IOException e) {
+                log.warn("FileSegmentDiskCache read failed, filePath={}, position={}, length={}",
+                    fileSegment.getPath(), position, length, e);
+                return fileSegment.read0(position, length);
+            }
+        });
+    }
+
+    /**
+     * Drop the blocks of a file segment, called when the file segment is destroyed
+     */
+    public synchronized void evict(FileSegment fileSegment) {
+        String segmentKey = this.getSegmentKey(fileSegment);
+        Iterator<Map.Entry<String, Long>> iterator = blockTable.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (entry.getKey().startsWith(segmentKey + File.separator)) {
+                iterator.remove();
+                cacheSize -= entry.getValue();
+            }
+        }
+        UtilAll.deleteFile(rootPath.resolve(segmentKey).toFile());
+    }
+
+    protected synchronized boolean isCached(FileSegment fileSegment, long position) {
+        return blockTable.containsKey(this.getBlockKey(fileSegment, position / blockSize));
+    }
+
+    private synchronized boolean contains(String blockKey) {
+        return blockTable.get(blockKey) != null;
+    }
+
+    /**
+     * Read a range whose blocks are all cached
+     *
+     * @return null if a block fails to be read, the range has to be read from the backend then
+     */
+    private ByteBuffer readCachedRange(FileSegment fileSegment, long position, int length,
+        long firstBlock, long lastBlock) {
+
+        try {
+            ByteBuffer result = ByteBuffer.allocate(length);
+            this.readCachedBlocks(fileSegment, result, position, firstBlock, lastBlock);
+            result.flip();
+            return result;
+        } catch (IOException e) {
+            log.warn("FileSegmentDiskCache read failed, filePath={}, position={}, length={}",
+                fileSegment.getPath(), position, length, e);
+            return null;
+        }
+    }
+
+    /**
+     * Read the part of the range in the given blocks into the result, from the position of the result
+     */
+    private void readCachedBlocks(FileSegment fileSegment, ByteBuffer result,
+        long position, long firstBlock, long lastBlock) throws IOException {
+
+        long end = position - result.position() + result.capacity();
+        for (long block = firstBlock; block <= lastBlock; block++) {
+            long blockBegin = block * blockSize;
+            long readBegin = Math.max(position, blockBegin);
+            long readEnd = Math.min(end, blockBegin + blockSize);
+            ByteBuffer slice = result.duplicate();
+            slice.limit(slice.position() + (int) (readEnd - readBegin));
+            Path blockPath = rootPath.resolve(this.getBlockKey(fileSegment, block));
+            try (FileChannel channel = FileChannel.open(blockPath, StandardOpenOption.READ)) {
+                long filePosition = readBegin - blockBegin;
+                while (slice.hasRemaining()) {
+                    int count = channel.read(slice, filePosition);
+                    if (count < 0) {
+                        throw new IOException("block shorter than expected, path=" + blockPath);
+                    }
+                    filePosition += count;
+                }
+            } catch (IOException e) {
+                this.remove(this.getBlockKey(fileSegment, block));
+                throw e;
+            }
+            result.position(slice.position());
+            position = readEnd;
+        }
+    }
+
+    /**
+     * Write the whole blocks read from the backend to the cache in background
+     */
+    private void cacheBlocks(FileSegment fileSegment, ByteBuffer buffer,
+        long bufferPosition, long firstBlock, long lastBlock) {
+
+        List<Long> blockList = new ArrayList<>();
+        for (long block = firstBlock; block <= lastBlock; block++) {
+            if ((block + 1) * blockSize <= bufferPosition + buffer.remaining()) {
+                blockList.add(block);
+            }
+        }
+        if (blockList.isEmpty()) {
+            return;
+        }
+        ByteBuffer data = buffer.duplicate();
+        try {
+            MessageStoreExecutor.getInstance().bufferFetchExecutor.execute(() -> {
+                for (long block : blockList) {
+                    ByteBuffer blockBuffer = data.duplicate();
+                    blockBuffer.position(data.position() + (int) (block * blockSize - bufferPosition));
+                    blockBuffer.limit(blockBuffer.position() + blockSize);
+                    this.writeBlock(fileSegment, block, blockBuffer);
+                }
+            });
+        } catch (Exception e) {
+            log.debug("FileSegmentDiskCache skip caching blocks, filePath={}", fileSegment.getPath(), e);
+        }
+    }
+
+    private void writeBlock(FileSegment fileSegment, long block, ByteBuffer buffer) {
+        String blockKey = this.getBlockKey(fileSegment, block);
+        if (this.contains(blockKey)) {
+            return;
+        }
+        Path blockPath = rootPath.resolve(blockKey);
+        Path tempPath = Paths.get(blockPath + TEMP_FILE_SUFFIX);
+        try {
+            Files.createDirectories(blockPath.getParent());
+            try (FileChannel channel = FileChannel.open(tempPath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            synchronized (this) {
+                // the file segment may be destroyed and its blocks evicted meanwhile
+                if (fileSegment.isClosed() || blockTable.containsKey(blockKey)) {
+                    Files.deleteIfExists(tempPath);
+                    return;
+                }
+                Files.move(tempPath, blockPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                blockTable.put(blockKey, (long) blockSize);
+                cacheSize += blockSize;
+                this.evictOversize();
+            }
+        } catch (Exception e) {
+            log.warn("FileSegmentDiskCache write block failed, path={}", blockPath, e);
+            try {
+                Files.deleteIfExists(tempPath);
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private synchronized void remove(String blockKey) {
+        Long size = blockTable.remove(blockKey);
+        if (size != null) {
+            cacheSize -= size;
+        }
+        try {
+            Files.deleteIfExists(rootPath.resolve(blockKey));
+        } catch (IOException e) {
+            log.warn("FileSegmentDiskCache delete block failed, path={}", blockKey, e);
+        }
+    }
+
+    private synchronized void evictOversize() {
+        Iterator<Map.Entry<String, Long>> iterator = blockTable.entrySet().iterator();
+        while (cacheSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            iterator.remove();
+            cacheSize -= entry.getValue();
+            try {
+                Files.deleteIfExists(rootPath.resolve(entry.getKey()));
+            } catch (IOException e) {
+                log.warn("FileSegmentDiskCache delete block failed, path={}", entry.getKey(), e);
+            }
+        }
+    }
+
+    private String getSegmentKey(FileSegment fileSegment) {
+        return Paths.get(fileSegment.filePath, fileSegment.getFileType().toString(),
+            MessageStoreUtil.offset2FileName(fileSegment.getBaseOffset())).toString();
+    }
+
+    private String getBlockKey(FileSegment fileSegment, long block) {
+        return Paths.get(this.getSegmentKey(fileSegment), String.format("%020d", block * blockSize)).toString();
+    }
+}
@@ -18,6 +18,7 @@
 package org.apache.rocketmq.tieredstore.provider;
 
 import java.lang.reflect.Constructor;
+import org.apache.rocketmq.common.compression.CompressionType;
 import org.apache.rocketmq.tieredstore.MessageStoreConfig;
 import org.apache.rocketmq.tieredstore.common.FileSegmentType;
 import org.apache.rocketmq.tieredstore.metadata.MetadataStore;
@@ -27,6 +28,8 @@ public class FileSegmentFactory {
     private final MetadataStore metadataStore;
     private final MessageStoreConfig storeConfig;
     private final Constructor<? extends FileSegment> fileSegmentConstructor;
+    private final FileSegmentReadLimiter readLimiter;
+    private final FileSegmentDiskCache diskCache;
 
     public FileSegmentFactory(MetadataStore metadataStore, MessageStoreConfig storeConfig) {
         try {
@@ -36,6 +39,8 @@ public class FileSegmentFactory {
                 Class.forName(storeConfig.getTieredBackendServiceProvider()).asSubclass(FileSegment.class);
             fileSegmentConstructor = clazz.getConstructor(
                 MessageStoreConfig.class, FileSegmentType.class, String.class, Long.TYPE);
+            readLimiter = new FileSegmentReadLimiter(storeConfig.getTieredStoreReadMaxInflightSize());
+            diskCache = storeConfig.isTieredStoreDiskCacheEnable() ? new FileSegmentDiskCache(storeConfig) : null;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -49,12 +54,56 @@ public class FileSegmentFactory {
         return storeConfig;
     }
 
+    public FileSegmentReadLimiter getReadLimiter() {
+        return readLimiter;
+    }
+
+    public FileSegmentDiskCache getDiskCache() {
+        return diskCache;
+    }
+
     public FileSegment createSegment(FileSegmentType fileType, String filePath, long baseOffset) {
+        return this.createSegment(fileType, filePath, baseOffset, this.getCompressionType(fileType));
+    }
+
+    /**
+     * Create a file segment stored with the given compression, as recorded in its metadata
+     */
+    public FileSegment createSegment(FileSegmentType fileType, String filePath, long baseOffset, int compressionType) {
+        FileSegment fileSegment;
         try {
-            return fileSegmentConstructor.newInstance(this.storeConfig, fileType, filePath, baseOffset);
+            fileSegment = fileSegmentConstructor.newInstance(this.storeConfig, fileType, filePath, baseOffset);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+        if (compressionType != CompressedFileSegment.NO_COMPRESSION) {
+            FileSegment blockIndexSegment;
+            try {
+                blockIndexSegment = fileSegmentConstructor.newInstance(this.storeConfig, fileType,
+                    filePath + CompressedFileSegment.BLOCK_INDEX_PATH_SUFFIX, baseOffset);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            fileSegment = new CompressedFileSegment(this.storeConfig,
+                fileSegment, blockIndexSegment, CompressionType.findByValue(compressionType));
+        }
+        // index files are rewritten in place, so reads of them are never shared nor cached
+        if (this.storeConfig.isTieredStoreReadSchedulerEnable() && fileType != FileSegmentType.INDEX) {
+            fileSegment.initReadScheduler(this.readLimiter);
+        }
+        if (this.diskCache != null && fileType != FileSegmentType.INDEX) {
+            fileSegment.initDiskCache(this.diskCache);
+        }
+        return fileSegment;
+    }
+
+    private int getCompressionType(FileSegmentType fileType) {
+        String compressionType = this.storeConfig.getTieredStoreCommitLogCompressionType();
+        if (fileType != FileSegmentType.COMMIT_LOG || compressionType == null
+            || compressionType.trim().isEmpty() || "NONE".equalsIgnoreCase(compressionType.trim())) {
+            return CompressedFileSegment.NO_COMPRESSION;
+        }
+        return CompressionType.of(compressionType).getValue();
     }
 
     public FileSegment createCommitLogFileSegment(String filePath, long baseOffset) {
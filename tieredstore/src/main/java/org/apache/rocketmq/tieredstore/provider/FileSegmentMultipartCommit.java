@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tieredstore.provider;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.io.ByteStreams;
+import io.opentelemetry.api.common.AttributesBuilder;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.tieredstore.MessageStoreConfig;
+import org.apache.rocketmq.tieredstore.MessageStoreExecutor;
+import org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsManager;
+import org.apache.rocketmq.tieredstore.stream.FileSegmentInputStream;
+import org.apache.rocketmq.tieredstore.util.MessageStoreUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.LABEL_FILE_TYPE;
+import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant.LABEL_SUCCESS;
+
+/**
+ * One commit of a file segment uploaded as a multipart upload.
+ * <p>
+ * The stream is split into parts read in order, at most the configured number of parts are uploaded at the same
+ * time and a part failed is retried with backoff. The parts are appended to the file once all of them are
+ * uploaded, otherwise they are discarded and the commit fails as a whole, so that the file never has a gap.
+ */
+public class FileSegmentMultipartCommit {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageStoreUtil.TIERED_STORE_LOGGER_NAME);
+
+    private static final long RETRY_BACKOFF_MILLIS = 100L;
+
+    private final FileSegment fileSegment;
+    private final MultipartFileSegmentProvider provider;
+    private final FileSegmentInputStream inputStream;
+    private final long position;
+    private final int length;
+    private final int partSize;
+    private final int concurrency;
+    private final int retryTimes;
+    private final String[] partTags;
+    private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+    private volatile String uploadId;
+    private int nextPartNumber = 0;
+    private int uploadedCount = 0;
+    private int inflightCount = 0;
+    private boolean failed = false;
+
+    public FileSegmentMultipartCommit(FileSegment fileSegment, MultipartFileSegmentProvider provider,
+        FileSegmentInputStream inputStream, long position, int length) {
+
+        MessageStoreConfig storeConfig = fileSegment.storeConfig;
+        this.fileSegment = fileSegment;
+        this.provider = provider;
+        this.inputStream = inputStream;
+        this.position = position;
+        this.length = length;
+        this.partSize = storeConfig.getTieredStoreCommitMultipartPartSize();
+        this.concurrency = Math.max(1, storeConfig.getTieredStoreCommitMultipartConcurrency());
+        this.retryTimes = storeConfig.getTieredStoreCommitMultipartRetryTimes();
+        this.partTags = new String[(int) ((length + (long) partSize - 1) / partSize)];
+    }
+
+    public CompletableFuture<Boolean> commit() {
+        CompletableFuture<String> initFuture;
+        try {
+            initFuture = provider.initMultipart0(position);
+        } catch (Throwable e) {
+            initFuture = new CompletableFuture<>();
+            initFuture.completeExceptionally(e);
+        }
+        initFuture.whenComplete((id, throwable) -> {
+            if (throwable != null || id == null) {
+                log.warn("FileSegmentMultipartCommit init failed, filePath={}, position={}, length={}",
+                    fileSegment.getPath(), position, length, throwable);
+                future.complete(false);
+                return;
+            }
+            this.uploadId = id;
+            for (int i = 0; i < Math.min(concurrency, partTags.length); i++) {
+                this.uploadNextPart();
+            }
+        });
+        return future;
+    }
+
+    private void uploadNextPart() {
+        int partNumber;
+        ByteBuffer buffer;
+        synchronized (this) {
+            if (failed || nextPartNumber >= partTags.length) {
+                return;
+            }
+            partNumber = nextPartNumber++;
+            byte[] data = new byte[(int) Math.min(partSize, length - (long) partNumber * partSize)];
+            try {
+                ByteStreams.readFully(inputStream, data);
+                buffer = ByteBuffer.wrap(data);
+                inflightCount++;
+            } catch (Exception e) {
+                log.warn("FileSegmentMultipartCommit read part failed, filePath={}, position={}, part={}",
+                    fileSegment.getPath(), position, partNumber, e);
+                buffer = null;
+            }
+        }
+        if (buffer != null) {
+            this.uploadPart(partNumber, buffer, 0);
+        } else {
+            this.fail();
+        }
+    }
+
+    private void uploadPart(int partNumber, ByteBuffer buffer, int retry) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        CompletableFuture<String> partFuture;
+        try {
+            partFuture = provider.uploadPart0(uploadId, partNumber, buffer.duplicate());
+        } catch (Throwable e) {
+            partFuture = new CompletableFuture<>();
+            partFuture.completeExceptionally(e);
+        }
+        partFuture.whenComplete((tag, throwable) -> {
+            boolean success = throwable == null && tag != null;
+            TieredStoreMetricsManager.commitPartLatency.record(stopwatch.elapsed(TimeUnit.MILLISECONDS),
+                this.newAttributesBuilder().put(LABEL_SUCCESS, success).build());
+            if (success) {
+                partTags[partNumber] = tag;
+                this.finishPart(true);
+                this.uploadNextPart();
+                return;
+            }
+
+            log.warn("FileSegmentMultipartCommit upload part failed, filePath={}, position={}, part={}, retry={}",
+                fileSegment.getPath(), position, partNumber, retry, throwable);
+            if (retry < retryTimes && !this.isFailed()) {
+                TieredStoreMetricsManager.commitPartRetryTotal.add(1, this.newAttributesBuilder().build());
+                MessageStoreExecutor.getInstance().commonExecutor.schedule(
+                    () -> this.uploadPart(partNumber, buffer, retry + 1),
+                    RETRY_BACKOFF_MILLIS * (retry + 1), TimeUnit.MILLISECONDS);
+            } else {
+                this.finishPart(false);
+            }
+        });
+    }
+
+    private void finishPart(boolean success) {
+        boolean complete;
+        boolean abort;
+        synchronized (this) {
+            inflightCount--;
+            if (success) {
+                uploadedCount++;
+            } else {
+                failed = true;
+            }
+            complete = !failed && uploadedCount == partTags.length;
+            abort = failed && inflightCount == 0;
+        }
+        if (complete) {
+            this.completeUpload();
+        } else if (abort) {
+            this.abort();
+        }
+    }
+
+    private synchronized boolean isFailed() {
+        return failed;
+    }
+
+    private void fail() {
+        boolean abort;
+        synchronized (this) {
+            failed = true;
+            abort = inflightCount == 0;
+        }
+        if (abort) {
+            this.abort();
+        }
+    }
+
+    private void completeUpload() {
+        CompletableFuture<Boolean> completeFuture;
+        try {
+            completeFuture = provider.completeMultipart0(uploadId, position, length, Arrays.asList(partTags));
+        } catch (Throwable e) {
+            completeFuture = new CompletableFuture<>();
+            completeFuture.completeExceptionally(e);
+        }
+        completeFuture.whenComplete((result, throwable) -> {
+            if (throwable == null && Boolean.TRUE.equals(result)) {
+                future.complete(true);
+                return;
+            }
+            log.warn("FileSegmentMultipartCommit complete failed, filePath={}, position={}, length={}",
+                fileSegment.getPath(), position, length, throwable);
+            this.abort();
+        });
+    }
+
+    private void abort() {
+        try {
+            provider.abortMultipart0(uploadId);
+        } catch (Throwable e) {
+            log.warn("FileSegmentMultipartCommit abort failed, filePath={}, uploadId={}",
+                fileSegment.getPath(), uploadId, e);
+        }
+        future.complete(false);
+    }
+
+    private AttributesBuilder newAttributesBuilder() {
+        return TieredStoreMetricsManager.newAttributesBuilder()
+            .put(LABEL_FILE_TYPE, fileSegment.getFileType().name().toLowerCase());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tieredstore.provider;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the bytes read from one backend service provider, shared by the read schedulers of its file segments.
+ * <p>
+ * Reads in flight are bounded, and a scheduler which has to wait is dispatched again when bytes are released.
+ * Prefetched data held by the schedulers is bounded separately, prefetch is skipped when the bound is reached.
+ */
+public class FileSegmentReadLimiter {
+
+    private final long maxInflightBytes;
+    private final AtomicLong inflightBytes = new AtomicLong();
+    private final AtomicLong prefetchBytes = new AtomicLong();
+    private final Queue<FileSegmentReadScheduler> waitingQueue = new ConcurrentLinkedQueue<>();
+    private final Set<FileSegmentReadScheduler> prefetchHolders = ConcurrentHashMap.newKeySet();
+
+    public FileSegmentReadLimiter(long maxInflightBytes) {
+        this.maxInflightBytes = maxInflightBytes;
+    }
+
+    public long getInflightBytes() {
+        return inflightBytes.get();
+    }
+
+    public long getPrefetchBytes() {
+        return prefetchBytes.get();
+    }
+
+    /**
+     * A read larger than the bound is still allowed when nothing else is in flight
+     */
+    protected boolean tryAcquire(long bytes) {
+        while (true) {
+            long current = inflightBytes.get();
+            if (current > 0 && current + bytes > maxInflightBytes) {
+                return false;
+            }
+            if (inflightBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    protected void release(long bytes) {
+        inflightBytes.addAndGet(-bytes);
+        FileSegmentReadScheduler scheduler;
+        while ((scheduler = waitingQueue.poll()) != null) {
+            scheduler.dispatch();
+        }
+    }
+
+    protected void await(FileSegmentReadScheduler scheduler) {
+        waitingQueue.offer(scheduler);
+    }
+
+    protected boolean tryAcquirePrefetch(FileSegmentReadScheduler scheduler, long bytes) {
+        if (prefetchBytes.get() + bytes > maxInflightBytes) {
+            // make room from prefetched data nobody has read for a while
+            prefetchHolders.forEach(FileSegmentReadScheduler::evictExpired);
+        }
+        while (true) {
+            long current = prefetchBytes.get();
+            if (current + bytes > maxInflightBytes) {
+                return false;
+            }
+            if (prefetchBytes.compareAndSet(current, current + bytes)) {
+                prefetchHolders.add(scheduler);
+                return true;
+            }
+        }
+    }
+
+    protected void releasePrefetch(FileSegmentReadScheduler scheduler, long bytes, boolean holding) {
+        prefetchBytes.addAndGet(-bytes);
+        if (!holding) {
+            prefetchHolders.remove(scheduler);
+        }
+    }
+}
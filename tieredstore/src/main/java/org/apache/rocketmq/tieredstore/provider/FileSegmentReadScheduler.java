@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tieredstore.provider;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.rocketmq.tieredstore.MessageStoreConfig;
+import org.apache.rocketmq.tieredstore.exception.TieredStoreErrorCode;
+import org.apache.rocketmq.tieredstore.exception.TieredStoreException;
+import org.apache.rocketmq.tieredstore.util.MessageStoreUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules the reads of one file segment to its backend service provider.
+ * <p>
+ * A read covered by a range being read or prefetched is served from that range. Otherwise it waits in a pending
+ * list until the {@link FileSegmentReadLimiter} of the provider allows it, and is dispatched together with the
+ * pending reads overlapping or adjacent to it as a single ranged read, so that consumer groups reading the same
+ * queue share backend reads. Reads following each other are detected as sequential streams, and the next window
+ * of a stream is prefetched and kept until it expires.
+ */
+public class FileSegmentReadScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageStoreUtil.TIERED_STORE_LOGGER_NAME);
+
+    private static final int MAX_STREAM_NUM = 4;
+    private static final int SEQUENTIAL_READ_THRESHOLD = 2;
+    private static final int MAX_PREFETCH_RANGE_NUM = 8;
+
+    private final FileSegment fileSegment;
+    private final FileSegmentReadLimiter limiter;
+    private final int mergeMaxSize;
+    private final int prefetchSize;
+    private final long prefetchExpireMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<RangeRead> rangeList = new ArrayList<>();
+    private final List<ReadRequest> pendingList = new ArrayList<>();
+
+    // end, hit count and prefetch end of the sequential streams being tracked
+    private final long[] streamEnds = new long[MAX_STREAM_NUM];
+    private final int[] streamHits = new int[MAX_STREAM_NUM];
+    private final long[] streamPrefetchEnds = new long[MAX_STREAM_NUM];
+    private int nextStreamIndex = 0;
+
+    public FileSegmentReadScheduler(
+        FileSegment fileSegment, MessageStoreConfig storeConfig, FileSegmentReadLimiter limiter) {
+
+        this.fileSegment = fileSegment;
+        this.limiter = limiter;
+        this.mergeMaxSize = storeConfig.getTieredStoreReadMergeMaxSize();
+        this.prefetchSize = storeConfig.getTieredStoreReadPrefetchSize();
+        this.prefetchExpireMillis = storeConfig.getReadAheadCacheExpireDuration();
+        Arrays.fill(streamEnds, -1L);
+    }
+
+    /**
+     * Read a range which has been checked against the commit position of the file segment
+     */
+    public CompletableFuture<ByteBuffer> read(long position, int length) {
+        CompletableFuture<ByteBuffer> future;
+        lock.lock();
+        try {
+            RangeRead range = this.findRange(position, length);
+            if (range != null) {
+                future = range.future.thenApply(buffer -> slice(buffer, position - range.position, length));
+            } else {
+                ReadRequest request = new ReadRequest(position, length, false);
+                pendingList.add(request);
+                future = request.future;
+            }
+            this.detectSequential(position, length);
+        } finally {
+            lock.unlock();
+        }
+        this.dispatch();
+        return future;
+    }
+
+    /**
+     * Drop all the ranges read, called when the committed data of the file segment may change
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            Iterator<RangeRead> iterator = rangeList.iterator();
+            while (iterator.hasNext()) {
+                RangeRead range = iterator.next();
+                if (range.future.isDone()) {
+                    iterator.remove();
+                    this.releasePrefetch(range);
+                } else {
+                    range.dropped = true;
+                }
+            }
+            Arrays.fill(streamEnds, -1L);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called by the limiter while another scheduler holds its own lock, so a busy scheduler is skipped rather than
+     * waited for, two schedulers evicting each other would deadlock otherwise
+     */
+    protected void evictExpired() {
+        long expireTime = System.currentTimeMillis() - prefetchExpireMillis;
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            Iterator<RangeRead> iterator = rangeList.iterator();
+            while (iterator.hasNext()) {
+                RangeRead range = iterator.next();
+                if (range.prefetch && range.future.isDone() && range.completeTime < expireTime) {
+                    iterator.remove();
+                    this.releasePrefetch(range);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Dispatch the pending reads allowed by the limiter, merging overlapping and adjacent ones
+     */
+    protected void dispatch() {
+        List<RangeRead> dispatchList = new ArrayList<>();
+        lock.lock();
+        try {
+            pendingList.sort(Comparator.comparingLong(request -> request.position));
+            while (!pendingList.isEmpty()) {
+                ReadRequest first = pendingList.get(0);
+                long begin = first.position;
+                long end = first.end();
+                int count = 1;
+                while (count < pendingList.size()) {
+                    ReadRequest next = pendingList.get(count);
+                    if (next.position > end || Math.max(end, next.end()) - begin > mergeMaxSize) {
+                        break;
+                    }
+                    end = Math.max(end, next.end());
+                    count++;
+                }
+
+                int size = (int) (end - begin);
+                if (!limiter.tryAcquire(size)) {
+                    // check again after waiting in case the bytes were released meanwhile
+                    limiter.await(this);
+                    if (!limiter.tryAcquire(size)) {
+                        break;
+                    }
+                }
+
+                List<ReadRequest> requestList = new ArrayList<>(pendingList.subList(0, count));
+                pendingList.subList(0, count).clear();
+                boolean prefetch = requestList.stream().anyMatch(request -> request.prefetch);
+                RangeRead range = new RangeRead(begin, size, prefetch, requestList);
+                rangeList.add(range);
+                dispatchList.add(range);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (RangeRead range : dispatchList) {
+            CompletableFuture<ByteBuffer> future;
+            try {
+                future = fileSegment.readThroughCache(range.position, range.length);
+            } catch (Throwable e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            future.whenComplete((buffer, throwable) -> this.complete(range, buffer, throwable));
+        }
+    }
+
+    private void complete(RangeRead range, ByteBuffer buffer, Throwable throwable) {
+        if (throwable != null) {
+            log.warn("FileSegmentReadScheduler read failed, filePath={}, position={}, length={}",
+                fileSegment.getPath(), range.position, range.length, throwable);
+            range.requestList.forEach(request -> request.future.completeExceptionally(throwable));
+            range.future.completeExceptionally(throwable);
+        } else {
+            // readers may move the position of the buffers they get, so each one gets its own slice
+            ByteBuffer shared = buffer.duplicate();
+            for (ReadRequest request : range.requestList) {
+                if (request.prefetch) {
+                    continue;
+                }
+                try {
+                    request.future.complete(slice(shared, request.position - range.position, request.length));
+                } catch (Throwable e) {
+                    request.future.completeExceptionally(e);
+                }
+            }
+            range.completeTime = System.currentTimeMillis();
+            range.future.complete(shared);
+        }
+
+        lock.lock();
+        try {
+            if (throwable != null || !range.prefetch || range.dropped) {
+                if (rangeList.remove(range)) {
+                    this.releasePrefetch(range);
+                }
+            } else {
+                this.evictPrefetch();
+            }
+        } finally {
+            lock.unlock();
+        }
+        limiter.release(range.length);
+    }
+
+    private RangeRead findRange(long position, int length) {
+        long expireTime = System.currentTimeMillis() - prefetchExpireMillis;
+        RangeRead result = null;
+        Iterator<RangeRead> iterator = rangeList.iterator();
+        while (iterator.hasNext()) {
+            RangeRead range = iterator.next();
+            if (range.prefetch && range.future.isDone() && range.completeTime < expireTime) {
+                iterator.remove();
+                this.releasePrefetch(range);
+                continue;
+            }
+            if (result == null && !range.dropped && range.position <= position
+                && range.position + range.length >= position + length
+                && !range.future.isCompletedExceptionally()) {
+                result = range;
+            }
+        }
+        return result;
+    }
+
+    private void detectSequential(long position, int length) {
+        long end = position + length;
+        for (int i = 0; i < MAX_STREAM_NUM; i++) {
+            if (streamEnds[i] >= 0 && position <= streamEnds[i] && position >= streamEnds[i] - length) {
+                streamEnds[i] = Math.max(streamEnds[i], end);
+                if (++streamHits[i] >= SEQUENTIAL_READ_THRESHOLD) {
+                    this.prefetch(i);
+                }
+                return;
+            }
+        }
+        int index = nextStreamIndex;
+        nextStreamIndex = (nextStreamIndex + 1) % MAX_STREAM_NUM;
+        streamEnds[index] = end;
+        streamHits[index] = 0;
+        streamPrefetchEnds[index] = end;
+    }
+
+    /**
+     * Prefetch the next window of a stream when it has read half of the window prefetched before
+     */
+    private void prefetch(int index) {
+        if (prefetchSize <= 0) {
+            return;
+        }
+        long begin = Math.max(streamEnds[index], streamPrefetchEnds[index]);
+        long commitPosition = fileSegment.getCommitPosition();
+        if (begin - streamEnds[index] > prefetchSize / 2 || begin >= commitPosition) {
+            return;
+        }
+        int size = (int) Math.min(prefetchSize, commitPosition - begin);
+        if (!limiter.tryAcquirePrefetch(this, size)) {
+            return;
+        }
+        pendingList.add(new ReadRequest(begin, size, true));
+        streamPrefetchEnds[index] = begin + size;
+    }
+
+    private void evictPrefetch() {
+        int prefetchCount = 0;
+        for (RangeRead range : rangeList) {
+            if (range.prefetch) {
+                prefetchCount++;
+            }
+        }
+        Iterator<RangeRead> iterator = rangeList.iterator();
+        while (prefetchCount > MAX_PREFETCH_RANGE_NUM && iterator.hasNext()) {
+            RangeRead range = iterator.next();
+            if (range.prefetch && range.future.isDone()) {
+                iterator.remove();
+                this.releasePrefetch(range);
+                prefetchCount--;
+            }
+        }
+    }
+
+    private void releasePrefetch(RangeRead range) {
+        long bytes = range.prefetchBytes();
+        if (bytes > 0) {
+            boolean holding = rangeList.stream().anyMatch(r -> r.prefetch);
+            limiter.releasePrefetch(this, bytes, holding);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, long offset, int length) {
+        if (offset + length > buffer.remaining()) {
+            throw new TieredStoreException(TieredStoreErrorCode.DOWNLOAD_LENGTH_NOT_CORRECT,
+                "FileSegmentReadScheduler read length not correct, expect=" + (offset + length)
+                    + ", actual=" + buffer.remaining());
+        }
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(buffer.position() + (int) offset);
+        duplicate.limit(duplicate.position() + length);
+        return duplicate.slice();
+    }
+
+    private static class ReadRequest {
+        private final long position;
+        private final int length;
+        private final boolean prefetch;
+        private final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+
+        private ReadRequest(long position, int length, boolean prefetch) {
+            this.position = position;
+            this.length = length;
+            this.prefetch = prefetch;
+        }
+
+        private long end() {
+            return position + length;
+        }
+    }
+
+    private static class RangeRead {
+        private final long position;
+        private final int length;
+        private final boolean prefetch;
+        private final List<ReadRequest> requestList;
+        private final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        private volatile long completeTime;
+        private volatile boolean dropped;
+
+        private RangeRead(long position, int length, boolean prefetch, List<ReadRequest> requestList) {
+            this.position = position;
+            this.length = length;
+            this.prefetch = prefetch;
+            this.requestList = requestList;
+        }
+
+        private long prefetchBytes() {
+            long bytes = 0L;
+            for (ReadRequest request : requestList) {
+                if (request.prefetch) {
+                    bytes += request.length;
+                }
+            }
+            return bytes;
+        }
+    }
+}
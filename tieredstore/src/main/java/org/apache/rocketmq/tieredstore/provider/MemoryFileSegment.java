@@ -17,7 +17,10 @@
 package org.apache.rocketmq.tieredstore.provider;
 
 import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.rocketmq.tieredstore.MessageStoreConfig;
 import org.apache.rocketmq.tieredstore.common.FileSegmentType;
 import org.apache.rocketmq.tieredstore.stream.FileSegmentInputStream;
@@ -25,11 +28,12 @@ import org.apache.rocketmq.tieredstore.util.MessageStoreUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class MemoryFileSegment extends FileSegment {
+public class MemoryFileSegment extends FileSegment implements MultipartFileSegmentProvider {
 
     private static final Logger log = LoggerFactory.getLogger(MessageStoreUtil.TIERED_STORE_LOGGER_NAME);
 
     protected final ByteBuffer memStore;
+    protected final Map<String, ByteBuffer> partMap = new ConcurrentHashMap<>();
     protected CompletableFuture<Boolean> blocker;
     protected int size = 0;
     protected boolean checkSize = true;
@@ -109,4 +113,39 @@ public class MemoryFileSegment extends FileSegment {
     @Override
     public void destroyFile() {
     }
+
+    @Override
+    public CompletableFuture<String> initMultipart0(long position) {
+        return CompletableFuture.completedFuture(position + "-" + System.nanoTime());
+    }
+
+    @Override
+    public CompletableFuture<String> uploadPart0(String uploadId, int partNumber, ByteBuffer buffer) {
+        ByteBuffer part = ByteBuffer.allocate(buffer.remaining());
+        part.put(buffer);
+        part.flip();
+        String partTag = uploadId + "-" + partNumber;
+        partMap.put(partTag, part);
+        return CompletableFuture.completedFuture(partTag);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Boolean> completeMultipart0(
+        String uploadId, long position, int length, List<String> partTags) {
+
+        for (String partTag : partTags) {
+            ByteBuffer part = partMap.remove(partTag);
+            if (part == null) {
+                log.info("Complete multipart failed for Memory Test, part not found: {}", partTag);
+                return CompletableFuture.completedFuture(false);
+            }
+            memStore.put(part);
+        }
+        return CompletableFuture.completedFuture(true);
+    }
+
+    @Override
+    public void abortMultipart0(String uploadId) {
+        partMap.keySet().removeIf(partTag -> partTag.startsWith(uploadId + "-"));
+    }
 }
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tieredstore.provider;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Implemented by the file segments whose backend file system supports multipart upload, so that large commits
+ * are split into parts uploaded in parallel and appended to the file at once when all of them are uploaded.
+ */
+public interface MultipartFileSegmentProvider {
+
+    /**
+     * Start a multipart upload appending to the file
+     *
+     * @param position backend file position where the parts will be appended
+     * @return id of the upload
+     */
+    CompletableFuture<String> initMultipart0(long position);
+
+    /**
+     * Upload one part, parts may be uploaded at the same time and in any order
+     *
+     * @param uploadId   id of the upload
+     * @param partNumber index of the part, starting from 0
+     * @param buffer     data of the part
+     * @return tag identifying the part uploaded, null if failed
+     */
+    CompletableFuture<String> uploadPart0(String uploadId, int partNumber, ByteBuffer buffer);
+
+    /**
+     * Append all the parts uploaded to the file in order
+     *
+     * @param uploadId id of the upload
+     * @param position backend file position to append
+     * @param length   total size of the parts
+     * @param partTags tags of the parts, ordered by part number
+     * @return <code>true</code> if the parts are appended; <code>false</code> otherwise
+     */
+    CompletableFuture<Boolean> completeMultipart0(String uploadId, long position, int length, List<String> partTags);
+
+    /**
+     * Discard the parts uploaded, called when the upload fails and none of its parts is in flight
+     *
+     * @param uploadId id of the upload
+     */
+    void abortMultipart0(String uploadId);
+}
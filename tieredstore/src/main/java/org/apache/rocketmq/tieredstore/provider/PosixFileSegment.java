@@ -26,6 +26,7 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang3.StringUtils;
@@ -46,12 +47,15 @@ import static org.apache.rocketmq.tieredstore.metrics.TieredStoreMetricsConstant
 /**
  * this class is experimental and may change without notice.
  */
-public class PosixFileSegment extends FileSegment {
+public class PosixFileSegment extends FileSegment implements MultipartFileSegmentProvider {
 
     private static final Logger log = LoggerFactory.getLogger(MessageStoreUtil.TIERED_STORE_LOGGER_NAME);
 
     private static final String OPERATION_POSIX_READ = "read";
     private static final String OPERATION_POSIX_WRITE = "write";
+    private static final String OPERATION_POSIX_UPLOAD_PART = "upload_part";
+    private static final String OPERATION_POSIX_COMPLETE_MULTIPART = "complete_multipart";
+    private static final String PART_FILE_SUFFIX = ".part";
 
     private final String fullPath;
     private volatile File file;
@@ -232,4 +236,108 @@ public class PosixFileSegment extends FileSegment {
             return true;
         }, MessageStoreExecutor.getInstance().bufferCommitExecutor);
     }
+
+    /**
+     * Parts are written to files beside the segment file, and copied to the end of it on completion
+     */
+    @Override
+    public CompletableFuture<String> initMultipart0(long position) {
+        return CompletableFuture.completedFuture(
+            String.format("%s.%d.%d", file.getName(), position, System.nanoTime()));
+    }
+
+    @Override
+    public CompletableFuture<String> uploadPart0(String uploadId, int partNumber, ByteBuffer buffer) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        AttributesBuilder attributesBuilder = newAttributesBuilder()
+            .put(LABEL_OPERATION, OPERATION_POSIX_UPLOAD_PART);
+
+        return CompletableFuture.supplyAsync(() -> {
+            File partFile = new File(file.getParentFile(), uploadId + "." + partNumber + PART_FILE_SUFFIX);
+            int length = buffer.remaining();
+            try (FileChannel channel = new RandomAccessFile(partFile, "rw").getChannel()) {
+                channel.truncate(0L);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+                attributesBuilder.put(LABEL_SUCCESS, true);
+                long costTime = stopwatch.stop().elapsed(TimeUnit.MILLISECONDS);
+                TieredStoreMetricsManager.providerRpcLatency.record(costTime, attributesBuilder.build());
+
+                Attributes metricsAttributes = newAttributesBuilder()
+                    .put(LABEL_OPERATION, OPERATION_POSIX_UPLOAD_PART)
+                    .build();
+                TieredStoreMetricsManager.uploadBytes.record(length, metricsAttributes);
+            } catch (Exception e) {
+                long costTime = stopwatch.stop().elapsed(TimeUnit.MILLISECONDS);
+                attributesBuilder.put(LABEL_SUCCESS, false);
+                TieredStoreMetricsManager.providerRpcLatency.record(costTime, attributesBuilder.build());
+                log.warn("PosixFileSegment upload part failed, filePath: {}, part: {}", partFile, partNumber, e);
+                return null;
+            }
+            return partFile.getName();
+        }, MessageStoreExecutor.getInstance().bufferCommitExecutor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> completeMultipart0(
+        String uploadId, long position, int length, List<String> partTags) {
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        AttributesBuilder attributesBuilder = newAttributesBuilder()
+            .put(LABEL_OPERATION, OPERATION_POSIX_COMPLETE_MULTIPART);
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                long writePosition = position;
+                for (String partTag : partTags) {
+                    File partFile = new File(file.getParentFile(), partTag);
+                    try (FileChannel channel = new RandomAccessFile(partFile, "r").getChannel()) {
+                        long partSize = channel.size();
+                        long transferred = 0L;
+                        while (transferred < partSize) {
+                            long count = writeFileChannel.transferFrom(
+                                channel, writePosition + transferred, partSize - transferred);
+                            if (count <= 0) {
+                                throw new IOException("transfer part failed, part=" + partTag);
+                            }
+                            transferred += count;
+                        }
+                        writePosition += partSize;
+                    }
+                }
+                if (writePosition - position != length) {
+                    throw new IOException(String.format(
+                        "length of parts not correct, expect=%d, actual=%d", length, writePosition - position));
+                }
+                writeFileChannel.force(true);
+                attributesBuilder.put(LABEL_SUCCESS, true);
+                long costTime = stopwatch.stop().elapsed(TimeUnit.MILLISECONDS);
+                TieredStoreMetricsManager.providerRpcLatency.record(costTime, attributesBuilder.build());
+            } catch (Exception e) {
+                long costTime = stopwatch.stop().elapsed(TimeUnit.MILLISECONDS);
+                attributesBuilder.put(LABEL_SUCCESS, false);
+                TieredStoreMetricsManager.providerRpcLatency.record(costTime, attributesBuilder.build());
+                log.warn("PosixFileSegment complete multipart failed, filePath: {}", fullPath, e);
+                return false;
+            }
+            this.abortMultipart0(uploadId);
+            return true;
+        }, MessageStoreExecutor.getInstance().bufferCommitExecutor);
+    }
+
+    @Override
+    public void abortMultipart0(String uploadId) {
+        File[] partFiles = file.getParentFile().listFiles((dir, name) ->
+            name.startsWith(uploadId + ".") && name.endsWith(PART_FILE_SUFFIX));
+        if (partFiles == null) {
+            return;
+        }
+        for (File partFile : partFiles) {
+            if (!partFile.delete()) {
+                log.warn("PosixFileSegment delete part error, filePath: {}", partFile);
+            }
+        }
+    }
 }
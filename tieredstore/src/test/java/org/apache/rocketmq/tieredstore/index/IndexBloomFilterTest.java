@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tieredstore.index;
+
+import java.nio.ByteBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IndexBloomFilterTest {
+
+    @Test
+    public void mightContainTest() {
+        int keyCount = 10000;
+        IndexBloomFilter bloomFilter = new IndexBloomFilter(keyCount, 10);
+        for (int i = 0; i < keyCount; i++) {
+            bloomFilter.put(("TopicTest#" + i).hashCode());
+        }
+        for (int i = 0; i < keyCount; i++) {
+            Assert.assertTrue(bloomFilter.mightContain(("TopicTest#" + i).hashCode()));
+        }
+
+        // about 1% false positive with 10 bits per key
+        int falsePositive = 0;
+        for (int i = keyCount; i < keyCount * 2; i++) {
+            if (bloomFilter.mightContain(("TopicTest#" + i).hashCode())) {
+                falsePositive++;
+            }
+        }
+        Assert.assertTrue(falsePositive < keyCount * 3 / 100);
+    }
+
+    @Test
+    public void serializeTest() {
+        IndexBloomFilter bloomFilter = new IndexBloomFilter(100, 10);
+        for (int i = 0; i < 100; i++) {
+            bloomFilter.put(i);
+        }
+
+        ByteBuffer byteBuffer = ByteBuffer.allocate(bloomFilter.getByteSize());
+        bloomFilter.writeTo(byteBuffer);
+        Assert.assertFalse(byteBuffer.hasRemaining());
+        byteBuffer.flip();
+
+        IndexBloomFilter recovered = IndexBloomFilter.readFrom(byteBuffer);
+        Assert.assertEquals(bloomFilter.getByteSize(), recovered.getByteSize());
+        for (int i = 0; i < 200; i++) {
+            Assert.assertEquals(bloomFilter.mightContain(i), recovered.mightContain(i));
+        }
+
+        ByteBuffer errorBuffer = ByteBuffer.allocate(Integer.BYTES * 2);
+        errorBuffer.putInt(0).putInt(1).flip();
+        Assert.assertThrows(IllegalArgumentException.class, () -> IndexBloomFilter.readFrom(errorBuffer));
+    }
+}
@@ -27,6 +27,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.tieredstore.MessageStoreConfig;
 import org.apache.rocketmq.tieredstore.common.AppendResult;
@@ -274,4 +275,204 @@ public class IndexStoreFileTest {
             TOPIC_NAME + "1", KEY, 64, timestamp, System.currentTimeMillis()).get();
         Assert.assertEquals(3, itemList.size());
     }
+
+    @Test
+    public void queryAsyncFromSegmentFileTimeRangeTest() throws Exception {
+        indexStoreFile.shutdown();
+        indexStoreFile.destroy();
+        long timestamp = System.currentTimeMillis();
+        indexStoreFile = new IndexStoreFile(storeConfig, timestamp);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(AppendResult.SUCCESS, indexStoreFile.putKey(TOPIC_NAME, TOPIC_ID, QUEUE_ID,
+                KEY_SET, MESSAGE_OFFSET + i, MESSAGE_SIZE, timestamp + TimeUnit.SECONDS.toMillis(i * 10L)));
+        }
+
+        ByteBuffer byteBuffer = indexStoreFile.doCompaction();
+        FileSegment fileSegment = new PosixFileSegment(
+            storeConfig, FileSegmentType.INDEX, filePath, 0L);
+        fileSegment.append(byteBuffer, timestamp);
+        fileSegment.commitAsync().join();
+        indexStoreFile.destroy();
+        indexStoreFile = new IndexStoreFile(storeConfig, fileSegment);
+
+        // the time diff of items is in seconds, items out of the time range are filtered
+        List<IndexItem> itemList = indexStoreFile.queryAsync(TOPIC_NAME, KEY, 64,
+            timestamp + TimeUnit.SECONDS.toMillis(5), timestamp + TimeUnit.SECONDS.toMillis(15)).get();
+        Assert.assertEquals(1, itemList.size());
+        Assert.assertEquals(MESSAGE_OFFSET + 1, itemList.get(0).getOffset());
+
+        itemList = indexStoreFile.queryAsync(TOPIC_NAME, KEY, 64,
+            timestamp + TimeUnit.SECONDS.toMillis(10), timestamp + TimeUnit.SECONDS.toMillis(20)).get();
+        Assert.assertEquals(2, itemList.size());
+
+        itemList = indexStoreFile.queryAsync(TOPIC_NAME, KEY, 64,
+            timestamp + TimeUnit.SECONDS.toMillis(21), timestamp + TimeUnit.SECONDS.toMillis(30)).get();
+        Assert.assertEquals(0, itemList.size());
+    }
+
+    @Test
+    public void queryAsyncFromSortedRunTest() throws Exception {
+        storeConfig.setTieredStoreIndexSortedRunEnable(true);
+        storeConfig.setTieredStoreIndexFileMaxIndexNum(400);
+        storeConfig.setTieredStoreIndexSortedRunBlockItemCount(8);
+        indexStoreFile.shutdown();
+        indexStoreFile.destroy();
+        long timestamp = System.currentTimeMillis();
+        indexStoreFile = new IndexStoreFile(storeConfig, timestamp);
+
+        int keyCount = 100;
+        for (int i = 0; i < keyCount; i++) {
+            for (int j = 0; j < 3; j++) {
+                Assert.assertEquals(AppendResult.SUCCESS, indexStoreFile.putKey(TOPIC_NAME, TOPIC_ID, QUEUE_ID,
+                    Collections.singleton(KEY + i), MESSAGE_OFFSET + i * 3 + j, MESSAGE_SIZE, System.currentTimeMillis()));
+            }
+        }
+
+        // items are sorted by hash slot and hash code
+        ByteBuffer byteBuffer = indexStoreFile.doCompaction();
+        Assert.assertEquals(IndexStoreFile.SORTED_RUN_MAGIC_CODE, byteBuffer.getInt(IndexStoreFile.INDEX_MAGIC_CODE));
+        Assert.assertEquals(keyCount * 3, byteBuffer.getInt(IndexStoreFile.INDEX_ITEM_INDEX));
+        long lastKey = Long.MIN_VALUE;
+        for (int i = 0; i < keyCount * 3; i++) {
+            int hashCode = byteBuffer.getInt(IndexSortedRun.getItemPosition(i));
+            long sortKey = IndexSortedRun.sortKey(hashCode, storeConfig.getTieredStoreIndexFileMaxHashSlotNum());
+            Assert.assertTrue(lastKey <= sortKey);
+            lastKey = sortKey;
+        }
+
+        FileSegment fileSegment = new PosixFileSegment(
+            storeConfig, FileSegmentType.INDEX, filePath, 0L);
+        fileSegment.append(byteBuffer, timestamp);
+        fileSegment.commitAsync().join();
+        Assert.assertEquals(byteBuffer.limit(), fileSegment.getSize());
+        indexStoreFile.destroy();
+
+        indexStoreFile = new IndexStoreFile(storeConfig, fileSegment);
+        IndexSortedRun sortedRun = indexStoreFile.getSortedRunAsync().get();
+        Assert.assertNotNull(sortedRun);
+        Assert.assertEquals(keyCount * 3, sortedRun.getItemCount());
+        Assert.assertEquals((keyCount * 3 + 7) / 8, sortedRun.getBlockCount());
+
+        // only the blocks holding the key are read, the newest first
+        for (int i = 0; i < keyCount; i++) {
+            int[] blockRange = sortedRun.getBlockRange(
+                indexStoreFile.hashCode(indexStoreFile.buildKey(TOPIC_NAME, KEY + i)));
+            Assert.assertNotNull(blockRange);
+            Assert.assertTrue(blockRange[1] - blockRange[0] <= 1);
+            Assert.assertEquals(3 * IndexItem.COMPACT_INDEX_ITEM_SIZE, indexStoreFile.readItemsFromSortedRun(
+                sortedRun, indexStoreFile.hashCode(indexStoreFile.buildKey(TOPIC_NAME, KEY + i))).get().remaining());
+
+            List<IndexItem> itemList = indexStoreFile.queryAsync(
+                TOPIC_NAME, KEY + i, 2, timestamp, System.currentTimeMillis()).get();
+            Assert.assertEquals(2, itemList.size());
+            Assert.assertEquals(MESSAGE_OFFSET + i * 3 + 2, itemList.get(0).getOffset());
+            Assert.assertEquals(MESSAGE_OFFSET + i * 3 + 1, itemList.get(1).getOffset());
+        }
+
+        // keys not in the run are filtered by the bloom filter
+        int filteredCount = 0;
+        for (int i = keyCount; i < keyCount * 2; i++) {
+            if (sortedRun.getBlockRange(indexStoreFile.hashCode(indexStoreFile.buildKey(TOPIC_NAME, KEY + i))) == null) {
+                filteredCount++;
+            }
+            Assert.assertEquals(0, indexStoreFile.queryAsync(
+                TOPIC_NAME, KEY + i, 64, timestamp, System.currentTimeMillis()).get().size());
+        }
+        Assert.assertTrue(filteredCount > keyCount * 9 / 10);
+    }
+
+    @Test
+    public void queryAsyncHotKeyFromSortedRunTest() throws Exception {
+        storeConfig.setTieredStoreIndexSortedRunEnable(true);
+        storeConfig.setTieredStoreIndexFileMaxIndexNum(2000);
+        storeConfig.setTieredStoreIndexSortedRunBlockItemCount(8);
+        indexStoreFile.shutdown();
+        indexStoreFile.destroy();
+        long timestamp = System.currentTimeMillis();
+        indexStoreFile = new IndexStoreFile(storeConfig, timestamp);
+
+        int hotCount = 1200;
+        for (int i = 0; i < hotCount; i++) {
+            Assert.assertEquals(AppendResult.SUCCESS, indexStoreFile.putKey(TOPIC_NAME, TOPIC_ID, QUEUE_ID,
+                KEY_SET, MESSAGE_OFFSET + i, MESSAGE_SIZE, System.currentTimeMillis()));
+            if (i % 100 == 0) {
+                Assert.assertEquals(AppendResult.SUCCESS, indexStoreFile.putKey(TOPIC_NAME, TOPIC_ID, QUEUE_ID,
+                    Collections.singleton(KEY + i), MESSAGE_OFFSET + i, MESSAGE_SIZE, System.currentTimeMillis()));
+            }
+        }
+
+        ByteBuffer byteBuffer = indexStoreFile.doCompaction();
+        FileSegment fileSegment = new PosixFileSegment(
+            storeConfig, FileSegmentType.INDEX, filePath, 0L);
+        fileSegment.append(byteBuffer, timestamp);
+        fileSegment.commitAsync().join();
+        indexStoreFile.destroy();
+        indexStoreFile = new IndexStoreFile(storeConfig, fileSegment);
+
+        // all the items of a key are read however many blocks they take
+        List<IndexItem> itemList = indexStoreFile.queryAsync(
+            TOPIC_NAME, KEY, hotCount * 2, timestamp, System.currentTimeMillis()).get();
+        Assert.assertEquals(hotCount, itemList.size());
+        Assert.assertEquals(MESSAGE_OFFSET + hotCount - 1, itemList.get(0).getOffset());
+        Assert.assertEquals(MESSAGE_OFFSET, itemList.get(hotCount - 1).getOffset());
+
+        itemList = indexStoreFile.queryAsync(
+            TOPIC_NAME, KEY + 100, 64, timestamp, System.currentTimeMillis()).get();
+        Assert.assertEquals(1, itemList.size());
+        Assert.assertEquals(MESSAGE_OFFSET + 100, itemList.get(0).getOffset());
+    }
+
+    @Test
+    public void sortedRunMetadataSizeTest() throws Exception {
+        storeConfig.setTieredStoreIndexSortedRunEnable(true);
+        storeConfig.setTieredStoreIndexFileMaxIndexNum(4000);
+        indexStoreFile.shutdown();
+        indexStoreFile.destroy();
+        indexStoreFile = new IndexStoreFile(storeConfig, System.currentTimeMillis());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(AppendResult.SUCCESS, indexStoreFile.putKey(TOPIC_NAME, TOPIC_ID, QUEUE_ID,
+                Collections.singleton(KEY + i), MESSAGE_OFFSET + i, MESSAGE_SIZE, System.currentTimeMillis()));
+        }
+
+        // the bloom filter is sized by the items of the file, not by the max item count
+        ByteBuffer byteBuffer = indexStoreFile.doCompaction();
+        IndexBloomFilter bloomFilter = new IndexBloomFilter(3, storeConfig.getTieredStoreIndexBloomFilterBitsPerKey());
+        Assert.assertEquals(IndexSortedRun.getMetadataPosition(3) + IndexSortedRun.getMetadataSize(1, bloomFilter),
+            byteBuffer.limit());
+        Assert.assertEquals(byteBuffer.limit(), byteBuffer.capacity());
+    }
+
+    @Test
+    public void queryAsyncFromHashSlotSegmentFileTest() throws Exception {
+        storeConfig.setTieredStoreIndexSortedRunEnable(false);
+        indexStoreFile.shutdown();
+        indexStoreFile.destroy();
+        long timestamp = System.currentTimeMillis();
+        indexStoreFile = new IndexStoreFile(storeConfig, timestamp);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 3; j++) {
+                Assert.assertEquals(AppendResult.SUCCESS, indexStoreFile.putKey(TOPIC_NAME + i,
+                    TOPIC_ID, QUEUE_ID, KEY_SET, MESSAGE_OFFSET, MESSAGE_SIZE, System.currentTimeMillis()));
+            }
+        }
+
+        // files uploaded in hash slot format are still readable
+        ByteBuffer byteBuffer = indexStoreFile.doCompaction();
+        Assert.assertEquals(IndexStoreFile.END_MAGIC_CODE, byteBuffer.getInt(IndexStoreFile.INDEX_MAGIC_CODE));
+        FileSegment fileSegment = new PosixFileSegment(
+            storeConfig, FileSegmentType.INDEX, filePath, 0L);
+        fileSegment.append(byteBuffer, timestamp);
+        fileSegment.commitAsync().join();
+        indexStoreFile.destroy();
+
+        storeConfig.setTieredStoreIndexSortedRunEnable(true);
+        indexStoreFile = new IndexStoreFile(storeConfig, fileSegment);
+        Assert.assertNull(indexStoreFile.getSortedRunAsync().get());
+        List<IndexItem> itemList = indexStoreFile.queryAsync(
+            TOPIC_NAME + "1", KEY, 64, timestamp, System.currentTimeMillis()).get();
+        Assert.assertEquals(3, itemList.size());
+        itemList = indexStoreFile.queryAsync(
+            TOPIC_NAME, KEY, 64, timestamp, System.currentTimeMillis()).get();
+        Assert.assertEquals(0, itemList.size());
+    }
 }
\ No newline at end of file
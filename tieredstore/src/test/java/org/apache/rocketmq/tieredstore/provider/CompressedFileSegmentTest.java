@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tieredstore.provider;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.compression.CompressionType;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.tieredstore.MessageStoreConfig;
+import org.apache.rocketmq.tieredstore.common.FileSegmentType;
+import org.apache.rocketmq.tieredstore.metadata.DefaultMetadataStore;
+import org.apache.rocketmq.tieredstore.metadata.MetadataStore;
+import org.apache.rocketmq.tieredstore.stream.FileSegmentInputStream;
+import org.apache.rocketmq.tieredstore.util.MessageFormatUtil;
+import org.apache.rocketmq.tieredstore.util.MessageFormatUtilTest;
+import org.apache.rocketmq.tieredstore.util.MessageStoreUtil;
+import org.apache.rocketmq.tieredstore.util.MessageStoreUtilTest;
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompressedFileSegmentTest {
+
+    private final long baseOffset = 1000L;
+    private final String storePath = MessageStoreUtilTest.getRandomStorePath();
+    private MessageStoreConfig storeConfig;
+    private FileSegmentFactory factory;
+    private String filePath;
+
+    @Before
+    public void init() {
+        storeConfig = new MessageStoreConfig();
+        storeConfig.setTieredStoreFilePath(storePath);
+        storeConfig.setTieredBackendServiceProvider(PosixFileSegment.class.getName());
+        storeConfig.setTieredStoreCommitLogCompressionType("ZSTD");
+        storeConfig.setTieredStoreCommitLogCompressionBlockSize(512);
+        MetadataStore metadataStore = new DefaultMetadataStore(storeConfig);
+        factory = new FileSegmentFactory(metadataStore, storeConfig);
+        filePath = MessageStoreUtil.toFilePath(new MessageQueue("CompressedFileSegmentTest", "brokerName", 0));
+    }
+
+    @After
+    public void shutdown() {
+        MessageStoreUtilTest.deleteStoreDirectory(storePath);
+    }
+
+    @Test
+    public void createSegmentTest() {
+        FileSegment fileSegment = factory.createCommitLogFileSegment(filePath, baseOffset);
+        Assert.assertTrue(fileSegment instanceof CompressedFileSegment);
+        Assert.assertEquals(CompressionType.ZSTD.getValue(), fileSegment.getCompressionType());
+        fileSegment.destroyFile();
+
+        fileSegment = factory.createConsumeQueueFileSegment(filePath, baseOffset);
+        Assert.assertFalse(fileSegment instanceof CompressedFileSegment);
+        Assert.assertEquals(CompressedFileSegment.NO_COMPRESSION, fileSegment.getCompressionType());
+        fileSegment.destroyFile();
+
+        fileSegment = factory.createSegment(
+            FileSegmentType.COMMIT_LOG, filePath, baseOffset, CompressedFileSegment.NO_COMPRESSION);
+        Assert.assertFalse(fileSegment instanceof CompressedFileSegment);
+        fileSegment.destroyFile();
+    }
+
+    @Test
+    public void commitAndReadTest() {
+        CompressedFileSegment fileSegment =
+            (CompressedFileSegment) factory.createCommitLogFileSegment(filePath, baseOffset);
+        fileSegment.initPosition(fileSegment.getSize());
+        Assert.assertEquals(0L, fileSegment.getSize());
+
+        int count = 20;
+        for (int i = 0; i < count; i++) {
+            ByteBuffer buffer = MessageFormatUtilTest.buildMockedMessageBuffer();
+            buffer.putLong(MessageFormatUtil.QUEUE_OFFSET_POSITION, i);
+            fileSegment.append(buffer, 0L);
+            // several chunks
+            if (i % 7 == 6) {
+                Assert.assertTrue(fileSegment.commitAsync().join());
+            }
+        }
+        Assert.assertTrue(fileSegment.commitAsync().join());
+
+        int msgLen = MessageFormatUtilTest.MSG_LEN;
+        Assert.assertEquals((long) count * msgLen, fileSegment.getCommitPosition());
+        Assert.assertEquals((long) count * msgLen, fileSegment.getSize());
+        Assert.assertTrue(fileSegment.getStoredSize() < fileSegment.getSize());
+
+        for (int i = 0; i < count; i++) {
+            ByteBuffer msg = fileSegment.read((long) i * msgLen, msgLen);
+            Assert.assertEquals(msgLen, msg.remaining());
+            Assert.assertEquals(i, MessageFormatUtil.getQueueOffset(msg));
+            Assert.assertEquals(baseOffset + (long) i * msgLen, MessageFormatUtil.getCommitLogOffset(msg));
+        }
+
+        // a range over several blocks and chunks, clipped to the commit position
+        ByteBuffer range = fileSegment.read(msgLen * 3 + 5, msgLen * count);
+        Assert.assertEquals(msgLen * (count - 3) - 5, range.remaining());
+        range.position(msgLen - 5);
+        Assert.assertEquals(4, MessageFormatUtil.getQueueOffset(range.slice()));
+
+        // the block index is rebuilt from the backend file
+        CompressedFileSegment recovered = (CompressedFileSegment) factory.createSegment(
+            FileSegmentType.COMMIT_LOG, filePath, baseOffset, CompressionType.ZSTD.getValue());
+        recovered.initPosition(recovered.getSize());
+        Assert.assertEquals(fileSegment.getSize(), recovered.getSize());
+        Assert.assertEquals(fileSegment.getStoredSize(), recovered.getStoredSize());
+        Assert.assertEquals(count - 1, MessageFormatUtil.getQueueOffset(
+            recovered.read((long) (count - 1) * msgLen, msgLen)));
+
+        // append after recover
+        ByteBuffer buffer = MessageFormatUtilTest.buildMockedMessageBuffer();
+        buffer.putLong(MessageFormatUtil.QUEUE_OFFSET_POSITION, count);
+        recovered.append(buffer, 0L);
+        Assert.assertTrue(recovered.commitAsync().join());
+        Assert.assertEquals(count, MessageFormatUtil.getQueueOffset(recovered.read((long) count * msgLen, msgLen)));
+
+        // the stale index is extended on size check
+        Assert.assertEquals((long) (count + 1) * msgLen, fileSegment.getSize());
+
+        Assert.assertThrows(CompletionException.class, () -> recovered.read((long) (count + 1) * msgLen, msgLen));
+        recovered.destroyFile();
+    }
+
+    @Test
+    public void recoverFromBlockIndexTest() {
+        CompressedFileSegment fileSegment =
+            (CompressedFileSegment) factory.createCommitLogFileSegment(filePath, baseOffset);
+        fileSegment.initPosition(fileSegment.getSize());
+        int count = 20;
+        for (int i = 0; i < count; i++) {
+            ByteBuffer buffer = MessageFormatUtilTest.buildMockedMessageBuffer();
+            buffer.putLong(MessageFormatUtil.QUEUE_OFFSET_POSITION, i);
+            fileSegment.append(buffer, 0L);
+            if (i % 7 == 6) {
+                Assert.assertTrue(fileSegment.commitAsync().join());
+            }
+        }
+        Assert.assertTrue(fileSegment.commitAsync().join());
+        int msgLen = MessageFormatUtilTest.MSG_LEN;
+        FileSegment blockIndexSegment = fileSegment.getBlockIndexSegment();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> blockIndexSegment.getSize() > 0L);
+        long blockIndexSize = blockIndexSegment.getSize();
+        fileSegment.close();
+
+        // the block index file is dropped, the index is rebuilt from the footers and the file written again
+        blockIndexSegment.destroyFile();
+        CompressedFileSegment recovered = (CompressedFileSegment) factory.createSegment(
+            FileSegmentType.COMMIT_LOG, filePath, baseOffset, CompressionType.ZSTD.getValue());
+        Assert.assertEquals((long) count * msgLen, recovered.getSize());
+        FileSegment recoveredBlockIndex = recovered.getBlockIndexSegment();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+            .until(() -> recoveredBlockIndex.getSize() == blockIndexSize);
+        long storedSize = recovered.getStoredSize();
+        recovered.close();
+
+        // break the last footer, the index is still rebuilt as it is read from the block index file only
+        FileSegment backend = factory.createSegment(
+            FileSegmentType.COMMIT_LOG, filePath, baseOffset, CompressedFileSegment.NO_COMPRESSION);
+        backend.createFile();
+        FileSegmentInputStream inputStream = new FileSegmentInputStream(
+            FileSegmentType.COMMIT_LOG, Collections.singletonList(ByteBuffer.allocate(Integer.BYTES)), Integer.BYTES);
+        Assert.assertTrue(backend.commit0(inputStream, storedSize - Integer.BYTES, Integer.BYTES, false).join());
+        backend.close();
+        CompressedFileSegment reloaded = (CompressedFileSegment) factory.createSegment(
+            FileSegmentType.COMMIT_LOG, filePath, baseOffset, CompressionType.ZSTD.getValue());
+        Assert.assertEquals((long) count * msgLen, reloaded.getSize());
+        Assert.assertEquals(storedSize, reloaded.getStoredSize());
+        reloaded.initPosition(reloaded.getSize());
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(i, MessageFormatUtil.getQueueOffset(reloaded.read((long) i * msgLen, msgLen)));
+        }
+        reloaded.destroyFile();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tieredstore.provider;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import org.apache.rocketmq.tieredstore.MessageStoreConfig;
+import org.apache.rocketmq.tieredstore.common.FileSegmentType;
+import org.apache.rocketmq.tieredstore.util.MessageStoreUtilTest;
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileSegmentDiskCacheTest {
+
+    private static final int FILE_SIZE = 2050;
+
+    private final String storePath = MessageStoreUtilTest.getRandomStorePath();
+    private MessageStoreConfig storeConfig;
+
+    @Before
+    public void init() {
+        storeConfig = new MessageStoreConfig();
+        storeConfig.setTieredStoreDiskCachePath(Paths.get(storePath, "cache").toString());
+        storeConfig.setTieredStoreDiskCacheBlockSize(100);
+        storeConfig.setTieredStoreDiskCacheMaxSize(500);
+    }
+
+    @After
+    public void shutdown() {
+        MessageStoreUtilTest.deleteStoreDirectory(storePath);
+    }
+
+    private CountingFileSegment createFileSegment(FileSegmentDiskCache diskCache) {
+        CountingFileSegment fileSegment = new CountingFileSegment(storeConfig);
+        fileSegment.initDiskCache(diskCache);
+        return fileSegment;
+    }
+
+    private static void awaitBlockCount(FileSegmentDiskCache diskCache, int count) {
+        Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> diskCache.getBlockCount() == count);
+    }
+
+    private static void awaitCached(FileSegmentDiskCache diskCache, FileSegment fileSegment, long position) {
+        Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> diskCache.isCached(fileSegment, position));
+    }
+
+    private static void assertContent(ByteBuffer buffer, long position, int length) {
+        Assert.assertEquals(length, buffer.remaining());
+        for (int i = 0; i < length; i++) {
+            Assert.assertEquals((byte) (position + i), buffer.get(buffer.position() + i));
+        }
+    }
+
+    @Test
+    public void readTest() {
+        FileSegmentDiskCache diskCache = new FileSegmentDiskCache(storeConfig);
+        CountingFileSegment fileSegment = this.createFileSegment(diskCache);
+
+        // read from the backend as whole blocks
+        assertContent(fileSegment.read(150, 100), 150, 100);
+        Assert.assertArrayEquals(new long[] {100, 200}, fileSegment.readList.get(0));
+        awaitBlockCount(diskCache, 2);
+        Assert.assertEquals(200L, diskCache.getCacheSize());
+
+        // served by the blocks cached
+        assertContent(fileSegment.read(120, 150), 120, 150);
+        Assert.assertEquals(1, fileSegment.readList.size());
+
+        // blocks missing on both sides are read in one backend read
+        assertContent(fileSegment.read(250, 100), 250, 100);
+        Assert.assertArrayEquals(new long[] {300, 100}, fileSegment.readList.get(1));
+        assertContent(fileSegment.read(50, 500), 50, 500);
+        Assert.assertEquals(3, fileSegment.readList.size());
+        Assert.assertArrayEquals(new long[] {0, 600}, fileSegment.readList.get(2));
+        awaitBlockCount(diskCache, 5);
+
+        // the block not yet full is not cached
+        assertContent(fileSegment.read(1990, 60), 1990, 60);
+        Assert.assertArrayEquals(new long[] {1900, 150}, fileSegment.readList.get(3));
+        awaitCached(diskCache, fileSegment, 1900L);
+        assertContent(fileSegment.read(2000, 50), 2000, 50);
+        Assert.assertArrayEquals(new long[] {2000, 50}, fileSegment.readList.get(4));
+        Assert.assertEquals(500L, diskCache.getCacheSize());
+    }
+
+    @Test
+    public void evictAndRecoverTest() {
+        FileSegmentDiskCache diskCache = new FileSegmentDiskCache(storeConfig);
+        CountingFileSegment fileSegment = this.createFileSegment(diskCache);
+        for (int i = 0; i < 7; i++) {
+            long position = i * 100L;
+            assertContent(fileSegment.read(position, 100), position, 100);
+            awaitCached(diskCache, fileSegment, position);
+        }
+        Assert.assertEquals(5, diskCache.getBlockCount());
+        Assert.assertEquals(500L, diskCache.getCacheSize());
+
+        // the blocks are recovered after restart, and the least recently used are evicted
+        FileSegmentDiskCache recovered = new FileSegmentDiskCache(storeConfig);
+        Assert.assertEquals(5, recovered.getBlockCount());
+        CountingFileSegment recoveredSegment = this.createFileSegment(recovered);
+        assertContent(recoveredSegment.read(200, 500), 200, 500);
+        Assert.assertTrue(recoveredSegment.readList.isEmpty());
+        assertContent(recoveredSegment.read(0, 100), 0, 100);
+        Assert.assertEquals(1, recoveredSegment.readList.size());
+        awaitCached(recovered, recoveredSegment, 0L);
+
+        recoveredSegment.evictDiskCache();
+        Assert.assertEquals(0, recovered.getBlockCount());
+        Assert.assertEquals(0L, recovered.getCacheSize());
+        Assert.assertEquals(0, new FileSegmentDiskCache(storeConfig).getBlockCount());
+    }
+
+    @Test
+    public void loadTest() throws IOException {
+        FileSegmentDiskCache diskCache = new FileSegmentDiskCache(storeConfig);
+        CountingFileSegment fileSegment = this.createFileSegment(diskCache);
+        assertContent(fileSegment.read(0, 200), 0, 200);
+        awaitBlockCount(diskCache, 2);
+
+        Path cachePath = Paths.get(storeConfig.getTieredStoreDiskCachePath());
+        Path segmentPath;
+        try (Stream<Path> stream = Files.walk(cachePath)) {
+            segmentPath = stream.filter(Files::isRegularFile).findFirst().orElseThrow(AssertionError::new).getParent();
+        }
+        Path brokenBlock = segmentPath.resolve(String.format("%020d", 300));
+        Path tempBlock = segmentPath.resolve(String.format("%020d", 400) + ".tmp");
+        Path otherFile = segmentPath.resolve("other");
+        Path otherRootFile = cachePath.resolve("lock");
+        Files.write(brokenBlock, new byte[10]);
+        Files.write(tempBlock, new byte[100]);
+        Files.write(otherFile, new byte[10]);
+        Files.write(otherRootFile, new byte[100]);
+
+        // only the files named as blocks are loaded or cleaned up
+        FileSegmentDiskCache recovered = new FileSegmentDiskCache(storeConfig);
+        Assert.assertEquals(2, recovered.getBlockCount());
+        Assert.assertFalse(Files.exists(brokenBlock));
+        Assert.assertFalse(Files.exists(tempBlock));
+        Assert.assertTrue(Files.exists(otherFile));
+        Assert.assertTrue(Files.exists(otherRootFile));
+    }
+
+    private static class CountingFileSegment extends MemoryFileSegment {
+        private final List<long[]> readList = new CopyOnWriteArrayList<>();
+
+        private CountingFileSegment(MessageStoreConfig storeConfig) {
+            super(storeConfig, FileSegmentType.COMMIT_LOG, "FileSegmentDiskCacheTest", 0L);
+            for (int i = 0; i < FILE_SIZE; i++) {
+                memStore.put(i, (byte) i);
+            }
+            this.initPosition(FILE_SIZE);
+        }
+
+        @Override
+        public CompletableFuture<ByteBuffer> read0(long position, int length) {
+            readList.add(new long[] {position, length});
+            return super.read0(position, length);
+        }
+    }
+}
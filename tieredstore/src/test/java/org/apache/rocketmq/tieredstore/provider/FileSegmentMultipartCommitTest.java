@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tieredstore.provider;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.tieredstore.MessageStoreConfig;
+import org.apache.rocketmq.tieredstore.common.FileSegmentType;
+import org.apache.rocketmq.tieredstore.metadata.DefaultMetadataStore;
+import org.apache.rocketmq.tieredstore.util.MessageStoreUtil;
+import org.apache.rocketmq.tieredstore.util.MessageStoreUtilTest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileSegmentMultipartCommitTest {
+
+    private final String storePath = MessageStoreUtilTest.getRandomStorePath();
+    private MessageStoreConfig storeConfig;
+
+    @Before
+    public void init() {
+        storeConfig = new MessageStoreConfig();
+        storeConfig.setTieredStoreFilePath(storePath);
+        storeConfig.setTieredStoreCommitMultipartPartSize(100);
+        storeConfig.setTieredStoreCommitMultipartConcurrency(2);
+        storeConfig.setTieredStoreCommitMultipartRetryTimes(1);
+    }
+
+    @After
+    public void shutdown() {
+        MessageStoreUtilTest.deleteStoreDirectory(storePath);
+    }
+
+    private static ByteBuffer buildBuffer(int position, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) (position + i));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void appendBuffer(FileSegment fileSegment, int length) {
+        int position = (int) fileSegment.getAppendPosition();
+        for (int i = 0; i < length; i += 30) {
+            fileSegment.append(buildBuffer(position + i, Math.min(30, length - i)), 0L);
+        }
+    }
+
+    private static void assertContent(ByteBuffer buffer, int position, int length) {
+        Assert.assertEquals(length, buffer.remaining());
+        for (int i = 0; i < length; i++) {
+            Assert.assertEquals((byte) (position + i), buffer.get(buffer.position() + i));
+        }
+    }
+
+    @Test
+    public void commitInPartsTest() {
+        FailingFileSegment fileSegment = new FailingFileSegment(storeConfig);
+        fileSegment.initPosition(0L);
+
+        // smaller than one part
+        appendBuffer(fileSegment, 90);
+        Assert.assertTrue(fileSegment.commitAsync().join());
+        Assert.assertEquals(0, fileSegment.uploadCount.get());
+
+        // the first try of part 1 fails and is retried
+        fileSegment.failTimes.put(1, 1);
+        appendBuffer(fileSegment, 450);
+        Assert.assertTrue(fileSegment.commitAsync().join());
+        Assert.assertEquals(5 + 1, fileSegment.uploadCount.get());
+        Assert.assertEquals(540L, fileSegment.getCommitPosition());
+        Assert.assertTrue(fileSegment.partMap.isEmpty());
+        assertContent(fileSegment.read(0L, 540), 0, 540);
+    }
+
+    @Test
+    public void commitInPartsFailedTest() {
+        FailingFileSegment fileSegment = new FailingFileSegment(storeConfig);
+        fileSegment.initPosition(0L);
+
+        // part 2 fails after retry, the parts uploaded are discarded
+        fileSegment.failTimes.put(2, 2);
+        appendBuffer(fileSegment, 350);
+        Assert.assertFalse(fileSegment.commitAsync().join());
+        Assert.assertEquals(0L, fileSegment.getCommitPosition());
+        Assert.assertEquals(0, fileSegment.getMemStore().position());
+        Assert.assertTrue(fileSegment.partMap.isEmpty());
+
+        // commit again from the beginning of the stream
+        Assert.assertTrue(fileSegment.commitAsync().join());
+        Assert.assertEquals(350L, fileSegment.getCommitPosition());
+        assertContent(fileSegment.read(0L, 350), 0, 350);
+    }
+
+    @Test
+    public void posixCommitInPartsTest() {
+        storeConfig.setTieredBackendServiceProvider(PosixFileSegment.class.getName());
+        FileSegmentFactory factory = new FileSegmentFactory(new DefaultMetadataStore(storeConfig), storeConfig);
+        String filePath = MessageStoreUtil.toFilePath(new MessageQueue("FileSegmentMultipartCommitTest", "broker", 0));
+        FileSegment fileSegment = factory.createConsumeQueueFileSegment(filePath, 0L);
+        fileSegment.initPosition(fileSegment.getSize());
+
+        appendBuffer(fileSegment, 480);
+        Assert.assertTrue(fileSegment.commitAsync().join());
+        appendBuffer(fileSegment, 270);
+        Assert.assertTrue(fileSegment.commitAsync().join());
+        Assert.assertEquals(750L, fileSegment.getCommitPosition());
+        Assert.assertEquals(750L, fileSegment.getSize());
+        assertContent(fileSegment.read(0L, 750), 0, 750);
+
+        // no part is left beside the segment file
+        Assert.assertEquals(0L, countPartFiles(new File(storePath)));
+        fileSegment.destroyFile();
+    }
+
+    private static long countPartFiles(File dir) {
+        long count = 0L;
+        for (File file : Objects.requireNonNull(dir.listFiles())) {
+            if (file.isDirectory()) {
+                count += countPartFiles(file);
+            } else if (file.getName().endsWith(".part")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static class FailingFileSegment extends MemoryFileSegment {
+        private final Map<Integer, Integer> failTimes = new ConcurrentHashMap<>();
+        private final AtomicInteger uploadCount = new AtomicInteger();
+
+        private FailingFileSegment(MessageStoreConfig storeConfig) {
+            super(storeConfig, FileSegmentType.CONSUME_QUEUE, "FailingFileSegment", 0L);
+        }
+
+        @Override
+        public CompletableFuture<String> uploadPart0(String uploadId, int partNumber, ByteBuffer buffer) {
+            uploadCount.incrementAndGet();
+            if (failTimes.getOrDefault(partNumber, 0) > 0) {
+                failTimes.computeIfPresent(partNumber, (k, v) -> v - 1);
+                CompletableFuture<String> future = new CompletableFuture<>();
+                future.completeExceptionally(new RuntimeException("upload part failed for test"));
+                return future;
+            }
+            return super.uploadPart0(uploadId, partNumber, buffer);
+        }
+
+        @Override
+        public long getSize() {
+            return memStore.position();
+        }
+    }
+}
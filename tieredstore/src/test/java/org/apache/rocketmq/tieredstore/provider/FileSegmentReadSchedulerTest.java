@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.tieredstore.provider;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.tieredstore.MessageStoreConfig;
+import org.apache.rocketmq.tieredstore.common.FileSegmentType;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileSegmentReadSchedulerTest {
+
+    private static final int FILE_SIZE = 4000;
+
+    private MessageStoreConfig storeConfig;
+    private BlockingFileSegment fileSegment;
+
+    @Before
+    public void init() {
+        storeConfig = new MessageStoreConfig();
+        storeConfig.setTieredStoreReadPrefetchSize(0);
+        fileSegment = new BlockingFileSegment(storeConfig);
+    }
+
+    @Test
+    public void mergeReadTest() {
+        FileSegmentReadLimiter limiter = new FileSegmentReadLimiter(100);
+        fileSegment.initReadScheduler(limiter);
+        fileSegment.blocked = true;
+
+        CompletableFuture<ByteBuffer> future1 = fileSegment.readAsync(0, 100);
+        CompletableFuture<ByteBuffer> future2 = fileSegment.readAsync(2000, 50);
+        CompletableFuture<ByteBuffer> future3 = fileSegment.readAsync(2050, 50);
+        CompletableFuture<ByteBuffer> future4 = fileSegment.readAsync(2020, 40);
+        Assert.assertEquals(1, fileSegment.readList.size());
+
+        // served by the read in flight
+        CompletableFuture<ByteBuffer> future5 = fileSegment.readAsync(10, 20);
+        Assert.assertEquals(1, fileSegment.readList.size());
+
+        fileSegment.blocked = false;
+        fileSegment.completeAll();
+        assertContent(future1.join(), 0, 100);
+        assertContent(future5.join(), 10, 20);
+
+        // pending reads are dispatched as one when the first is done
+        Assert.assertEquals(2, fileSegment.readList.size());
+        Assert.assertArrayEquals(new long[] {2000, 100}, fileSegment.readList.get(1));
+        assertContent(future2.join(), 2000, 50);
+        assertContent(future3.join(), 2050, 50);
+        assertContent(future4.join(), 2020, 40);
+        Assert.assertEquals(0L, limiter.getInflightBytes());
+    }
+
+    @Test
+    public void prefetchTest() {
+        storeConfig.setTieredStoreReadPrefetchSize(1000);
+        FileSegmentReadLimiter limiter = new FileSegmentReadLimiter(10000);
+        fileSegment.initReadScheduler(limiter);
+
+        assertContent(fileSegment.read(0, 100), 0, 100);
+        assertContent(fileSegment.read(100, 100), 100, 100);
+        assertContent(fileSegment.read(200, 100), 200, 100);
+
+        // the third sequential read is merged with the prefetch of the next window
+        Assert.assertEquals(3, fileSegment.readList.size());
+        Assert.assertArrayEquals(new long[] {200, 1100}, fileSegment.readList.get(2));
+        Assert.assertEquals(1000L, limiter.getPrefetchBytes());
+
+        // the next window is prefetched once half of the window prefetched before is read
+        for (int position = 300; position < 1200; position += 100) {
+            assertContent(fileSegment.read(position, 100), position, 100);
+        }
+        Assert.assertEquals(4, fileSegment.readList.size());
+        Assert.assertArrayEquals(new long[] {1300, 1000}, fileSegment.readList.get(3));
+        Assert.assertEquals(2000L, limiter.getPrefetchBytes());
+        assertContent(fileSegment.read(1300, 100), 1300, 100);
+        Assert.assertEquals(4, fileSegment.readList.size());
+
+        fileSegment.initPosition(FILE_SIZE);
+        Assert.assertEquals(0L, limiter.getPrefetchBytes());
+    }
+
+    @Test
+    public void concurrentPrefetchTest() throws Exception {
+        storeConfig.setTieredStoreReadPrefetchSize(1000);
+        storeConfig.setReadAheadCacheExpireDuration(0);
+        // the prefetch of one scheduler evicts the expired prefetch of the other
+        FileSegmentReadLimiter limiter = new FileSegmentReadLimiter(1500);
+        List<BlockingFileSegment> segmentList = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            BlockingFileSegment segment = new BlockingFileSegment(storeConfig);
+            segment.initReadScheduler(limiter);
+            segmentList.add(segment);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(segmentList.size());
+        try {
+            List<Future<?>> futureList = new ArrayList<>();
+            for (BlockingFileSegment segment : segmentList) {
+                futureList.add(executor.submit(() -> {
+                    for (int round = 0; round < 200; round++) {
+                        for (int position = 0; position < FILE_SIZE; position += 100) {
+                            assertContent(segment.read(position, 100), position, 100);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futureList) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(0L, limiter.getInflightBytes());
+    }
+
+    private static void assertContent(ByteBuffer buffer, long position, int length) {
+        Assert.assertEquals(length, buffer.remaining());
+        for (int i = 0; i < length; i++) {
+            Assert.assertEquals((byte) (position + i), buffer.get(buffer.position() + i));
+        }
+    }
+
+    private static class BlockingFileSegment extends MemoryFileSegment {
+        private final List<long[]> readList = new ArrayList<>();
+        private final List<CompletableFuture<Void>> blockerList = new ArrayList<>();
+        private volatile boolean blocked = false;
+
+        private BlockingFileSegment(MessageStoreConfig storeConfig) {
+            super(storeConfig, FileSegmentType.COMMIT_LOG, "BlockingFileSegment", 0L);
+            for (int i = 0; i < FILE_SIZE; i++) {
+                memStore.put(i, (byte) i);
+            }
+            this.initPosition(FILE_SIZE);
+        }
+
+        @Override
+        public synchronized CompletableFuture<ByteBuffer> read0(long position, int length) {
+            readList.add(new long[] {position, length});
+            if (!blocked) {
+                return super.read0(position, length);
+            }
+            CompletableFuture<Void> blocker = new CompletableFuture<>();
+            blockerList.add(blocker);
+            return blocker.thenCompose(v -> super.read0(position, length));
+        }
+
+        private void completeAll() {
+            List<CompletableFuture<Void>> list;
+            synchronized (this) {
+                list = new ArrayList<>(blockerList);
+                blockerList.clear();
+            }
+            list.forEach(blocker -> blocker.complete(null));
+        }
+    }
+}